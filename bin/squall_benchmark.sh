@@ -0,0 +1,26 @@
+#!/bin/bash
+. ./storm_version.sh
+
+# Runs a query plan on a LocalCluster and writes a performance report (see plan_runner.main.Benchmark)
+printFormat (){
+	echo "Format: ./squall_benchmark.sh CONFIG_PATH [KEY=VALUE ...]"
+	echo "        e.g. ./squall_benchmark.sh ../test/squall_plan_runner/confs/local/0_01G_tpch3 DIP_BENCHMARK_PAR=2 DIP_GENERATE_DATA=true DIP_GENERATOR_SCALE=1"
+}
+
+if [ $# -lt 1 ]; then
+	echo "ERROR:: Inproper number of arguments!"
+	printFormat
+	exit
+fi
+
+CONFIG_PATH=$1
+# check if your configuration file exists
+if ! [ -f $CONFIG_PATH ]; then
+	echo "File $CONFIG_PATH does not exist! Please specify a valid configuration file!"
+	exit
+fi
+
+# Now run
+cd ../deploy
+
+../bin/lein run -m plan_runner.main.Benchmark "$@"
@@ -12,7 +12,9 @@ import plan_runner.query_plans.QueryPlan;
 import plan_runner.storm_components.StormComponent;
 import plan_runner.storm_components.StormDataSource;
 import plan_runner.storm_components.synchronization.TopologyKiller;
+import plan_runner.utilities.LocalTableScan;
 import plan_runner.utilities.MyUtilities;
+import plan_runner.utilities.SourceSchedule;
 import plan_runner.utilities.SystemParameters;
 import backtype.storm.Config;
 import backtype.storm.topology.TopologyBuilder;
@@ -38,6 +40,13 @@ public class DataSourceComponent implements Component {
 
 	private Component _child;
 
+	// semi-join reduction: the tuples without a partner in this source are
+	// dropped
+	private DataSourceComponent _semiJoinSource;
+
+	// broadcast join: the child scans this component itself
+	private boolean _isScannedLocally;
+
 	public DataSourceComponent(String componentName, String inputPath, QueryPlan queryPlan) {
 		_componentName = componentName;
 		_inputPath = inputPath;
@@ -104,9 +113,19 @@ public class DataSourceComponent implements Component {
 
 	@Override
 	public String getInfoID() {
+		if (_dataSource == null)
+			return _componentName + " is scanned locally by " + _child.getName() + "\n";
 		return _dataSource.getInfoID() + "\n";
 	}
 
+	public String getInputPath() {
+		return _inputPath;
+	}
+
+	public boolean isScannedLocally() {
+		return _isScannedLocally;
+	}
+
 	@Override
 	public String getName() {
 		return _componentName;
@@ -138,6 +157,10 @@ public class DataSourceComponent implements Component {
 		if (hierarchyPosition == StormComponent.FINAL_COMPONENT && !_printOutSet)
 			setPrintOut(true);
 
+		if (_isScannedLocally)
+			// no spout, the tuples are never sent
+			return;
+
 		final int parallelism = SystemParameters.getInt(conf, _componentName + "_PAR");
 		if (parallelism > 1 && _chain.getDistinct() != null)
 			throw new RuntimeException(
@@ -148,6 +171,8 @@ public class DataSourceComponent implements Component {
 
 		_dataSource = new StormDataSource(this, allCompNames, _inputPath, hierarchyPosition,
 				parallelism, builder, killer, conf);
+		if (_semiJoinSource != null)
+			_dataSource.setSemiJoinSource(new LocalTableScan(_semiJoinSource));
 	}
 
 	@Override
@@ -179,6 +204,29 @@ public class DataSourceComponent implements Component {
 		return this;
 	}
 
+	// invoked after makeBolts, see SourceSchedule
+	public void setSourceSchedule(SourceSchedule sourceSchedule) {
+		if (_dataSource == null)
+			throw new RuntimeException(_componentName
+					+ " is scanned locally, so it cannot be scheduled!");
+		_dataSource.setSourceSchedule(sourceSchedule);
+	}
+
+	void setScannedLocally() {
+		_isScannedLocally = true;
+	}
+
+	/*
+	 * Semi-join reduction: this component is joined with a (much smaller)
+	 * semiJoinSource. Each task builds a Bloom filter over the join keys of
+	 * semiJoinSource, and does not send the tuples which cannot find a
+	 * partner. semiJoinSource is scanned by each task of this component.
+	 */
+	public DataSourceComponent setSemiJoinSource(DataSourceComponent semiJoinSource) {
+		_semiJoinSource = semiJoinSource;
+		return this;
+	}
+
 	@Override
 	public DataSourceComponent setPrintOut(boolean printOut) {
 		_printOutSet = true;
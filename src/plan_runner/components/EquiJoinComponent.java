@@ -14,6 +14,7 @@ import plan_runner.query_plans.QueryPlan;
 import plan_runner.storage.AggregationStorage;
 import plan_runner.storage.BasicStore;
 import plan_runner.storage.KeyValueStore;
+import plan_runner.storm_components.StormBroadcastJoin;
 import plan_runner.storm_components.StormComponent;
 import plan_runner.storm_components.StormDstTupleStorageBDB;
 import plan_runner.storm_components.StormDstJoin;
@@ -21,7 +22,9 @@ import plan_runner.storm_components.StormDstTupleStorageJoin;
 import plan_runner.storm_components.StormJoin;
 import plan_runner.storm_components.StormSrcJoin;
 import plan_runner.storm_components.synchronization.TopologyKiller;
+import plan_runner.utilities.LocalTableScan;
 import plan_runner.utilities.MyUtilities;
+import plan_runner.utilities.WindowSemantics;
 import backtype.storm.Config;
 import backtype.storm.topology.TopologyBuilder;
 
@@ -58,6 +61,12 @@ public class EquiJoinComponent implements Component {
 	private List<String> _fullHashList;
 	private Predicate _joinPredicate;
 
+	// a small parent which is replicated to all the tasks (broadcast join)
+	private DataSourceComponent _broadcastParent;
+
+	// null if the join is over the whole streams
+	private WindowSemantics _window;
+
 	public EquiJoinComponent(Component firstParent, Component secondParent, QueryPlan queryPlan) {
 		_firstParent = firstParent;
 		_firstParent.setChild(this);
@@ -171,6 +180,41 @@ public class EquiJoinComponent implements Component {
 		if (_secondStorage == null)
 			_secondStorage = new KeyValueStore<String, String>(conf);
 
+		if (_window != null) {
+			if (_broadcastParent != null || _joinPredicate != null || MyUtilities.isBDB(conf)
+					|| partitioningType != StormJoin.DST_ORDERING)
+				throw new RuntimeException(_componentName
+						+ ": Windows are supported only for StormDstJoin!");
+			if (_firstPreAggProj != null || _secondPreAggProj != null
+					|| _firstStorage instanceof AggregationStorage
+					|| _secondStorage instanceof AggregationStorage)
+				throw new RuntimeException(_componentName
+						+ ": Windows are not supported for preaggregations!");
+			_window.check(conf);
+			final StormDstJoin joiner = new StormDstJoin(_firstParent, _secondParent, this,
+					allCompNames, _firstStorage, _secondStorage, _firstPreAggProj,
+					_secondPreAggProj, hierarchyPosition, builder, killer, conf);
+			joiner.setWindow(_window);
+			_joiner = joiner;
+			return;
+		}
+
+		if (_broadcastParent != null) {
+			if (_firstPreAggProj != null || _secondPreAggProj != null
+					|| _firstStorage instanceof AggregationStorage
+					|| _secondStorage instanceof AggregationStorage)
+				throw new RuntimeException(_componentName
+						+ ": Broadcast join does not support preaggregations!");
+			if (_joinPredicate != null || MyUtilities.isBDB(conf))
+				throw new RuntimeException(_componentName
+						+ ": Broadcast join does not support joinPredicate!");
+			final boolean isSmallFirst = _broadcastParent == _firstParent;
+			final Component largeParent = isSmallFirst ? _secondParent : _firstParent;
+			_joiner = new StormBroadcastJoin(largeParent, new LocalTableScan(_broadcastParent),
+					isSmallFirst, this, allCompNames, hierarchyPosition, builder, killer, conf);
+			return;
+		}
+
 		boolean isBDB = MyUtilities.isBDB(conf);
 		if(isBDB && _joinPredicate == null){
 			throw new RuntimeException("Please provide _joinPredicate if you want to run BDB!");
@@ -213,6 +257,20 @@ public class EquiJoinComponent implements Component {
 		_child = child;
 	}
 
+	/*
+	 * The parent is not partitioned by the join key, but it is scanned as a
+	 * whole by each task of this component (it has to be small). No spout is
+	 * created for it.
+	 */
+	public EquiJoinComponent setBroadcastParent(DataSourceComponent broadcastParent) {
+		if (broadcastParent != _firstParent && broadcastParent != _secondParent)
+			throw new RuntimeException(broadcastParent.getName() + " is not a parent of "
+					+ _componentName + "!");
+		_broadcastParent = broadcastParent;
+		_broadcastParent.setScannedLocally();
+		return this;
+	}
+
 	// Out of the first storage (join of S tuple with R relation)
 	public EquiJoinComponent setFirstPreAggProj(ProjectOperator firstPreAggProj) {
 		_firstPreAggProj = firstPreAggProj;
@@ -268,4 +326,13 @@ public class EquiJoinComponent implements Component {
 		return this;
 	}
 
+	/*
+	 * The join is over a window of each relation, rather than over the whole
+	 * streams. The expired tuples are evicted from the storage.
+	 */
+	public EquiJoinComponent setWindow(WindowSemantics window) {
+		_window = window;
+		return this;
+	}
+
 }
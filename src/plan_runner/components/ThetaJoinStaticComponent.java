@@ -18,6 +18,7 @@ import plan_runner.storm_components.StormThetaJoin;
 import plan_runner.storm_components.StormThetaJoinBDB;
 import plan_runner.storm_components.synchronization.TopologyKiller;
 import plan_runner.utilities.MyUtilities;
+import plan_runner.utilities.WindowSemantics;
 import backtype.storm.Config;
 import backtype.storm.topology.TopologyBuilder;
 
@@ -45,6 +46,9 @@ public class ThetaJoinStaticComponent implements Component {
 
 	private Predicate _joinPredicate;
 
+	// null if the join is over the whole streams
+	private WindowSemantics _window;
+
 	private InterchangingComponent _interComp = null;
 
 	public ThetaJoinStaticComponent(Component firstParent, Component secondParent,
@@ -165,11 +169,19 @@ public class ThetaJoinStaticComponent implements Component {
 		}
 		
 		if(isBDB && (hierarchyPosition == StormComponent.FINAL_COMPONENT)){
+			if (_window != null)
+				throw new RuntimeException(_componentName + ": Windows are not supported for BDB!");
 			_joiner = new StormThetaJoinBDB(_firstParent, _secondParent, this, allCompNames,
 					_joinPredicate, hierarchyPosition, builder, killer, conf, _interComp);
 		}else{
-			_joiner = new StormThetaJoin(_firstParent, _secondParent, this, allCompNames,
-					_joinPredicate, hierarchyPosition, builder, killer, conf, _interComp);	
+			final StormThetaJoin joiner = new StormThetaJoin(_firstParent, _secondParent, this,
+					allCompNames, _joinPredicate, hierarchyPosition, builder, killer, conf,
+					_interComp);
+			if (_window != null) {
+				_window.check(conf);
+				joiner.setWindow(_window);
+			}
+			_joiner = joiner;
 		}
 	}
 
@@ -220,4 +232,13 @@ public class ThetaJoinStaticComponent implements Component {
 		return this;
 	}
 
+	/*
+	 * The join is over a window of each relation, rather than over the whole
+	 * streams. The expired tuples are evicted from the storage.
+	 */
+	public ThetaJoinStaticComponent setWindow(WindowSemantics window) {
+		_window = window;
+		return this;
+	}
+
 }
\ No newline at end of file
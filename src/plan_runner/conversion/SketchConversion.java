@@ -0,0 +1,44 @@
+package plan_runner.conversion;
+
+import plan_runner.utilities.statistics.Sketch;
+
+/*
+ * A sketch as a value, e.g. of an AggregateSketchOperator;
+ *   its string form is the encoded sketch, so that it can be sent and merged.
+ */
+public class SketchConversion<S extends Sketch<S>> implements TypeConversion<S> {
+	private static final long serialVersionUID = 1L;
+
+	// an empty sketch, with the parameters of the new ones
+	private final S _empty;
+
+	public SketchConversion(S empty) {
+		_empty = empty;
+	}
+
+	@Override
+	public S fromString(String str) {
+		return _empty.decode(str);
+	}
+
+	@Override
+	public double getDistance(S bigger, S smaller) {
+		throw new RuntimeException("Distance is not defined for sketches!");
+	}
+
+	@Override
+	public S getInitialValue() {
+		return _empty.createEmpty();
+	}
+
+	// for printing(debugging) purposes
+	@Override
+	public String toString() {
+		return "SKETCH";
+	}
+
+	@Override
+	public String toString(S obj) {
+		return obj.encode();
+	}
+}
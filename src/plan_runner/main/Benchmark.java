@@ -0,0 +1,297 @@
+package plan_runner.main;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+
+import plan_runner.query_plans.QueryPlan;
+import plan_runner.utilities.MyUtilities;
+import plan_runner.utilities.StormWrapper;
+import plan_runner.utilities.SystemParameters;
+import plan_runner.utilities.statistics.ComponentMetrics;
+import plan_runner.utilities.statistics.Gauge;
+import plan_runner.utilities.statistics.LatencyHistogram;
+import plan_runner.utilities.statistics.MetricsReporter;
+import backtype.storm.Config;
+
+/*
+ * Runs a query plan (any of Main.chooseQueryPlan) on a LocalCluster, and writes a report on its performance.
+ * Usage: Benchmark CONFIG_PATH [KEY=VALUE ...], where KEY=VALUE override the config file, e.g.
+ *   DIP_GENERATE_DATA=true DIP_GENERATOR_SCALE=1 (see TpchGenerator) or CUSTOMER_PAR=4.
+ * Optional config parameters:
+ *   DIP_BENCHMARK_PAR the parallelism of each component (<COMP>_PAR)
+ *   DIP_BENCHMARK_REPORT the path of the report (default: java.io.tmpdir/<CONFIG_FILE_NAME>.benchmark)
+ *   DIP_BENCHMARK_BASELINE the report of an earlier run, to compare against
+ *   DIP_BENCHMARK_TOLERANCE in percents (default: 10)
+ * The tasks run in this JVM, so their metrics (DIP_METRICS mode) are read in-process:
+ *   the report contains tuples/sec, execute time and end-to-end latency (CUSTOM_TIMESTAMP mode) percentiles
+ *   of each component (as well as the histograms it registers, e.g. in DIP_LATENCY_MARKERS mode), the peaks of the gauges (e.g. state_bytes) summed over the tasks of a component,
+ *   and the GC time and the peak heap of the JVM.
+ * The report is in the format of the config files (KEY VALUE per line), so that it can be read
+ *   by SystemParameters.fileToMap. Each metric which is worse than in the baseline by more than
+ *   the tolerance is logged, and the process exits with status 1.
+ */
+public class Benchmark {
+	private static Logger LOG = Logger.getLogger(Benchmark.class);
+
+	private static final double DEFAULT_TOLERANCE = 10;
+	private static final long SAMPLE_PERIOD_MILLIS = 100;
+
+	// higher is better
+	private static boolean isThroughput(String key) {
+		return key.endsWith("_per_sec");
+	}
+
+	// lower is better
+	private static boolean isCost(String key) {
+		return key.contains("_nanos_") || key.contains("latency_ms_") || key.endsWith("_millis")
+				|| key.equals("gc_count") || key.contains("peak_")
+				&& (key.contains("state_") || key.endsWith("_bytes"));
+	}
+
+	public static void main(String[] args) {
+		new Benchmark(args);
+	}
+
+	private final Config _conf;
+	private final String _reportPath;
+
+	private final long _startMillis;
+	private final long _startGcMillis;
+	private final long _startGcCount;
+	private final Timer _sampler = new Timer("benchmark-sampler", true);
+	// component.gauge -> the highest sum over the tasks
+	private final Map<String, Long> _peaks = new HashMap<String, Long>();
+
+	public Benchmark(String[] args) {
+		final String confPath = args[0];
+		_conf = SystemParameters.fileToStormConfig(confPath);
+		for (int i = 1; i < args.length; i++) {
+			final int separator = args[i].indexOf('=');
+			if (separator == -1)
+				throw new RuntimeException("Expected KEY=VALUE instead of " + args[i] + "!");
+			SystemParameters.putInMap(_conf, args[i].substring(0, separator),
+					args[i].substring(separator + 1));
+		}
+		SystemParameters.putInMap(_conf, "DIP_DISTRIBUTED", "false");
+		SystemParameters.putInMap(_conf, "DIP_KILL_AT_THE_END", "true");
+		SystemParameters.putInMap(_conf, "DIP_METRICS", "true");
+
+		final QueryPlan queryPlan = Main.chooseQueryPlan(_conf);
+		if (SystemParameters.isExisting(_conf, "DIP_BENCHMARK_PAR")) {
+			final String parallelism = SystemParameters.getString(_conf, "DIP_BENCHMARK_PAR");
+			for (final String compName : queryPlan.getComponentNames())
+				SystemParameters.putInMap(_conf, compName + "_PAR", parallelism);
+		}
+		if (SystemParameters.isExisting(_conf, "DIP_BENCHMARK_REPORT"))
+			_reportPath = SystemParameters.getString(_conf, "DIP_BENCHMARK_REPORT");
+		else
+			_reportPath = System.getProperty("java.io.tmpdir") + "/"
+					+ MyUtilities.getPartFromEnd(confPath, 0) + ".benchmark";
+
+		MetricsReporter.enableLocalMetrics();
+		StormWrapper.setLocalEndHook(new Runnable() {
+			@Override
+			public void run() {
+				finish();
+			}
+		});
+		for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			pool.resetPeakUsage();
+		_startGcMillis = getGcMillis();
+		_startGcCount = getGcCount();
+		_startMillis = System.currentTimeMillis();
+		_sampler.scheduleAtFixedRate(new TimerTask() {
+			@Override
+			public void run() {
+				sample();
+			}
+		}, SAMPLE_PERIOD_MILLIS, SAMPLE_PERIOD_MILLIS);
+
+		new Main(queryPlan, _conf, confPath);
+	}
+
+	/*
+	 * the metrics which are worse than in the baseline, as comments of the report
+	 */
+	private List<String> compare(Map<String, String> report) {
+		final String baselinePath = SystemParameters.getString(_conf, "DIP_BENCHMARK_BASELINE");
+		double tolerance = DEFAULT_TOLERANCE;
+		if (SystemParameters.isExisting(_conf, "DIP_BENCHMARK_TOLERANCE"))
+			tolerance = SystemParameters.getDouble(_conf, "DIP_BENCHMARK_TOLERANCE");
+		final Map<String, String> baseline = SystemParameters.fileToMap(baselinePath);
+
+		final List<String> regressions = new ArrayList<String>();
+		for (final Map.Entry<String, String> entry : report.entrySet()) {
+			final String key = entry.getKey();
+			if (!baseline.containsKey(key) || !(isThroughput(key) || isCost(key)))
+				continue;
+			final double before = Double.parseDouble(baseline.get(key));
+			final double after = Double.parseDouble(entry.getValue());
+			if (before == 0)
+				continue;
+			// positive if worse
+			double change = (after - before) / before * 100;
+			if (isThroughput(key))
+				change = -change;
+			if (change > tolerance)
+				regressions.add("REGRESSION " + key + " " + baseline.get(key) + " -> "
+						+ entry.getValue() + " (" + Math.round(change) + "% worse)");
+		}
+		return regressions;
+	}
+
+	private void finish() {
+		// the topology killer waits for the results to be dumped
+		final long runningMillis = System.currentTimeMillis() - _startMillis
+				- SystemParameters.LOCAL_SLEEP_BEFORE_KILL_MILLIS;
+		_sampler.cancel();
+		sample();
+
+		final Map<String, String> report = new TreeMap<String, String>();
+		report.put("query", SystemParameters.getString(_conf, "DIP_QUERY_NAME"));
+		report.put("running_millis", String.valueOf(runningMillis));
+		report.put("gc_millis", String.valueOf(getGcMillis() - _startGcMillis));
+		report.put("gc_count", String.valueOf(getGcCount() - _startGcCount));
+		long peakHeap = 0;
+		for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP)
+				peakHeap += pool.getPeakUsage().getUsed();
+		report.put("peak_heap_bytes", String.valueOf(peakHeap));
+
+		final double runningSec = Math.max(runningMillis, 1) / 1000.0;
+		final Map<String, List<ComponentMetrics>> components = groupByComponent();
+		for (final Map.Entry<String, List<ComponentMetrics>> entry : components.entrySet()) {
+			final String prefix = entry.getKey() + ".";
+			long numReceived = 0, numSent = 0;
+			final LatencyHistogram executeNanos = new LatencyHistogram();
+			final LatencyHistogram latencyMillis = new LatencyHistogram();
+			// e.g. of latency markers
+			final Map<String, LatencyHistogram> histograms = new TreeMap<String, LatencyHistogram>();
+			for (final ComponentMetrics metrics : entry.getValue()) {
+				numReceived += metrics.getNumReceived();
+				numSent += metrics.getNumSent();
+				executeNanos.merge(metrics.getExecuteNanos());
+				latencyMillis.merge(metrics.getTupleLatencyMillis());
+				for (final Map.Entry<String, LatencyHistogram> histogram : metrics.getHistograms()
+						.entrySet()) {
+					if (!histograms.containsKey(histogram.getKey()))
+						histograms.put(histogram.getKey(), new LatencyHistogram());
+					histograms.get(histogram.getKey()).merge(histogram.getValue());
+				}
+			}
+			report.put(prefix + "tasks", String.valueOf(entry.getValue().size()));
+			report.put(prefix + "received", String.valueOf(numReceived));
+			report.put(prefix + "sent", String.valueOf(numSent));
+			report.put(prefix + "received_per_sec", String.valueOf((long) (numReceived / runningSec)));
+			report.put(prefix + "sent_per_sec", String.valueOf((long) (numSent / runningSec)));
+			putHistogram(report, prefix + "execute_nanos", executeNanos);
+			if (latencyMillis.getCount() > 0)
+				putHistogram(report, prefix + "latency_ms", latencyMillis);
+			for (final Map.Entry<String, LatencyHistogram> histogram : histograms.entrySet())
+				if (histogram.getValue().getCount() > 0)
+					putHistogram(report, prefix + histogram.getKey(), histogram.getValue());
+		}
+		synchronized (_peaks) {
+			for (final Map.Entry<String, Long> entry : _peaks.entrySet()) {
+				final int separator = entry.getKey().indexOf('.');
+				report.put(entry.getKey().substring(0, separator + 1) + "peak_"
+						+ entry.getKey().substring(separator + 1), String.valueOf(entry.getValue()));
+			}
+		}
+
+		List<String> regressions = new ArrayList<String>();
+		if (SystemParameters.isExisting(_conf, "DIP_BENCHMARK_BASELINE"))
+			regressions = compare(report);
+		writeReport(report, regressions);
+		for (final String regression : regressions)
+			LOG.info(regression);
+		LOG.info("Benchmark report is written to " + _reportPath + " (" + regressions.size()
+				+ " regressions)");
+		if (!regressions.isEmpty())
+			System.exit(1);
+	}
+
+	private long getGcCount() {
+		long result = 0;
+		for (final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			result += Math.max(gc.getCollectionCount(), 0);
+		return result;
+	}
+
+	private long getGcMillis() {
+		long result = 0;
+		for (final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			result += Math.max(gc.getCollectionTime(), 0);
+		return result;
+	}
+
+	private Map<String, List<ComponentMetrics>> groupByComponent() {
+		final Map<String, List<ComponentMetrics>> result = new TreeMap<String, List<ComponentMetrics>>();
+		for (final ComponentMetrics metrics : MetricsReporter.getLocalMetrics()) {
+			List<ComponentMetrics> tasks = result.get(metrics.getComponentID());
+			if (tasks == null) {
+				tasks = new ArrayList<ComponentMetrics>();
+				result.put(metrics.getComponentID(), tasks);
+			}
+			tasks.add(metrics);
+		}
+		return result;
+	}
+
+	private void putHistogram(Map<String, String> report, String name, LatencyHistogram histogram) {
+		report.put(name + "_p50", String.valueOf(histogram.getPercentile(50)));
+		report.put(name + "_p99", String.valueOf(histogram.getPercentile(99)));
+		report.put(name + "_p999", String.valueOf(histogram.getPercentile(99.9)));
+		report.put(name + "_max", String.valueOf(histogram.getMax()));
+	}
+
+	// the gauges of the tasks of a component are summed up
+	private void sample() {
+		final Map<String, Long> sums = new HashMap<String, Long>();
+		for (final ComponentMetrics metrics : MetricsReporter.getLocalMetrics())
+			for (final Map.Entry<String, Gauge> entry : metrics.getGauges().entrySet()) {
+				final String key = metrics.getComponentID() + "." + entry.getKey();
+				final Long sum = sums.get(key);
+				sums.put(key, (sum == null ? 0 : sum) + entry.getValue().getValue());
+			}
+		synchronized (_peaks) {
+			for (final Map.Entry<String, Long> entry : sums.entrySet()) {
+				final Long peak = _peaks.get(entry.getKey());
+				if (peak == null || entry.getValue() > peak)
+					_peaks.put(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	private void writeReport(Map<String, String> report, List<String> regressions) {
+		PrintWriter writer = null;
+		try {
+			writer = new PrintWriter(new FileWriter(_reportPath));
+			for (final Map.Entry<String, String> entry : report.entrySet())
+				writer.println(entry.getKey() + " " + entry.getValue());
+			for (final String regression : regressions)
+				writer.println("# " + regression);
+		} catch (final IOException ex) {
+			LOG.info("Cannot write the benchmark report to " + _reportPath + ": "
+					+ MyUtilities.getStackTrace(ex));
+		} finally {
+			if (writer != null)
+				writer.close();
+		}
+	}
+
+}
@@ -7,6 +7,7 @@ import java.util.Map;
 import org.apache.log4j.Logger;
 
 import plan_runner.components.Component;
+import plan_runner.components.DataSourceComponent;
 import plan_runner.components.ThetaJoinDynamicComponentAdvisedEpochs;
 import plan_runner.query_plans.HyracksPlan;
 import plan_runner.query_plans.HyracksPreAggPlan;
@@ -36,10 +37,12 @@ import plan_runner.query_plans.debug.TPCH3L1Plan;
 import plan_runner.query_plans.debug.TPCH3L23Plan;
 import plan_runner.query_plans.debug.TPCH3L2Plan;
 import plan_runner.query_plans.debug.TPCH5PlanAvg;
+import plan_runner.storage.CheckpointStore;
 import plan_runner.storm_components.StormComponent;
 import plan_runner.storm_components.StormJoin;
 import plan_runner.storm_components.synchronization.TopologyKiller;
 import plan_runner.utilities.MyUtilities;
+import plan_runner.utilities.SourceSchedule;
 import plan_runner.utilities.StormWrapper;
 import plan_runner.utilities.SystemParameters;
 import backtype.storm.Config;
@@ -152,6 +155,12 @@ public class Main {
 						StormComponent.INTERMEDIATE);
 		}
 
+		// the spouts are serialized only when the topology is created
+		final SourceSchedule sourceSchedule = SourceSchedule.create(queryPlan, conf);
+		if (sourceSchedule != null)
+			for (final String name : sourceSchedule.getNames())
+				((DataSourceComponent) qp.getComponent(name)).setSourceSchedule(sourceSchedule);
+
 		// printing infoID information and returning the result
 		// printInfoID(killer, queryPlan); commented out because IDs are now
 		// desriptive names
@@ -195,6 +204,8 @@ public class Main {
 
 		addVariablesToMap(conf, confPath);
 		putBatchSizes(queryPlan, conf);
+		if (MyUtilities.isCheckpointMode(conf))
+			CheckpointStore.prepareRun(conf, queryPlan.getComponentNames());
 		final TopologyBuilder builder = createTopology(queryPlan, conf);
 		StormWrapper.submitTopology(conf, builder);
 	}
@@ -206,6 +217,8 @@ public class Main {
 
 		addVariablesToMap(conf, confPath);
 		putBatchSizes(queryPlan, conf);
+		if (MyUtilities.isCheckpointMode(conf))
+			CheckpointStore.prepareRun(conf, queryPlan.getComponentNames());
 		final TopologyBuilder builder = createTopology(queryPlan, conf);
 		StormWrapper.submitTopology(conf, builder);
 	}
@@ -14,6 +14,7 @@ import plan_runner.expressions.ValueExpression;
 import plan_runner.storage.AggregationStorage;
 import plan_runner.storage.BasicStore;
 import plan_runner.utilities.MyUtilities;
+import plan_runner.utilities.statistics.OnlineEstimator;
 import plan_runner.visitors.OperatorVisitor;
 
 public class AggregateAvgOperator implements AggregateOperator<SumCount> {
@@ -34,6 +35,8 @@ public class AggregateAvgOperator implements AggregateOperator<SumCount> {
 	private final SumCountConversion _wrapper = new SumCountConversion();
 	private final ValueExpression _ve;
 	private final AggregationStorage<SumCount> _storage;
+	// for OnlineAgg mode
+	private OnlineEstimator _estimator;
 
 	private final Map _map;
 
@@ -41,6 +44,9 @@ public class AggregateAvgOperator implements AggregateOperator<SumCount> {
 		_ve = ve;
 		_map = map;
 		_storage = new AggregationStorage<SumCount>(this, _wrapper, _map, true);
+		// merged averages (SumCount) are not estimated
+		if (MyUtilities.isOnlineAggMode(map) && !(ve.getType() instanceof SumCountConversion))
+			_estimator = new OnlineEstimator(OnlineEstimator.AVG);
 	}
 
 	@Override
@@ -55,6 +61,16 @@ public class AggregateAvgOperator implements AggregateOperator<SumCount> {
 	@Override
 	public void clearStorage() {
 		_storage.reset();
+		if (_estimator != null)
+			_estimator.clear();
+	}
+
+	// propagate further the affected tupleHash-tupleValue pair
+	private List<String> createAffectedTuple(String tupleHash, SumCount value) {
+		final List<String> affectedTuple = new ArrayList<String>();
+		affectedTuple.add(tupleHash);
+		affectedTuple.add(_wrapper.toString(value));
+		return affectedTuple;
 	}
 
 	@Override
@@ -75,6 +91,10 @@ public class AggregateAvgOperator implements AggregateOperator<SumCount> {
 		return result;
 	}
 
+	public OnlineEstimator getEstimator() {
+		return _estimator;
+	}
+
 	@Override
 	public List<Integer> getGroupByColumns() {
 		return _groupByColumns;
@@ -113,6 +133,14 @@ public class AggregateAvgOperator implements AggregateOperator<SumCount> {
 		return _wrapper;
 	}
 
+	private String getTupleHash(List<String> tuple) {
+		if (_groupByType == GB_PROJECTION)
+			return MyUtilities.createHashString(tuple, _groupByColumns,
+					_groupByProjection.getExpressions(), _map);
+		else
+			return MyUtilities.createHashString(tuple, _groupByColumns, _map);
+	}
+
 	@Override
 	public boolean hasGroupBy() {
 		return _groupByType != GB_UNSET;
@@ -137,21 +165,26 @@ public class AggregateAvgOperator implements AggregateOperator<SumCount> {
 			if (tuple == null)
 				return null;
 		}
-		String tupleHash;
-		if (_groupByType == GB_PROJECTION)
-			tupleHash = MyUtilities.createHashString(tuple, _groupByColumns,
-					_groupByProjection.getExpressions(), _map);
-		else
-			tupleHash = MyUtilities.createHashString(tuple, _groupByColumns, _map);
+		final String tupleHash = getTupleHash(tuple);
 		final SumCount sumCount = _storage.update(tuple, tupleHash);
-		final String strValue = _wrapper.toString(sumCount);
-
-		// propagate further the affected tupleHash-tupleValue pair
-		final List<String> affectedTuple = new ArrayList<String>();
-		affectedTuple.add(tupleHash);
-		affectedTuple.add(strValue);
+		if (_estimator != null)
+			_estimator.add(tupleHash, ((NumericConversion) _ve.getType()).toDouble(_ve.eval(tuple)));
+		return createAffectedTuple(tupleHash, sumCount);
+	}
 
-		return affectedTuple;
+	@Override
+	public List<String> processDeletion(List<String> tuple) {
+		if (_distinct != null)
+			throw new RuntimeException("Deletions are not supported for aggregations with distinct!");
+		_numTuplesProcessed++;
+		final String tupleHash = getTupleHash(tuple);
+		final SumCount sumCount = _storage.retract(tuple, tupleHash);
+		if (sumCount == null)
+			// a group without tuples
+			return null;
+		if (_estimator != null)
+			_estimator.remove(tupleHash, ((NumericConversion) _ve.getType()).toDouble(_ve.eval(tuple)));
+		return createAffectedTuple(tupleHash, sumCount);
 	}
 
 	// actual operator implementation
@@ -186,6 +219,28 @@ public class AggregateAvgOperator implements AggregateOperator<SumCount> {
 		return new SumCount(sumNew, countNew);
 	}
 
+	@Override
+	public SumCount runInverseAggregateFunction(SumCount value, List<String> tuple) {
+		Double sumDelta;
+		Long countDelta;
+
+		final TypeConversion veType = _ve.getType();
+		if (veType instanceof SumCountConversion) {
+			final SumCount sc = (SumCount) _ve.eval(tuple);
+			sumDelta = sc.getSum();
+			countDelta = sc.getCount();
+		} else {
+			final NumericConversion nc = (NumericConversion) veType;
+			sumDelta = nc.toDouble(_ve.eval(tuple));
+			countDelta = 1L;
+		}
+
+		final Double sumNew = value.getSum() - sumDelta;
+		final Long countNew = value.getCount() - countDelta;
+
+		return new SumCount(sumNew, countNew);
+	}
+
 	@Override
 	public AggregateAvgOperator setDistinct(DistinctOperator distinct) {
 		_distinct = distinct;
@@ -14,6 +14,7 @@ import plan_runner.expressions.ValueExpression;
 import plan_runner.storage.AggregationStorage;
 import plan_runner.storage.BasicStore;
 import plan_runner.utilities.MyUtilities;
+import plan_runner.utilities.statistics.OnlineEstimator;
 import plan_runner.visitors.OperatorVisitor;
 
 public class AggregateCountOperator implements AggregateOperator<Long> {
@@ -33,6 +34,8 @@ public class AggregateCountOperator implements AggregateOperator<Long> {
 
 	private final NumericConversion<Long> _wrapper = new LongConversion();
 	private final AggregationStorage<Long> _storage;
+	// for OnlineAgg mode
+	private OnlineEstimator _estimator;
 
 	private final Map _map;
 
@@ -40,6 +43,8 @@ public class AggregateCountOperator implements AggregateOperator<Long> {
 		_map = map;
 
 		_storage = new AggregationStorage<Long>(this, _wrapper, _map, true);
+		if (MyUtilities.isOnlineAggMode(map))
+			_estimator = new OnlineEstimator(OnlineEstimator.COUNT);
 	}
 
 	@Override
@@ -54,6 +59,16 @@ public class AggregateCountOperator implements AggregateOperator<Long> {
 	@Override
 	public void clearStorage() {
 		_storage.reset();
+		if (_estimator != null)
+			_estimator.clear();
+	}
+
+	// propagate further the affected tupleHash-tupleValue pair
+	private List<String> createAffectedTuple(String tupleHash, Long value) {
+		final List<String> affectedTuple = new ArrayList<String>();
+		affectedTuple.add(tupleHash);
+		affectedTuple.add(_wrapper.toString(value));
+		return affectedTuple;
 	}
 
 	// for this method it is essential that HASH_DELIMITER, which is used in
@@ -75,6 +90,10 @@ public class AggregateCountOperator implements AggregateOperator<Long> {
 		return new ArrayList<ValueExpression>();
 	}
 
+	public OnlineEstimator getEstimator() {
+		return _estimator;
+	}
+
 	@Override
 	public List<Integer> getGroupByColumns() {
 		return _groupByColumns;
@@ -113,6 +132,14 @@ public class AggregateCountOperator implements AggregateOperator<Long> {
 		return _wrapper;
 	}
 
+	private String getTupleHash(List<String> tuple) {
+		if (_groupByType == GB_PROJECTION)
+			return MyUtilities.createHashString(tuple, _groupByColumns,
+					_groupByProjection.getExpressions(), _map);
+		else
+			return MyUtilities.createHashString(tuple, _groupByColumns, _map);
+	}
+
 	@Override
 	public boolean hasGroupBy() {
 		return _groupByType != GB_UNSET;
@@ -137,21 +164,26 @@ public class AggregateCountOperator implements AggregateOperator<Long> {
 			if (tuple == null)
 				return null;
 		}
-		String tupleHash;
-		if (_groupByType == GB_PROJECTION)
-			tupleHash = MyUtilities.createHashString(tuple, _groupByColumns,
-					_groupByProjection.getExpressions(), _map);
-		else
-			tupleHash = MyUtilities.createHashString(tuple, _groupByColumns, _map);
+		final String tupleHash = getTupleHash(tuple);
 		final Long value = _storage.update(tuple, tupleHash);
-		final String strValue = _wrapper.toString(value);
-
-		// propagate further the affected tupleHash-tupleValue pair
-		final List<String> affectedTuple = new ArrayList<String>();
-		affectedTuple.add(tupleHash);
-		affectedTuple.add(strValue);
+		if (_estimator != null)
+			_estimator.add(tupleHash, 1);
+		return createAffectedTuple(tupleHash, value);
+	}
 
-		return affectedTuple;
+	@Override
+	public List<String> processDeletion(List<String> tuple) {
+		if (_distinct != null)
+			throw new RuntimeException("Deletions are not supported for aggregations with distinct!");
+		_numTuplesProcessed++;
+		final String tupleHash = getTupleHash(tuple);
+		final Long value = _storage.retract(tuple, tupleHash);
+		if (value == null)
+			// a group without tuples
+			return null;
+		if (_estimator != null)
+			_estimator.remove(tupleHash, 1);
+		return createAffectedTuple(tupleHash, value);
 	}
 
 	// actual operator implementation
@@ -165,6 +197,11 @@ public class AggregateCountOperator implements AggregateOperator<Long> {
 		return value1 + value2;
 	}
 
+	@Override
+	public Long runInverseAggregateFunction(Long value, List<String> tuple) {
+		return value - 1;
+	}
+
 	@Override
 	public AggregateCountOperator setDistinct(DistinctOperator distinct) {
 		_distinct = distinct;
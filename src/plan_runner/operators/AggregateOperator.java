@@ -29,6 +29,15 @@ public interface AggregateOperator<T> extends Operator {
 
 	public T runAggregateFunction(T value1, T value2);
 
+	// the inverse of runAggregateFunction(value, tuple), for a deleted tuple
+	public T runInverseAggregateFunction(T value, List<String> tuple);
+
+	// the same as process, but for a deleted tuple (see
+	// MyUtilities.isDeletion): its contribution is removed from its group,
+	// and the new value of the group is returned (null if the group has no
+	// tuples, see AggregationStorage.retract)
+	public List<String> processDeletion(List<String> tuple);
+
 	// SUM(DISTINCT ValueExpression), COUNT(DISTINCT ValueExpression): a single
 	// ValueExpression by SQL standard
 	// MySQL supports multiple ValueExpression. Inside aggregation(SUM, COUNT),
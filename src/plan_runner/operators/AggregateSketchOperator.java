@@ -0,0 +1,321 @@
+package plan_runner.operators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import plan_runner.conversion.SketchConversion;
+import plan_runner.conversion.TypeConversion;
+import plan_runner.expressions.ColumnReference;
+import plan_runner.expressions.ValueExpression;
+import plan_runner.storage.AggregationStorage;
+import plan_runner.storage.BasicStore;
+import plan_runner.utilities.MyUtilities;
+import plan_runner.utilities.SystemParameters;
+import plan_runner.utilities.statistics.CountMinSketch;
+import plan_runner.utilities.statistics.HyperLogLog;
+import plan_runner.utilities.statistics.QuantileSketch;
+import plan_runner.utilities.statistics.Sketch;
+import plan_runner.visitors.OperatorVisitor;
+
+/*
+ * Approximate aggregation at a fixed memory per group: the value of a group is a Sketch
+ *   of the values of its tuples, e.g. HyperLogLog for COUNT(DISTINCT), rather than all of them.
+ * The sketches are mergeable, so as the partial results of SUM and COUNT,
+ *   the partial sketches of different tasks are merged at the end (LocalMergeResults),
+ *   or by a downstream aggregation (see createMerging), which receives the encoded sketches
+ *   in the aggregated batch output mode (getContent).
+ * Nothing is sent per tuple, since sending the whole sketch for each tuple would be too expensive.
+ * printContent shows the estimates.
+ */
+public class AggregateSketchOperator<S extends Sketch<S>> implements AggregateOperator<S> {
+	private static final long serialVersionUID = 1L;
+
+	/*
+	 * COUNT(DISTINCT veList); DIP_HLL_PRECISION sets the size (2^precision
+	 * bytes per group)
+	 */
+	public static AggregateSketchOperator<HyperLogLog> countDistinct(List<ValueExpression> veList,
+			Map map) {
+		int precision = HyperLogLog.DEFAULT_PRECISION;
+		if (SystemParameters.isExisting(map, "DIP_HLL_PRECISION"))
+			precision = SystemParameters.getInt(map, "DIP_HLL_PRECISION");
+		return new AggregateSketchOperator<HyperLogLog>(veList, new HyperLogLog(precision), map);
+	}
+
+	/*
+	 * the most frequent values of ve; DIP_COUNTMIN_WIDTH, DIP_COUNTMIN_DEPTH
+	 * and DIP_COUNTMIN_TOP set the size and the number of values
+	 */
+	public static AggregateSketchOperator<CountMinSketch> frequent(ValueExpression ve, Map map) {
+		int width = CountMinSketch.DEFAULT_WIDTH;
+		if (SystemParameters.isExisting(map, "DIP_COUNTMIN_WIDTH"))
+			width = SystemParameters.getInt(map, "DIP_COUNTMIN_WIDTH");
+		int depth = CountMinSketch.DEFAULT_DEPTH;
+		if (SystemParameters.isExisting(map, "DIP_COUNTMIN_DEPTH"))
+			depth = SystemParameters.getInt(map, "DIP_COUNTMIN_DEPTH");
+		int numTop = CountMinSketch.DEFAULT_NUM_TOP;
+		if (SystemParameters.isExisting(map, "DIP_COUNTMIN_TOP"))
+			numTop = SystemParameters.getInt(map, "DIP_COUNTMIN_TOP");
+		return new AggregateSketchOperator<CountMinSketch>(Arrays.asList(ve), new CountMinSketch(
+				width, depth, numTop), map);
+	}
+
+	/*
+	 * the quantile of ve (e.g. 0.5 for the median); DIP_QUANTILE_SKETCH_SIZE
+	 * sets the size
+	 */
+	public static AggregateSketchOperator<QuantileSketch> quantile(ValueExpression ve,
+			double quantile, Map map) {
+		int size = QuantileSketch.DEFAULT_SIZE;
+		if (SystemParameters.isExisting(map, "DIP_QUANTILE_SKETCH_SIZE"))
+			size = SystemParameters.getInt(map, "DIP_QUANTILE_SKETCH_SIZE");
+		return new AggregateSketchOperator<QuantileSketch>(Arrays.asList(ve), new QuantileSketch(
+				quantile, size), map);
+	}
+
+	// the GroupBy type
+	private static final int GB_UNSET = -1;
+	private static final int GB_COLUMNS = 0;
+	private static final int GB_PROJECTION = 1;
+
+	private int _groupByType = GB_UNSET;
+	private List<Integer> _groupByColumns = new ArrayList<Integer>();
+	private ProjectOperator _groupByProjection;
+	private int _numTuplesProcessed = 0;
+
+	private final SketchConversion<S> _wrapper;
+	private final List<ValueExpression> _veList;
+	// the input values are sketches, rather than values to be added
+	private final boolean _isMerging;
+	private final AggregationStorage<S> _storage;
+
+	private final Map _map;
+
+	/*
+	 * empty is an empty sketch with the parameters of the sketch of each group
+	 */
+	public AggregateSketchOperator(List<ValueExpression> veList, S empty, Map map) {
+		_wrapper = new SketchConversion<S>(empty);
+		_veList = veList;
+		_isMerging = veList.size() == 1 && veList.get(0).getType() instanceof SketchConversion;
+		_map = map;
+		_storage = new AggregationStorage<S>(this, _wrapper, _map, true);
+	}
+
+	@Override
+	public void accept(OperatorVisitor ov) {
+		ov.visit(this);
+	}
+
+	private boolean alreadySetOther(int GB_COLUMNS) {
+		return (_groupByType != GB_COLUMNS && _groupByType != GB_UNSET);
+	}
+
+	@Override
+	public void clearStorage() {
+		_storage.reset();
+	}
+
+	/*
+	 * An aggregation which merges the sketches of this one, from the tuples
+	 * (GroupBy columns, sketch) of getContent
+	 */
+	public AggregateSketchOperator<S> createMerging(Map map) {
+		int numGroupByColumns = 0;
+		if (_groupByType == GB_COLUMNS)
+			numGroupByColumns = _groupByColumns.size();
+		else if (_groupByType == GB_PROJECTION)
+			numGroupByColumns = _groupByProjection.getExpressions().size();
+
+		final ValueExpression sketchColumn = new ColumnReference(_wrapper, numGroupByColumns);
+		final AggregateSketchOperator<S> result = new AggregateSketchOperator<S>(
+				new ArrayList<ValueExpression>(Arrays.asList(sketchColumn)),
+				_wrapper.getInitialValue(), map);
+		if (hasGroupBy()) {
+			final List<Integer> groupByColumns = new ArrayList<Integer>();
+			for (int i = 0; i < numGroupByColumns; i++)
+				groupByColumns.add(i);
+			result.setGroupByColumns(groupByColumns);
+		}
+		return result;
+	}
+
+	/*
+	 * the encoded sketches, to be merged downstream: each line is a tuple of
+	 * the GroupBy columns and the sketch (see createMerging)
+	 */
+	@Override
+	public List<String> getContent() {
+		final String delimiter = MyUtilities.getColumnDelimiter(_map);
+		final List<String> result = new ArrayList<String>();
+		for (final Object group : _storage.getGroups()) {
+			final String sketch = _wrapper.toString(_storage.access(group).get(0));
+			result.add(hasGroupBy() ? group + delimiter + sketch : sketch);
+		}
+		return result.isEmpty() ? null : result;
+	}
+
+	@Override
+	public DistinctOperator getDistinct() {
+		return null;
+	}
+
+	@Override
+	public List<ValueExpression> getExpressions() {
+		return _veList;
+	}
+
+	@Override
+	public List<Integer> getGroupByColumns() {
+		return _groupByColumns;
+	}
+
+	@Override
+	public ProjectOperator getGroupByProjection() {
+		return _groupByProjection;
+	}
+
+	private String getGroupByStr() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("(");
+		for (int i = 0; i < _groupByColumns.size(); i++) {
+			sb.append(_groupByColumns.get(i));
+			if (i == _groupByColumns.size() - 1)
+				sb.append(")");
+			else
+				sb.append(", ");
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public int getNumTuplesProcessed() {
+		return _numTuplesProcessed;
+	}
+
+	@Override
+	public BasicStore getStorage() {
+		return _storage;
+	}
+
+	@Override
+	public TypeConversion getType() {
+		return _wrapper;
+	}
+
+	private String getTupleHash(List<String> tuple) {
+		if (_groupByType == GB_PROJECTION)
+			return MyUtilities.createHashString(tuple, _groupByColumns,
+					_groupByProjection.getExpressions(), _map);
+		else
+			return MyUtilities.createHashString(tuple, _groupByColumns, _map);
+	}
+
+	@Override
+	public boolean hasGroupBy() {
+		return _groupByType != GB_UNSET;
+	}
+
+	@Override
+	public boolean isBlocking() {
+		return true;
+	}
+
+	// the estimates
+	@Override
+	public String printContent() {
+		final StringBuilder sb = new StringBuilder();
+		for (final Object group : _storage.getGroups()) {
+			final S sketch = _storage.access(group).get(0);
+			if (hasGroupBy())
+				sb.append(group).append(" = ");
+			sb.append(sketch.getEstimate()).append("\n");
+		}
+		return sb.length() == 0 ? null : sb.toString();
+	}
+
+	// from Operator
+	@Override
+	public List<String> process(List<String> tuple) {
+		_numTuplesProcessed++;
+		final String tupleHash = getTupleHash(tuple);
+		_storage.update(tuple, tupleHash);
+		return null;
+	}
+
+	@Override
+	public List<String> processDeletion(List<String> tuple) {
+		throw new RuntimeException("Deletions are not supported for approximate aggregations!");
+	}
+
+	// actual operator implementation
+	@Override
+	public S runAggregateFunction(S value, List<String> tuple) {
+		if (_isMerging)
+			// not eval, sketches are not Comparable
+			value.merge(_wrapper.fromString(_veList.get(0).evalString(tuple)));
+		else if (_veList.size() == 1)
+			value.add(_veList.get(0).eval(tuple));
+		else
+			value.add(MyUtilities.createHashString(tuple, null, _veList, _map));
+		return value;
+	}
+
+	@Override
+	public S runAggregateFunction(S value1, S value2) {
+		value1.merge(value2);
+		return value1;
+	}
+
+	@Override
+	public S runInverseAggregateFunction(S value, List<String> tuple) {
+		throw new RuntimeException("Deletions are not supported for approximate aggregations!");
+	}
+
+	@Override
+	public AggregateSketchOperator<S> setDistinct(DistinctOperator distinct) {
+		throw new RuntimeException("Distinct is not supported for approximate aggregations!");
+	}
+
+	// from AgregateOperator
+	@Override
+	public AggregateSketchOperator<S> setGroupByColumns(List<Integer> groupByColumns) {
+		if (!alreadySetOther(GB_COLUMNS)) {
+			_groupByType = GB_COLUMNS;
+			_groupByColumns = groupByColumns;
+			_storage.setSingleEntry(false);
+			return this;
+		} else
+			throw new RuntimeException("Aggragation already has groupBy set!");
+	}
+
+	@Override
+	public AggregateSketchOperator<S> setGroupByProjection(ProjectOperator groupByProjection) {
+		if (!alreadySetOther(GB_PROJECTION)) {
+			_groupByType = GB_PROJECTION;
+			_groupByProjection = groupByProjection;
+			_storage.setSingleEntry(false);
+			return this;
+		} else
+			throw new RuntimeException("Aggragation already has groupBy set!");
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("AggregateSketchOperator with ");
+		sb.append(_wrapper.getInitialValue().getClass().getSimpleName());
+		sb.append(" over ").append(_veList);
+		if (_groupByColumns.isEmpty() && _groupByProjection == null)
+			sb.append("\n  No groupBy!");
+		else if (!_groupByColumns.isEmpty())
+			sb.append("\n  GroupByColumns are ").append(getGroupByStr()).append(".");
+		else if (_groupByProjection != null)
+			sb.append("\n  GroupByProjection is ").append(_groupByProjection.toString())
+					.append(".");
+		return sb.toString();
+	}
+
+}
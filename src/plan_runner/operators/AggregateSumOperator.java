@@ -10,11 +10,13 @@ import org.apache.log4j.Logger;
 import plan_runner.conversion.NumericConversion;
 import plan_runner.conversion.TypeConversion;
 import plan_runner.expressions.Addition;
+import plan_runner.expressions.Subtraction;
 import plan_runner.expressions.ValueExpression;
 import plan_runner.expressions.ValueSpecification;
 import plan_runner.storage.AggregationStorage;
 import plan_runner.storage.BasicStore;
 import plan_runner.utilities.MyUtilities;
+import plan_runner.utilities.statistics.OnlineEstimator;
 import plan_runner.visitors.OperatorVisitor;
 
 public class AggregateSumOperator<T extends Number & Comparable<T>> implements AggregateOperator<T> {
@@ -35,6 +37,8 @@ public class AggregateSumOperator<T extends Number & Comparable<T>> implements A
 	private final NumericConversion _wrapper;
 	private final ValueExpression<T> _ve;
 	private final AggregationStorage<T> _storage;
+	// for OnlineAgg mode
+	private OnlineEstimator _estimator;
 
 	private final Map _map;
 
@@ -43,6 +47,8 @@ public class AggregateSumOperator<T extends Number & Comparable<T>> implements A
 		_ve = ve;
 		_map = map;
 		_storage = new AggregationStorage<T>(this, _wrapper, _map, true);
+		if (MyUtilities.isOnlineAggMode(map))
+			_estimator = new OnlineEstimator(OnlineEstimator.SUM);
 	}
 
 	@Override
@@ -57,6 +63,16 @@ public class AggregateSumOperator<T extends Number & Comparable<T>> implements A
 	@Override
 	public void clearStorage() {
 		_storage.reset();
+		if (_estimator != null)
+			_estimator.clear();
+	}
+
+	// propagate further the affected tupleHash-tupleValue pair
+	private List<String> createAffectedTuple(String tupleHash, T value) {
+		final List<String> affectedTuple = new ArrayList<String>();
+		affectedTuple.add(tupleHash);
+		affectedTuple.add(_wrapper.toString(value));
+		return affectedTuple;
 	}
 
 	// for this method it is essential that HASH_DELIMITER, which is used in
@@ -80,6 +96,10 @@ public class AggregateSumOperator<T extends Number & Comparable<T>> implements A
 		return result;
 	}
 
+	public OnlineEstimator getEstimator() {
+		return _estimator;
+	}
+
 	@Override
 	public List<Integer> getGroupByColumns() {
 		return _groupByColumns;
@@ -118,6 +138,14 @@ public class AggregateSumOperator<T extends Number & Comparable<T>> implements A
 		return _wrapper;
 	}
 
+	private String getTupleHash(List<String> tuple) {
+		if (_groupByType == GB_PROJECTION)
+			return MyUtilities.createHashString(tuple, _groupByColumns,
+					_groupByProjection.getExpressions(), _map);
+		else
+			return MyUtilities.createHashString(tuple, _groupByColumns, _map);
+	}
+
 	@Override
 	public boolean hasGroupBy() {
 		return _groupByType != GB_UNSET;
@@ -142,21 +170,26 @@ public class AggregateSumOperator<T extends Number & Comparable<T>> implements A
 			if (tuple == null)
 				return null;
 		}
-		String tupleHash;
-		if (_groupByType == GB_PROJECTION)
-			tupleHash = MyUtilities.createHashString(tuple, _groupByColumns,
-					_groupByProjection.getExpressions(), _map);
-		else
-			tupleHash = MyUtilities.createHashString(tuple, _groupByColumns, _map);
+		final String tupleHash = getTupleHash(tuple);
 		final T value = _storage.update(tuple, tupleHash);
-		final String strValue = _wrapper.toString(value);
-
-		// propagate further the affected tupleHash-tupleValue pair
-		final List<String> affectedTuple = new ArrayList<String>();
-		affectedTuple.add(tupleHash);
-		affectedTuple.add(strValue);
+		if (_estimator != null)
+			_estimator.add(tupleHash, _wrapper.toDouble(_ve.eval(tuple)));
+		return createAffectedTuple(tupleHash, value);
+	}
 
-		return affectedTuple;
+	@Override
+	public List<String> processDeletion(List<String> tuple) {
+		if (_distinct != null)
+			throw new RuntimeException("Deletions are not supported for aggregations with distinct!");
+		_numTuplesProcessed++;
+		final String tupleHash = getTupleHash(tuple);
+		final T value = _storage.retract(tuple, tupleHash);
+		if (value == null)
+			// a group without tuples
+			return null;
+		if (_estimator != null)
+			_estimator.remove(tupleHash, _wrapper.toDouble(_ve.eval(tuple)));
+		return createAffectedTuple(tupleHash, value);
 	}
 
 	// actual operator implementation
@@ -175,6 +208,13 @@ public class AggregateSumOperator<T extends Number & Comparable<T>> implements A
 		return result.eval(null);
 	}
 
+	@Override
+	public T runInverseAggregateFunction(T value, List<String> tuple) {
+		final ValueExpression<T> base = new ValueSpecification<T>(_wrapper, value);
+		final Subtraction<T> result = new Subtraction<T>(base, _ve);
+		return result.eval(tuple);
+	}
+
 	@Override
 	public AggregateSumOperator setDistinct(DistinctOperator distinct) {
 		_distinct = distinct;
@@ -3,6 +3,8 @@ package plan_runner.operators;
 import java.util.ArrayList;
 import java.util.List;
 
+import plan_runner.utilities.MyUtilities;
+import plan_runner.utilities.statistics.ChainOperatorProfile;
 import plan_runner.visitors.OperatorVisitor;
 
 public class ChainOperator implements Operator {
@@ -13,6 +15,11 @@ public class ChainOperator implements Operator {
 	private static final long serialVersionUID = 1L;
 	private List<Operator> _operators = new ArrayList<Operator>();
 
+	// non-null only in DIP_PROFILE_OPERATORS mode
+	private ChainOperatorProfile _profile;
+	// DIP_DELETIONS mode, see MyUtilities.isDeletion
+	private boolean _isDeletionMode;
+
 	// we can creat an empty chainOperator and later fill it in
 	public ChainOperator() {
 
@@ -92,6 +99,10 @@ public class ChainOperator implements Operator {
 		return _operators;
 	}
 
+	public ChainOperatorProfile getProfile() {
+		return _profile;
+	}
+
 	// ******************************************************
 
 	/*
@@ -141,6 +152,11 @@ public class ChainOperator implements Operator {
 	 */
 	@Override
 	public List<String> process(List<String> tuple) {
+		if (_isDeletionMode && MyUtilities.isDeletion(tuple))
+			return processDeletion(tuple);
+		if (_profile != null)
+			return profiledProcess(tuple);
+
 		List<String> result = tuple;
 
 		for (final Operator operator : _operators) {
@@ -151,6 +167,66 @@ public class ChainOperator implements Operator {
 		return result;
 	}
 
+	/*
+	 * The same as process, for the chains with time-based windows: they need
+	 * the timestamp of the tuple
+	 */
+	public List<String> process(List<String> tuple, long timestamp) {
+		for (final Operator operator : _operators)
+			if (operator instanceof WindowAggregateOperator)
+				((WindowAggregateOperator) operator).setTimestamp(timestamp);
+		return process(tuple);
+	}
+
+	/*
+	 * A deleted tuple passes the selections and projections as any other tuple,
+	 * and stays deleted at the output. An aggregation removes it from its
+	 * group, and the output is the new value of the group, as for an inserted
+	 * tuple (the previous value is replaced).
+	 */
+	private List<String> processDeletion(List<String> tuple) {
+		List<String> result = MyUtilities.fromDeletion(tuple);
+		boolean isDeletion = true;
+
+		for (final Operator operator : _operators) {
+			if (!isDeletion)
+				result = operator.process(result);
+			else if (operator instanceof AggregateOperator) {
+				result = ((AggregateOperator) operator).processDeletion(result);
+				isDeletion = false;
+			} else if (operator instanceof DistinctOperator)
+				throw new RuntimeException("Deletions are not supported for DistinctOperator!");
+			else
+				result = operator.process(result);
+			if (result == null)
+				return null;
+		}
+		return isDeletion ? MyUtilities.toDeletion(result) : result;
+	}
+
+	/*
+	 * The same as process, but counts tuples for each operator, and measures
+	 * the time spent in each operator for a sample of tuples. Operators are
+	 * not wrapped, because the rest of the code checks their types (e.g.
+	 * getLastOperator() instanceof AggregateOperator).
+	 */
+	private List<String> profiledProcess(List<String> tuple) {
+		final boolean isSampled = _profile.startTuple();
+		List<String> result = tuple;
+
+		for (int i = 0; i < _operators.size(); i++) {
+			_profile.countInput(i);
+			final long startNanos = isSampled ? System.nanoTime() : 0;
+			result = _operators.get(i).process(result);
+			if (isSampled)
+				_profile.addSampledNanos(i, System.nanoTime() - startNanos);
+			if (result == null)
+				break;
+			_profile.countOutput(i);
+		}
+		return result;
+	}
+
 	/*
 	 * Delete the previously added operators and add new list of operators
 	 */
@@ -162,6 +238,20 @@ public class ChainOperator implements Operator {
 		return _operators.size();
 	}
 
+	/*
+	 * invoked once the operators are known, i.e. when a Storm component starts
+	 */
+	public void startProfiling(int samplingFreq) {
+		_profile = new ChainOperatorProfile(_operators.size(), samplingFreq);
+	}
+
+	/*
+	 * invoked when a Storm component starts, in DIP_DELETIONS mode
+	 */
+	public void startDeletions() {
+		_isDeletionMode = true;
+	}
+
 	@Override
 	public String toString() {
 		final StringBuilder sb = new StringBuilder();
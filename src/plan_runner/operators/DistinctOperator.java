@@ -1,42 +1,39 @@
 package plan_runner.operators;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 import plan_runner.expressions.ValueExpression;
-import plan_runner.storage.BasicStore;
-import plan_runner.storage.ValueStore;
-import plan_runner.utilities.MyUtilities;
+import plan_runner.storage.FingerprintSet;
 import plan_runner.visitors.OperatorVisitor;
 
+/*
+ * The projected tuples seen so far are kept as fingerprints in a FingerprintSet,
+ *   which is hashed directly from the projected columns (no tuple string is built)
+ *   and spills to disk beyond DIP_DISTINCT_MEMORY_MB (STORAGE_MEMORY_SIZE_MB if not set).
+ */
 public class DistinctOperator implements Operator {
 
 	private final Map _conf;
 	private int _numTuplesProcessed;
 	private final ProjectOperator _projection;
 	private static final long serialVersionUID = 1L;
-	private final BasicStore<ArrayList<String>> _storage;
-	/*
-	 * Dummy value to associate with a tuple in the backing Storage (Since the
-	 * backing storage provides a key-value interface)
-	 */
-	private static final String dummyString = new String("dummy");
+	private final FingerprintSet _storage;
 
 	public DistinctOperator(Map conf, int[] projectionIndexes) {
-		_storage = new ValueStore<String>(conf);
+		_storage = FingerprintSet.create(conf);
 		_projection = new ProjectOperator(projectionIndexes);
 		_conf = conf;
 	}
 
 	public DistinctOperator(Map conf, List<ValueExpression> veList) {
-		_storage = new ValueStore<String>(conf);
+		_storage = FingerprintSet.create(conf);
 		_projection = new ProjectOperator(veList);
 		_conf = conf;
 	}
 
 	public DistinctOperator(Map conf, ValueExpression... veArray) {
-		_storage = new ValueStore<String>(conf);
+		_storage = FingerprintSet.create(conf);
 		_projection = new ProjectOperator(veArray);
 		_conf = conf;
 	}
@@ -78,13 +75,11 @@ public class DistinctOperator implements Operator {
 	public List<String> process(List<String> tuple) {
 		_numTuplesProcessed++;
 		final List<String> projectedTuple = _projection.process(tuple);
-		final String projectedTupleString = MyUtilities.tupleToString(projectedTuple, _conf);
-		if (_storage.contains(projectedTupleString) == true)
-			return null;
-		else {
-			_storage.insert(projectedTupleString, dummyString);
+		// a single lookup, which inserts a new tuple
+		if (_storage.add(projectedTuple))
 			return tuple;
-		}
+		else
+			return null;
 	}
 
 	@Override
@@ -116,12 +116,17 @@ public class MultiAggregateOperator implements AggregateOperator {
 
 	@Override
 	public List<String> process(List<String> tuple) {
+		return process(tuple, false);
+	}
+
+	private List<String> process(List<String> tuple, boolean isDeletion) {
 		// this will work only if they have the same groupBy
 		// otherwise the result of process is not important at all
 		final List<String> result = new ArrayList<String>();
 		int i = 0;
 		for (final AggregateOperator agg : _opList) {
-			final List<String> current = agg.process(tuple);
+			final List<String> current = isDeletion ? agg.processDeletion(tuple) : agg
+					.process(tuple);
 			if (i == 0)
 				result.addAll(current);
 			else {
@@ -138,6 +143,11 @@ public class MultiAggregateOperator implements AggregateOperator {
 		return result;
 	}
 
+	@Override
+	public List processDeletion(List tuple) {
+		return process(tuple, true);
+	}
+
 	@Override
 	public Object runAggregateFunction(Object value, List tuple) {
 		throw new UnsupportedOperationException(
@@ -150,6 +160,12 @@ public class MultiAggregateOperator implements AggregateOperator {
 				"You are not supposed to call this method from MultiAggregateOperator.");
 	}
 
+	@Override
+	public Object runInverseAggregateFunction(Object value, List tuple) {
+		throw new UnsupportedOperationException(
+				"You are not supposed to call this method from MultiAggregateOperator.");
+	}
+
 	@Override
 	public AggregateOperator setDistinct(DistinctOperator distinct) {
 		throw new UnsupportedOperationException(
@@ -0,0 +1,267 @@
+package plan_runner.operators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import plan_runner.conversion.SumCount;
+import plan_runner.conversion.TypeConversion;
+import plan_runner.expressions.ColumnReference;
+import plan_runner.expressions.ValueExpression;
+import plan_runner.storage.AggregationStorage;
+import plan_runner.storage.BasicStore;
+import plan_runner.utilities.MyUtilities;
+import plan_runner.utilities.TopKHeap;
+import plan_runner.visitors.OperatorVisitor;
+
+/*
+ * ORDER BY aggregate LIMIT k: only the k groups with the largest (descending)
+ *   or the smallest (ascending) aggregate value are output.
+ * The wrapped aggregation holds all the groups, as their values change until the end of the input.
+ *   The top groups are picked by a bounded heap (TopKHeap) only when the content is requested,
+ *   so only k groups per task are printed, sent (getTopTuples) and merged, rather than all of them.
+ * Nothing is sent per tuple, since the top groups are known only at the end of the input:
+ *   then each task sends its top groups (see StormOperator) to a single task,
+ *   which merges them into the global top groups (see createMerging), as NameCompGen does.
+ * The per-task top groups are the global ones only if each group is in a single task,
+ *   i.e. the component is hash-partitioned by the GroupBy columns (as NameCompGen does).
+ * Groups with the same aggregate value are ordered by their GroupBy columns.
+ */
+public class TopKOperator<T> implements AggregateOperator<T> {
+	private static final long serialVersionUID = 1L;
+
+	private final AggregateOperator<T> _agg;
+	private final int _k;
+	private final boolean _isDescending;
+	private final Map _map;
+
+	public TopKOperator(AggregateOperator<T> agg, int k, boolean isDescending, Map map) {
+		if (agg instanceof MultiAggregateOperator)
+			throw new RuntimeException("Top-k is not supported for " + agg + "!");
+		_agg = agg;
+		_k = k;
+		_isDescending = isDescending;
+		_map = map;
+	}
+
+	@Override
+	public void accept(OperatorVisitor ov) {
+		ov.visit(this);
+	}
+
+	@Override
+	public void clearStorage() {
+		_agg.clearStorage();
+	}
+
+	/*
+	 * A top-k which merges the top groups of this one, from the tuples
+	 * (GroupBy columns, value) of getTopTuples. Each group comes from a single
+	 * task, so the values of a group are not really aggregated.
+	 */
+	public TopKOperator<T> createMerging(Map map) {
+		final int numGroupByColumns = getNumGroupByColumns();
+		final ColumnReference valueColumn = new ColumnReference(_agg.getType(), numGroupByColumns);
+		AggregateOperator merging;
+		if (_agg instanceof AggregateAvgOperator)
+			merging = new AggregateAvgOperator(valueColumn, map);
+		else
+			merging = new AggregateSumOperator(valueColumn, map);
+		if (hasGroupBy()) {
+			final List<Integer> groupByColumns = new ArrayList<Integer>();
+			for (int i = 0; i < numGroupByColumns; i++)
+				groupByColumns.add(i);
+			merging.setGroupByColumns(groupByColumns);
+		}
+		return new TopKOperator<T>(merging, _k, _isDescending, map);
+	}
+
+	@Override
+	public List<String> getContent() {
+		final String str = printContent();
+		return str == null ? null : Arrays.asList(str.split("\\r?\\n"));
+	}
+
+	@Override
+	public DistinctOperator getDistinct() {
+		return _agg.getDistinct();
+	}
+
+	@Override
+	public List<ValueExpression> getExpressions() {
+		return _agg.getExpressions();
+	}
+
+	/*
+	 * holds all the groups
+	 */
+	public AggregateOperator<T> getAggregation() {
+		return _agg;
+	}
+
+	@Override
+	public List<Integer> getGroupByColumns() {
+		return _agg.getGroupByColumns();
+	}
+
+	@Override
+	public ProjectOperator getGroupByProjection() {
+		return _agg.getGroupByProjection();
+	}
+
+	public int getK() {
+		return _k;
+	}
+
+	private int getNumGroupByColumns() {
+		if (_agg.getGroupByProjection() != null)
+			return _agg.getGroupByProjection().getExpressions().size();
+		else if (_agg.getGroupByColumns() != null)
+			return _agg.getGroupByColumns().size();
+		else
+			return 0;
+	}
+
+	@Override
+	public int getNumTuplesProcessed() {
+		return _agg.getNumTuplesProcessed();
+	}
+
+	private double getSortKey(T value) {
+		if (value instanceof Number)
+			return ((Number) value).doubleValue();
+		else if (value instanceof SumCount)
+			return ((SumCount) value).getAvg();
+		else
+			throw new RuntimeException("Top-k is not supported for the values of " + _agg + "!");
+	}
+
+	/*
+	 * the top groups only
+	 */
+	@Override
+	public BasicStore getStorage() {
+		if (!_agg.hasGroupBy())
+			return _agg.getStorage();
+		final AggregationStorage<T> storage = (AggregationStorage<T>) _agg.getStorage();
+		final AggregationStorage<T> result = new AggregationStorage<T>(_agg, _agg.getType(),
+				_map, false);
+		for (final String group : getTopGroups(storage))
+			result.onInsert(group, storage.access(group).get(0));
+		return result;
+	}
+
+	/*
+	 * the top groups, to be merged downstream: each one is a tuple of the
+	 * GroupBy columns and the value (see createMerging)
+	 */
+	public List<List<String>> getTopTuples() {
+		final List<List<String>> result = new ArrayList<List<String>>();
+		final String delimiter = MyUtilities.getColumnDelimiter(_map);
+		final AggregationStorage<T> storage = (AggregationStorage<T>) _agg.getStorage();
+		for (final String group : getTopGroups(storage)) {
+			final String value = _agg.getType().toString(storage.access(group).get(0));
+			result.add(MyUtilities.stringToTuple(hasGroupBy() ? group + delimiter + value : value,
+					_map));
+		}
+		return result;
+	}
+
+	// from the best one
+	private List<String> getTopGroups(AggregationStorage<T> storage) {
+		final TopKHeap<String> heap = new TopKHeap<String>(_k, _isDescending);
+		for (final Object group : storage.getGroups())
+			heap.offer(getSortKey(storage.access(group).get(0)), group.toString());
+		return heap.getSorted();
+	}
+
+	@Override
+	public TypeConversion getType() {
+		return _agg.getType();
+	}
+
+	@Override
+	public boolean hasGroupBy() {
+		return _agg.hasGroupBy();
+	}
+
+	@Override
+	public boolean isBlocking() {
+		return true;
+	}
+
+	public boolean isDescending() {
+		return _isDescending;
+	}
+
+	/*
+	 * in the order of the aggregate values
+	 */
+	@Override
+	public String printContent() {
+		if (!_agg.hasGroupBy())
+			return _agg.printContent();
+		final AggregationStorage<T> storage = (AggregationStorage<T>) _agg.getStorage();
+		final StringBuilder sb = new StringBuilder();
+		for (final String group : getTopGroups(storage)) {
+			final T value = storage.access(group).get(0);
+			sb.append(group).append(" = ").append(_agg.getType().toString(value)).append("\n");
+		}
+		return sb.length() == 0 ? null : sb.toString();
+	}
+
+	/*
+	 * nothing is sent per tuple (see getTopTuples)
+	 */
+	@Override
+	public List<String> process(List<String> tuple) {
+		_agg.process(tuple);
+		return null;
+	}
+
+	@Override
+	public List<String> processDeletion(List<String> tuple) {
+		_agg.processDeletion(tuple);
+		return null;
+	}
+
+	@Override
+	public T runAggregateFunction(T value, List<String> tuple) {
+		return _agg.runAggregateFunction(value, tuple);
+	}
+
+	@Override
+	public T runAggregateFunction(T value1, T value2) {
+		return _agg.runAggregateFunction(value1, value2);
+	}
+
+	@Override
+	public T runInverseAggregateFunction(T value, List<String> tuple) {
+		return _agg.runInverseAggregateFunction(value, tuple);
+	}
+
+	@Override
+	public TopKOperator<T> setDistinct(DistinctOperator distinct) {
+		_agg.setDistinct(distinct);
+		return this;
+	}
+
+	@Override
+	public TopKOperator<T> setGroupByColumns(List<Integer> groupByColumns) {
+		_agg.setGroupByColumns(groupByColumns);
+		return this;
+	}
+
+	@Override
+	public TopKOperator<T> setGroupByProjection(ProjectOperator groupByProjection) {
+		_agg.setGroupByProjection(groupByProjection);
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return "Top " + _k + (_isDescending ? " (descending)" : " (ascending)") + " of " + _agg;
+	}
+
+}
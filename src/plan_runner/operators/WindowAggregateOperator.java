@@ -0,0 +1,234 @@
+package plan_runner.operators;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import plan_runner.conversion.TypeConversion;
+import plan_runner.expressions.ValueExpression;
+import plan_runner.storage.AggregationStorage;
+import plan_runner.storage.BasicStore;
+import plan_runner.storage.WindowSegments;
+import plan_runner.utilities.WindowSemantics;
+import plan_runner.visitors.OperatorVisitor;
+
+/*
+ * An aggregation over a window (see WindowSemantics), rather than over the whole stream.
+ * The wrapped aggregation holds the current segment (pane) of the window.
+ *   When the window moves to a new pane, the wrapped aggregation is cleared;
+ *   for a sliding window, its content is kept as a closed pane until the pane expires.
+ * For each tuple, the value of its group over the whole window is sent:
+ *   the partial values from the live panes are merged with runAggregateFunction.
+ * Time-based windows need the timestamp of each tuple, see ChainOperator.process(tuple, timestamp).
+ * Late tuples (with a timestamp smaller than the current one) go to the current pane.
+ * Deletions are not supported: the pane of a deleted tuple is not known.
+ */
+public class WindowAggregateOperator<T> implements AggregateOperator<T> {
+	private static final long serialVersionUID = 1L;
+
+	private final AggregateOperator<T> _agg;
+	private final WindowSemantics _window;
+	private final Map _map;
+
+	// closed panes of a sliding window
+	private final WindowSegments<AggregationStorage<T>> _panes;
+	private long _currentPaneId = 0;
+
+	// the position of the next tuple
+	private long _numTuplesReceived = 0;
+	private long _timestamp;
+	private boolean _isTimestampSet = false;
+
+	public WindowAggregateOperator(AggregateOperator<T> agg, WindowSemantics window, Map map) {
+		if (agg instanceof MultiAggregateOperator || agg.getDistinct() != null)
+			throw new RuntimeException("Windows are not supported for " + agg + "!");
+		window.check(map);
+		_agg = agg;
+		_window = window;
+		_map = map;
+		_panes = new WindowSegments<AggregationStorage<T>>(window) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected AggregationStorage<T> createSegment() {
+				return createStorage();
+			}
+		};
+	}
+
+	@Override
+	public void accept(OperatorVisitor ov) {
+		ov.visit(this);
+	}
+
+	@Override
+	public void clearStorage() {
+		_agg.clearStorage();
+		_panes.getSegments().clear();
+	}
+
+	private AggregationStorage<T> createStorage() {
+		return new AggregationStorage<T>(_agg, _agg.getType(), _map, !_agg.hasGroupBy());
+	}
+
+	@Override
+	public List<String> getContent() {
+		final String str = getStorage().getContent();
+		return str == null ? null : Arrays.asList(str.split("\\r?\\n"));
+	}
+
+	@Override
+	public DistinctOperator getDistinct() {
+		return null;
+	}
+
+	@Override
+	public List<ValueExpression> getExpressions() {
+		return _agg.getExpressions();
+	}
+
+	@Override
+	public List<Integer> getGroupByColumns() {
+		return _agg.getGroupByColumns();
+	}
+
+	@Override
+	public ProjectOperator getGroupByProjection() {
+		return _agg.getGroupByProjection();
+	}
+
+	@Override
+	public int getNumTuplesProcessed() {
+		return _agg.getNumTuplesProcessed();
+	}
+
+	private long getPosition() {
+		if (!_window.isTimeBased())
+			return _numTuplesReceived++;
+		if (!_isTimestampSet)
+			throw new RuntimeException("Time-based windows are not supported in this component!");
+		_isTimestampSet = false;
+		return _timestamp;
+	}
+
+	/*
+	 * the content of the whole window
+	 */
+	@Override
+	public BasicStore getStorage() {
+		if (_panes.getSegments().isEmpty())
+			return _agg.getStorage();
+		final AggregationStorage<T> result = createStorage();
+		for (final AggregationStorage<T> pane : _panes.getSegments())
+			result.addContent(pane);
+		result.addContent((AggregationStorage) _agg.getStorage());
+		return result;
+	}
+
+	@Override
+	public TypeConversion getType() {
+		return _agg.getType();
+	}
+
+	public WindowSemantics getWindow() {
+		return _window;
+	}
+
+	@Override
+	public boolean hasGroupBy() {
+		return _agg.hasGroupBy();
+	}
+
+	@Override
+	public boolean isBlocking() {
+		return true;
+	}
+
+	private void moveTo(long position) {
+		final long paneId = _window.getSegmentId(position);
+		if (paneId > _currentPaneId) {
+			if (!_window.isTumbling())
+				// has to be before advance, which might evict it
+				_panes.getSegment(_currentPaneId * _window.getSlide()).addContent(
+						(AggregationStorage) _agg.getStorage());
+			_agg.clearStorage();
+			_currentPaneId = paneId;
+		}
+		_panes.advance(position);
+	}
+
+	@Override
+	public String printContent() {
+		return getStorage().getContent();
+	}
+
+	@Override
+	public List<String> process(List<String> tuple) {
+		moveTo(getPosition());
+		final List<String> affectedTuple = _agg.process(tuple);
+		if (affectedTuple == null || _panes.getSegments().isEmpty())
+			return affectedTuple;
+
+		// merging the value of the group from the closed panes
+		final String tupleHash = affectedTuple.get(0);
+		T value = ((AggregationStorage<T>) _agg.getStorage()).access(tupleHash).get(0);
+		for (final AggregationStorage<T> pane : _panes.getSegments()) {
+			final List<T> paneValues = pane.access(tupleHash);
+			if (paneValues != null)
+				value = _agg.runAggregateFunction(paneValues.get(0), value);
+		}
+		affectedTuple.set(1, _agg.getType().toString(value));
+		return affectedTuple;
+	}
+
+	@Override
+	public List<String> processDeletion(List<String> tuple) {
+		throw new RuntimeException("Deletions are not supported for windowed aggregations!");
+	}
+
+	@Override
+	public T runAggregateFunction(T value, List<String> tuple) {
+		return _agg.runAggregateFunction(value, tuple);
+	}
+
+	@Override
+	public T runAggregateFunction(T value1, T value2) {
+		return _agg.runAggregateFunction(value1, value2);
+	}
+
+	@Override
+	public T runInverseAggregateFunction(T value, List<String> tuple) {
+		return _agg.runInverseAggregateFunction(value, tuple);
+	}
+
+	@Override
+	public WindowAggregateOperator<T> setDistinct(DistinctOperator distinct) {
+		throw new RuntimeException("Windows are not supported for aggregations with distinct!");
+	}
+
+	@Override
+	public WindowAggregateOperator<T> setGroupByColumns(List<Integer> groupByColumns) {
+		_agg.setGroupByColumns(groupByColumns);
+		return this;
+	}
+
+	@Override
+	public WindowAggregateOperator<T> setGroupByProjection(ProjectOperator groupByProjection) {
+		_agg.setGroupByProjection(groupByProjection);
+		return this;
+	}
+
+	/*
+	 * the timestamp of the tuple which is processed next (time-based windows)
+	 */
+	public void setTimestamp(long timestamp) {
+		_timestamp = timestamp;
+		_isTimestampSet = true;
+	}
+
+	@Override
+	public String toString() {
+		return _window + " over " + _agg;
+	}
+
+}
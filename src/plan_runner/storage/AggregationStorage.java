@@ -2,6 +2,8 @@ package plan_runner.storage;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -11,6 +13,7 @@ import org.apache.log4j.Logger;
 
 import plan_runner.conversion.TypeConversion;
 import plan_runner.operators.AggregateOperator;
+import plan_runner.utilities.MyUtilities;
 import plan_runner.utilities.SystemParameters;
 
 public class AggregationStorage<V> extends KeyValueStore<Object, V> {
@@ -22,6 +25,15 @@ public class AggregationStorage<V> extends KeyValueStore<Object, V> {
 	private final TypeConversion _wrapper;
 	private final AggregateOperator _outerAggOp;
 	private static final String SINGLE_ENTRY_KEY = "SEK"; /* Single entry key */
+	// Checkpoint mode: between the number of tuples and the value of a group
+	private static final String SIZE_DELIMITER = "@";
+	// Deletions mode: the number of tuples of each group, see retract
+	private final HashMap<Object, Long> _groupSizes;
+	private long _numIgnoredRetractions = 0;
+	// Checkpoint mode: the groups which changed since the previous
+	// checkpoint (and whether the storage was reset), see logChanges
+	private transient HashSet<Object> _changedGroups;
+	private transient boolean _isReset;
 
 	// private static final int FINAL_AGGREGATION_TIMEOUT = 10000; /* msecs */
 
@@ -31,6 +43,7 @@ public class AggregationStorage<V> extends KeyValueStore<Object, V> {
 		_wrapper = wrapper;
 		_outerAggOp = outerAggOp;
 		_singleEntry = singleEntry;
+		_groupSizes = MyUtilities.isDeletionMode(map) ? new HashMap<Object, Long>() : null;
 		if (wrapper != null)
 			super.setTypeConversion(_wrapper);
 		LOG.info("Initialized Aggregation Storage with uniqId = " + getUniqId());
@@ -63,6 +76,7 @@ public class AggregationStorage<V> extends KeyValueStore<Object, V> {
 				newValue = (V) _outerAggOp.runAggregateFunction(oldValue, newValue);
 				super.update(key, oldValue, newValue);
 			}
+			markChanged(key);
 		}
 	}
 
@@ -76,6 +90,13 @@ public class AggregationStorage<V> extends KeyValueStore<Object, V> {
 		return super.equals(store);
 	}
 
+	/*
+	 * the keys of the groups, e.g. for picking the top ones (TopKOperator)
+	 */
+	public Set<Object> getGroups() {
+		return keySet();
+	}
+
 	@Override
 	public void onInsert(Object... data) {
 		if (_singleEntry)
@@ -98,6 +119,122 @@ public class AggregationStorage<V> extends KeyValueStore<Object, V> {
 	@Override
 	public void reset() {
 		super.reset();
+		if (_groupSizes != null)
+			_groupSizes.clear();
+		if (_changedGroups != null) {
+			_changedGroups.clear();
+			_isReset = true;
+		}
+	}
+
+	/*
+	 * Checkpoint mode: the inverse of logChanges, on recovery
+	 */
+	public void restoreChange(String key, String value, boolean isDeletion) {
+		if (key == null) {
+			reset();
+			return;
+		}
+		super.removeKey(key);
+		if (_groupSizes != null)
+			_groupSizes.remove(key);
+		if (isDeletion)
+			return;
+		if (_groupSizes != null && !_singleEntry) {
+			final String[] parts = value.split(SIZE_DELIMITER, 2);
+			_groupSizes.put(key, Long.valueOf(parts[0]));
+			value = parts[1];
+		}
+		super.onInsert(key, _wrapper.fromString(value));
+	}
+
+	/*
+	 * The inverse of update, for a deleted tuple: its contribution is removed
+	 * from its group (data is tuple, key). A group whose tuples are all deleted
+	 * is removed, and its value is the initial one (e.g. 0 for SUM and COUNT);
+	 * without a group by, the single entry stays, as SQL has a result for no
+	 * tuples. A deleted tuple of a group which has no tuples (e.g. it was never
+	 * inserted) is ignored, and null is returned.
+	 */
+	public V retract(Object... data) {
+		final List<String> tuple = (List<String>) data[0];
+		final Object key = _singleEntry ? SINGLE_ENTRY_KEY : data[1];
+		if (!_singleEntry && _groupSizes != null && !_groupSizes.containsKey(key)) {
+			if (_numIgnoredRetractions++ == 0)
+				LOG.info("Deleted tuples of the groups without tuples are ignored, e.g. of group "
+						+ key + ".");
+			return null;
+		}
+		V value;
+		final ArrayList<V> list = super.__access(false, key);
+		if (list == null) {
+			value = (V) _wrapper.getInitialValue();
+			super.onInsert(key, value);
+		} else
+			value = list.get(0);
+		final V newValue = (V) _outerAggOp.runInverseAggregateFunction(value, tuple);
+		markChanged(key);
+		if (!_singleEntry && updateGroupSize(key, -1) == 0) {
+			super.removeKey(key);
+			return (V) _wrapper.getInitialValue();
+		}
+		super.__update(false, key, value, newValue);
+		return newValue;
+	}
+
+	/*
+	 * Checkpoint mode: logs the reset of the storage (key null), and the new
+	 * value of each changed group (null for a removed group), since the
+	 * previous invocation. In Deletions mode, the number of tuples of the
+	 * group precedes its value. See restoreChange.
+	 */
+	public void logChanges(CheckpointStore store, int relation) {
+		if (_isReset) {
+			store.logChange(relation, null, null, true);
+			_isReset = false;
+		}
+		for (final Object key : _changedGroups) {
+			final ArrayList<V> list = super.__access(false, key);
+			if (list == null) {
+				store.logChange(relation, key.toString(), null, true);
+				continue;
+			}
+			String value = _wrapper.toString(list.get(0));
+			if (_groupSizes != null && !_singleEntry)
+				value = _groupSizes.get(key) + SIZE_DELIMITER + value;
+			store.logChange(relation, key.toString(), value, false);
+		}
+		_changedGroups.clear();
+	}
+
+	private void markChanged(Object key) {
+		if (_changedGroups != null)
+			_changedGroups.add(key);
+	}
+
+	public long getNumIgnoredRetractions() {
+		return _numIgnoredRetractions;
+	}
+
+	// returns the new number of tuples of the group, -1 if not in Deletions mode
+	private long updateGroupSize(Object key, long delta) {
+		if (_groupSizes == null)
+			return -1;
+		final Long size = _groupSizes.get(key);
+		final long newSize = (size == null ? 0 : size) + delta;
+		if (newSize == 0)
+			_groupSizes.remove(key);
+		else
+			_groupSizes.put(key, newSize);
+		return newSize;
+	}
+
+	/*
+	 * Checkpoint mode: the changed groups are tracked from now on, see
+	 * logChanges
+	 */
+	public void startLogging() {
+		_changedGroups = new HashSet<Object>();
 	}
 
 	public void setSingleEntry(boolean singleEntry) {
@@ -119,6 +256,9 @@ public class AggregationStorage<V> extends KeyValueStore<Object, V> {
 			newValue = (V) _outerAggOp.runAggregateFunction(value, (List<String>) obj);
 		else
 			newValue = (V) _outerAggOp.runAggregateFunction(value, obj);
+		if (!_singleEntry)
+			updateGroupSize(key, 1);
+		markChanged(key);
 		super.__update(false, key, value, newValue);
 		return newValue;
 	}
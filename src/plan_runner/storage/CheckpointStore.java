@@ -0,0 +1,437 @@
+package plan_runner.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.log4j.Logger;
+
+import plan_runner.operators.AggregateAvgOperator;
+import plan_runner.operators.AggregateCountOperator;
+import plan_runner.operators.AggregateOperator;
+import plan_runner.operators.AggregateSumOperator;
+import plan_runner.operators.ChainOperator;
+import plan_runner.operators.Operator;
+import plan_runner.utilities.MyUtilities;
+import plan_runner.utilities.SystemParameters;
+
+/*
+ * DIP_CHECKPOINT_DIR mode: the checkpoints of a task, in a directory on the local disk.
+ * Checkpoints are incremental: a checkpoint holds the changes of the stores of the task
+ *   since the previous checkpoint (each change is logged as it happens, see logChange),
+ *   and a snapshot of the rest of the state (e.g. the operators, and the offset of a data source),
+ *   which is supposed to be small.
+ * The aggregations of the chain of the task (see attachChain) are not in the snapshot:
+ *   the groups which changed since the previous checkpoint are logged with their new values.
+ * At a checkpoint, the task only hands over the logged changes and the serialized snapshot;
+ *   the file is written by a background thread, so the task is not stalled by the disk.
+ *   A file is written under a temporary name and renamed at the end, so an existing file is complete.
+ * File format (gzipped): the checkpoint id, the number of changes, each change
+ *   (relation, isDeletion, key, value), the length of the serialized snapshot, and the snapshot.
+ * A task which is done with its input writes a final checkpoint, which stands for all the later ones.
+ * A checkpoint is complete once each task of each component has written it (see prepareRun).
+ *   The state of a task at checkpoint id is restored from its checkpoints 1, ..., id (see restore).
+ * Recovery needs the checkpoints of all the tasks, so the directory has to be shared
+ *   among the machines (or the topology runs in Local mode).
+ */
+public class CheckpointStore {
+
+	/*
+	 * re-applies the logged changes on recovery
+	 */
+	public interface ChangeListener {
+		public void restoreChange(int relation, String key, String value, boolean isDeletion);
+	}
+
+	private static class Change {
+		private final int _relation;
+		private final boolean _isDeletion;
+		private final String _key, _value;
+
+		public Change(int relation, String key, String value, boolean isDeletion) {
+			_relation = relation;
+			_key = key;
+			_value = value;
+			_isDeletion = isDeletion;
+		}
+	}
+
+	private static Logger LOG = Logger.getLogger(CheckpointStore.class);
+
+	private static final String EXTENSION = ".ckpt";
+	private static final String FINAL = "final_";
+
+	// checkpoints are taken every DEFAULT_EVERY lines of each data source
+	// task, if DIP_CHECKPOINT_EVERY is not set
+	public static final long DEFAULT_EVERY = 100000;
+
+	// the changes of an aggregation of the chain are logged for the relation
+	// CHAIN_RELATION + its position in the chain; the smaller relations are
+	// of the component (e.g. the stores of a join)
+	private static final int CHAIN_RELATION = 2;
+
+	private final File _dir;
+	private final String _prefix;
+	private final Map _conf;
+
+	private List<Change> _changes = new ArrayList<Change>();
+	private long _lastId = 0;
+	private boolean _isFinished = false;
+	// on recovery, the snapshot of the last file read
+	private Serializable _lastSnapshot;
+	// the aggregations of the chain which log their changes, by relation
+	private final Map<Integer, AggregationStorage> _loggedStorages = new HashMap<Integer, AggregationStorage>();
+
+	private final ExecutorService _writer;
+
+	public CheckpointStore(final String compName, int taskIndex, Map conf) {
+		_conf = conf;
+		_dir = getDir(conf);
+		_dir.mkdirs();
+		_prefix = getPrefix(compName, taskIndex);
+		_writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				final Thread thread = new Thread(runnable, _prefix + "checkpointer");
+				// it should not prevent a worker from exiting
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/*
+	 * An aggregation whose whole state is its AggregationStorage (SUM, COUNT
+	 * and AVG, without DISTINCT and online estimates) logs its changed groups
+	 * at each checkpoint, rather than being serialized with the snapshot (see
+	 * getChainSnapshot). Has to be invoked before restore.
+	 */
+	public void attachChain(ChainOperator chain) {
+		if (chain == null)
+			return;
+		final List<Operator> operators = chain.getOperators();
+		for (int i = 0; i < operators.size(); i++)
+			if (isLogged(operators.get(i))) {
+				final AggregationStorage storage = (AggregationStorage) ((AggregateOperator) operators
+						.get(i)).getStorage();
+				storage.startLogging();
+				_loggedStorages.put(CHAIN_RELATION + i, storage);
+			}
+	}
+
+	/*
+	 * the changes since the previous checkpoint, and the snapshot (it is
+	 * serialized here, so it might be changed right after) are written by the
+	 * background thread
+	 */
+	public void checkpoint(long id, Serializable snapshot) {
+		write(new File(_dir, _prefix + id + EXTENSION), id, snapshot);
+		_lastId = id;
+	}
+
+	/*
+	 * Invoked when the task is done with its input. Waits until all the
+	 * checkpoints of the task are written.
+	 */
+	public void finalCheckpoint(Serializable snapshot) {
+		if (_isFinished)
+			// restored from a final checkpoint, nothing has changed since
+			return;
+		_isFinished = true;
+		write(new File(_dir, _prefix + FINAL + _lastId + EXTENSION), _lastId, snapshot);
+		_writer.shutdown();
+		try {
+			_writer.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (final InterruptedException ex) {
+			LOG.info(MyUtilities.getStackTrace(ex));
+		}
+	}
+
+	/*
+	 * the operators of the chain for a snapshot, with null instead of the
+	 * aggregations which log their changes (see attachChain)
+	 */
+	public Serializable getChainSnapshot(ChainOperator chain) {
+		if (chain == null)
+			return null;
+		final ArrayList<Operator> result = new ArrayList<Operator>(chain.getOperators());
+		for (final int relation : _loggedStorages.keySet())
+			result.set(relation - CHAIN_RELATION, null);
+		return result;
+	}
+
+	// the last checkpoint taken or restored
+	public long getLastId() {
+		return _lastId;
+	}
+
+	private boolean isLogged(Operator operator) {
+		return (operator instanceof AggregateSumOperator
+				|| operator instanceof AggregateCountOperator || operator instanceof AggregateAvgOperator)
+				&& ((AggregateOperator) operator).getDistinct() == null
+				&& !MyUtilities.isOnlineAggMode(_conf);
+	}
+
+	public void logChange(int relation, String key, String value, boolean isDeletion) {
+		_changes.add(new Change(relation, key, value, isDeletion));
+	}
+
+	/*
+	 * Restores the state of the task at the checkpoint chosen by prepareRun:
+	 * the logged changes are passed to listener, and the last snapshot is
+	 * returned (null if there is nothing to restore).
+	 */
+	public Serializable restore(ChangeListener listener) {
+		final long recoverId = getRecoverId(_conf);
+		if (recoverId == 0)
+			return null;
+		final File finalFile = findFinalFile(_dir, _prefix);
+		long lastId = recoverId;
+		if (finalFile != null && getFinalId(finalFile, _prefix) < recoverId)
+			lastId = getFinalId(finalFile, _prefix);
+
+		Serializable snapshot = null;
+		long numChanges = 0;
+		try {
+			for (long id = 1; id <= lastId; id++)
+				numChanges += read(new File(_dir, _prefix + id + EXTENSION), listener);
+			if (lastId < recoverId) {
+				numChanges += read(finalFile, listener);
+				_isFinished = true;
+			}
+			snapshot = _lastSnapshot;
+		} catch (final Exception ex) {
+			throw new RuntimeException("Cannot restore checkpoint " + recoverId + " of " + _prefix
+					+ ": " + MyUtilities.getStackTrace(ex));
+		}
+		_lastSnapshot = null;
+		_lastId = lastId;
+		LOG.info(_prefix + ": " + numChanges + " changes are restored from checkpoint "
+				+ recoverId + (_isFinished ? " (final)." : "."));
+		return snapshot;
+	}
+
+	// returns the number of changes
+	private long read(File file, ChangeListener listener) throws IOException,
+			ClassNotFoundException {
+		final DataInputStream in = new DataInputStream(new GZIPInputStream(
+				new BufferedInputStream(new FileInputStream(file))));
+		try {
+			in.readLong(); // id
+			final long numChanges = in.readLong();
+			for (long i = 0; i < numChanges; i++) {
+				final int relation = in.readByte();
+				final boolean isDeletion = in.readBoolean();
+				final String key = readString(in);
+				final String value = readString(in);
+				if (relation >= CHAIN_RELATION)
+					_loggedStorages.get(relation).restoreChange(key, value, isDeletion);
+				else
+					listener.restoreChange(relation, key, value, isDeletion);
+			}
+			final byte[] snapshot = new byte[in.readInt()];
+			in.readFully(snapshot);
+			_lastSnapshot = snapshot.length == 0 ? null : (Serializable) new ObjectInputStream(
+					new ByteArrayInputStream(snapshot)).readObject();
+			return numChanges;
+		} finally {
+			in.close();
+		}
+	}
+
+	/*
+	 * the inverse of getChainSnapshot; the aggregations which log their
+	 * changes are restored already
+	 */
+	public void restoreChainSnapshot(ChainOperator chain, List<Operator> snapshot) {
+		final List<Operator> operators = new ArrayList<Operator>(snapshot);
+		for (int i = 0; i < operators.size(); i++)
+			if (operators.get(i) == null)
+				operators.set(i, chain.getOperators().get(i));
+		chain.setOperators(operators);
+	}
+
+	private void write(final File file, final long id, Serializable snapshot) {
+		for (final Map.Entry<Integer, AggregationStorage> entry : _loggedStorages.entrySet())
+			entry.getValue().logChanges(this, entry.getKey());
+		final List<Change> changes = _changes;
+		_changes = new ArrayList<Change>();
+		final byte[] snapshotBytes = serialize(snapshot);
+		_writer.execute(new Runnable() {
+			@Override
+			public void run() {
+				final File tmpFile = new File(file.getPath() + ".tmp");
+				try {
+					final DataOutputStream out = new DataOutputStream(new GZIPOutputStream(
+							new BufferedOutputStream(new FileOutputStream(tmpFile))));
+					try {
+						out.writeLong(id);
+						out.writeLong(changes.size());
+						for (final Change change : changes) {
+							out.writeByte(change._relation);
+							out.writeBoolean(change._isDeletion);
+							writeString(out, change._key);
+							writeString(out, change._value);
+						}
+						out.writeInt(snapshotBytes.length);
+						out.write(snapshotBytes);
+					} finally {
+						out.close();
+					}
+					if (!tmpFile.renameTo(file))
+						throw new IOException("Cannot rename " + tmpFile + " to " + file);
+				} catch (final IOException ex) {
+					// the checkpoint is not complete, the previous one is used
+					// on recovery
+					LOG.info(MyUtilities.getStackTrace(ex));
+				}
+			}
+		});
+	}
+
+	private static byte[] serialize(Serializable snapshot) {
+		if (snapshot == null)
+			return new byte[0];
+		try {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(snapshot);
+			out.close();
+			return bytes.toByteArray();
+		} catch (final IOException ex) {
+			throw new RuntimeException(MyUtilities.getStackTrace(ex));
+		}
+	}
+
+	// null strings are allowed, and there is no 64K limit as in writeUTF
+	private static void writeString(DataOutputStream out, String str) throws IOException {
+		if (str == null) {
+			out.writeInt(-1);
+			return;
+		}
+		final byte[] bytes = str.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		final int length = in.readInt();
+		if (length < 0)
+			return null;
+		final byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	private static File findFinalFile(File dir, String prefix) {
+		final File[] files = dir.listFiles();
+		if (files != null)
+			for (final File file : files)
+				if (file.getName().startsWith(prefix + FINAL)
+						&& file.getName().endsWith(EXTENSION))
+					return file;
+		return null;
+	}
+
+	private static File getDir(Map conf) {
+		return new File(SystemParameters.getString(conf, "DIP_CHECKPOINT_DIR"));
+	}
+
+	private static long getFinalId(File finalFile, String prefix) {
+		final String name = finalFile.getName();
+		return Long.parseLong(name.substring((prefix + FINAL).length(), name.length()
+				- EXTENSION.length()));
+	}
+
+	private static String getPrefix(String compName, int taskIndex) {
+		return compName + "_" + taskIndex + "_";
+	}
+
+	private static long getRecoverId(Map conf) {
+		if (!SystemParameters.isExisting(conf, "DIP_CHECKPOINT_RECOVER_ID"))
+			return 0;
+		return Long.parseLong(SystemParameters.getString(conf, "DIP_CHECKPOINT_RECOVER_ID"));
+	}
+
+	/*
+	 * Invoked before the topology is created. If DIP_CHECKPOINT_RECOVER is
+	 * set, the latest complete checkpoint is chosen for recovery
+	 * (DIP_CHECKPOINT_RECOVER_ID); otherwise, the run starts from scratch.
+	 * The checkpoints after the chosen one are deleted, so that they are not
+	 * mixed with the ones of this run.
+	 */
+	public static void prepareRun(Map conf, List<String> compNames) {
+		if (MyUtilities.isAckEveryTuple(conf) || MyUtilities.isManualBatchingMode(conf)
+				|| MyUtilities.isHierarchicalEOF(conf))
+			throw new RuntimeException(
+					"DIP_CHECKPOINT_DIR mode does not support acking each tuple, MANUAL_BATCH and DIP_HIERARCHICAL_EOF modes!");
+		final File dir = getDir(conf);
+		long recoverId = 0;
+		if (SystemParameters.isExisting(conf, "DIP_CHECKPOINT_RECOVER")
+				&& SystemParameters.getBoolean(conf, "DIP_CHECKPOINT_RECOVER"))
+			recoverId = findLatestComplete(dir, compNames, conf);
+		SystemParameters.putInMap(conf, "DIP_CHECKPOINT_RECOVER_ID", String.valueOf(recoverId));
+		LOG.info(recoverId == 0 ? "Starting from scratch, checkpoints are in " + dir
+				: "Recovering from checkpoint " + recoverId + " in " + dir);
+
+		for (final String compName : compNames) {
+			final int parallelism = SystemParameters.getInt(conf, compName + "_PAR");
+			for (int i = 0; i < parallelism; i++) {
+				final String prefix = getPrefix(compName, i);
+				final File finalFile = findFinalFile(dir, prefix);
+				if (finalFile != null && getFinalId(finalFile, prefix) >= recoverId)
+					finalFile.delete();
+				for (long id = recoverId + 1; new File(dir, prefix + id + EXTENSION).exists(); id++)
+					new File(dir, prefix + id + EXTENSION).delete();
+			}
+		}
+	}
+
+	/*
+	 * A task has a checkpoint id if it has all the files 1, ..., id, or if it
+	 * has a final checkpoint taken before id (and all the files before it).
+	 * Returns 0 if there is no complete checkpoint.
+	 */
+	private static long findLatestComplete(File dir, List<String> compNames, Map conf) {
+		long result = Long.MAX_VALUE;
+		long maxFinalId = 0;
+		for (final String compName : compNames) {
+			final int parallelism = SystemParameters.getInt(conf, compName + "_PAR");
+			for (int i = 0; i < parallelism; i++) {
+				final String prefix = getPrefix(compName, i);
+				long lastId = 0;
+				while (new File(dir, prefix + (lastId + 1) + EXTENSION).exists())
+					lastId++;
+				final File finalFile = findFinalFile(dir, prefix);
+				if (finalFile != null && getFinalId(finalFile, prefix) <= lastId)
+					maxFinalId = Math.max(maxFinalId, getFinalId(finalFile, prefix));
+				else
+					result = Math.min(result, lastId);
+			}
+		}
+		if (result == Long.MAX_VALUE)
+			// all the tasks are done
+			result = maxFinalId + 1;
+		return result;
+	}
+}
@@ -0,0 +1,535 @@
+package plan_runner.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.log4j.Logger;
+
+import plan_runner.utilities.BloomFilter;
+import plan_runner.utilities.SystemParameters;
+
+/*
+ * An exact set of keys (e.g. the projected tuples of DistinctOperator) with a bounded memory.
+ * A key is represented by 96 bits only: a 64-bit fingerprint and a 32-bit check hash,
+ *   computed independently from its columns. Two different keys are mistaken for one another
+ *   only if both of their hashes collide, which for n keys happens with probability
+ *   below n^2 / 2^97 (e.g. 10^-11 for a billion keys).
+ * The keys are hash-partitioned by the top bits of the fingerprint. Each partition is
+ *   a primitive open-addressing (linear probing) table, so there is no object per key.
+ * When the tables exceed the memory budget, the largest partition is spilled to disk:
+ *   its keys are merged into a sorted file of the partition, and the table is emptied.
+ *   A spilled partition keeps a Bloom filter and a sparse index (the first fingerprint of each block)
+ *   of its file in memory, so looking up a new key mostly does not touch the disk,
+ *   and looking up a spilled key reads a single block.
+ * Spilling a partition again merges its table into its file.
+ * The budget is exceeded only when the Bloom filters and indexes (about 1.3 bytes per spilled key) do not fit.
+ */
+public class FingerprintSet implements Serializable {
+	/*
+	 * the spilled keys of a partition: 12-byte records (fingerprint, check),
+	 * sorted by fingerprint
+	 */
+	private static class SpillFile {
+		private final File _file;
+		private final long _numRecords;
+		private final BloomFilter _bloom;
+		// the first fingerprint of each block
+		private final long[] _index;
+		private RandomAccessFile _raf;
+
+		private SpillFile(File file, long numRecords, BloomFilter bloom, long[] index) {
+			_file = file;
+			_numRecords = numRecords;
+			_bloom = bloom;
+			_index = index;
+		}
+
+		private void close() {
+			try {
+				if (_raf != null)
+					_raf.close();
+				_raf = null;
+			} catch (final IOException ex) {
+				throw new RuntimeException("Cannot close " + _file + ": " + ex.getMessage());
+			}
+		}
+
+		private boolean contains(long fingerprint, int check) throws IOException {
+			if (!_bloom.mightContainHash(fingerprint))
+				return false;
+			if (_raf == null)
+				_raf = new RandomAccessFile(_file, "r");
+			// the records with the fingerprint may start at the end of the
+			// previous block
+			int block = lowerBound(_index, _index.length, fingerprint);
+			if (block > 0)
+				block--;
+			final byte[] buffer = new byte[BLOCK_SIZE * RECORD_SIZE];
+			for (; block < _index.length; block++) {
+				if (_index[block] > fingerprint)
+					return false;
+				final long first = (long) block * BLOCK_SIZE;
+				final int numRecords = (int) Math.min(BLOCK_SIZE, _numRecords - first);
+				_raf.seek(first * RECORD_SIZE);
+				_raf.readFully(buffer, 0, numRecords * RECORD_SIZE);
+				final ByteBuffer records = ByteBuffer.wrap(buffer);
+				for (int i = 0; i < numRecords; i++) {
+					final long recordFingerprint = records.getLong();
+					final int recordCheck = records.getInt();
+					if (recordFingerprint > fingerprint)
+						return false;
+					if (recordFingerprint == fingerprint && recordCheck == check)
+						return true;
+				}
+			}
+			return false;
+		}
+
+		private long getSize() {
+			return _bloom.getSize() + 8L * _index.length;
+		}
+	}
+
+	/*
+	 * an in-memory table; fingerprint 0 marks an empty slot
+	 */
+	private static class Table {
+		private long[] _fingerprints;
+		private int[] _checks;
+		private int _size;
+
+		private Table() {
+			_fingerprints = new long[INITIAL_CAPACITY];
+			_checks = new int[INITIAL_CAPACITY];
+		}
+
+		// returns false if the key is already there
+		private boolean add(long fingerprint, int check) {
+			final int mask = _fingerprints.length - 1;
+			int slot = (int) fingerprint & mask;
+			while (_fingerprints[slot] != 0) {
+				if (_fingerprints[slot] == fingerprint && _checks[slot] == check)
+					return false;
+				slot = (slot + 1) & mask;
+			}
+			_fingerprints[slot] = fingerprint;
+			_checks[slot] = check;
+			_size++;
+			if (_size > MAX_LOAD_FACTOR * _fingerprints.length)
+				resize(2 * _fingerprints.length);
+			return true;
+		}
+
+		private boolean contains(long fingerprint, int check) {
+			final int mask = _fingerprints.length - 1;
+			int slot = (int) fingerprint & mask;
+			while (_fingerprints[slot] != 0) {
+				if (_fingerprints[slot] == fingerprint && _checks[slot] == check)
+					return true;
+				slot = (slot + 1) & mask;
+			}
+			return false;
+		}
+
+		private long getSize() {
+			return (long) RECORD_SIZE * _fingerprints.length;
+		}
+
+		private void resize(int capacity) {
+			final long[] fingerprints = _fingerprints;
+			final int[] checks = _checks;
+			_fingerprints = new long[capacity];
+			_checks = new int[capacity];
+			_size = 0;
+			for (int i = 0; i < fingerprints.length; i++)
+				if (fingerprints[i] != 0)
+					add(fingerprints[i], checks[i]);
+		}
+	}
+
+	private static final long serialVersionUID = 1L;
+	private static Logger LOG = Logger.getLogger(FingerprintSet.class);
+
+	private static final int PARTITION_BITS = 6;
+	private static final int NUM_PARTITIONS = 1 << PARTITION_BITS;
+	private static final int INITIAL_CAPACITY = 16;
+	private static final double MAX_LOAD_FACTOR = 0.7;
+	private static final int RECORD_SIZE = 12;
+	// in records
+	private static final int BLOCK_SIZE = 256;
+	/*
+	 * smaller tables are not spilled: when the Bloom filters alone exceed the
+	 * budget, rewriting a file for a few keys would not free any memory
+	 */
+	private static final int MIN_SPILLED_KEYS = 4 * BLOCK_SIZE;
+
+	/*
+	 * The budget is DIP_DISTINCT_MEMORY_MB (STORAGE_MEMORY_SIZE_MB if not set),
+	 * the files are in the storage directory (as in StorageManager)
+	 */
+	public static FingerprintSet create(Map conf) {
+		String memoryParameter = "STORAGE_MEMORY_SIZE_MB";
+		if (SystemParameters.isExisting(conf, "DIP_DISTINCT_MEMORY_MB"))
+			memoryParameter = "DIP_DISTINCT_MEMORY_MB";
+		final long memoryBytes = SystemParameters.getInt(conf, memoryParameter) * 1024L * 1024L;
+		String spillDir = System.getProperty("java.io.tmpdir");
+		final String dirParameter = SystemParameters.isExisting(conf, "DIP_DISTRIBUTED")
+				&& SystemParameters.getBoolean(conf, "DIP_DISTRIBUTED") ? "STORAGE_CLUSTER_DIR"
+				: "STORAGE_LOCAL_DIR";
+		if (SystemParameters.isExisting(conf, dirParameter))
+			spillDir = SystemParameters.getString(conf, dirParameter);
+		return new FingerprintSet(memoryBytes, spillDir);
+	}
+
+	private static int getPartition(long fingerprint) {
+		return (int) (fingerprint >>> (64 - PARTITION_BITS));
+	}
+
+	private static void heapSort(long[] fingerprints, int[] checks, int size) {
+		for (int i = size / 2 - 1; i >= 0; i--)
+			siftDown(fingerprints, checks, i, size);
+		for (int end = size - 1; end > 0; end--) {
+			swap(fingerprints, checks, 0, end);
+			siftDown(fingerprints, checks, 0, end);
+		}
+	}
+
+	// the first position whose value is >= key
+	private static int lowerBound(long[] values, int size, long key) {
+		int low = 0, high = size;
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (values[middle] < key)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	private static void siftDown(long[] fingerprints, int[] checks, int i, int size) {
+		while (true) {
+			final int left = 2 * i + 1;
+			if (left >= size)
+				return;
+			int child = left;
+			if (left + 1 < size && fingerprints[left + 1] > fingerprints[left])
+				child = left + 1;
+			if (fingerprints[child] <= fingerprints[i])
+				return;
+			swap(fingerprints, checks, i, child);
+			i = child;
+		}
+	}
+
+	private static void swap(long[] fingerprints, int[] checks, int i, int j) {
+		final long fingerprint = fingerprints[i];
+		fingerprints[i] = fingerprints[j];
+		fingerprints[j] = fingerprint;
+		final int check = checks[i];
+		checks[i] = checks[j];
+		checks[j] = check;
+	}
+
+	private final long _memoryBytes;
+	private final String _spillDir;
+
+	// not serialized as such, see writeObject
+	private transient Table[] _tables;
+	private transient SpillFile[] _spillFiles;
+	private transient long _memoryUsed;
+	private transient long _size;
+	private transient String _uniqId;
+
+	public FingerprintSet(long memoryBytes, String spillDir) {
+		_memoryBytes = memoryBytes;
+		_spillDir = spillDir;
+		init();
+	}
+
+	/*
+	 * returns true if the key (the columns, in order) was not in the set
+	 */
+	public boolean add(List<String> key) {
+		// FNV-1a for the fingerprint, a multiplicative hash for the check;
+		// the length of each column separates the columns
+		long fingerprint = 0xcbf29ce484222325L;
+		int check = 0x9747b28c;
+		for (int column = 0; column < key.size(); column++) {
+			final String value = key.get(column);
+			final int length = value.length();
+			for (int i = 0; i < length; i++) {
+				final char c = value.charAt(i);
+				fingerprint = (fingerprint ^ c) * 0x100000001b3L;
+				check = check * 0x01000193 + c;
+			}
+			fingerprint = (fingerprint ^ length) * 0x100000001b3L;
+			check = check * 31 + length;
+		}
+		return add(mix(fingerprint), mix(check));
+	}
+
+	/*
+	 * returns true if the key (fingerprint, check) was not in the set
+	 */
+	public boolean add(long fingerprint, int check) {
+		if (fingerprint == 0)
+			fingerprint = 1;
+		final int partition = getPartition(fingerprint);
+		final Table table = _tables[partition];
+		if (_spillFiles[partition] != null && !table.contains(fingerprint, check))
+			try {
+				if (_spillFiles[partition].contains(fingerprint, check))
+					return false;
+			} catch (final IOException ex) {
+				throw new RuntimeException("Cannot read " + _spillFiles[partition]._file + ": "
+						+ ex.getMessage());
+			}
+
+		final long tableSize = table.getSize();
+		if (!table.add(fingerprint, check))
+			return false;
+		_size++;
+		_memoryUsed += table.getSize() - tableSize;
+		while (_memoryUsed > _memoryBytes && spillLargest())
+			;
+		return true;
+	}
+
+	/*
+	 * empties the set, and deletes its files
+	 */
+	public void clear() {
+		for (final SpillFile spillFile : _spillFiles)
+			if (spillFile != null) {
+				spillFile.close();
+				spillFile._file.delete();
+			}
+		init();
+	}
+
+	public boolean contains(long fingerprint, int check) {
+		if (fingerprint == 0)
+			fingerprint = 1;
+		final int partition = getPartition(fingerprint);
+		if (_tables[partition].contains(fingerprint, check))
+			return true;
+		try {
+			return _spillFiles[partition] != null
+					&& _spillFiles[partition].contains(fingerprint, check);
+		} catch (final IOException ex) {
+			throw new RuntimeException("Cannot read " + _spillFiles[partition]._file + ": "
+					+ ex.getMessage());
+		}
+	}
+
+	// in bytes
+	public long getMemoryUsed() {
+		return _memoryUsed;
+	}
+
+	public int getNumSpilledPartitions() {
+		int result = 0;
+		for (final SpillFile spillFile : _spillFiles)
+			if (spillFile != null)
+				result++;
+		return result;
+	}
+
+	private void init() {
+		_tables = new Table[NUM_PARTITIONS];
+		_spillFiles = new SpillFile[NUM_PARTITIONS];
+		_memoryUsed = 0;
+		_size = 0;
+		for (int i = 0; i < NUM_PARTITIONS; i++) {
+			_tables[i] = new Table();
+			_memoryUsed += _tables[i].getSize();
+		}
+	}
+
+	// the Murmur3 finalizers
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	private static int mix(int hash) {
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		init();
+		final long size = in.readLong();
+		for (long i = 0; i < size; i++)
+			add(in.readLong(), in.readInt());
+	}
+
+	public long size() {
+		return _size;
+	}
+
+	/*
+	 * merges the table of the partition with its file (if any) into a new
+	 * sorted file
+	 */
+	private void spill(int partition) throws IOException {
+		final Table table = _tables[partition];
+		final SpillFile oldFile = _spillFiles[partition];
+
+		// the table, sorted
+		final long[] fingerprints = new long[table._size];
+		final int[] checks = new int[table._size];
+		int size = 0;
+		for (int i = 0; i < table._fingerprints.length; i++)
+			if (table._fingerprints[i] != 0) {
+				fingerprints[size] = table._fingerprints[i];
+				checks[size++] = table._checks[i];
+			}
+		heapSort(fingerprints, checks, size);
+
+		if (_uniqId == null) {
+			_uniqId = UUID.randomUUID().toString();
+			new File(_spillDir).mkdirs();
+		}
+		final File file = new File(_spillDir, "distinct_" + _uniqId + "_" + partition + "_"
+				+ System.nanoTime());
+		file.deleteOnExit();
+		final long numRecords = size + (oldFile == null ? 0 : oldFile._numRecords);
+		final BloomFilter bloom = new BloomFilter(numRecords,
+				BloomFilter.DEFAULT_FALSE_POSITIVE_PROBABILITY);
+		final long[] index = new long[(int) ((numRecords + BLOCK_SIZE - 1) / BLOCK_SIZE)];
+
+		DataInputStream oldRecords = null;
+		if (oldFile != null) {
+			oldFile.close();
+			oldRecords = new DataInputStream(new BufferedInputStream(new FileInputStream(
+					oldFile._file)));
+		}
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file)));
+		try {
+			long oldRemaining = oldFile == null ? 0 : oldFile._numRecords;
+			long oldFingerprint = 0;
+			int oldCheck = 0;
+			if (oldRemaining > 0) {
+				oldFingerprint = oldRecords.readLong();
+				oldCheck = oldRecords.readInt();
+			}
+			int position = 0;
+			for (long written = 0; written < numRecords; written++) {
+				long fingerprint;
+				int check;
+				if (oldRemaining > 0
+						&& (position == size || oldFingerprint <= fingerprints[position])) {
+					fingerprint = oldFingerprint;
+					check = oldCheck;
+					if (--oldRemaining > 0) {
+						oldFingerprint = oldRecords.readLong();
+						oldCheck = oldRecords.readInt();
+					}
+				} else {
+					fingerprint = fingerprints[position];
+					check = checks[position++];
+				}
+				if (written % BLOCK_SIZE == 0)
+					index[(int) (written / BLOCK_SIZE)] = fingerprint;
+				bloom.addHash(fingerprint);
+				out.writeLong(fingerprint);
+				out.writeInt(check);
+			}
+		} catch (final EOFException ex) {
+			throw new RuntimeException("Spill file " + oldFile._file + " is truncated!");
+		} finally {
+			out.close();
+			if (oldRecords != null)
+				oldRecords.close();
+		}
+
+		if (oldFile != null) {
+			oldFile._file.delete();
+			_memoryUsed -= oldFile.getSize();
+		}
+		final SpillFile spillFile = new SpillFile(file, numRecords, bloom, index);
+		_spillFiles[partition] = spillFile;
+		_memoryUsed += spillFile.getSize() - table.getSize();
+		_tables[partition] = new Table();
+		_memoryUsed += _tables[partition].getSize();
+		LOG.info("FingerprintSet spilled " + size + " keys of partition " + partition + " to "
+				+ file + ", which now has " + numRecords + " keys.");
+	}
+
+	/*
+	 * returns false if there is nothing left to spill
+	 */
+	private boolean spillLargest() {
+		int largest = -1;
+		for (int i = 0; i < NUM_PARTITIONS; i++)
+			if (_tables[i]._size >= MIN_SPILLED_KEYS
+					&& (largest == -1 || _tables[i]._size > _tables[largest]._size))
+				largest = i;
+		if (largest == -1)
+			return false;
+		try {
+			spill(largest);
+		} catch (final IOException ex) {
+			throw new RuntimeException("Cannot spill to " + _spillDir + ": " + ex.getMessage());
+		}
+		return true;
+	}
+
+	/*
+	 * all the keys, including the spilled ones, so that the set can be restored
+	 * on another machine
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeLong(_size);
+		for (int partition = 0; partition < NUM_PARTITIONS; partition++) {
+			final Table table = _tables[partition];
+			for (int i = 0; i < table._fingerprints.length; i++)
+				if (table._fingerprints[i] != 0) {
+					out.writeLong(table._fingerprints[i]);
+					out.writeInt(table._checks[i]);
+				}
+			final SpillFile spillFile = _spillFiles[partition];
+			if (spillFile != null) {
+				final DataInputStream records = new DataInputStream(new BufferedInputStream(
+						new FileInputStream(spillFile._file)));
+				try {
+					for (long i = 0; i < spillFile._numRecords; i++) {
+						out.writeLong(records.readLong());
+						out.writeInt(records.readInt());
+					}
+				} finally {
+					records.close();
+				}
+			}
+		}
+	}
+
+}
@@ -1,5 +1,8 @@
 package plan_runner.storage;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -48,10 +51,24 @@ public class KeyValueStore<K, V> extends BasicStore {
 
 	private static Logger LOG = Logger.getLogger(KeyValueStore.class);
 	private TypeConversion _tc = null;
-	private HashMap<K, Object> _memstore;
+	// the content is serialized as (key, values) pairs, see writeObject
+	private transient HashMap<K, Object> _memstore;
 	protected static final int DEFAULT_HASH_INDICES = 256;
 
-	protected ReplacementAlgorithm<HashEntry<K, V>> _replAlg;
+	protected transient ReplacementAlgorithm<HashEntry<K, V>> _replAlg;
+
+	// the number of bytes of the keys and values (without the overhead of the
+	// hash map), as in TupleStorage
+	private long _numBytes;
+
+	// a String is counted by its length, anything else as a primitive
+	private static long getNumBytes(Object obj) {
+		if (obj == null)
+			return 0;
+		if (obj instanceof String)
+			return ((String) obj).length();
+		return 8;
+	}
 
 	public KeyValueStore(int storesizemb, int hash_indices, Map conf) {
 		super(storesizemb);
@@ -126,9 +143,10 @@ public class KeyValueStore<K, V> extends BasicStore {
 			values = entry.getValues();
 			// Get the index of the old value (if it exists)
 			final int index = values.indexOf(oldValue);
-			if (index != -1)
+			if (index != -1) {
 				values.set(index, newValue);
-			else
+				_numBytes += getNumBytes(newValue) - getNumBytes(oldValue);
+			} else
 				// LOG.info("KeyValueStore: BUG: No element for key " + key +
 				// " found in store, but store's metadata register elements.");
 				System.exit(0);
@@ -206,6 +224,17 @@ public class KeyValueStore<K, V> extends BasicStore {
 		return true;
 	}
 
+	public long getNumBytes() {
+		return _numBytes;
+	}
+
+	/*
+	 * a copy of the keys, e.g. for moving some of them to another task
+	 */
+	public Set<K> getKeys() {
+		return keySet();
+	}
+
 	protected Set<K> keySet() {
 		final Set<K> memKeys = this._memstore.keySet();
 		// YANNIS: TODO
@@ -225,6 +254,7 @@ public class KeyValueStore<K, V> extends BasicStore {
 
 		/* First, register this new value in the memoryManager */
 		_memoryManager.allocateMemory(_memoryManager.getSize(value));
+		_numBytes += getNumBytes(value);
 
 		/* Do we have an entry for this key? */
 		if (this._memstore.containsKey(key) == false) {
@@ -235,6 +265,7 @@ public class KeyValueStore<K, V> extends BasicStore {
 			 * account.
 			 */
 			_memoryManager.allocateMemory(_memoryManager.getSize(key));
+			_numBytes += getNumBytes(key);
 
 			/*
 			 * No entry for this key--> create a new entry (key, values list
@@ -264,6 +295,7 @@ public class KeyValueStore<K, V> extends BasicStore {
 		// Remove an entry from the list and free its memory
 		final V value = values.remove(0);
 		_memoryManager.releaseMemory(value);
+		_numBytes -= getNumBytes(value);
 
 		// Written whole list to storage
 		if (values.size() == 0) {
@@ -271,6 +303,7 @@ public class KeyValueStore<K, V> extends BasicStore {
 			_replAlg.remove();
 			// Release memory for key and for values
 			_memoryManager.releaseMemory(entry.getKey());
+			_numBytes -= getNumBytes(key);
 		}
 
 		// Set the file to write
@@ -278,6 +311,51 @@ public class KeyValueStore<K, V> extends BasicStore {
 		return value;
 	}
 
+	/*
+	 * Removes a single occurrence of the value (e.g. a deleted tuple), and the
+	 * key once it has no more values. Returns false if there is no such value.
+	 */
+	public boolean remove(K key, V value) {
+		final Object obj = this._memstore.get(key);
+		if (obj == null)
+			return false;
+		final HashEntry<K, V> entry = _replAlg.get(obj);
+		final ArrayList<V> values = entry.getValues();
+		final int index = values.indexOf(value);
+		if (index == -1)
+			return false;
+		values.remove(index);
+		_memoryManager.releaseMemory(value);
+		_numBytes -= getNumBytes(value);
+
+		if (values.isEmpty()) {
+			_memstore.remove(key);
+			((LRUList) _replAlg).remove(obj);
+			_memoryManager.releaseMemory(key);
+			_numBytes -= getNumBytes(key);
+		}
+		return true;
+	}
+
+	/*
+	 * Removes the key with all its values, which are returned (null if there
+	 * is no such key)
+	 */
+	public ArrayList<V> removeKey(K key) {
+		final Object obj = this._memstore.remove(key);
+		if (obj == null)
+			return null;
+		final ArrayList<V> values = _replAlg.get(obj).getValues();
+		((LRUList) _replAlg).remove(obj);
+		for (final V value : values) {
+			_memoryManager.releaseMemory(value);
+			_numBytes -= getNumBytes(value);
+		}
+		_memoryManager.releaseMemory(key);
+		_numBytes -= getNumBytes(key);
+		return values;
+	}
+
 	@Override
 	public void printStore(PrintStream stream, boolean printStorage) {
 		ArrayList<V> values;
@@ -317,9 +395,27 @@ public class KeyValueStore<K, V> extends BasicStore {
 	public void reset() {
 		this._memstore.clear();
 		this._replAlg.reset();
+		_numBytes = 0;
 		_storageManager.deleteAllFilesRootDir();
 	}
 
+	/*
+	 * The linked nodes of the replacement algorithm are not serialized one by
+	 * one (it would recurse once per node), but rebuilt from the content,
+	 * e.g. for checkpoints.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		final int numKeys = in.readInt();
+		_replAlg = new LRUList<HashEntry<K, V>>();
+		_memstore = new HashMap<K, Object>(Math.max(numKeys, DEFAULT_HASH_INDICES));
+		for (int i = 0; i < numKeys; i++) {
+			final K key = (K) in.readObject();
+			final ArrayList<V> values = (ArrayList<V>) in.readObject();
+			_memstore.put(key, _replAlg.add(new HashEntry<K, V>(key, values)));
+		}
+	}
+
 	public void setTypeConversion(TypeConversion tc) {
 		this._tc = tc;
 	}
@@ -339,4 +435,14 @@ public class KeyValueStore<K, V> extends BasicStore {
 		return __update(true, data);
 	}
 
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(_memstore.size());
+		for (final Object obj : _memstore.values()) {
+			final HashEntry<K, V> entry = _replAlg.get(obj);
+			out.writeObject(entry.getKey());
+			out.writeObject(entry.getValues());
+		}
+	}
+
 }
@@ -112,6 +112,23 @@ public class LRUList<V> implements ReplacementAlgorithm<V>, Serializable {
 		return oldTail.getObject();
 	}
 
+	/*
+	 * Removes a node returned by add, wherever it is in the list
+	 */
+	public void remove(Object obj) {
+		final LRUNode node = (LRUNode) obj;
+		if (node.prev != null)
+			node.prev.next = node.next;
+		else
+			this.head = node.next;
+		if (node.next != null)
+			node.next.prev = node.prev;
+		else
+			this.tail = node.prev;
+		node.prev = null;
+		node.next = null;
+	}
+
 	@Override
 	public void reset() {
 		this.head = null;
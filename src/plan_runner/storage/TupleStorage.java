@@ -7,7 +7,9 @@ import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 
 /**
- * Tuple storage. Provides ~O(1) random access and insertion
+ * Tuple storage. Provides ~O(1) random access, insertion and removal. Ids are
+ * never reused: the id of a removed tuple stays a tombstone, so that the ids
+ * are still valid in the indexes over the storage.
  */
 public class TupleStorage implements Serializable {
 
@@ -139,18 +141,28 @@ public class TupleStorage implements Serializable {
 
 	private int _lastId;
 
+	// the number of tuples removed by remove(id)
+	private int _numTombstones;
+
+	// the number of bytes of all the stored tuples (without the overhead of
+	// the hash map)
+	private long _numBytes;
+
 	public TupleStorage() {
 		_storage = new TIntObjectHashMap<byte[]>();
 		_lastId = -1;
 	}
 
 	public TupleStorage(TupleStorage t) {
+		this();
 		copy(t);
 	}
 
 	public void clear() {
 		_lastId = -1;
 		_storage.clear();
+		_numBytes = 0;
+		_numTombstones = 0;
 	}
 
 	@Override
@@ -158,9 +170,34 @@ public class TupleStorage implements Serializable {
 		return super.clone();
 	}
 
+	public boolean contains(int id) {
+		return _storage.containsKey(id);
+	}
+
 	public void copy(TupleStorage t) {
 		_storage.putAll(t._storage);
 		_lastId = t._lastId;
+		_numTombstones = t._numTombstones;
+		_numBytes = 0;
+		for (final TIntObjectIterator<byte[]> iterator = _storage.iterator(); iterator.hasNext();) {
+			iterator.advance();
+			_numBytes += iterator.value().length;
+		}
+	}
+
+	/*
+	 * The same as copy, but the tombstones of t are skipped, so that the ids
+	 * are 0 --> (size() - 1)
+	 */
+	public void copyCompacted(TupleStorage t) {
+		for (int id = 0; id <= t._lastId; id++) {
+			final byte[] bytes = t._storage.get(id);
+			if (bytes != null) {
+				_lastId++;
+				_storage.put(_lastId, bytes);
+				_numBytes += bytes.length;
+			}
+		}
 	}
 
 	public String get(int id) {
@@ -172,6 +209,14 @@ public class TupleStorage implements Serializable {
 		}
 	}
 
+	public int getLastId() {
+		return _lastId;
+	}
+
+	public long getNumBytes() {
+		return _numBytes;
+	}
+
 	protected TIntObjectHashMap<byte[]> getStorage() {
 		return _storage;
 	}
@@ -179,7 +224,9 @@ public class TupleStorage implements Serializable {
 	public int insert(String tuple) {
 		_lastId++;
 		try {
-			_storage.put(_lastId, tuple.getBytes("UTF-8"));
+			final byte[] bytes = tuple.getBytes("UTF-8");
+			_storage.put(_lastId, bytes);
+			_numBytes += bytes.length;
 		} catch (final UnsupportedEncodingException e) {
 			e.printStackTrace();
 		}
@@ -187,10 +234,33 @@ public class TupleStorage implements Serializable {
 		return _lastId;
 	}
 
+	/*
+	 * true if there are no tombstones, i.e. the ids are 0 --> (size() - 1)
+	 */
+	public boolean isDense() {
+		return _numTombstones == 0;
+	}
+
+	/*
+	 * Removes a single tuple (e.g. a deleted one); its id becomes a tombstone.
+	 * Returns false if there is no tuple with this id.
+	 */
+	public boolean remove(int id) {
+		final byte[] removed = _storage.remove(id);
+		if (removed == null)
+			return false;
+		_numBytes -= removed.length;
+		_numTombstones++;
+		return true;
+	}
+
 	// Should be treated with care. Valid indexes From 0-->(_storage.size()-1)
 	public void remove(int beginIndex, int endIndex) {
-		for (int i = beginIndex; i <= endIndex; i++)
-			_storage.remove(i);
+		for (int i = beginIndex; i <= endIndex; i++) {
+			final byte[] removed = _storage.remove(i);
+			if (removed != null)
+				_numBytes -= removed.length;
+		}
 	}
 
 	public int size() {
@@ -0,0 +1,84 @@
+package plan_runner.storage;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import plan_runner.utilities.WindowSemantics;
+
+/*
+ * The state of a windowed component, kept in segments (e.g. a KeyValueStore per segment).
+ *   Each segment holds the tuples whose positions fall into one slide of the window.
+ * Expired state is evicted in bulk: a whole segment is dropped once it leaves the window,
+ *   so there is no per-tuple scan.
+ * The current position only moves forward: the position of a late tuple (e.g. a smaller timestamp
+ *   from another data source) does not move the window back.
+ */
+public abstract class WindowSegments<S> implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final WindowSemantics _window;
+	private final TreeMap<Long, S> _segments = new TreeMap<Long, S>();
+	private long _position = 0;
+	private long _numEvictedSegments = 0;
+
+	public WindowSegments(WindowSemantics window) {
+		_window = window;
+	}
+
+	/*
+	 * moves the window to position (if it is newer than the current one), and
+	 * drops the expired segments
+	 */
+	public void advance(long position) {
+		if (position <= _position)
+			return;
+		_position = position;
+		final SortedMap<Long, S> expired = _segments.headMap(_window
+				.getOldestLiveSegmentId(_position));
+		if (!expired.isEmpty()) {
+			_numEvictedSegments += expired.size();
+			expired.clear();
+		}
+	}
+
+	protected abstract S createSegment();
+
+	public long getNumEvictedSegments() {
+		return _numEvictedSegments;
+	}
+
+	public long getPosition() {
+		return _position;
+	}
+
+	/*
+	 * the segment to which a tuple with this position belongs; it is created
+	 * if it does not exist. Returns null if the tuple is already out of the
+	 * window.
+	 */
+	public S getSegment(long position) {
+		final long segmentId = _window.getSegmentId(position);
+		if (segmentId < _window.getOldestLiveSegmentId(_position))
+			return null;
+		S segment = _segments.get(segmentId);
+		if (segment == null) {
+			segment = createSegment();
+			_segments.put(segmentId, segment);
+		}
+		return segment;
+	}
+
+	/*
+	 * the live segments, from the oldest one
+	 */
+	public Collection<S> getSegments() {
+		return _segments.values();
+	}
+
+	public WindowSemantics getWindow() {
+		return _window;
+	}
+
+}
@@ -1,23 +1,47 @@
 package plan_runner.storm_components;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
 
 import plan_runner.components.ComponentProperties;
+import plan_runner.components.DataSourceComponent;
 import plan_runner.expressions.ValueExpression;
 import plan_runner.operators.AggregateOperator;
 import plan_runner.operators.ChainOperator;
 import plan_runner.operators.Operator;
+import plan_runner.storage.CheckpointStore;
+import plan_runner.storm_components.synchronization.CheckpointTracker;
+import plan_runner.storm_components.synchronization.EndOfInputTracker;
+import plan_runner.storm_components.synchronization.EpochTracker;
+import plan_runner.storm_components.synchronization.LatencyMarker;
+import plan_runner.storm_components.synchronization.OnlineAggMerger;
+import plan_runner.thetajoin.indexes.Index;
+import plan_runner.utilities.AdaptiveBatchSize;
+import plan_runner.utilities.ElasticSchedule;
+import plan_runner.utilities.ManualBatcher;
 import plan_runner.utilities.MyUtilities;
+import plan_runner.utilities.ParallelProber;
 import plan_runner.utilities.PeriodicAggBatchSend;
 import plan_runner.utilities.SystemParameters;
+import plan_runner.utilities.statistics.ComponentMetrics;
+import plan_runner.utilities.statistics.Gauge;
+import plan_runner.utilities.statistics.LatencyHistogram;
+import plan_runner.utilities.statistics.MetricsReporter;
+import plan_runner.utilities.statistics.OnlineEstimator;
+import backtype.storm.Config;
+import backtype.storm.Constants;
 import backtype.storm.task.OutputCollector;
 import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.BoltDeclarer;
+import backtype.storm.topology.InputDeclarer;
 import backtype.storm.topology.OutputFieldsDeclarer;
+import backtype.storm.topology.TopologyBuilder;
 import backtype.storm.topology.base.BaseRichBolt;
 import backtype.storm.tuple.Fields;
 import backtype.storm.tuple.Tuple;
@@ -25,6 +49,8 @@ import backtype.storm.tuple.Values;
 
 public abstract class StormBoltComponent extends BaseRichBolt implements StormJoin, StormComponent {
 	private static final long serialVersionUID = 1L;
+	// the period of the tick tuples in Elastic mode
+	private static final int ELASTIC_TICK_SECS = 1;
 	private static Logger LOG = Logger.getLogger(StormBoltComponent.class);
 
 	private final Map _conf;
@@ -50,8 +76,10 @@ public abstract class StormBoltComponent extends BaseRichBolt implements StormJo
 	// for ManualBatch(Queuing) mode
 	private List<Integer> _targetTaskIds;
 	private int _targetParallelism;
-	private StringBuffer[] _targetBuffers;
-	private long[] _targetTimestamps;
+	private ManualBatcher _batcher;
+
+	// for AdaptiveBatch mode (on top of ManualBatch mode)
+	private AdaptiveBatchSize _adaptiveBatch;
 
 	// for CustomTimestamp mode
 	private double _totalLatencyMillis;
@@ -61,43 +89,182 @@ public abstract class StormBoltComponent extends BaseRichBolt implements StormJo
 	protected long numNegatives = 0;
 	protected double maxNegative = 0;
 
+	// for HierarchicalEOF mode
+	private boolean _isEndOfInputAttached;
+	private EndOfInputTracker _eoiTracker;
+	private boolean _isContentPrinted;
+
+	// for Checkpoint mode
+	private boolean _isCheckpointAttached;
+	private CheckpointTracker _checkpointTracker;
+	private CheckpointStore _checkpointStore;
+
+	// for Metrics mode
+	private ComponentMetrics _metrics;
+	private MetricsReporter _metricsReporter;
+	private long _executeStartNanos;
+
+	// for Elastic mode: as a sender, the schedule of the elastic child, if any
+	private ElasticSchedule _elasticTarget;
+	private long _elasticStartMillis;
+	private int _epoch;
+	// as an elastic join
+	private boolean _isElasticAttached;
+	private ElasticSchedule _elasticSchedule;
+	private EpochTracker _epochTracker;
+	private List<Integer> _elasticTasks;
+	private int _elasticTaskIndex;
+	private long _numMigratedTuples;
+
+	// for LatencyMarkers mode
+	private boolean _isLatencyMarkerAttached;
+	// empty on the final component (or if no child receives markers, e.g. the
+	// broadcast side of a StormBroadcastJoin)
+	private List<Integer> _markerTasks;
+	// whether markers wait for the batches of their destinations
+	private boolean _isMarkerBatched;
+	private int _markerRound;
+	private LatencyHistogram _markerResidenceNanos;
+	// on the final component: the sums of the residences along the path
+	private LatencyHistogram _markerPathNanos;
+
+	// for OnlineAgg mode
+	private boolean _isOnlineAggAttached;
+	// on the final component: the ancestor data sources (a relation which is
+	// joined with itself appears twice), and the fraction of its section each
+	// of their tasks has read
+	private List<String> _onlineAggSources;
+	private Map<String, Map<Integer, Double>> _progress;
+	private long _estimateMillis;
+	private long _lastEstimateMillis;
+	private List<Integer> _mergeTasks;
+
+	// for ParallelProbe mode
+	private ParallelProber _prober;
+
 	public StormBoltComponent(ComponentProperties cp, List<String> allCompNames,
 			int hierarchyPosition, Map conf) {
+		this(cp, cp.getParents(), allCompNames, hierarchyPosition, conf);
+	}
+
+	/*
+	 * parentEmitters are the parents this bolt receives tuples from, if not
+	 * all the parents of cp (e.g. a broadcast join)
+	 */
+	public StormBoltComponent(ComponentProperties cp, StormEmitter[] parentEmitters,
+			List<String> allCompNames, int hierarchyPosition, Map conf) {
 		_conf = conf;
 		_ID = cp.getName();
 		_componentIndex = String.valueOf(allCompNames.indexOf(_ID));
 		_printOut = cp.getPrintOut();
 		_hierarchyPosition = hierarchyPosition;
 
-		_parentEmitters = cp.getParents();
+		_parentEmitters = parentEmitters;
 
 		_hashIndexes = cp.getHashIndexes();
 		_hashExpressions = cp.getHashExpressions();
 	}
 
-	// ManualBatchMode
+	// ManualBatchMode (and AdaptiveBatch mode)
 	private void addToManualBatch(List<String> tuple, long timestamp) {
 		final String tupleHash = MyUtilities.createHashString(tuple, _hashIndexes,
 				_hashExpressions, _conf);
-		final int dstIndex = MyUtilities.chooseHashTargetIndex(tupleHash, _targetParallelism);
-
-		// we put in queueTuple based on tupleHash
-		// the same hash is used in BatchStreamGrouping for deciding where a
-		// particular targetBuffer is to be sent
-		final String tupleString = MyUtilities.tupleToString(tuple, _conf);
-
-		if (MyUtilities.isCustomTimestampMode(_conf))
-			if (_targetBuffers[dstIndex].length() == 0)
-				// timestamp of the first tuple being added to a buffer is the
-				// timestamp of the buffer
-				_targetTimestamps[dstIndex] = timestamp;
-			else
-				// on a bolt, tuples might arrive out of order wrt timestamps
-				_targetTimestamps[dstIndex] = MyUtilities.getMin(timestamp,
-						_targetTimestamps[dstIndex]);
-		_targetBuffers[dstIndex].append(tupleHash)
-				.append(SystemParameters.MANUAL_BATCH_HASH_DELIMITER).append(tupleString)
-				.append(SystemParameters.MANUAL_BATCH_TUPLE_DELIMITER);
+		// the batcher puts the tuple in the buffer of its destination, based
+		// on tupleHash, and sends the batch when it is full
+		_batcher.add(tupleHash, MyUtilities.tupleToString(tuple, _conf), timestamp);
+	}
+
+	/*
+	 * HierarchicalEOF mode: has to be invoked from the constructor of each
+	 * subclass which supports it
+	 */
+	protected InputDeclarer attachEndOfInput(TopologyBuilder builder, InputDeclarer currentBolt,
+			StormEmitter emitter1, StormEmitter... emittersArray) {
+		_isEndOfInputAttached = true;
+		return MyUtilities.attachEndOfInput(builder, _ID, currentBolt, emitter1, emittersArray);
+	}
+
+	/*
+	 * ManualBatch mode: has to be invoked from the constructor of each
+	 * subclass, on the declarer returned by setBolt (see processTick)
+	 */
+	protected void attachTickTuples(InputDeclarer currentBolt) {
+		int tickSecs = ManualBatcher.getTickSecs(_conf);
+		if (MyUtilities.isElasticMode(_conf))
+			// the epochs are switched even if no data tuples arrive
+			tickSecs = ELASTIC_TICK_SECS;
+		if (tickSecs > 0)
+			((BoltDeclarer) currentBolt).addConfiguration(
+					Config.TOPOLOGY_TICK_TUPLE_FREQ_SECS, tickSecs);
+	}
+
+	/*
+	 * Checkpoint mode: has to be invoked from the constructor of each subclass
+	 * which supports it
+	 */
+	protected InputDeclarer attachCheckpoint(InputDeclarer currentBolt, StormEmitter emitter1,
+			StormEmitter... emittersArray) {
+		_isCheckpointAttached = true;
+		return MyUtilities.attachCheckpoint(currentBolt, emitter1, emittersArray);
+	}
+
+	/*
+	 * Elastic mode: has to be invoked from the constructor of each subclass
+	 * which supports it
+	 */
+	protected InputDeclarer attachElastic(InputDeclarer currentBolt, StormEmitter emitter1,
+			StormEmitter... emittersArray) {
+		_isElasticAttached = true;
+		return MyUtilities.attachElastic(_ID, currentBolt, emitter1, emittersArray);
+	}
+
+	/*
+	 * LatencyMarkers mode: has to be invoked from the constructor of each
+	 * subclass which supports it
+	 */
+	protected InputDeclarer attachLatencyMarkers(InputDeclarer currentBolt,
+			StormEmitter emitter1, StormEmitter... emittersArray) {
+		_isLatencyMarkerAttached = true;
+		return MyUtilities.attachLatencyMarkers(currentBolt, emitter1, emittersArray);
+	}
+
+	/*
+	 * OnlineAgg mode: has to be invoked from the constructor of each subclass
+	 * which supports it; only the final component receives the progress of
+	 * the data sources which are not scanned locally, and sends its estimates
+	 * to an OnlineAggMerger
+	 */
+	protected InputDeclarer attachOnlineAgg(TopologyBuilder builder, InputDeclarer currentBolt,
+			ComponentProperties cp) {
+		_isOnlineAggAttached = true;
+		if (_hierarchyPosition != FINAL_COMPONENT)
+			return currentBolt;
+		_onlineAggSources = new ArrayList<String>();
+		for (final DataSourceComponent source : cp.getAncestorDataSources())
+			if (!source.isScannedLocally())
+				_onlineAggSources.add(source.getName());
+		if (OnlineEstimator.find(cp.getChainOperator()) != null)
+			new OnlineAggMerger(_ID, cp.getChainOperator(), _conf, builder);
+		return MyUtilities.attachOnlineAgg(currentBolt, _onlineAggSources);
+	}
+
+	// Metrics mode: has to be the first thing done in execute, it marks the
+	// beginning of processing a tuple (see countDataTuple)
+	protected void startExecuteTimer() {
+		if (_metrics != null)
+			_executeStartNanos = System.nanoTime();
+	}
+
+	// HierarchicalEOF and Metrics mode: invoked after a data tuple is fully
+	// processed
+	protected void countDataTuple() {
+		if (_metrics != null)
+			_metrics.countReceived(System.nanoTime() - _executeStartNanos);
+		if (_eoiTracker != null) {
+			_eoiTracker.countReceived();
+			if (_eoiTracker.isJustFinished())
+				endOfInputFinalization();
+		}
 	}
 
 	@Override
@@ -108,11 +275,15 @@ public abstract class StormBoltComponent extends BaseRichBolt implements StormJo
 			if (!MyUtilities.isAckEveryTuple(_conf))
 				declarer.declareStream(SystemParameters.EOF_STREAM,
 						new Fields(SystemParameters.EOF));
+			if (MyUtilities.isOnlineAggMode(_conf))
+				declarer.declareStream(SystemParameters.ESTIMATE_STREAM, true, new Fields(
+						SystemParameters.PROGRESS, SystemParameters.ESTIMATE));
 		} else {
 			final List<String> outputFields = new ArrayList<String>();
 			if (MyUtilities.isManualBatchingMode(_conf)) {
 				outputFields.add(StormComponent.COMP_INDEX);
 				outputFields.add(StormComponent.TUPLE); // string
+				outputFields.add(StormComponent.DESTINATION);
 			} else {
 				outputFields.add(StormComponent.COMP_INDEX);
 				outputFields.add(StormComponent.TUPLE); // list of string
@@ -120,12 +291,97 @@ public abstract class StormBoltComponent extends BaseRichBolt implements StormJo
 			}
 			if (MyUtilities.isCustomTimestampMode(_conf))
 				outputFields.add(StormComponent.TIMESTAMP);
+			if (MyUtilities.isElasticMode(_conf))
+				outputFields.add(StormComponent.EPOCH);
 			declarer.declareStream(SystemParameters.DATA_STREAM, new Fields(outputFields));
+			if (MyUtilities.isHierarchicalEOF(_conf))
+				declarer.declareStream(SystemParameters.EOI_STREAM, new Fields(
+						SystemParameters.EOI));
+			if (MyUtilities.isCheckpointMode(_conf))
+				declarer.declareStream(SystemParameters.CHECKPOINT_STREAM, new Fields(
+						SystemParameters.CHECKPOINT));
+			if (MyUtilities.isLatencyMarkersMode(_conf))
+				declarer.declareStream(SystemParameters.LATENCY_MARKER_STREAM, true, new Fields(
+						SystemParameters.LATENCY_MARKER));
+			if (MyUtilities.isElasticMode(_conf))
+				declarer.declareStream(SystemParameters.EPOCH_STREAM, new Fields(
+						StormComponent.EPOCH));
+		}
+		if (ElasticSchedule.create(_ID, _conf) != null)
+			// the relation is -1 for the end of a migration
+			declarer.declareStream(SystemParameters.MIGRATION_STREAM, true, new Fields(
+					StormComponent.EPOCH, SystemParameters.MIGRATION, StormComponent.HASH,
+					StormComponent.TUPLE));
+	}
+
+	/*
+	 * Elastic mode: the epochs are switched on the clock of this task, so it
+	 * is checked on each received tuple, including the tick tuples (see
+	 * processTick)
+	 */
+	protected void checkElasticEpoch() {
+		if (_elasticTarget != null && _numRemainingParents > 0)
+			// no barrier after LAST_ACK
+			elasticEpochSend();
+	}
+
+	/*
+	 * Elastic mode: switches to the next epoch(s) of the elastic child on
+	 * schedule
+	 */
+	private void elasticEpochSend() {
+		final int epoch = _elasticTarget.getEpoch(System.currentTimeMillis()
+				- _elasticStartMillis);
+		while (_epoch < epoch) {
+			if (_batcher != null) {
+				// the pending batches are routed by the ring of the previous
+				// epoch
+				_batcher.flushAll();
+				_batcher.setRing(_elasticTarget.getRing(_epoch + 1));
+			}
+			_epoch++;
+			_collector.emit(SystemParameters.EPOCH_STREAM, new Values(_epoch));
+		}
+	}
+
+	/*
+	 * HierarchicalEOF mode: all the parent tasks are done and all the tuples
+	 * they sent to this task are processed
+	 */
+	private void endOfInputFinalization() {
+		final PeriodicAggBatchSend periodicBatch = getPeriodicAggBatch();
+		if (periodicBatch != null) {
+			periodicBatch.cancel();
+			periodicBatch.getComponent().aggBatchSend();
+		}
+		finalContentSend();
+		if (MyUtilities.isManualBatchingMode(_conf))
+			manualBatchSend();
+		finalizeProcessing();
+
+		if (_hierarchyPosition != FINAL_COMPONENT)
+			_collector.emit(SystemParameters.EOI_STREAM, _eoiTracker.createPunctuation());
+		else {
+			// blocking operators do not wait for the DumpResults signal
+			// from the TopologyKiller
+			printContent();
+			_isContentPrinted = true;
+			_collector.emit(SystemParameters.EOF_STREAM, new Values(SystemParameters.EOF));
 		}
 	}
 
 	public abstract ChainOperator getChainOperator();
 
+	/*
+	 * Checkpoint mode: the state which is written as a whole at each
+	 * checkpoint (the changes of the stores are logged, see logChange). By
+	 * default, these are the operators, except the aggregations which log
+	 * their changed groups (see CheckpointStore.attachChain).
+	 */
+	protected Serializable getCheckpointSnapshot() {
+		return _checkpointStore.getChainSnapshot(getChainOperator());
+	}
+
 	protected OutputCollector getCollector() {
 		return _collector;
 	}
@@ -161,18 +417,26 @@ public abstract class StormBoltComponent extends BaseRichBolt implements StormJo
 
 	public abstract PeriodicAggBatchSend getPeriodicAggBatch();
 
+	protected static long getNumIndexEntries(List<Index> indexes) {
+		long result = 0;
+		if (indexes != null)
+			for (final Index index : indexes)
+				result += index.size();
+		return result;
+	}
+
+	/*
+	 * Checkpoint mode: a change of the store of a relation (0 or 1) is logged
+	 * for the next checkpoint, see restoreChange
+	 */
+	protected void logChange(int relation, String key, String value, boolean isDeletion) {
+		if (_checkpointStore != null)
+			_checkpointStore.logChange(relation, key, value, isDeletion);
+	}
+
 	protected void manualBatchSend() {
-		for (int i = 0; i < _targetParallelism; i++) {
-			final String tupleString = _targetBuffers[i].toString();
-			_targetBuffers[i] = new StringBuffer("");
-
-			if (!tupleString.isEmpty())
-				// some buffers might be empty
-				if (MyUtilities.isCustomTimestampMode(_conf))
-					_collector.emit(new Values(_componentIndex, tupleString, _targetTimestamps[i]));
-				else
-					_collector.emit(new Values(_componentIndex, tupleString));
-		}
+		if (_batcher != null)
+			_batcher.flushAll();
 	}
 
 	// BaseRichSpout
@@ -187,12 +451,137 @@ public abstract class StormBoltComponent extends BaseRichBolt implements StormJo
 
 		_thisTaskID = tc.getThisTaskId();
 
+		if (MyUtilities.isHierarchicalEOF(_conf)) {
+			if (!_isEndOfInputAttached)
+				throw new RuntimeException(_ID
+						+ " does not support DIP_HIERARCHICAL_EOF mode, or one of its parents is not supported!");
+			_eoiTracker = new EndOfInputTracker();
+		}
+
+		if (MyUtilities.isCheckpointMode(_conf)) {
+			if (!_isCheckpointAttached)
+				throw new RuntimeException(_ID
+						+ " does not support DIP_CHECKPOINT_DIR mode, or one of its parents is not supported!");
+			_checkpointTracker = new CheckpointTracker(_numRemainingParents);
+			_checkpointStore = new CheckpointStore(_ID, tc.getThisTaskIndex(), _conf);
+			_checkpointStore.attachChain(getChainOperator());
+			final Serializable snapshot = _checkpointStore
+					.restore(new CheckpointStore.ChangeListener() {
+						@Override
+						public void restoreChange(int relation, String key, String value,
+								boolean isDeletion) {
+							StormBoltComponent.this.restoreChange(relation, key, value,
+									isDeletion);
+						}
+					});
+			if (snapshot != null)
+				restoreCheckpointSnapshot(snapshot);
+		}
+
 		_targetTaskIds = MyUtilities.findTargetTaskIds(tc);
 		_targetParallelism = _targetTaskIds.size();
-		_targetBuffers = new StringBuffer[_targetParallelism];
-		_targetTimestamps = new long[_targetParallelism];
-		for (int i = 0; i < _targetParallelism; i++)
-			_targetBuffers[i] = new StringBuffer("");
+		if (MyUtilities.isAdaptiveBatchingMode(_conf))
+			_adaptiveBatch = new AdaptiveBatchSize(_ID, _conf);
+		if (MyUtilities.isManualBatchingMode(_conf) && _targetParallelism > 0)
+			_batcher = new ManualBatcher(_ID, _targetParallelism, _adaptiveBatch, _conf,
+					new ManualBatcher.BatchEmitter() {
+						@Override
+						public List<Integer> emitBatch(int destination, String batch,
+								long timestamp) {
+							final Values values = new Values(_componentIndex, batch,
+									destination);
+							if (MyUtilities.isCustomTimestampMode(_conf))
+								values.add(timestamp);
+							if (MyUtilities.isElasticMode(_conf))
+								values.add(_epoch);
+							final List<Integer> taskIds = _collector.emit(values);
+							if (_eoiTracker != null)
+								_eoiTracker.countSent(taskIds);
+							return taskIds;
+						}
+
+						@Override
+						public void emitMarker(int destination, LatencyMarker marker) {
+							latencyMarkerEmit(destination, marker);
+						}
+					});
+
+		if (MyUtilities.isElasticMode(_conf)) {
+			_elasticTarget = ElasticSchedule.findTarget(tc, _conf);
+			_elasticStartMillis = System.currentTimeMillis();
+			if (_elasticTarget != null && _batcher != null)
+				_batcher.setRing(_elasticTarget.getRing(0));
+
+			_elasticSchedule = ElasticSchedule.create(_ID, _conf);
+			if (_elasticSchedule != null) {
+				if (!_isElasticAttached)
+					throw new RuntimeException(_ID
+							+ " does not support DIP_ELASTIC mode, or one of its parents is not supported!");
+				if (MyUtilities.isHierarchicalEOF(_conf) || MyUtilities.isCheckpointMode(_conf))
+					throw new RuntimeException(_ID
+							+ ": Elastic joins do not support DIP_HIERARCHICAL_EOF and DIP_CHECKPOINT_DIR modes!");
+				_elasticTasks = tc.getComponentTasks(_ID);
+				_elasticTaskIndex = tc.getThisTaskIndex();
+				_epochTracker = new EpochTracker(_numRemainingParents, _elasticTasks.size() - 1);
+			}
+		}
+
+		if (MyUtilities.isLatencyMarkersMode(_conf)) {
+			if (!_isLatencyMarkerAttached)
+				throw new RuntimeException(_ID
+						+ " does not support DIP_LATENCY_MARKERS mode, or one of its parents is not supported!");
+			final List<List<Integer>> markerTargets = MyUtilities.findLatencyMarkerTargets(tc);
+			_markerTasks = new ArrayList<Integer>();
+			for (final List<Integer> tasks : markerTargets)
+				_markerTasks.addAll(tasks);
+			// the destinations of the batcher are the tasks of the only child
+			_isMarkerBatched = _batcher != null && markerTargets.size() == 1;
+			_markerResidenceNanos = new LatencyHistogram();
+			if (_hierarchyPosition == FINAL_COMPONENT)
+				_markerPathNanos = new LatencyHistogram();
+		}
+
+		if (MyUtilities.isOnlineAggMode(_conf) && _hierarchyPosition == FINAL_COMPONENT) {
+			if (!_isOnlineAggAttached)
+				throw new RuntimeException(_ID + " does not support DIP_ONLINE_AGG mode!");
+			_progress = new HashMap<String, Map<Integer, Double>>();
+			for (final String source : _onlineAggSources) {
+				final Map<Integer, Double> taskProgress = new HashMap<Integer, Double>();
+				for (final Integer task : tc.getComponentTasks(source))
+					taskProgress.put(task, 0.0);
+				_progress.put(source, taskProgress);
+			}
+			_estimateMillis = 1000;
+			if (SystemParameters.isExisting(_conf, "DIP_ONLINE_AGG_MILLIS"))
+				_estimateMillis = SystemParameters.getInt(_conf, "DIP_ONLINE_AGG_MILLIS");
+			_mergeTasks = OnlineAggMerger.getMergeTasks(_ID, getChainOperator(), tc);
+		}
+
+		MyUtilities.startOperatorProfiling(getChainOperator(), _conf);
+		MyUtilities.startOperatorDeletions(getChainOperator(), _conf);
+		if (MyUtilities.isMetricsMode(_conf)) {
+			_metrics = new ComponentMetrics(_ID, _thisTaskID);
+			if (MyUtilities.isManualBatchingMode(_conf))
+				_metrics.registerGauge("batch_queue_bytes", new Gauge() {
+					@Override
+					public long getValue() {
+						return _batcher == null ? 0 : _batcher.getBytes();
+					}
+				});
+			if (_adaptiveBatch != null)
+				_metrics.registerGauge("batch_size", new Gauge() {
+					@Override
+					public long getValue() {
+						return _adaptiveBatch.getSize();
+					}
+				});
+			if (_markerResidenceNanos != null)
+				_metrics.registerHistogram("marker_residence_nanos", _markerResidenceNanos);
+			if (_markerPathNanos != null)
+				_metrics.registerHistogram("marker_path_nanos", _markerPathNanos);
+			registerGauges(_metrics);
+			_metricsReporter = new MetricsReporter(_metrics, _conf);
+		}
 
 		// initial statistics
 		printStatistics(SystemParameters.INITIAL_PRINT);
@@ -201,12 +590,35 @@ public abstract class StormBoltComponent extends BaseRichBolt implements StormJo
 	protected void sendToStatisticsCollector(List<String> tuple, int relationNumber){
 	}
 	
+	/*
+	 * invoked once all the parents are done, before the end of the input is
+	 * sent down the hierarchy (e.g. the top groups of a top-k, see
+	 * StormOperator)
+	 */
+	protected void finalContentSend() {
+	}
+
 	protected void finalizeProcessing(){
 		printStatistics(SystemParameters.FINAL_PRINT);
+		MyUtilities.printOperatorProfile(_ID, getChainOperator(), _conf, LOG);
+		if (_markerPathNanos != null)
+			LOG.info(_ID + ": latency markers " + LatencyMarker.summary(_markerPathNanos)
+					+ " along the path, " + LatencyMarker.summary(_markerResidenceNanos)
+					+ " residence.");
+		else if (_markerResidenceNanos != null)
+			LOG.info(_ID + ": latency markers " + LatencyMarker.summary(_markerResidenceNanos)
+					+ " residence.");
+		if (_metricsReporter != null)
+			_metricsReporter.finalReport();
+		if (_prober != null)
+			_prober.shutdown();
 	}	
 
 	@Override
 	public void printContent() {
+		// in HierarchicalEOF mode, it is already printed at the end of input
+		if (_isContentPrinted)
+			return;
 		if (_printOut)
 			if ((getChainOperator() != null) && getChainOperator().isBlocking()) {
 				final Operator lastOperator = getChainOperator().getLastOperator();
@@ -219,6 +631,20 @@ public abstract class StormBoltComponent extends BaseRichBolt implements StormJo
 			}
 	}
 
+	/*
+	 * null if not in ParallelProbe mode; the pool is created on the first call
+	 */
+	protected ParallelProber getParallelProber() {
+		if (_prober == null && MyUtilities.isParallelProbeMode(_conf)) {
+			int minProbeSize = ParallelProber.DEFAULT_MIN_PROBE_SIZE;
+			if (SystemParameters.isExisting(_conf, "DIP_PROBE_MIN_SIZE"))
+				minProbeSize = SystemParameters.getInt(_conf, "DIP_PROBE_MIN_SIZE");
+			_prober = new ParallelProber(_ID, SystemParameters.getInt(_conf, "DIP_PROBE_THREADS"),
+					minProbeSize);
+		}
+		return _prober;
+	}
+
 	protected abstract void printStatistics(int type);
 
 	@Override
@@ -265,6 +691,8 @@ public abstract class StormBoltComponent extends BaseRichBolt implements StormJo
 				}
 				_totalLatencyMillis += latencyMillis;
 				_numberOfSamples++;
+				if (_metrics != null)
+					_metrics.recordTupleLatency(latencyMillis);
 			}
 			if (tupleSerialNum % freqWrite == 0) {
 				LOG.info("Taking into account every " + freqCompute
@@ -282,24 +710,274 @@ public abstract class StormBoltComponent extends BaseRichBolt implements StormJo
 					+ "ms.");
 	}
 
+	/*
+	 * ManualBatch mode: returns true if stormTupleRcv is a tick tuple, on
+	 * which the batches which waited for DIP_BATCH_MAX_MILLIS are flushed
+	 * (from the executor thread, as the other emits)
+	 */
+	protected boolean processTick(Tuple stormTupleRcv) {
+		if (!stormTupleRcv.getSourceComponent().equals(Constants.SYSTEM_COMPONENT_ID)
+				|| !stormTupleRcv.getSourceStreamId().equals(Constants.SYSTEM_TICK_STREAM_ID))
+			return false;
+		if (_batcher != null)
+			_batcher.flushExpired(System.currentTimeMillis());
+		// a sender which receives no data tuples switches epochs as well
+		checkElasticEpoch();
+		return true;
+	}
+
+	/*
+	 * Checkpoint mode: returns true if stormTupleRcv is a checkpoint barrier,
+	 * or a tuple which is blocked until the barriers are aligned (then it is
+	 * executed again)
+	 */
+	protected boolean processCheckpoint(Tuple stormTupleRcv) {
+		if (_checkpointTracker == null)
+			return false;
+		if (_checkpointTracker.block(stormTupleRcv))
+			return true;
+		if (!stormTupleRcv.getSourceStreamId().equals(SystemParameters.CHECKPOINT_STREAM))
+			return false;
+		_checkpointTracker.receiveBarrier(stormTupleRcv.getSourceTask(),
+				stormTupleRcv.getLong(0));
+		_collector.ack(stormTupleRcv);
+		if (_checkpointTracker.isAligned())
+			takeCheckpoint();
+		return true;
+	}
+
 	// if true, we should exit from method which called this method
 	protected boolean processFinalAck(List<String> tuple, Tuple stormTupleRcv) {
 		if (MyUtilities.isFinalAck(tuple, getConf())) {
 			_numRemainingParents--;
+			if (_checkpointTracker != null) {
+				// the remaining parents might be aligned now
+				_checkpointTracker.parentFinished();
+				if (_checkpointTracker.isAligned())
+					takeCheckpoint();
+			}
 			if (_numRemainingParents == 0) {
+				finalContentSend();
 				if (MyUtilities.isManualBatchingMode(getConf())){
 					// flushing before sending lastAck down the hierarchy
 					manualBatchSend();
 				}
+				if (_checkpointStore != null)
+					_checkpointStore.finalCheckpoint(getCheckpointSnapshot());
 				finalizeProcessing();
 			}
 			MyUtilities.processFinalAck(_numRemainingParents, getHierarchyPosition(), getConf(),
 					stormTupleRcv, getCollector(), getPeriodicAggBatch());
+			if (_epochTracker != null) {
+				// the remaining parents might be aligned now (there are no
+				// blocked tuples if all the parents are done)
+				_epochTracker.parentFinished();
+				if (_epochTracker.isAligned())
+					startMigration();
+			}
 			return true;
 		}
 		return false;
 	}
 
+	/*
+	 * HierarchicalEOF mode: returns true if stormTupleRcv is an end-of-input
+	 * punctuation from the EndOfInputCoordinator
+	 */
+	protected boolean processEndOfInput(Tuple stormTupleRcv) {
+		if (_batcher != null)
+			// the latency bound (also checked on the tick tuples, see processTick)
+			_batcher.flushExpired(System.currentTimeMillis());
+		if (_eoiTracker == null
+				|| !stormTupleRcv.getSourceStreamId().equals(SystemParameters.EOI_STREAM))
+			return false;
+		_eoiTracker.setNumExpected(stormTupleRcv.getLong(0));
+		if (_eoiTracker.isJustFinished())
+			endOfInputFinalization();
+		_collector.ack(stormTupleRcv);
+		return true;
+	}
+
+	private void latencyMarkerEmit(int destination, LatencyMarker marker) {
+		final long residenceNanos = marker.getResidenceNanos();
+		_markerResidenceNanos.record(residenceNanos);
+		_collector.emitDirect(_markerTasks.get(destination),
+				SystemParameters.LATENCY_MARKER_STREAM, marker.getAnchor(),
+				new Values(marker.addHop(_ID, residenceNanos)));
+		// the marker is acked to the data source only after the final component
+		_collector.ack(marker.getAnchor());
+	}
+
+	/*
+	 * OnlineAgg mode: returns true if stormTupleRcv is the progress of a data
+	 * source task; the moments of the estimator are sent to the merge tasks
+	 * every DIP_ONLINE_AGG_MILLIS milliseconds, as the progress arrives
+	 * (rather than from a timer, which would race with the aggregation)
+	 */
+	protected boolean processOnlineAgg(Tuple stormTupleRcv) {
+		if (_progress == null
+				|| !stormTupleRcv.getSourceStreamId().equals(SystemParameters.PROGRESS_STREAM))
+			return false;
+		_progress.get(stormTupleRcv.getSourceComponent()).put(stormTupleRcv.getSourceTask(),
+				stormTupleRcv.getDouble(0));
+		_collector.ack(stormTupleRcv);
+
+		final long now = System.currentTimeMillis();
+		if (now - _lastEstimateMillis < _estimateMillis)
+			return true;
+		_lastEstimateMillis = now;
+		if (_mergeTasks == null)
+			return true;
+		// the probability of a join result to have been seen
+		double probability = 1;
+		for (final String source : _onlineAggSources) {
+			double fraction = 0;
+			final Map<Integer, Double> taskProgress = _progress.get(source);
+			for (final double taskFraction : taskProgress.values())
+				fraction += taskFraction;
+			probability *= fraction / taskProgress.size();
+		}
+		if (probability > 0) {
+			final List<HashMap<String, double[]>> moments = OnlineEstimator.find(
+					getChainOperator()).getMoments(_mergeTasks.size());
+			for (int i = 0; i < _mergeTasks.size(); i++)
+				_collector.emitDirect(_mergeTasks.get(i), SystemParameters.ESTIMATE_STREAM,
+						new Values(probability, moments.get(i)));
+		}
+		return true;
+	}
+
+	/*
+	 * Elastic mode: returns true if stormTupleRcv is an epoch barrier, a
+	 * migrated tuple, or a tuple which is blocked until the epoch change is
+	 * over (then it is executed again), see EpochTracker
+	 */
+	protected boolean processEpoch(Tuple stormTupleRcv) {
+		if (_epochTracker == null)
+			return false;
+		if (stormTupleRcv.getSourceStreamId().equals(SystemParameters.MIGRATION_STREAM)) {
+			final int relation = stormTupleRcv.getInteger(1);
+			if (relation != -1)
+				restoreChange(relation, stormTupleRcv.getString(2), stormTupleRcv.getString(3),
+						false);
+			else
+				_epochTracker.migrationDone(stormTupleRcv.getInteger(0));
+			_collector.ack(stormTupleRcv);
+			if (_epochTracker.isMigrated())
+				finishMigration();
+			return true;
+		}
+		if (_epochTracker.block(stormTupleRcv))
+			return true;
+		if (!stormTupleRcv.getSourceStreamId().equals(SystemParameters.EPOCH_STREAM))
+			return false;
+		_epochTracker.receiveBarrier(stormTupleRcv.getSourceTask(), stormTupleRcv.getInteger(0));
+		_collector.ack(stormTupleRcv);
+		if (_epochTracker.isAligned())
+			startMigration();
+		return true;
+	}
+
+	// Elastic mode: whether the task owns the key in the current epoch
+	protected boolean isOwnedKey(String key) {
+		return _elasticSchedule.getRing(_epochTracker.getEpoch()).getTaskIndex(key)
+				== _elasticTaskIndex;
+	}
+
+	/*
+	 * Elastic mode: sends a stored tuple to the owner of its key, which
+	 * re-applies it by restoreChange
+	 */
+	protected void migrateChange(int relation, String key, String value) {
+		final int epoch = _epochTracker.getEpoch();
+		final int owner = _elasticSchedule.getRing(epoch).getTaskIndex(key);
+		_collector.emitDirect(_elasticTasks.get(owner), SystemParameters.MIGRATION_STREAM,
+				new Values(epoch, relation, key, value));
+		_numMigratedTuples++;
+	}
+
+	/*
+	 * Elastic mode: subclasses remove the stored tuples whose keys they do not
+	 * own any more (isOwnedKey), and pass them to migrateChange
+	 */
+	protected void migrateState() {
+	}
+
+	/*
+	 * Elastic mode: all the tuples of the previous epoch are processed, so the
+	 * keys the task lost are sent, followed by the end of the migration
+	 */
+	private void startMigration() {
+		final int epoch = _epochTracker.startMigration();
+		final long numMigratedBefore = _numMigratedTuples;
+		migrateState();
+		for (int i = 0; i < _elasticTasks.size(); i++)
+			if (i != _elasticTaskIndex)
+				_collector.emitDirect(_elasticTasks.get(i), SystemParameters.MIGRATION_STREAM,
+						new Values(epoch, -1, "", ""));
+		LOG.info(_ID + ": epoch " + epoch + " with "
+				+ _elasticSchedule.getNumActiveTasks(epoch) + " active tasks, "
+				+ (_numMigratedTuples - numMigratedBefore) + " tuples moved out ("
+				+ _epochTracker.getNumBlockedTuples() + " tuples are blocked).");
+		if (_epochTracker.isMigrated())
+			finishMigration();
+	}
+
+	// Elastic mode: the state of the keys the task owns is complete
+	private void finishMigration() {
+		for (final Tuple blockedTuple : _epochTracker.release())
+			execute(blockedTuple);
+	}
+
+	/*
+	 * LatencyMarkers mode: returns true if stormTupleRcv is a latency marker,
+	 * which is sent to a task of a child (round robin) after the pending tuples
+	 * of that task
+	 */
+	protected boolean processLatencyMarker(Tuple stormTupleRcv) {
+		if (_markerTasks == null
+				|| !stormTupleRcv.getSourceStreamId().equals(
+						SystemParameters.LATENCY_MARKER_STREAM))
+			return false;
+		final LatencyMarker marker = new LatencyMarker(stormTupleRcv.getString(0), stormTupleRcv);
+		if (_markerTasks.isEmpty()) {
+			if (_markerPathNanos != null) {
+				final long residenceNanos = marker.getResidenceNanos();
+				_markerResidenceNanos.record(residenceNanos);
+				_markerPathNanos.record(LatencyMarker.getPathNanos(marker.getPath())
+						+ residenceNanos);
+			}
+			_collector.ack(stormTupleRcv);
+			return true;
+		}
+		final int destination = _markerRound++ % _markerTasks.size();
+		if (_isMarkerBatched)
+			_batcher.addMarker(destination, marker);
+		else
+			latencyMarkerEmit(destination, marker);
+		return true;
+	}
+
+	/*
+	 * Metrics mode: subclasses add gauges for their state (e.g. storage size)
+	 */
+	protected void registerGauges(ComponentMetrics metrics) {
+	}
+
+	/*
+	 * Checkpoint mode: re-applies a change logged by logChange, on recovery
+	 */
+	protected void restoreChange(int relation, String key, String value, boolean isDeletion) {
+		throw new RuntimeException(_ID + " does not log changes!");
+	}
+
+	/*
+	 * Checkpoint mode: the inverse of getCheckpointSnapshot
+	 */
+	protected void restoreCheckpointSnapshot(Serializable snapshot) {
+		_checkpointStore.restoreChainSnapshot(getChainOperator(), (List<Operator>) snapshot);
+	}
+
 	protected boolean receivedDumpSignal(Tuple stormTuple) {
 		return stormTuple.getSourceStreamId()
 				.equalsIgnoreCase(SystemParameters.DUMP_RESULTS_STREAM);
@@ -307,9 +985,12 @@ public abstract class StormBoltComponent extends BaseRichBolt implements StormJo
 
 	// non-ManualBatchMode
 	private void regularTupleSend(List<String> tuple, Tuple stormTupleRcv, long timestamp) {
-		final Values stormTupleSnd = MyUtilities.createTupleValues(tuple, timestamp,
+		final Values stormTupleSnd = MyUtilities.createTupleValues(tuple, timestamp, _epoch,
 				_componentIndex, _hashIndexes, _hashExpressions, _conf);
-		MyUtilities.sendTuple(stormTupleSnd, stormTupleRcv, _collector, _conf);
+		final List<Integer> taskIds = MyUtilities.sendTuple(stormTupleSnd, stormTupleRcv,
+				_collector, _conf);
+		if (_eoiTracker != null)
+			_eoiTracker.countSent(taskIds);
 	}
 
 	protected void setCollector(OutputCollector collector) {
@@ -321,15 +1002,28 @@ public abstract class StormBoltComponent extends BaseRichBolt implements StormJo
 		_numRemainingParents = numParentTasks;
 	}
 
+	/*
+	 * Checkpoint mode: the barriers are aligned, so the state is written, the
+	 * barrier is passed on, and the blocked tuples are executed
+	 */
+	private void takeCheckpoint() {
+		final long id = _checkpointTracker.getBarrierId();
+		LOG.info(_ID + ": taking checkpoint " + id + " ("
+				+ _checkpointTracker.getNumBlockedTuples() + " tuples were blocked).");
+		_checkpointStore.checkpoint(id, getCheckpointSnapshot());
+		if (_hierarchyPosition != FINAL_COMPONENT)
+			_collector.emit(SystemParameters.CHECKPOINT_STREAM, new Values(id));
+		for (final Tuple blockedTuple : _checkpointTracker.release())
+			execute(blockedTuple);
+	}
+
 	@Override
 	public void tupleSend(List<String> tuple, Tuple stormTupleRcv, long timestamp) {
+		if (_metrics != null)
+			_metrics.countSent();
 		if (!MyUtilities.isManualBatchingMode(_conf))
 			regularTupleSend(tuple, stormTupleRcv, timestamp);
-		else {
-			// appending tuple if it is not lastAck
+		else
 			addToManualBatch(tuple, timestamp);
-			if (getNumSentTuples() % MyUtilities.getCompBatchSize(_ID, _conf) == 0)
-				manualBatchSend();
-		}
 	}
 }
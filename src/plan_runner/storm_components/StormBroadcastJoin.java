@@ -0,0 +1,309 @@
+package plan_runner.storm_components;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import org.apache.log4j.Logger;
+
+import plan_runner.components.ComponentProperties;
+import plan_runner.operators.AggregateOperator;
+import plan_runner.operators.ChainOperator;
+import plan_runner.operators.Operator;
+import plan_runner.storm_components.synchronization.TopologyKiller;
+import plan_runner.utilities.LocalTableScan;
+import plan_runner.utilities.MyUtilities;
+import plan_runner.utilities.PeriodicAggBatchSend;
+import plan_runner.utilities.SystemParameters;
+import plan_runner.utilities.statistics.ComponentMetrics;
+import plan_runner.utilities.statistics.Gauge;
+import plan_runner.utilities.statistics.StatisticsUtilities;
+import backtype.storm.Config;
+import backtype.storm.task.OutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.InputDeclarer;
+import backtype.storm.topology.TopologyBuilder;
+import backtype.storm.tuple.Tuple;
+
+/*
+ * Broadcast (replicated small-table) equi-join.
+ * Each task loads the whole small relation into a hash table when it is prepared
+ *   (a local scan of the DataSourceComponent file, see LocalTableScan),
+ *   so only the large relation is received. Any task can join any large tuple,
+ *   thus they are not repartitioned by the join key (LocalShuffleStreamGrouping).
+ * The output tuples are the same as of StormDstJoin.
+ * The large relation might have deletions (see MyUtilities.isDeletion), the small one is static.
+ */
+public class StormBroadcastJoin extends StormBoltComponent {
+	private static final long serialVersionUID = 1L;
+	private static Logger LOG = Logger.getLogger(StormBroadcastJoin.class);
+
+	private final LocalTableScan _smallRelation;
+	private final boolean _isSmallFirst; // the small relation is the first
+	// parent
+	private final List<Integer> _rightHashIndexes; // hash indexes from the right
+	// parent
+
+	// join key -> small relation tuples
+	private Map<String, List<List<String>>> _smallTuples;
+	private int _numSmallTuples;
+
+	private final ChainOperator _operatorChain;
+	private long _numSentTuples = 0;
+
+	// for batch sending
+	private final Semaphore _semAgg = new Semaphore(1, true);
+	private boolean _firstTime = true;
+	private PeriodicAggBatchSend _periodicAggBatch;
+	private final long _aggBatchOutputMillis;
+
+	// for printing statistics for creating graphs
+	protected DateFormat _statDateFormat = new SimpleDateFormat("HH:mm:ss.SSS");
+	protected StatisticsUtilities _statsUtils;
+
+	public StormBroadcastJoin(StormEmitter largeEmitter, LocalTableScan smallRelation,
+			boolean isSmallFirst, ComponentProperties cp, List<String> allCompNames,
+			int hierarchyPosition, TopologyBuilder builder, TopologyKiller killer, Config conf) {
+		super(cp, new StormEmitter[] { largeEmitter }, allCompNames, hierarchyPosition, conf);
+
+		if (MyUtilities.isManualBatchingMode(conf))
+			throw new RuntimeException(getID()
+					+ ": Broadcast join does not support MANUAL_BATCH mode!");
+
+		_smallRelation = smallRelation;
+		_isSmallFirst = isSmallFirst;
+		_rightHashIndexes = cp.getParents()[1].getHashIndexes();
+
+		_operatorChain = cp.getChainOperator();
+		_aggBatchOutputMillis = cp.getBatchOutputMillis();
+		_statsUtils = new StatisticsUtilities(getConf(), LOG);
+
+		final int parallelism = SystemParameters.getInt(getConf(), getID() + "_PAR");
+
+		// connecting with previous level
+		InputDeclarer currentBolt = builder.setBolt(getID(), this, parallelism);
+		attachTickTuples(currentBolt);
+		currentBolt = MyUtilities.attachEmitterLocalShuffle(conf, currentBolt, largeEmitter);
+		if (MyUtilities.isHierarchicalEOF(conf))
+			currentBolt = attachEndOfInput(builder, currentBolt, largeEmitter);
+		if (MyUtilities.isCheckpointMode(conf))
+			currentBolt = attachCheckpoint(currentBolt, largeEmitter);
+		if (MyUtilities.isLatencyMarkersMode(conf))
+			currentBolt = attachLatencyMarkers(currentBolt, largeEmitter);
+		if (MyUtilities.isOnlineAggMode(conf))
+			currentBolt = attachOnlineAgg(builder, currentBolt, cp);
+
+		// connecting with Killer
+		if (getHierarchyPosition() == FINAL_COMPONENT && (!MyUtilities.isAckEveryTuple(conf)))
+			killer.registerComponent(this, parallelism);
+		if (cp.getPrintOut() && _operatorChain.isBlocking())
+			currentBolt.allGrouping(killer.getID(), SystemParameters.DUMP_RESULTS_STREAM);
+	}
+
+	@Override
+	public void aggBatchSend() {
+		if (MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis))
+			if (_operatorChain != null) {
+				final Operator lastOperator = _operatorChain.getLastOperator();
+				if (lastOperator instanceof AggregateOperator) {
+					try {
+						_semAgg.acquire();
+					} catch (final InterruptedException ex) {
+					}
+
+					// sending
+					final AggregateOperator agg = (AggregateOperator) lastOperator;
+					final List<String> tuples = agg.getContent();
+					for (final String tuple : tuples)
+						tupleSend(MyUtilities.stringToTuple(tuple, getConf()), null, 0);
+
+					// clearing
+					agg.clearStorage();
+
+					_semAgg.release();
+				}
+			}
+	}
+
+	protected void applyOperatorsAndSend(Tuple stormTupleRcv, List<String> tuple) {
+		if (MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis))
+			try {
+				_semAgg.acquire();
+			} catch (final InterruptedException ex) {
+			}
+		long inputTimestamp = 0;
+		if (MyUtilities.isCustomTimestampMode(getConf()))
+			inputTimestamp = stormTupleRcv.getLongByField(StormComponent.TIMESTAMP);
+		tuple = _operatorChain.process(tuple, inputTimestamp);
+		if (MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis))
+			_semAgg.release();
+
+		if (tuple == null)
+			return;
+		_numSentTuples++;
+		printTuple(tuple);
+		if (_numSentTuples % _statsUtils.getDipOutputFreqPrint() == 0)
+			printStatistics(SystemParameters.OUTPUT_PRINT);
+
+		if (MyUtilities.isSending(getHierarchyPosition(), _aggBatchOutputMillis)) {
+			long timestamp = 0;
+			if (MyUtilities.isCustomTimestampMode(getConf()))
+				timestamp = stormTupleRcv.getLongByField(StormComponent.TIMESTAMP);
+			tupleSend(tuple, stormTupleRcv, timestamp);
+		}
+		if (MyUtilities.isPrintLatency(getHierarchyPosition(), getConf()))
+			printTupleLatency(_numSentTuples - 1,
+					stormTupleRcv.getLongByField(StormComponent.TIMESTAMP));
+	}
+
+	@Override
+	public void execute(Tuple stormTupleRcv) {
+		startExecuteTimer();
+		if (processTick(stormTupleRcv))
+			return;
+		checkElasticEpoch();
+
+		if (_firstTime && MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis)) {
+			_periodicAggBatch = new PeriodicAggBatchSend(_aggBatchOutputMillis, this);
+			_firstTime = false;
+		}
+
+		if (receivedDumpSignal(stormTupleRcv)) {
+			MyUtilities.dumpSignal(this, stormTupleRcv, getCollector());
+			return;
+		}
+
+		if (processEndOfInput(stormTupleRcv))
+			return;
+
+		if (processCheckpoint(stormTupleRcv))
+			return;
+
+		if (processLatencyMarker(stormTupleRcv))
+			return;
+
+		if (processOnlineAgg(stormTupleRcv))
+			return;
+
+		List<String> tuple = (List<String>) stormTupleRcv.getValueByField(StormComponent.TUPLE);
+		final String inputTupleHash = stormTupleRcv.getStringByField(StormComponent.HASH);
+
+		if (processFinalAck(tuple, stormTupleRcv))
+			return;
+
+		// nothing is stored for the large relation, a deletion is only joined
+		final boolean isDeletion = MyUtilities.isDeletion(tuple, getConf());
+		if (isDeletion)
+			tuple = MyUtilities.fromDeletion(tuple);
+
+		final List<List<String>> smallTuples = _smallTuples.get(inputTupleHash);
+		if (smallTuples != null)
+			for (final List<String> smallTuple : smallTuples) {
+				List<String> outputTuple;
+				if (_isSmallFirst)
+					outputTuple = MyUtilities.createOutputTuple(smallTuple, tuple,
+							_rightHashIndexes);
+				else
+					outputTuple = MyUtilities.createOutputTuple(tuple, smallTuple,
+							_rightHashIndexes);
+				if (isDeletion)
+					outputTuple = MyUtilities.toDeletion(outputTuple);
+				applyOperatorsAndSend(stormTupleRcv, outputTuple);
+			}
+
+		countDataTuple();
+		getCollector().ack(stormTupleRcv);
+	}
+
+	@Override
+	public ChainOperator getChainOperator() {
+		return _operatorChain;
+	}
+
+	// from StormComponent
+	@Override
+	public String getInfoID() {
+		final String str = "BroadcastJoin " + getID() + " has ID: " + getID();
+		return str;
+	}
+
+	@Override
+	protected InterchangingComponent getInterComp() {
+		// should never be invoked
+		return null;
+	}
+
+	@Override
+	public long getNumSentTuples() {
+		return _numSentTuples;
+	}
+
+	@Override
+	public PeriodicAggBatchSend getPeriodicAggBatch() {
+		return _periodicAggBatch;
+	}
+
+	@Override
+	public void prepare(Map map, TopologyContext tc, OutputCollector collector) {
+		// before the initial statistics
+		_smallTuples = new HashMap<String, List<List<String>>>();
+		final List<List<String>> tuples = _smallRelation.scan(getConf());
+		for (final List<String> tuple : tuples) {
+			final String hash = _smallRelation.getHash(tuple, getConf());
+			List<List<String>> sameHash = _smallTuples.get(hash);
+			if (sameHash == null) {
+				sameHash = new ArrayList<List<String>>(1);
+				_smallTuples.put(hash, sameHash);
+			}
+			sameHash.add(tuple);
+		}
+		_numSmallTuples = tuples.size();
+		LOG.info(getID() + ": " + _numSmallTuples + " tuples of " + _smallRelation.getName()
+				+ " are loaded.");
+
+		super.prepare(map, tc, collector);
+	}
+
+	/*
+	 * as StormDstJoin, where the only storage is the small relation
+	 */
+	@Override
+	protected void printStatistics(int type) {
+		if (!_statsUtils.isTestMode() || getHierarchyPosition() != StormComponent.FINAL_COMPONENT)
+			return;
+		// only final statistics is printed if we are measuring latency
+		if (MyUtilities.isCustomTimestampMode(getConf()) && type != SystemParameters.FINAL_PRINT)
+			return;
+		final String ts = _statDateFormat.format(new Date());
+		final Runtime runtime = Runtime.getRuntime();
+		final long memory = runtime.totalMemory() - runtime.freeMemory();
+		if (type == SystemParameters.FINAL_PRINT && numNegatives > 0)
+			LOG.info("WARNINGLAT! Negative latency for " + numNegatives + ", at most "
+					+ maxNegative + "ms.");
+		if (type != SystemParameters.OUTPUT_PRINT)
+			LOG.info("," + (type == SystemParameters.INITIAL_PRINT ? "INITIAL," : "MEMORY,")
+					+ _thisTaskID + "," + " TimeStamp:," + ts + ", SmallRelation:,"
+					+ _numSmallTuples + ", Memory used: ,"
+					+ StatisticsUtilities.bytesToMegabytes(memory) + ","
+					+ StatisticsUtilities.bytesToMegabytes(runtime.totalMemory()));
+		if (type == SystemParameters.OUTPUT_PRINT || type == SystemParameters.FINAL_PRINT)
+			LOG.info("," + "RESULT," + _thisTaskID + "," + "TimeStamp:," + ts
+					+ ",Sent Tuples," + getNumSentTuples());
+	}
+
+	@Override
+	protected void registerGauges(ComponentMetrics metrics) {
+		metrics.registerGauge("state_tuples", new Gauge() {
+			@Override
+			public long getValue() {
+				return _numSmallTuples;
+			}
+		});
+	}
+
+}
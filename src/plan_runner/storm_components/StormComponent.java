@@ -17,6 +17,8 @@ public interface StormComponent {
 	public static final String COMP_INDEX = "CompIndex";
 	public static final String TUPLE = "Tuple";
 	public static final String HASH = "Hash";
+	// ManualBatch mode: the index of the destination task, see ManualBatcher
+	public static final String DESTINATION = "Destination";
 	public static final String TIMESTAMP = "Timestamp";
 	public static final String EPOCH = "Epoch";
 	public static final String MESSAGE = "Message";
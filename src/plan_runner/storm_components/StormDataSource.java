@@ -2,8 +2,10 @@ package plan_runner.storm_components;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Semaphore;
@@ -14,12 +16,26 @@ import plan_runner.components.ComponentProperties;
 import plan_runner.operators.AggregateOperator;
 import plan_runner.operators.ChainOperator;
 import plan_runner.operators.Operator;
+import plan_runner.storage.CheckpointStore;
+import plan_runner.storm_components.synchronization.OnlineAggMerger;
 import plan_runner.storm_components.synchronization.TopologyKiller;
+import plan_runner.utilities.BloomFilter;
 import plan_runner.utilities.CustomReader;
+import plan_runner.utilities.LineParser;
+import plan_runner.utilities.LocalTableScan;
 import plan_runner.utilities.MyUtilities;
 import plan_runner.utilities.PeriodicAggBatchSend;
+import plan_runner.utilities.RandomBlockReader;
+import plan_runner.utilities.ReadAheadReader;
 import plan_runner.utilities.SerializableFileInputStream;
+import plan_runner.utilities.SourceSchedule;
 import plan_runner.utilities.SystemParameters;
+import plan_runner.utilities.TokenBucket;
+import plan_runner.utilities.TpchGenerator;
+import plan_runner.utilities.statistics.ComponentMetrics;
+import plan_runner.utilities.statistics.Gauge;
+import plan_runner.utilities.statistics.OnlineEstimator;
+import plan_runner.utilities.statistics.TableStatistics;
 import backtype.storm.Config;
 import backtype.storm.spout.SpoutOutputCollector;
 import backtype.storm.task.TopologyContext;
@@ -31,6 +47,8 @@ public class StormDataSource extends StormSpoutComponent {
 	private static final long serialVersionUID = 1L;
 	private static Logger LOG = Logger.getLogger(StormDataSource.class);
 
+	private static final int DEFAULT_READ_AHEAD_TUPLES_PER_NEXT = 100;
+
 	private final String _inputPath;
 	private int _fileSection;
 	private final int _fileParts;
@@ -52,6 +70,39 @@ public class StormDataSource extends StormSpoutComponent {
 	private PeriodicAggBatchSend _periodicAggBatch;
 	private final long _aggBatchOutputMillis;
 
+	// for CollectStatistics mode
+	private TableStatistics _statistics;
+
+	// for semi-join reduction
+	private LocalTableScan _semiJoinSource;
+	private BloomFilter _semiJoinFilter;
+	private long _numSemiJoinDropped = 0;
+
+	// for Checkpoint mode
+	private CheckpointStore _checkpointStore;
+	private long _checkpointEvery;
+	private long _numReadLines = 0;
+	// the position of the next line after the last processed tuple
+	private long _position;
+
+	// the tuples handled per nextTuple invocation (DIP_TUPLES_PER_NEXT)
+	private int _tuplesPerNext = 1;
+	// splits the lines, parsing only the columns which the chain reads
+	private LineParser _parser;
+	// for ReadAhead mode
+	private ReadAheadReader _readAhead;
+	// DIP_SOURCE_RATE, or TIMEOUT_EVERY_X_TUPLE per TIMEOUT_X_MS
+	private TokenBucket _rateLimiter;
+	// for DIP_SOURCE_SCHEDULE
+	private SourceSchedule _sourceSchedule;
+	private long _scheduleStartMillis;
+	private long _numReadTuples = 0;
+	// for OnlineAgg mode: the expected number of rows of the section
+	private long _numSectionRows;
+	private long _progressMillis;
+	private long _lastProgressMillis;
+	private List<Integer> _mergeTasks;
+
 	public StormDataSource(ComponentProperties cp, List<String> allCompNames, String inputPath,
 			int hierarchyPosition, int parallelism, TopologyBuilder builder, TopologyKiller killer,
 			Config conf) {
@@ -69,11 +120,16 @@ public class StormDataSource extends StormSpoutComponent {
 		builder.setSpout(getID(), this, parallelism);
 		if (MyUtilities.isAckEveryTuple(conf))
 			killer.registerComponent(this, parallelism);
+		if (MyUtilities.isOnlineAggMode(conf) && getHierarchyPosition() == FINAL_COMPONENT
+				&& OnlineEstimator.find(_operatorChain) != null)
+			new OnlineAggMerger(getID(), _operatorChain, conf, builder);
 	}
 
 	// ack method on spout is called only if in AckEveryTuple mode (ACKERS > 0)
 	@Override
 	public void ack(Object msgId) {
+		if (latencyMarkerAck(msgId, false))
+			return;
 		_pendingTuples--;
 	}
 
@@ -113,6 +169,13 @@ public class StormDataSource extends StormSpoutComponent {
 
 		if (tuple == null)
 			return;
+		if (_semiJoinFilter != null
+				&& !_semiJoinFilter.mightContain(MyUtilities.createHashString(tuple,
+						getHashIndexes(), getHashExpressions(), getConf()))) {
+			// no partner in the semi-join source
+			_numSemiJoinDropped++;
+			return;
+		}
 
 		_numSentTuples++;
 		_pendingTuples++;
@@ -121,10 +184,12 @@ public class StormDataSource extends StormSpoutComponent {
 		if (MyUtilities.isSending(getHierarchyPosition(), _aggBatchOutputMillis)) {
 			long timestamp = 0;
 			if (MyUtilities.isCustomTimestampMode(getConf()))
-				if (getHierarchyPosition() == StormComponent.NEXT_TO_LAST_COMPONENT)
+				if (getHierarchyPosition() == StormComponent.NEXT_TO_LAST_COMPONENT
+						|| MyUtilities.isWindowTimestampsMode(getConf()))
 					// A tuple has a non-null timestamp only if the component is
 					// next to last
 					// because we measure the latency of the last operator
+					// (or if there are time-based windows, see WindowSemantics)
 					timestamp = System.currentTimeMillis();
 			tupleSend(tuple, null, timestamp);
 		}
@@ -138,7 +203,11 @@ public class StormDataSource extends StormSpoutComponent {
 	@Override
 	public void close() {
 		try {
-			_reader.close();
+			// the read-ahead closes _reader once its thread is done with it
+			if (_readAhead != null)
+				_readAhead.close();
+			else
+				_reader.close();
 		} catch (final Exception e) {
 			final String error = MyUtilities.getStackTrace(e);
 			LOG.info(error);
@@ -150,6 +219,14 @@ public class StormDataSource extends StormSpoutComponent {
 	 */
 	private void eofFinalization() {
 		printContent();
+		if (_checkpointStore != null)
+			_checkpointStore.finalCheckpoint(getCheckpointSnapshot());
+		finalizeMetrics();
+		if (_semiJoinFilter != null)
+			LOG.info(getID() + ": semi-join reduction by " + _semiJoinSource.getName()
+					+ " dropped " + _numSemiJoinDropped + " tuples.");
+		if (_statistics != null)
+			writeStatistics();
 
 		if (!MyUtilities.isAckEveryTuple(getConf()))
 			if (getHierarchyPosition() == FINAL_COMPONENT) {
@@ -170,6 +247,8 @@ public class StormDataSource extends StormSpoutComponent {
 
 	@Override
 	public void fail(Object msgId) {
+		if (latencyMarkerAck(msgId, true))
+			return;
 		throw new RuntimeException("Failing tuple in " + getID());
 	}
 
@@ -178,6 +257,12 @@ public class StormDataSource extends StormSpoutComponent {
 		return _operatorChain;
 	}
 
+	// Checkpoint mode: the offset of the next line, and the operators
+	// (without the aggregations which log their changes)
+	private Serializable getCheckpointSnapshot() {
+		return new Object[] { _position, _checkpointStore.getChainSnapshot(_operatorChain) };
+	}
+
 	// StormComponent
 	@Override
 	public String getInfoID() {
@@ -195,6 +280,11 @@ public class StormDataSource extends StormSpoutComponent {
 		return _pendingTuples;
 	}
 
+	// lineitem.tbl -> LINEITEM
+	private String getTableName() {
+		return MyUtilities.getTableName(_inputPath);
+	}
+
 	// from IRichSpout interface
 	@Override
 	public void nextTuple() {
@@ -210,31 +300,71 @@ public class StormDataSource extends StormSpoutComponent {
 			if (_numSentTuples > 0 && _numSentTuples % freqWait == 0)
 				Utils.sleep(timeout);
 		}
-		
-		if (SystemParameters.isExisting(getConf(), "TIMEOUT_EVERY_X_TUPLE") && SystemParameters.isExisting(getConf(), "TIMEOUT_X_MS")) {
-			final int freqWait = SystemParameters.getInt(getConf(), "TIMEOUT_EVERY_X_TUPLE");			
-			final long timeout = SystemParameters.getInt(getConf(), "TIMEOUT_X_MS");
-			if (_numSentTuples > 0 && _numSentTuples % freqWait == 0)
-				Utils.sleep(timeout);
+
+		if (!_hasReachedEOF) {
+			// not throttled, so that markers measure the pipeline only
+			latencyMarkerSend();
+			batchExpirySend();
+			// no barrier after LAST_ACK
+			elasticEpochSend();
+			if (_numSectionRows > 0
+					&& System.currentTimeMillis() - _lastProgressMillis >= _progressMillis)
+				progressSend(Math.min(1, (double) _numReadTuples / _numSectionRows));
 		}
-		
 
-		final String line = readLine();
-		if (line == null) {
-			if (!_hasReachedEOF) {
-				_hasReachedEOF = true;
-				// we reached EOF, first time this happens we invoke the method:
-				eofFinalization();
-			}
-			sendEOF();
-			// sleep since we are not going to do useful work,
-			// but still are looping in nextTuple method
-			Utils.sleep(SystemParameters.EOF_TIMEOUT_MILLIS);
-			return;
+		int numTuples = _tuplesPerNext;
+		if (_sourceSchedule != null) {
+			final long numAllowed = _sourceSchedule.getNumAllowed(getID(),
+					System.currentTimeMillis() - _scheduleStartMillis)
+					- _numReadTuples;
+			if (numAllowed <= 0)
+				// ahead of the schedule
+				return;
+			numTuples = (int) Math.min(numTuples, numAllowed);
+		}
+		if (_rateLimiter != null) {
+			numTuples = _rateLimiter.acquire(numTuples);
+			if (numTuples == 0)
+				// Storm idles the spout when nothing is emitted
+				return;
 		}
 
-		final List<String> tuple = MyUtilities.fileLineToTuple(line, getConf());
-		applyOperatorsAndSend(tuple);
+		for (int i = 0; i < numTuples; i++) {
+			final List<String> tuple = readTuple();
+			if (tuple == null) {
+				if (_rateLimiter != null)
+					_rateLimiter.release(numTuples - i);
+				if (_readAhead == null || _readAhead.isEOF()) {
+					if (!_hasReachedEOF) {
+						_hasReachedEOF = true;
+						if (_numSectionRows > 0)
+							progressSend(1);
+						// we reached EOF, first time this happens we invoke the
+						// method:
+						eofFinalization();
+					}
+					sendEOF();
+					// sleep since we are not going to do useful work,
+					// but still are looping in nextTuple method
+					Utils.sleep(SystemParameters.EOF_TIMEOUT_MILLIS);
+				}
+				// otherwise, the next lines are not read yet
+				return;
+			}
+			_numReadTuples++;
+
+			if (_statistics != null)
+				// before any selection
+				_statistics.add(tuple);
+			applyOperatorsAndSend(tuple);
+
+			if (_checkpointStore != null && ++_numReadLines % _checkpointEvery == 0) {
+				// the barrier follows the tuples of all the lines read so far
+				final long id = _checkpointStore.getLastId() + 1;
+				_checkpointStore.checkpoint(id, getCheckpointSnapshot());
+				checkpointSend(id);
+			}
+		}
 	}
 
 	// BaseRichSpout
@@ -243,17 +373,243 @@ public class StormDataSource extends StormSpoutComponent {
 		super.open(map, tc, collector);
 		try {
 			_fileSection = tc.getThisTaskIndex();
-			_reader = new SerializableFileInputStream(new File(_inputPath), 1 * 1024 * 1024,
-					_fileSection, _fileParts);
-
+			if (MyUtilities.isOnlineAggMode(getConf()))
+				openOnlineAgg(tc);
+			else
+				_reader = createReader(_fileSection, _fileParts);
 		} catch (final Exception e) {
 			final String error = MyUtilities.getStackTrace(e);
 			LOG.info(error);
 			throw new RuntimeException("Filename not found:" + error);
 		}
+
+		if (MyUtilities.isCollectStatisticsMode(getConf())) {
+			int sampleSize = TableStatistics.DEFAULT_SAMPLE_SIZE;
+			if (SystemParameters.isExisting(getConf(), "DIP_STATISTICS_SAMPLE_SIZE"))
+				sampleSize = SystemParameters.getInt(getConf(), "DIP_STATISTICS_SAMPLE_SIZE");
+			_statistics = new TableStatistics(getTableName(), sampleSize);
+		}
+
+		if (_semiJoinSource != null)
+			buildSemiJoinFilter();
+
+		if (MyUtilities.isCheckpointMode(getConf()))
+			openCheckpoints();
+		_position = _reader.getPosition();
+
+		if (_statistics != null)
+			// the statistics are collected over all the columns
+			_parser = new LineParser(null, getConf());
+		else
+			_parser = new LineParser(_operatorChain, getConf());
+		if (_parser.isPruning())
+			LOG.info(getID() + ": parsing only " + _parser + " of " + _inputPath);
+
+		openThrottling();
+		if (_sourceSchedule != null) {
+			_sourceSchedule.prepare(getConf());
+			_scheduleStartMillis = System.currentTimeMillis();
+			final double[] period = _sourceSchedule.getPeriod(getID());
+			LOG.info(getID() + ": scheduled from " + period[0] + "s to " + period[1] + "s");
+		}
+		if (MyUtilities.isReadAheadMode(getConf())) {
+			_tuplesPerNext = DEFAULT_READ_AHEAD_TUPLES_PER_NEXT;
+			int size = ReadAheadReader.DEFAULT_SIZE;
+			if (SystemParameters.isExisting(getConf(), "DIP_READ_AHEAD_SIZE"))
+				size = SystemParameters.getInt(getConf(), "DIP_READ_AHEAD_SIZE");
+			// the lines are read by readLine, which subclasses may override
+			final CustomReader lineReader = new CustomReader() {
+				@Override
+				public void close() {
+					_reader.close();
+				}
+
+				@Override
+				public long getPosition() {
+					return _reader.getPosition();
+				}
+
+				@Override
+				public String readLine() {
+					return StormDataSource.this.readLine();
+				}
+
+				@Override
+				public void seek(long position) throws IOException {
+					_reader.seek(position);
+				}
+			};
+			_readAhead = new ReadAheadReader(getID() + "-" + _fileSection, lineReader, size,
+					_parser);
+			_readAhead.start();
+		}
+		if (SystemParameters.isExisting(getConf(), "DIP_TUPLES_PER_NEXT"))
+			_tuplesPerNext = SystemParameters.getInt(getConf(), "DIP_TUPLES_PER_NEXT");
+	}
+
+	private CustomReader createReader(int section, int parts) throws IOException {
+		if (MyUtilities.isGenerateDataMode(getConf()))
+			// the file is not read, only its name is used
+			return TpchGenerator.create(getTableName(), section, parts, getConf());
+		else
+			return new SerializableFileInputStream(new File(_inputPath), 1 * 1024 * 1024, section,
+					parts);
+	}
+
+	@Override
+	protected boolean isCheckpointSupported() {
+		return true;
+	}
+
+	// Checkpoint mode: on recovery, the reading continues from the offset of
+	// the checkpoint
+	private void openCheckpoints() {
+		_checkpointEvery = CheckpointStore.DEFAULT_EVERY;
+		if (SystemParameters.isExisting(getConf(), "DIP_CHECKPOINT_EVERY"))
+			_checkpointEvery = SystemParameters.getInt(getConf(), "DIP_CHECKPOINT_EVERY");
+		_checkpointStore = new CheckpointStore(getID(), _fileSection, getConf());
+		_checkpointStore.attachChain(_operatorChain);
+		// only the aggregations of a data source log changes
+		final Object[] snapshot = (Object[]) _checkpointStore.restore(null);
+		if (snapshot != null) {
+			try {
+				_reader.seek((Long) snapshot[0]);
+			} catch (final IOException e) {
+				final String error = MyUtilities.getStackTrace(e);
+				LOG.info(error);
+				throw new RuntimeException("Cannot recover " + getID() + ": " + error);
+			}
+			_checkpointStore.restoreChainSnapshot(_operatorChain, (List<Operator>) snapshot[1]);
+		}
+	}
+
+	/*
+	 * OnlineAgg mode: the section is read in a random order of blocks (the
+	 * block i of the section s is the section s * blocks + i of the file), and
+	 * the fraction of the section read so far is sent to the final component
+	 * every DIP_ONLINE_AGG_MILLIS milliseconds
+	 */
+	private void openOnlineAgg(TopologyContext tc) {
+		if (MyUtilities.isCheckpointMode(getConf()))
+			throw new RuntimeException(getID()
+					+ ": DIP_ONLINE_AGG mode does not support DIP_CHECKPOINT_DIR mode!");
+		int numBlocks = RandomBlockReader.DEFAULT_BLOCKS;
+		if (SystemParameters.isExisting(getConf(), "DIP_ONLINE_AGG_BLOCKS"))
+			numBlocks = SystemParameters.getInt(getConf(), "DIP_ONLINE_AGG_BLOCKS");
+		long seed = 0;
+		if (SystemParameters.isExisting(getConf(), "DIP_ONLINE_AGG_SEED"))
+			seed = SystemParameters.getInt(getConf(), "DIP_ONLINE_AGG_SEED");
+		_reader = new RandomBlockReader(numBlocks, seed + _fileSection) {
+			@Override
+			protected CustomReader createBlock(int block, int numBlocks) throws IOException {
+				return createReader(_fileSection * numBlocks + block, _fileParts * numBlocks);
+			}
+		};
+
+		_progressMillis = 1000;
+		if (SystemParameters.isExisting(getConf(), "DIP_ONLINE_AGG_MILLIS"))
+			_progressMillis = SystemParameters.getInt(getConf(), "DIP_ONLINE_AGG_MILLIS");
+		_numSectionRows = Math.max(1, MyUtilities.getNumRows(_inputPath, getConf()) / _fileParts);
+		if (getHierarchyPosition() == FINAL_COMPONENT)
+			_mergeTasks = OnlineAggMerger.getMergeTasks(getID(), _operatorChain, tc);
+	}
+
+	/*
+	 * OnlineAgg mode: on the final component, the data source sends the
+	 * moments of its estimator to the merge tasks, with the fraction of its
+	 * own section as the probability
+	 */
+	private void progressSend(double fraction) {
+		_lastProgressMillis = System.currentTimeMillis();
+		if (getHierarchyPosition() != FINAL_COMPONENT) {
+			getCollector().emit(SystemParameters.PROGRESS_STREAM, new Values(fraction));
+			return;
+		}
+		if (_mergeTasks == null || fraction == 0)
+			return;
+		final List<HashMap<String, double[]>> moments = OnlineEstimator.find(_operatorChain)
+				.getMoments(_mergeTasks.size());
+		for (int i = 0; i < _mergeTasks.size(); i++)
+			getCollector().emitDirect(_mergeTasks.get(i), SystemParameters.ESTIMATE_STREAM,
+					new Values(fraction, moments.get(i)));
+	}
+
+	/*
+	 * The sending rate is limited by a token bucket, rather than by sleeping
+	 * in nextTuple: DIP_SOURCE_RATE tuples per second per task (with bursts of
+	 * DIP_SOURCE_BURST tuples), or TIMEOUT_EVERY_X_TUPLE tuples per
+	 * TIMEOUT_X_MS milliseconds.
+	 */
+	private void openThrottling() {
+		double rate = -1;
+		double burst = 1;
+		if (SystemParameters.isExisting(getConf(), "DIP_SOURCE_RATE")) {
+			rate = SystemParameters.getDouble(getConf(), "DIP_SOURCE_RATE");
+			burst = Math.max(1, rate / 100);
+			if (SystemParameters.isExisting(getConf(), "DIP_SOURCE_BURST"))
+				burst = SystemParameters.getInt(getConf(), "DIP_SOURCE_BURST");
+		} else if (SystemParameters.isExisting(getConf(), "TIMEOUT_EVERY_X_TUPLE")
+				&& SystemParameters.isExisting(getConf(), "TIMEOUT_X_MS")) {
+			final int freqWait = SystemParameters.getInt(getConf(), "TIMEOUT_EVERY_X_TUPLE");
+			final long timeout = SystemParameters.getInt(getConf(), "TIMEOUT_X_MS");
+			rate = freqWait * 1000.0 / Math.max(timeout, 1);
+			burst = freqWait;
+		}
+		if (rate > 0)
+			_rateLimiter = new TokenBucket(rate, burst);
+	}
+
+	private void buildSemiJoinFilter() {
+		final List<List<String>> tuples = _semiJoinSource.scan(getConf());
+		double fpp = BloomFilter.DEFAULT_FALSE_POSITIVE_PROBABILITY;
+		if (SystemParameters.isExisting(getConf(), "DIP_SEMIJOIN_FPP"))
+			fpp = SystemParameters.getDouble(getConf(), "DIP_SEMIJOIN_FPP");
+		_semiJoinFilter = new BloomFilter(tuples.size(), fpp);
+		for (final List<String> tuple : tuples)
+			_semiJoinFilter.add(_semiJoinSource.getHash(tuple, getConf()));
+		LOG.info(getID() + ": semi-join filter over " + tuples.size() + " tuples of "
+				+ _semiJoinSource.getName() + " is built (" + _semiJoinFilter.getSize()
+				+ " bytes).");
+	}
+
+	@Override
+	protected void registerGauges(ComponentMetrics metrics) {
+		metrics.registerGauge("pending_tuples", new Gauge() {
+			@Override
+			public long getValue() {
+				return _pendingTuples;
+			}
+		});
+	}
+
+	public void setSemiJoinSource(LocalTableScan semiJoinSource) {
+		_semiJoinSource = semiJoinSource;
+	}
+
+	public void setSourceSchedule(SourceSchedule sourceSchedule) {
+		_sourceSchedule = sourceSchedule;
 	}
 
 	// HELPER methods
+
+	/*
+	 * the next tuple, from the read-ahead buffer in ReadAhead mode; null at
+	 * EOF, or if the next line is not read yet (ReadAhead mode)
+	 */
+	private List<String> readTuple() {
+		if (_readAhead != null) {
+			final List<String> tuple = _readAhead.poll();
+			if (tuple != null)
+				_position = _readAhead.getPosition();
+			return tuple;
+		}
+		final String line = readLine();
+		if (line == null)
+			return null;
+		_position = _reader.getPosition();
+		return _parser.parse(line);
+	}
+
 	protected String readLine() {
 		String text = null;
 		try {
@@ -265,6 +621,18 @@ public class StormDataSource extends StormSpoutComponent {
 		return text;
 	}
 
+	// CollectStatistics mode: each task writes the statistics of its part of
+	// the file
+	private void writeStatistics() {
+		final File dir = new File(SystemParameters.getString(getConf(), "DIP_STATISTICS_DIR"));
+		dir.mkdirs();
+		final File file = new File(dir, TableStatistics.getFileName(_statistics.getTableName(),
+				getID(), _fileSection));
+		_statistics.write(file);
+		LOG.info(getID() + ": statistics of " + _statistics.getNumRows() + " rows are written to "
+				+ file);
+	}
+
 	/*
 	 * sending EOF in AckEveryTuple mode when we send at least one tuple to the
 	 * next component
@@ -18,10 +18,18 @@ import plan_runner.operators.ProjectOperator;
 import plan_runner.storage.AggregationStorage;
 import plan_runner.storage.BasicStore;
 import plan_runner.storage.KeyValueStore;
+import plan_runner.storage.WindowSegments;
 import plan_runner.storm_components.synchronization.TopologyKiller;
+import plan_runner.utilities.ElasticSchedule;
 import plan_runner.utilities.MyUtilities;
+import plan_runner.utilities.ParallelProber;
+import plan_runner.utilities.ParallelProber.JoinResult;
+import plan_runner.utilities.ParallelProber.ProbeRange;
 import plan_runner.utilities.PeriodicAggBatchSend;
 import plan_runner.utilities.SystemParameters;
+import plan_runner.utilities.WindowSemantics;
+import plan_runner.utilities.statistics.ComponentMetrics;
+import plan_runner.utilities.statistics.Gauge;
 import plan_runner.utilities.statistics.StatisticsUtilities;
 import backtype.storm.Config;
 import backtype.storm.topology.InputDeclarer;
@@ -46,6 +54,14 @@ public class StormDstJoin extends StormBoltComponent {
 
 	private long _numSentTuples = 0;
 
+	// windowed join: the storages are split into segments, see setWindow
+	private WindowSemantics _window;
+	private WindowSegments<KeyValueStore<String, String>> _firstWindowStorage,
+			_secondWindowStorage;
+	// positions for count-based windows
+	private long _firstNumReceived = 0, _secondNumReceived = 0;
+	private long _numLateTuples = 0;
+
 	// for load-balancing
 	private final List<String> _fullHashList;
 
@@ -88,12 +104,28 @@ public class StormDstJoin extends StormBoltComponent {
 
 		// connecting with previous level
 		InputDeclarer currentBolt = builder.setBolt(getID(), this, parallelism);
+		attachTickTuples(currentBolt);
 		if (MyUtilities.isManualBatchingMode(getConf()))
 			currentBolt = MyUtilities.attachEmitterBatch(conf, _fullHashList, currentBolt,
 					firstEmitter, secondEmitter);
 		else
 			currentBolt = MyUtilities.attachEmitterHash(conf, _fullHashList, currentBolt,
 					firstEmitter, secondEmitter);
+		if (MyUtilities.isHierarchicalEOF(conf))
+			currentBolt = attachEndOfInput(builder, currentBolt, firstEmitter, secondEmitter);
+		if (MyUtilities.isCheckpointMode(conf))
+			currentBolt = attachCheckpoint(currentBolt, firstEmitter, secondEmitter);
+		if (MyUtilities.isLatencyMarkersMode(conf))
+			currentBolt = attachLatencyMarkers(currentBolt, firstEmitter, secondEmitter);
+		if (MyUtilities.isOnlineAggMode(conf))
+			currentBolt = attachOnlineAgg(builder, currentBolt, cp);
+		if (ElasticSchedule.create(getID(), conf) != null) {
+			if (_fullHashList != null || _firstRelationStorage instanceof AggregationStorage
+					|| _secondRelationStorage instanceof AggregationStorage)
+				throw new RuntimeException(getID()
+						+ ": Elastic joins do not support full hash lists and preaggregations!");
+			currentBolt = attachElastic(currentBolt, firstEmitter, secondEmitter);
+		}
 
 		// connecting with Killer
 		if (getHierarchyPosition() == FINAL_COMPONENT && (!MyUtilities.isAckEveryTuple(conf)))
@@ -133,13 +165,13 @@ public class StormDstJoin extends StormBoltComponent {
 	}
 
 	protected void applyOperatorsAndSend(Tuple stormTupleRcv, List<String> tuple,
-			boolean isLastInBatch) {
+			long lineageTimestamp, boolean isLastInBatch) {
 		if (MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis))
 			try {
 				_semAgg.acquire();
 			} catch (final InterruptedException ex) {
 			}
-		tuple = _operatorChain.process(tuple);
+		tuple = _operatorChain.process(tuple, lineageTimestamp);
 		if (MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis))
 			_semAgg.release();
 
@@ -154,7 +186,11 @@ public class StormDstJoin extends StormBoltComponent {
 		if (MyUtilities.isSending(getHierarchyPosition(), _aggBatchOutputMillis)) {
 			long timestamp = 0;
 			if (MyUtilities.isCustomTimestampMode(getConf()))
-				timestamp = stormTupleRcv.getLongByField(StormComponent.TIMESTAMP);
+				if (MyUtilities.isWindowTimestampsMode(getConf()))
+					// time-based windows downstream
+					timestamp = lineageTimestamp;
+				else
+					timestamp = stormTupleRcv.getLongByField(StormComponent.TIMESTAMP);
 			tupleSend(tuple, stormTupleRcv, timestamp);
 		}
 		if (MyUtilities.isPrintLatency(getHierarchyPosition(), getConf())) {
@@ -173,6 +209,11 @@ public class StormDstJoin extends StormBoltComponent {
 
 	@Override
 	public void execute(Tuple stormTupleRcv) {
+		startExecuteTimer();
+		if (processTick(stormTupleRcv))
+			return;
+		checkElasticEpoch();
+
 		if (_firstTime && MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis)) {
 			_periodicAggBatch = new PeriodicAggBatchSend(_aggBatchOutputMillis, this);
 			_firstTime = false;
@@ -183,6 +224,21 @@ public class StormDstJoin extends StormBoltComponent {
 			return;
 		}
 
+		if (processEndOfInput(stormTupleRcv))
+			return;
+
+		if (processCheckpoint(stormTupleRcv))
+			return;
+
+		if (processLatencyMarker(stormTupleRcv))
+			return;
+
+		if (processOnlineAgg(stormTupleRcv))
+			return;
+
+		if (processEpoch(stormTupleRcv))
+			return;
+
 		if (!MyUtilities.isManualBatchingMode(getConf())) {
 			final String inputComponentIndex = stormTupleRcv
 					.getStringByField(StormComponent.COMP_INDEX); // getString(0);
@@ -237,6 +293,7 @@ public class StormDstJoin extends StormBoltComponent {
 							false);
 			}
 		}
+		countDataTuple();
 		getCollector().ack(stormTupleRcv);
 	}
 
@@ -276,44 +333,171 @@ public class StormDstJoin extends StormBoltComponent {
 		return _periodicAggBatch;
 	}
 
-	protected void performJoin(Tuple stormTupleRcv, List<String> tuple, String inputTupleHash,
-			boolean isFromFirstEmitter, BasicStore<ArrayList<String>> oppositeStorage,
-			ProjectOperator projPreAgg, boolean isLastInBatch) {
+	private JoinResult createJoinedTuple(List<String> tuple, Object oppositeStoredTuple,
+			boolean isFromFirstEmitter, boolean isPreAgg, long receivedTimestamp) {
+		// ValueOf is because of preaggregations, and it does not hurt
+		// in normal case
+		String oppositeStringTuple = String.valueOf(oppositeStoredTuple);
+		long lineageTimestamp = receivedTimestamp;
+		if (isStoreWindowTimestamp()) {
+			// timestamp has to be removed
+			final String parts[] = oppositeStringTuple.split("\\@", 2);
+			final long storedTimestamp = Long.valueOf(parts[0]);
+			oppositeStringTuple = parts[1];
+
+			// now we set the maximum TS to the tuple
+			if (storedTimestamp > lineageTimestamp)
+				lineageTimestamp = storedTimestamp;
+		}
+		final List<String> oppositeTuple = MyUtilities.stringToTuple(oppositeStringTuple,
+				getComponentConfiguration());
 
-		final List<String> oppositeStringTupleList = oppositeStorage.access(inputTupleHash);
+		List<String> firstTuple, secondTuple;
+		if (isFromFirstEmitter) {
+			firstTuple = tuple;
+			secondTuple = oppositeTuple;
+		} else {
+			firstTuple = oppositeTuple;
+			secondTuple = tuple;
+		}
 
-		if (oppositeStringTupleList != null)
-			for (int i = 0; i < oppositeStringTupleList.size(); i++) {
-				// ValueOf is because of preaggregations, and it does not hurt
-				// in normal case
-				final String oppositeStringTuple = String.valueOf(oppositeStringTupleList.get(i));
-				final List<String> oppositeTuple = MyUtilities.stringToTuple(oppositeStringTuple,
-						getComponentConfiguration());
-
-				List<String> firstTuple, secondTuple;
-				if (isFromFirstEmitter) {
-					firstTuple = tuple;
-					secondTuple = oppositeTuple;
-				} else {
-					firstTuple = oppositeTuple;
-					secondTuple = tuple;
-				}
+		if (isPreAgg)
+			return new JoinResult(MyUtilities.createOutputTuple(firstTuple, secondTuple),
+					lineageTimestamp);
+		else
+			return new JoinResult(MyUtilities.createOutputTuple(firstTuple, secondTuple,
+					_rightHashIndexes), lineageTimestamp);
+	}
 
-				List<String> outputTuple;
-				// Before fixing preaggregations, here was instanceof BasicStore
-				if (oppositeStorage instanceof AggregationStorage)
-					// preaggregation
-					outputTuple = MyUtilities.createOutputTuple(firstTuple, secondTuple);
-				else
-					outputTuple = MyUtilities.createOutputTuple(firstTuple, secondTuple,
-							_rightHashIndexes);
+	/*
+	 * For a deleted tuple (isDeletion), the output tuples are deleted as well
+	 */
+	protected void performJoin(Tuple stormTupleRcv, final List<String> tuple,
+			String inputTupleHash, final boolean isFromFirstEmitter,
+			BasicStore<ArrayList<String>> oppositeStorage, ProjectOperator projPreAgg,
+			boolean isDeletion, boolean isLastInBatch) {
 
+		final List<String> oppositeStringTupleList = oppositeStorage.access(inputTupleHash);
+		if (oppositeStringTupleList == null)
+			return;
+		// Before fixing preaggregations, here was instanceof BasicStore
+		final boolean isPreAgg = oppositeStorage instanceof AggregationStorage;
+
+		long timestamp = 0;
+		if (MyUtilities.isCustomTimestampMode(getConf()))
+			timestamp = stormTupleRcv.getLongByField(StormComponent.TIMESTAMP);
+		final long receivedTimestamp = timestamp;
+
+		final ParallelProber prober = getParallelProber();
+		if (prober != null) {
+			// joined tuples are created in parallel, operators are applied
+			// serially
+			final List<JoinResult> results = prober.probe(oppositeStringTupleList.size(),
+					new ProbeRange() {
+						@Override
+						public void probe(int worker, int from, int to, List<JoinResult> results) {
+							for (int i = from; i < to; i++)
+								results.add(createJoinedTuple(tuple,
+										oppositeStringTupleList.get(i), isFromFirstEmitter,
+										isPreAgg, receivedTimestamp));
+						}
+					});
+			for (final JoinResult result : results) {
+				List<String> outputTuple = result.getTuple();
 				if (projPreAgg != null)
 					// preaggregation
 					outputTuple = projPreAgg.process(outputTuple);
+				if (isDeletion)
+					outputTuple = MyUtilities.toDeletion(outputTuple);
+				applyOperatorsAndSend(stormTupleRcv, outputTuple, result.getLineageTimestamp(),
+						isLastInBatch);
+			}
+			return;
+		}
+
+		for (int i = 0; i < oppositeStringTupleList.size(); i++) {
+			final JoinResult result = createJoinedTuple(tuple, oppositeStringTupleList.get(i),
+					isFromFirstEmitter, isPreAgg, receivedTimestamp);
+			List<String> outputTuple = result.getTuple();
+
+			if (projPreAgg != null)
+				// preaggregation
+				outputTuple = projPreAgg.process(outputTuple);
+			if (isDeletion)
+				outputTuple = MyUtilities.toDeletion(outputTuple);
+
+			applyOperatorsAndSend(stormTupleRcv, outputTuple, result.getLineageTimestamp(),
+					isLastInBatch);
+		}
+	}
+
+	// the number of bytes of the keys and values of both the relations
+	private long getNumStateBytes() {
+		if (_window == null)
+			return ((KeyValueStore<String, String>) _firstRelationStorage).getNumBytes()
+					+ ((KeyValueStore<String, String>) _secondRelationStorage).getNumBytes();
+		long result = 0;
+		for (final KeyValueStore<String, String> segment : _firstWindowStorage.getSegments())
+			result += segment.getNumBytes();
+		for (final KeyValueStore<String, String> segment : _secondWindowStorage.getSegments())
+			result += segment.getNumBytes();
+		return result;
+	}
+
+	private int getStorageSize(boolean isFirstRelation) {
+		if (_window == null)
+			return ((KeyValueStore<String, String>) (isFirstRelation ? _firstRelationStorage
+					: _secondRelationStorage)).size();
+		int size = 0;
+		for (final KeyValueStore<String, String> segment : (isFirstRelation ? _firstWindowStorage
+				: _secondWindowStorage).getSegments())
+			size += segment.size();
+		return size;
+	}
+
+	// Elastic mode
+	@Override
+	protected void migrateState() {
+		migrateState(0, (KeyValueStore<String, String>) _firstRelationStorage);
+		migrateState(1, (KeyValueStore<String, String>) _secondRelationStorage);
+	}
+
+	private void migrateState(int relation, KeyValueStore<String, String> storage) {
+		for (final String key : storage.getKeys())
+			if (!isOwnedKey(key))
+				for (final String value : storage.removeKey(key))
+					migrateChange(relation, key, value);
+	}
 
-				applyOperatorsAndSend(stormTupleRcv, outputTuple, isLastInBatch);
+	@Override
+	protected void registerGauges(ComponentMetrics metrics) {
+		metrics.registerGauge("state_tuples", new Gauge() {
+			@Override
+			public long getValue() {
+				return getStorageSize(true) + getStorageSize(false);
+			}
+		});
+		metrics.registerGauge("state_bytes", new Gauge() {
+			@Override
+			public long getValue() {
+				return getNumStateBytes();
 			}
+		});
+		if (_window != null) {
+			metrics.registerGauge("evicted_segments", new Gauge() {
+				@Override
+				public long getValue() {
+					return _firstWindowStorage.getNumEvictedSegments()
+							+ _secondWindowStorage.getNumEvictedSegments();
+				}
+			});
+			metrics.registerGauge("late_tuples", new Gauge() {
+				@Override
+				public long getValue() {
+					return _numLateTuples;
+				}
+			});
+		}
 	}
 
 	@Override
@@ -321,8 +505,8 @@ public class StormDstJoin extends StormBoltComponent {
 		if (_statsUtils.isTestMode())
 			if (getHierarchyPosition() == StormComponent.FINAL_COMPONENT) {
 				// computing variables
-				final int size1 = ((KeyValueStore<String, String>) _firstRelationStorage).size();
-				final int size2 = ((KeyValueStore<String, String>) _secondRelationStorage).size();
+				final int size1 = getStorageSize(true);
+				final int size2 = getStorageSize(false);
 				final int totalSize = size1 + size2;
 				final String ts = _statDateFormat.format(_cal.getTime());
 
@@ -399,21 +583,130 @@ public class StormDstJoin extends StormBoltComponent {
 					+ " doesn't match neither " + _firstEmitterIndex + " nor "
 					+ _secondEmitterIndex + ".");
 
+		final boolean isDeletion = MyUtilities.isDeletion(tuple, getConf());
+		if (isDeletion) {
+			if (_window != null || affectedStorage instanceof AggregationStorage
+					|| oppositeStorage instanceof AggregationStorage)
+				throw new RuntimeException(getID()
+						+ ": Deletions are not supported for windows and preaggregations!");
+			tuple = MyUtilities.fromDeletion(tuple);
+		}
+
+		if (_window != null) {
+			processWindowedTuple(tuple, inputTupleHash, isFromFirstEmitter, stormTupleRcv,
+					isLastInBatch);
+			return;
+		}
+
 		// add the stormTuple to the specific storage
+		final String inputTupleString = MyUtilities.tupleToString(tuple, getConf());
 		if (affectedStorage instanceof AggregationStorage)
 			// For preaggregations, we have to update the storage, not to insert
 			// to it
 			affectedStorage.update(tuple, inputTupleHash);
-		else {
-			final String inputTupleString = MyUtilities.tupleToString(tuple, getConf());
+		else if (isDeletion) {
+			// remove the stormTuple from the specific storage; there is nothing
+			// to retract if it was never inserted
+			if (!((KeyValueStore<String, String>) affectedStorage).remove(inputTupleHash,
+					inputTupleString))
+				return;
+		} else
 			affectedStorage.insert(inputTupleHash, inputTupleString);
-		}
+		logChange(isFromFirstEmitter ? 0 : 1, inputTupleHash, inputTupleString, isDeletion);
 		performJoin(stormTupleRcv, tuple, inputTupleHash, isFromFirstEmitter, oppositeStorage,
-				projPreAgg, isLastInBatch);
+				projPreAgg, isDeletion, isLastInBatch);
 
 		if ((((KeyValueStore<String, String>) _firstRelationStorage).size() + ((KeyValueStore<String, String>) _secondRelationStorage)
 				.size()) % _statsUtils.getDipInputFreqPrint() == 0)
 			printStatistics(SystemParameters.INPUT_PRINT);
 	}
 
+	@Override
+	protected void restoreChange(int relation, String key, String value, boolean isDeletion) {
+		final BasicStore<ArrayList<String>> affectedStorage = relation == 0 ? _firstRelationStorage
+				: _secondRelationStorage;
+		if (affectedStorage instanceof AggregationStorage)
+			affectedStorage.update(MyUtilities.stringToTuple(value, getConf()), key);
+		else if (isDeletion)
+			((KeyValueStore<String, String>) affectedStorage).remove(key, value);
+		else
+			affectedStorage.insert(key, value);
+	}
+
+	/*
+	 * in a time-based window, the stored tuples keep their timestamps, so that
+	 * a joined tuple gets the timestamp of its newest input
+	 */
+	private boolean isStoreWindowTimestamp() {
+		return _window != null && _window.isTimeBased();
+	}
+
+	/*
+	 * A tuple is stored in the segment of its position, and joined with the
+	 * live segments of the opposite relation. The tuples which are already out
+	 * of the window (late tuples in a time-based window) are dropped.
+	 */
+	private void processWindowedTuple(List<String> tuple, String inputTupleHash,
+			boolean isFromFirstEmitter, Tuple stormTupleRcv, boolean isLastInBatch) {
+		WindowSegments<KeyValueStore<String, String>> affectedStorage, oppositeStorage;
+		if (isFromFirstEmitter) {
+			affectedStorage = _firstWindowStorage;
+			oppositeStorage = _secondWindowStorage;
+		} else {
+			affectedStorage = _secondWindowStorage;
+			oppositeStorage = _firstWindowStorage;
+		}
+
+		long position;
+		if (_window.isTimeBased()) {
+			position = stormTupleRcv.getLongByField(StormComponent.TIMESTAMP);
+			// the time is the same for both the relations
+			oppositeStorage.advance(position);
+		} else
+			position = isFromFirstEmitter ? _firstNumReceived++ : _secondNumReceived++;
+		affectedStorage.advance(position);
+
+		final KeyValueStore<String, String> segment = affectedStorage.getSegment(position);
+		if (segment == null) {
+			_numLateTuples++;
+			return;
+		}
+		String inputTupleString = MyUtilities.tupleToString(tuple, getConf());
+		if (isStoreWindowTimestamp())
+			inputTupleString = position + SystemParameters.STORE_TIMESTAMP_DELIMITER
+					+ inputTupleString;
+		segment.insert(inputTupleHash, inputTupleString);
+		for (final KeyValueStore<String, String> oppositeSegment : oppositeStorage.getSegments())
+			performJoin(stormTupleRcv, tuple, inputTupleHash, isFromFirstEmitter,
+					oppositeSegment, null, false, isLastInBatch);
+	}
+
+	/*
+	 * Invoked by EquiJoinComponent. Preaggregations are not supported.
+	 */
+	public void setWindow(WindowSemantics window) {
+		if (MyUtilities.isCheckpointMode(getConf()))
+			throw new RuntimeException(getID()
+					+ ": Windowed joins do not support DIP_CHECKPOINT_DIR mode!");
+		if (ElasticSchedule.create(getID(), getConf()) != null)
+			throw new RuntimeException(getID() + ": Windowed joins cannot be elastic!");
+		_window = window;
+		_firstWindowStorage = new WindowSegments<KeyValueStore<String, String>>(window) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected KeyValueStore<String, String> createSegment() {
+				return new KeyValueStore<String, String>(getConf());
+			}
+		};
+		_secondWindowStorage = new WindowSegments<KeyValueStore<String, String>>(window) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected KeyValueStore<String, String> createSegment() {
+				return new KeyValueStore<String, String>(getConf());
+			}
+		};
+	}
+
 }
\ No newline at end of file
@@ -103,6 +103,7 @@ public class StormDstTupleStorageBDB extends StormBoltComponent {
 
 		// connecting with previous level
 		InputDeclarer currentBolt = builder.setBolt(getID(), this, parallelism);
+		attachTickTuples(currentBolt);
 		if (MyUtilities.isManualBatchingMode(getConf()))
 			currentBolt = MyUtilities.attachEmitterBatch(conf, _fullHashList, currentBolt,
 					firstEmitter, secondEmitter);
@@ -280,6 +281,11 @@ public class StormDstTupleStorageBDB extends StormBoltComponent {
 
 	@Override
 	public void execute(Tuple stormTupleRcv) {
+		startExecuteTimer();
+		if (processTick(stormTupleRcv))
+			return;
+		checkElasticEpoch();
+
 		if (_firstTime && MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis)) {
 			_periodicAggBatch = new PeriodicAggBatchSend(_aggBatchOutputMillis, this);
 			_firstTime = false;
@@ -344,6 +350,7 @@ public class StormDstTupleStorageBDB extends StormBoltComponent {
 							false);
 			}
 		}
+		countDataTuple();
 		getCollector().ack(stormTupleRcv);
 	}
 	
@@ -25,8 +25,13 @@ import plan_runner.storm_components.synchronization.TopologyKiller;
 import plan_runner.thetajoin.indexes.Index;
 import plan_runner.thetajoin.matrix_mapping.EquiMatrixAssignment;
 import plan_runner.utilities.MyUtilities;
+import plan_runner.utilities.ParallelProber;
+import plan_runner.utilities.ParallelProber.JoinResult;
+import plan_runner.utilities.ParallelProber.ProbeRange;
 import plan_runner.utilities.PeriodicAggBatchSend;
 import plan_runner.utilities.SystemParameters;
+import plan_runner.utilities.statistics.ComponentMetrics;
+import plan_runner.utilities.statistics.Gauge;
 import plan_runner.utilities.statistics.StatisticsUtilities;
 import plan_runner.visitors.PredicateCreateIndexesVisitor;
 import plan_runner.visitors.PredicateUpdateIndexesVisitor;
@@ -55,6 +60,8 @@ public class StormDstTupleStorageJoin extends StormBoltComponent {
 	
 	// join condition
 	private final Predicate _joinPredicate;
+	// for ParallelProbe mode: a copy of _joinPredicate for each worker
+	private List<Predicate> _workerPredicates;
 	private List<Index> _firstRelationIndexes, _secondRelationIndexes;
 	private List<Integer> _operatorForIndexes;
 	private List<Object> _typeOfValueIndexed;
@@ -105,12 +112,19 @@ public class StormDstTupleStorageJoin extends StormBoltComponent {
 
 		// connecting with previous level
 		InputDeclarer currentBolt = builder.setBolt(getID(), this, parallelism);
+		attachTickTuples(currentBolt);
 		if (MyUtilities.isManualBatchingMode(getConf()))
 			currentBolt = MyUtilities.attachEmitterBatch(conf, _fullHashList, currentBolt,
 					firstEmitter, secondEmitter);
 		else
 			currentBolt = MyUtilities.attachEmitterHash(conf, _fullHashList, currentBolt,
 					firstEmitter, secondEmitter);
+		if (MyUtilities.isHierarchicalEOF(conf))
+			currentBolt = attachEndOfInput(builder, currentBolt, firstEmitter, secondEmitter);
+		if (MyUtilities.isLatencyMarkersMode(conf))
+			currentBolt = attachLatencyMarkers(currentBolt, firstEmitter, secondEmitter);
+		if (MyUtilities.isOnlineAggMode(conf))
+			currentBolt = attachOnlineAgg(builder, currentBolt, cp);
 
 		// connecting with Killer
 		if (getHierarchyPosition() == FINAL_COMPONENT && (!MyUtilities.isAckEveryTuple(conf)))
@@ -229,6 +243,11 @@ public class StormDstTupleStorageJoin extends StormBoltComponent {
 
 	@Override
 	public void execute(Tuple stormTupleRcv) {
+		startExecuteTimer();
+		if (processTick(stormTupleRcv))
+			return;
+		checkElasticEpoch();
+
 		if (_firstTime && MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis)) {
 			_periodicAggBatch = new PeriodicAggBatchSend(_aggBatchOutputMillis, this);
 			_firstTime = false;
@@ -239,6 +258,15 @@ public class StormDstTupleStorageJoin extends StormBoltComponent {
 			return;
 		}
 
+		if (processEndOfInput(stormTupleRcv))
+			return;
+
+		if (processLatencyMarker(stormTupleRcv))
+			return;
+
+		if (processOnlineAgg(stormTupleRcv))
+			return;
+
 		if (!MyUtilities.isManualBatchingMode(getConf())) {
 			final String inputComponentIndex = stormTupleRcv
 					.getStringByField(StormComponent.COMP_INDEX); // getString(0);
@@ -293,6 +321,7 @@ public class StormDstTupleStorageJoin extends StormBoltComponent {
 							false);
 			}
 		}
+		countDataTuple();
 		getCollector().ack(stormTupleRcv);
 	}
 	
@@ -379,6 +408,29 @@ public class StormDstTupleStorageJoin extends StormBoltComponent {
 		return _periodicAggBatch;
 	}
 	
+	@Override
+	protected void registerGauges(ComponentMetrics metrics) {
+		metrics.registerGauge("state_tuples", new Gauge() {
+			@Override
+			public long getValue() {
+				return _firstRelationStorage.size() + _secondRelationStorage.size();
+			}
+		});
+		metrics.registerGauge("state_bytes", new Gauge() {
+			@Override
+			public long getValue() {
+				return _firstRelationStorage.getNumBytes() + _secondRelationStorage.getNumBytes();
+			}
+		});
+		metrics.registerGauge("index_entries", new Gauge() {
+			@Override
+			public long getValue() {
+				return getNumIndexEntries(_firstRelationIndexes)
+						+ getNumIndexEntries(_secondRelationIndexes);
+			}
+		});
+	}
+
 	@Override
 	protected void printStatistics(int type) {
 		if (_statsUtils.isTestMode())
@@ -548,67 +600,100 @@ public class StormDstTupleStorageJoin extends StormBoltComponent {
 		}
 	}
 	
-	private void join(Tuple stormTuple, List<String> tuple, boolean isFromFirstEmitter,
-			TupleStorage oppositeStorage, boolean isLastInBatch) {
+	/*
+	 * null if the tuples do not join
+	 */
+	private JoinResult createJoinedTuple(List<String> tuple, String oppositeTupleString,
+			boolean isFromFirstEmitter, long receivedTimestamp, Predicate joinPredicate) {
+		long lineageTimestamp = receivedTimestamp;
+		if (MyUtilities.isStoreTimestamp(getConf(), getHierarchyPosition())) {
+			// timestamp has to be removed
+			final String parts[] = oppositeTupleString.split("\\@");
+			final long storedTimestamp = Long.valueOf(parts[0]);
+			oppositeTupleString = parts[1];
+
+			// now we set the maximum TS to the tuple
+			if (storedTimestamp > lineageTimestamp)
+				lineageTimestamp = storedTimestamp;
+		}
+
+		final List<String> oppositeTuple = MyUtilities.stringToTuple(oppositeTupleString,
+				getComponentConfiguration());
+		List<String> firstTuple, secondTuple;
+		if (isFromFirstEmitter) {
+			firstTuple = tuple;
+			secondTuple = oppositeTuple;
+		} else {
+			firstTuple = oppositeTuple;
+			secondTuple = tuple;
+		}
+
+		// Check joinCondition
+		// if existIndexes == true, the join condition is already checked
+		// before
+		// if null, cross product
+		if (joinPredicate != null && !_existIndexes && !joinPredicate.test(firstTuple, secondTuple))
+			return null;
+
+		// Create the output tuple by omitting the oppositeJoinKeys
+		// (ONLY for equi-joins since they are added
+		// by the first relation), if any (in case of cartesian product
+		// there are none)
+		// Cartesian product - Outputs all attributes
+		return new JoinResult(MyUtilities.createOutputTuple(firstTuple, secondTuple),
+				lineageTimestamp);
+		/*
+		 * The previous form works when instantiated from Cyclone plans.
+		 * The following form is probably required when generated from Squall.
+		 * 
+		 * 	outputTuple = MyUtilities.createOutputTuple(firstTuple, secondTuple,
+				_rightHashIndexes);
+		 */
+	}
+
+	private void join(Tuple stormTuple, final List<String> tuple,
+			final boolean isFromFirstEmitter, final TupleStorage oppositeStorage,
+			boolean isLastInBatch) {
 
 		if (oppositeStorage == null || oppositeStorage.size() == 0)
 			return;
 
-		for (int i = 0; i < oppositeStorage.size(); i++) {
-			String oppositeTupleString = oppositeStorage.get(i);
-
-			long lineageTimestamp = 0;
-			if (MyUtilities.isCustomTimestampMode(getConf()))
-				lineageTimestamp = stormTuple.getLongByField(StormComponent.TIMESTAMP);
-			if (MyUtilities.isStoreTimestamp(getConf(), getHierarchyPosition())) {
-				// timestamp has to be removed
-				final String parts[] = oppositeTupleString.split("\\@");
-				final long storedTimestamp = Long.valueOf(parts[0]);
-				oppositeTupleString = parts[1];
-
-				// now we set the maximum TS to the tuple
-				if (storedTimestamp > lineageTimestamp)
-					lineageTimestamp = storedTimestamp;
-			}
-			
-			final List<String> oppositeTuple = MyUtilities.stringToTuple(oppositeTupleString,
-					getComponentConfiguration());
-			List<String> firstTuple, secondTuple;
-			if (isFromFirstEmitter) {
-				firstTuple = tuple;
-				secondTuple = oppositeTuple;
-			} else {
-				firstTuple = oppositeTuple;
-				secondTuple = tuple;
-			}
+		long receivedTimestamp = 0;
+		if (MyUtilities.isCustomTimestampMode(getConf()))
+			receivedTimestamp = stormTuple.getLongByField(StormComponent.TIMESTAMP);
+
+		final ParallelProber prober = getParallelProber();
+		if (prober != null) {
+			// matching is done in parallel, operators are applied serially
+			if (_workerPredicates == null)
+				_workerPredicates = prober.getWorkerCopy(_joinPredicate);
+			final long timestamp = receivedTimestamp;
+			final List<JoinResult> results = prober.probe(oppositeStorage.size(),
+					new ProbeRange() {
+						@Override
+						public void probe(int worker, int from, int to, List<JoinResult> results) {
+							final Predicate joinPredicate = _workerPredicates.get(worker);
+							for (int i = from; i < to; i++) {
+								final JoinResult result = createJoinedTuple(tuple,
+										oppositeStorage.get(i), isFromFirstEmitter, timestamp,
+										joinPredicate);
+								if (result != null)
+									results.add(result);
+							}
+						}
+					});
+			for (final JoinResult result : results)
+				applyOperatorsAndSend(stormTuple, result.getTuple(),
+						result.getLineageTimestamp(), isLastInBatch);
+			return;
+		}
 
-			// Check joinCondition
-			// if existIndexes == true, the join condition is already checked
-			// before
-			if (_joinPredicate == null || _existIndexes
-					|| _joinPredicate.test(firstTuple, secondTuple)) { // if
-				// null,
-				// cross
-				// product
-
-				// Create the output tuple by omitting the oppositeJoinKeys
-				// (ONLY for equi-joins since they are added
-				// by the first relation), if any (in case of cartesian product
-				// there are none)
-				List<String> outputTuple = null;
-
-				// Cartesian product - Outputs all attributes
-				outputTuple = MyUtilities.createOutputTuple(firstTuple, secondTuple);
-				/*
-				 * The previous form works when instantiated from Cyclone plans.
-				 * The following form is probably required when generated from Squall.
-				 * 
-				 * 	outputTuple = MyUtilities.createOutputTuple(firstTuple, secondTuple,
-						_rightHashIndexes);
-				 */
-
-				applyOperatorsAndSend(stormTuple, outputTuple, lineageTimestamp, isLastInBatch);
-			}
+		for (int i = 0; i < oppositeStorage.size(); i++) {
+			final JoinResult result = createJoinedTuple(tuple, oppositeStorage.get(i),
+					isFromFirstEmitter, receivedTimestamp, _joinPredicate);
+			if (result != null)
+				applyOperatorsAndSend(stormTuple, result.getTuple(), result.getLineageTimestamp(),
+						isLastInBatch);
 		}
 	}
 	
@@ -9,6 +9,7 @@ import plan_runner.components.ComponentProperties;
 import plan_runner.operators.AggregateOperator;
 import plan_runner.operators.ChainOperator;
 import plan_runner.operators.Operator;
+import plan_runner.operators.TopKOperator;
 import plan_runner.storm_components.synchronization.TopologyKiller;
 import plan_runner.utilities.MyUtilities;
 import plan_runner.utilities.PeriodicAggBatchSend;
@@ -51,6 +52,7 @@ public class StormOperator extends StormBoltComponent {
 		_operatorChain = cp.getChainOperator();
 
 		InputDeclarer currentBolt = builder.setBolt(getID(), this, parallelism);
+		attachTickTuples(currentBolt);
 
 		_fullHashList = cp.getFullHashList();
 
@@ -60,6 +62,14 @@ public class StormOperator extends StormBoltComponent {
 		else
 			currentBolt = MyUtilities.attachEmitterHash(conf, _fullHashList, currentBolt,
 					parentEmitter);
+		if (MyUtilities.isHierarchicalEOF(conf))
+			currentBolt = attachEndOfInput(builder, currentBolt, parentEmitter);
+		if (MyUtilities.isCheckpointMode(conf))
+			currentBolt = attachCheckpoint(currentBolt, parentEmitter);
+		if (MyUtilities.isLatencyMarkersMode(conf))
+			currentBolt = attachLatencyMarkers(currentBolt, parentEmitter);
+		if (MyUtilities.isOnlineAggMode(conf))
+			currentBolt = attachOnlineAgg(builder, currentBolt, cp);
 
 		if (getHierarchyPosition() == FINAL_COMPONENT && (!MyUtilities.isAckEveryTuple(conf)))
 			killer.registerComponent(this, parallelism);
@@ -93,6 +103,20 @@ public class StormOperator extends StormBoltComponent {
 			}
 	}
 
+	/*
+	 * the top groups of a top-k are merged by the next component (see
+	 * TopKOperator)
+	 */
+	@Override
+	protected void finalContentSend() {
+		if (!MyUtilities.isSending(getHierarchyPosition(), _aggBatchOutputMillis))
+			return;
+		final Operator lastOperator = _operatorChain.getLastOperator();
+		if (lastOperator instanceof TopKOperator)
+			for (final List<String> tuple : ((TopKOperator<?>) lastOperator).getTopTuples())
+				tupleSend(tuple, null, 0);
+	}
+
 	protected void applyOperatorsAndSend(Tuple stormTupleRcv, List<String> tuple,
 			boolean isLastInBatch) {
 		if (MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis))
@@ -100,7 +124,10 @@ public class StormOperator extends StormBoltComponent {
 				_semAgg.acquire();
 			} catch (final InterruptedException ex) {
 			}
-		tuple = _operatorChain.process(tuple);
+		long inputTimestamp = 0;
+		if (MyUtilities.isCustomTimestampMode(getConf()))
+			inputTimestamp = stormTupleRcv.getLongByField(StormComponent.TIMESTAMP);
+		tuple = _operatorChain.process(tuple, inputTimestamp);
 		if (MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis))
 			_semAgg.release();
 
@@ -134,6 +161,11 @@ public class StormOperator extends StormBoltComponent {
 	// from IRichBolt
 	@Override
 	public void execute(Tuple stormTupleRcv) {
+		startExecuteTimer();
+		if (processTick(stormTupleRcv))
+			return;
+		checkElasticEpoch();
+
 		if (_firstTime && MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis)) {
 			_periodicAggBatch = new PeriodicAggBatchSend(_aggBatchOutputMillis, this);
 			_firstTime = false;
@@ -144,6 +176,18 @@ public class StormOperator extends StormBoltComponent {
 			return;
 		}
 
+		if (processEndOfInput(stormTupleRcv))
+			return;
+
+		if (processCheckpoint(stormTupleRcv))
+			return;
+
+		if (processLatencyMarker(stormTupleRcv))
+			return;
+
+		if (processOnlineAgg(stormTupleRcv))
+			return;
+
 		if (!MyUtilities.isManualBatchingMode(getConf())) {
 			final List<String> tuple = (List<String>) stormTupleRcv
 					.getValueByField(StormComponent.TUPLE);// getValue(1);
@@ -188,6 +232,7 @@ public class StormOperator extends StormBoltComponent {
 					applyOperatorsAndSend(stormTupleRcv, tuple, false);
 			}
 		}
+		countDataTuple();
 		getCollector().ack(stormTupleRcv);
 	}
 
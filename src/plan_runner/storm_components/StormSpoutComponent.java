@@ -11,8 +11,16 @@ import plan_runner.expressions.ValueExpression;
 import plan_runner.operators.AggregateOperator;
 import plan_runner.operators.ChainOperator;
 import plan_runner.operators.Operator;
+import plan_runner.storm_components.synchronization.EndOfInputTracker;
+import plan_runner.storm_components.synchronization.LatencyMarker;
+import plan_runner.utilities.ElasticSchedule;
+import plan_runner.utilities.ManualBatcher;
 import plan_runner.utilities.MyUtilities;
 import plan_runner.utilities.SystemParameters;
+import plan_runner.utilities.statistics.ComponentMetrics;
+import plan_runner.utilities.statistics.Gauge;
+import plan_runner.utilities.statistics.LatencyHistogram;
+import plan_runner.utilities.statistics.MetricsReporter;
 import backtype.storm.spout.SpoutOutputCollector;
 import backtype.storm.task.TopologyContext;
 import backtype.storm.topology.OutputFieldsDeclarer;
@@ -42,8 +50,7 @@ public abstract class StormSpoutComponent extends BaseRichSpout implements Storm
 	// for ManualBatch(Queuing) mode
 	private List<Integer> _targetTaskIds;
 	private int _targetParallelism;
-	private StringBuffer[] _targetBuffers;
-	private long[] _targetTimestamps;
+	private ManualBatcher _batcher;
 
 	// for CustomTimestamp mode
 	private double _totalLatencyMillis;
@@ -53,6 +60,30 @@ public abstract class StormSpoutComponent extends BaseRichSpout implements Storm
 	protected long numNegatives = 0;
 	protected double maxNegative = 0;
 
+	// for HierarchicalEOF mode
+	private EndOfInputTracker _eoiTracker;
+
+	// for Metrics mode
+	private ComponentMetrics _metrics;
+	private MetricsReporter _metricsReporter;
+
+	// for Elastic mode: the schedule of the elastic child, if any
+	private ElasticSchedule _elasticTarget;
+	private long _elasticStartMillis;
+	private int _epoch;
+
+	// for LatencyMarkers mode
+	private List<Integer> _markerTasks;
+	// whether markers wait for the batches of their destinations
+	private boolean _isMarkerBatched;
+	private int _markerRound;
+	private long _markerPeriodNanos;
+	private long _lastMarkerNanos;
+	private LatencyHistogram _markerResidenceNanos;
+	// acked markers, from the creation
+	private LatencyHistogram _markerLatencyNanos;
+	private long _numLostMarkers;
+
 	public StormSpoutComponent(ComponentProperties cp, List<String> allCompNames,
 			int hierarchyPosition, Map conf) {
 		_conf = conf;
@@ -69,32 +100,24 @@ public abstract class StormSpoutComponent extends BaseRichSpout implements Storm
 	private void addToManualBatch(List<String> tuple, long timestamp) {
 		final String tupleHash = MyUtilities.createHashString(tuple, _hashIndexes,
 				_hashExpressions, _conf);
-		final int dstIndex = MyUtilities.chooseHashTargetIndex(tupleHash, _targetParallelism);
-
-		// we put in queueTuple based on tupleHash
-		// the same hash is used in BatchStreamGrouping for deciding where a
-		// particular targetBuffer is to be sent
-		final String tupleString = MyUtilities.tupleToString(tuple, _conf);
-
-		if (MyUtilities.isCustomTimestampMode(_conf))
-			if (_targetBuffers[dstIndex].length() == 0)
-				// timestamp of the first tuple being added to a buffer is the
-				// timestamp of the buffer
-				_targetTimestamps[dstIndex] = timestamp;
-		_targetBuffers[dstIndex].append(tupleHash)
-				.append(SystemParameters.MANUAL_BATCH_HASH_DELIMITER).append(tupleString)
-				.append(SystemParameters.MANUAL_BATCH_TUPLE_DELIMITER);
+		// the batcher puts the tuple in the buffer of its destination, based
+		// on tupleHash
+		_batcher.add(tupleHash, MyUtilities.tupleToString(tuple, _conf), timestamp);
 	}
 
 	@Override
 	public void declareOutputFields(OutputFieldsDeclarer declarer) {
 		if (MyUtilities.isAckEveryTuple(_conf) || _hierarchyPosition == FINAL_COMPONENT)
 			declarer.declareStream(SystemParameters.EOF_STREAM, new Fields(SystemParameters.EOF));
+		if (MyUtilities.isOnlineAggMode(_conf) && _hierarchyPosition == FINAL_COMPONENT)
+			declarer.declareStream(SystemParameters.ESTIMATE_STREAM, true, new Fields(
+					SystemParameters.PROGRESS, SystemParameters.ESTIMATE));
 
 		final List<String> outputFields = new ArrayList<String>();
 		if (MyUtilities.isManualBatchingMode(_conf)) {
 			outputFields.add(StormComponent.COMP_INDEX);
 			outputFields.add(StormComponent.TUPLE); // string
+			outputFields.add(StormComponent.DESTINATION);
 		} else {
 			outputFields.add(StormComponent.COMP_INDEX);
 			outputFields.add(StormComponent.TUPLE); // list of string
@@ -102,7 +125,55 @@ public abstract class StormSpoutComponent extends BaseRichSpout implements Storm
 		}
 		if (MyUtilities.isCustomTimestampMode(getConf()))
 			outputFields.add(StormComponent.TIMESTAMP);
+		if (MyUtilities.isElasticMode(_conf))
+			outputFields.add(StormComponent.EPOCH);
 		declarer.declareStream(SystemParameters.DATA_STREAM, new Fields(outputFields));
+		if (MyUtilities.isHierarchicalEOF(_conf) && _hierarchyPosition != FINAL_COMPONENT)
+			declarer.declareStream(SystemParameters.EOI_STREAM, new Fields(SystemParameters.EOI));
+		if (MyUtilities.isCheckpointMode(_conf) && _hierarchyPosition != FINAL_COMPONENT)
+			declarer.declareStream(SystemParameters.CHECKPOINT_STREAM, new Fields(
+					SystemParameters.CHECKPOINT));
+		if (MyUtilities.isLatencyMarkersMode(_conf) && _hierarchyPosition != FINAL_COMPONENT)
+			declarer.declareStream(SystemParameters.LATENCY_MARKER_STREAM, true, new Fields(
+					SystemParameters.LATENCY_MARKER));
+		if (MyUtilities.isElasticMode(_conf) && _hierarchyPosition != FINAL_COMPONENT)
+			declarer.declareStream(SystemParameters.EPOCH_STREAM, new Fields(StormComponent.EPOCH));
+		if (MyUtilities.isOnlineAggMode(_conf) && _hierarchyPosition != FINAL_COMPONENT)
+			declarer.declareStream(SystemParameters.PROGRESS_STREAM, new Fields(
+					SystemParameters.PROGRESS));
+	}
+
+	/*
+	 * Elastic mode: invoked by a data source between tuples, it switches to
+	 * the next epoch(s) of the elastic child on schedule
+	 */
+	protected void elasticEpochSend() {
+		if (_elasticTarget == null)
+			return;
+		final int epoch = _elasticTarget.getEpoch(System.currentTimeMillis()
+				- _elasticStartMillis);
+		while (_epoch < epoch) {
+			if (_batcher != null) {
+				// the pending batches are routed by the ring of the previous
+				// epoch
+				_batcher.flushAll();
+				_batcher.setRing(_elasticTarget.getRing(_epoch + 1));
+			}
+			_epoch++;
+			_collector.emit(SystemParameters.EPOCH_STREAM, new Values(_epoch));
+		}
+	}
+
+	// Checkpoint mode: the barrier goes to each task of the child component
+	protected void checkpointSend(long id) {
+		if (_hierarchyPosition != FINAL_COMPONENT)
+			_collector.emit(SystemParameters.CHECKPOINT_STREAM, new Values(id));
+	}
+
+	// HierarchicalEOF mode: instead of LAST_ACK, the EndOfInputCoordinator of
+	// the child component is notified
+	private void endOfInputSend() {
+		_collector.emit(SystemParameters.EOI_STREAM, _eoiTracker.createPunctuation());
 	}
 
 	private void finalAckSend() {
@@ -126,6 +197,14 @@ public abstract class StormSpoutComponent extends BaseRichSpout implements Storm
 		return new String[] { _ID };
 	}
 
+	protected List<ValueExpression> getHashExpressions() {
+		return _hashExpressions;
+	}
+
+	protected List<Integer> getHashIndexes() {
+		return _hashIndexes;
+	}
+
 	protected int getHierarchyPosition() {
 		return _hierarchyPosition;
 	}
@@ -143,18 +222,10 @@ public abstract class StormSpoutComponent extends BaseRichSpout implements Storm
 
 	public abstract long getNumSentTuples();
 
+	// at the end of the input
 	private void manualBatchSend() {
-		for (int i = 0; i < _targetParallelism; i++) {
-			final String tupleString = _targetBuffers[i].toString();
-			_targetBuffers[i] = new StringBuffer("");
-
-			if (!tupleString.isEmpty())
-				// some buffers might be empty
-				if (MyUtilities.isCustomTimestampMode(_conf))
-					_collector.emit(new Values(_componentIndex, tupleString, _targetTimestamps[i]));
-				else
-					_collector.emit(new Values(_componentIndex, tupleString));
-		}
+		if (_batcher != null)
+			_batcher.flushAll();
 	}
 
 	// BaseRichSpout
@@ -164,10 +235,148 @@ public abstract class StormSpoutComponent extends BaseRichSpout implements Storm
 
 		_targetTaskIds = MyUtilities.findTargetTaskIds(tc);
 		_targetParallelism = _targetTaskIds.size();
-		_targetBuffers = new StringBuffer[_targetParallelism];
-		_targetTimestamps = new long[_targetParallelism];
-		for (int i = 0; i < _targetParallelism; i++)
-			_targetBuffers[i] = new StringBuffer("");
+		if (MyUtilities.isManualBatchingMode(_conf) && _targetParallelism > 0)
+			_batcher = new ManualBatcher(_ID, _targetParallelism, null, _conf,
+					new ManualBatcher.BatchEmitter() {
+						@Override
+						public List<Integer> emitBatch(int destination, String batch,
+								long timestamp) {
+							final Values values = new Values(_componentIndex, batch,
+									destination);
+							if (MyUtilities.isCustomTimestampMode(_conf))
+								values.add(timestamp);
+							if (MyUtilities.isElasticMode(_conf))
+								values.add(_epoch);
+							final List<Integer> taskIds = _collector.emit(values);
+							if (_eoiTracker != null)
+								_eoiTracker.countSent(taskIds);
+							return taskIds;
+						}
+
+						@Override
+						public void emitMarker(int destination, LatencyMarker marker) {
+							latencyMarkerEmit(destination, marker);
+						}
+					});
+
+		if (MyUtilities.isHierarchicalEOF(_conf))
+			_eoiTracker = new EndOfInputTracker();
+
+		if (MyUtilities.isElasticMode(_conf)) {
+			_elasticTarget = ElasticSchedule.findTarget(tc, _conf);
+			_elasticStartMillis = System.currentTimeMillis();
+			if (_elasticTarget != null && _batcher != null)
+				_batcher.setRing(_elasticTarget.getRing(0));
+		}
+
+		if (MyUtilities.isLatencyMarkersMode(_conf)) {
+			final List<List<Integer>> markerTargets = MyUtilities.findLatencyMarkerTargets(tc);
+			_markerTasks = new ArrayList<Integer>();
+			for (final List<Integer> tasks : markerTargets)
+				_markerTasks.addAll(tasks);
+			// the destinations of the batcher are the tasks of the only child
+			_isMarkerBatched = _batcher != null && markerTargets.size() == 1;
+			long periodMillis = LatencyMarker.DEFAULT_PERIOD_MILLIS;
+			if (SystemParameters.isExisting(_conf, "DIP_LATENCY_MARKER_MILLIS"))
+				periodMillis = SystemParameters.getInt(_conf, "DIP_LATENCY_MARKER_MILLIS");
+			_markerPeriodNanos = periodMillis * 1000000;
+			_lastMarkerNanos = System.nanoTime();
+			_markerResidenceNanos = new LatencyHistogram();
+			_markerLatencyNanos = new LatencyHistogram();
+		}
+
+		if (MyUtilities.isCheckpointMode(_conf) && !isCheckpointSupported())
+			throw new RuntimeException(_ID + " does not support DIP_CHECKPOINT_DIR mode!");
+
+		MyUtilities.startOperatorProfiling(getChainOperator(), _conf);
+		MyUtilities.startOperatorDeletions(getChainOperator(), _conf);
+		if (MyUtilities.isMetricsMode(_conf)) {
+			_metrics = new ComponentMetrics(_ID, tc.getThisTaskId());
+			if (MyUtilities.isManualBatchingMode(_conf))
+				_metrics.registerGauge("batch_queue_bytes", new Gauge() {
+					@Override
+					public long getValue() {
+						return _batcher == null ? 0 : _batcher.getBytes();
+					}
+				});
+			if (_markerResidenceNanos != null) {
+				_metrics.registerHistogram("marker_residence_nanos", _markerResidenceNanos);
+				_metrics.registerHistogram("marker_latency_nanos", _markerLatencyNanos);
+			}
+			registerGauges(_metrics);
+			_metricsReporter = new MetricsReporter(_metrics, _conf);
+		}
+	}
+
+	// Metrics and ProfileOperators mode: invoked when the spout is done with
+	// its input
+	protected void finalizeMetrics() {
+		MyUtilities.printOperatorProfile(_ID, getChainOperator(), _conf, LOG);
+		if (_markerLatencyNanos != null)
+			// markers which are still in flight are not counted
+			LOG.info(_ID + ": latency markers " + LatencyMarker.summary(_markerLatencyNanos)
+					+ " end-to-end, " + LatencyMarker.summary(_markerResidenceNanos)
+					+ " residence, " + _numLostMarkers + " lost.");
+		if (_metricsReporter != null)
+			_metricsReporter.finalReport();
+	}
+
+	// Checkpoint mode: subclasses which support it send barriers
+	protected boolean isCheckpointSupported() {
+		return false;
+	}
+
+	/*
+	 * LatencyMarkers mode: returns true if msgId is a marker, which is acked
+	 * (or failed, e.g. timed out) by Storm
+	 */
+	protected boolean latencyMarkerAck(Object msgId, boolean isFailed) {
+		if (!(msgId instanceof LatencyMarker))
+			return false;
+		if (isFailed)
+			_numLostMarkers++;
+		else
+			_markerLatencyNanos.record(System.nanoTime()
+					- ((LatencyMarker) msgId).getArrivalNanos());
+		return true;
+	}
+
+	private void latencyMarkerEmit(int destination, LatencyMarker marker) {
+		final long residenceNanos = marker.getResidenceNanos();
+		_markerResidenceNanos.record(residenceNanos);
+		// the marker is its own message id, see latencyMarkerAck
+		_collector.emitDirect(_markerTasks.get(destination),
+				SystemParameters.LATENCY_MARKER_STREAM,
+				new Values(marker.addHop(_ID, residenceNanos)), marker);
+	}
+
+	/*
+	 * ManualBatch mode: invoked by a data source on each nextTuple, it flushes
+	 * the batches which waited for DIP_BATCH_MAX_MILLIS (e.g. while the data
+	 * source is ahead of its schedule)
+	 */
+	protected void batchExpirySend() {
+		if (_batcher != null)
+			_batcher.flushExpired(System.currentTimeMillis());
+	}
+
+	/*
+	 * LatencyMarkers mode: invoked by a data source between tuples, it sends a
+	 * marker every DIP_LATENCY_MARKER_MILLIS to a task of a child (round
+	 * robin)
+	 */
+	protected void latencyMarkerSend() {
+		if (_markerTasks == null || _markerTasks.isEmpty())
+			return;
+		final long now = System.nanoTime();
+		if (now - _lastMarkerNanos < _markerPeriodNanos)
+			return;
+		_lastMarkerNanos = now;
+		final int destination = _markerRound++ % _markerTasks.size();
+		if (_isMarkerBatched)
+			_batcher.addMarker(destination, new LatencyMarker());
+		else
+			latencyMarkerEmit(destination, new LatencyMarker());
 	}
 
 	@Override
@@ -233,6 +442,8 @@ public abstract class StormSpoutComponent extends BaseRichSpout implements Storm
 				}
 				_totalLatencyMillis += latencyMillis;
 				_numberOfSamples++;
+				if (_metrics != null)
+					_metrics.recordTupleLatency(latencyMillis);
 			}
 			if (tupleSerialNum % freqWrite == 0) {
 				LOG.info("Taking into account every " + freqCompute
@@ -244,28 +455,41 @@ public abstract class StormSpoutComponent extends BaseRichSpout implements Storm
 		}
 	}
 
+	/*
+	 * Metrics mode: subclasses add gauges for their state (e.g. pending tuples)
+	 */
+	protected void registerGauges(ComponentMetrics metrics) {
+	}
+
 	// HELPER METHODS
 	// non-ManualBatchMode
 	private void regularTupleSend(List<String> tuple, long timestamp) {
-		final Values stormTupleSnd = MyUtilities.createTupleValues(tuple, timestamp,
+		final Values stormTupleSnd = MyUtilities.createTupleValues(tuple, timestamp, _epoch,
 				_componentIndex, _hashIndexes, _hashExpressions, _conf);
-		MyUtilities.sendTuple(stormTupleSnd, _collector, _conf);
+		final List<Integer> taskIds = MyUtilities.sendTuple(stormTupleSnd, _collector, _conf);
+		if (_eoiTracker != null)
+			_eoiTracker.countSent(taskIds);
 	}
 
 	@Override
 	public void tupleSend(List<String> tuple, Tuple stormTupleRcv, long timestamp) {
 		final boolean isLastAck = MyUtilities.isFinalAck(tuple, _conf);
+		if (_metrics != null && !isLastAck)
+			_metrics.countSent();
 
-		if (!MyUtilities.isManualBatchingMode(_conf)) {
+		if (isLastAck && _eoiTracker != null) {
+			if (MyUtilities.isManualBatchingMode(_conf))
+				manualBatchSend();
+			endOfInputSend();
+		} else if (!MyUtilities.isManualBatchingMode(_conf)) {
 			if (isLastAck)
 				finalAckSend();
 			else
 				regularTupleSend(tuple, timestamp);
 		} else if (!isLastAck) {
-			// appending tuple if it is not lastAck
+			// appending tuple if it is not lastAck; the batcher sends the
+			// batch of its destination when it is full
 			addToManualBatch(tuple, timestamp);
-			if (getNumSentTuples() % MyUtilities.getCompBatchSize(_ID, _conf) == 0)
-				manualBatchSend();
 		} else {
 			// has to be sent separately, because of the BatchStreamGrouping
 			// logic
@@ -74,6 +74,7 @@ public class StormSrcStorage extends StormBoltComponent {
 		final int parallelism = SystemParameters.getInt(conf, getID() + "_PAR");
 		_full_ID = getID() + "_" + _tableName;
 		final InputDeclarer currentBolt = builder.setBolt(_full_ID, this, parallelism);
+		attachTickTuples(currentBolt);
 		currentBolt.fieldsGrouping(_harmonizer.getID(), new Fields("Hash"));
 
 		if (getHierarchyPosition() == FINAL_COMPONENT && (!MyUtilities.isAckEveryTuple(conf)))
@@ -136,6 +137,11 @@ public class StormSrcStorage extends StormBoltComponent {
 	// from IRichBolt
 	@Override
 	public void execute(Tuple stormTupleRcv) {
+		startExecuteTimer();
+		if (processTick(stormTupleRcv))
+			return;
+		checkElasticEpoch();
+
 		if (_firstTime && MyUtilities.isAggBatchOutputMode(_batchOutputMillis)) {
 			_periodicAggBatch = new PeriodicAggBatchSend(_batchOutputMillis, this);
 			_firstTime = false;
@@ -198,6 +204,7 @@ public class StormSrcStorage extends StormBoltComponent {
 					applyOperatorsAndSend(stormTupleRcv, outputTuple);
 				}
 		}
+		countDataTuple();
 		getCollector().ack(stormTupleRcv);
 	}
 
@@ -2,6 +2,7 @@ package plan_runner.storm_components;
 
 import gnu.trove.list.array.TIntArrayList;
 
+import java.io.Serializable;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -21,12 +22,19 @@ import plan_runner.operators.Operator;
 import plan_runner.predicates.ComparisonPredicate;
 import plan_runner.predicates.Predicate;
 import plan_runner.storage.TupleStorage;
+import plan_runner.storage.WindowSegments;
 import plan_runner.storm_components.synchronization.TopologyKiller;
 import plan_runner.thetajoin.indexes.Index;
 import plan_runner.thetajoin.matrix_mapping.EquiMatrixAssignment;
 import plan_runner.utilities.MyUtilities;
+import plan_runner.utilities.ParallelProber;
+import plan_runner.utilities.ParallelProber.JoinResult;
+import plan_runner.utilities.ParallelProber.ProbeRange;
 import plan_runner.utilities.PeriodicAggBatchSend;
 import plan_runner.utilities.SystemParameters;
+import plan_runner.utilities.WindowSemantics;
+import plan_runner.utilities.statistics.ComponentMetrics;
+import plan_runner.utilities.statistics.Gauge;
 import plan_runner.utilities.statistics.StatisticsUtilities;
 import plan_runner.visitors.PredicateCreateIndexesVisitor;
 import plan_runner.visitors.PredicateUpdateIndexesVisitor;
@@ -36,6 +44,20 @@ import backtype.storm.topology.TopologyBuilder;
 import backtype.storm.tuple.Tuple;
 
 public class StormThetaJoin extends StormBoltComponent {
+	/*
+	 * a segment of a windowed relation: the tuples and their indexes
+	 */
+	private static class ThetaSegment implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final TupleStorage _storage = new TupleStorage();
+		private final List<Index> _indexes;
+
+		public ThetaSegment(List<Index> indexes) {
+			_indexes = indexes;
+		}
+	}
+
 	private static final long serialVersionUID = 1L;
 	private static Logger LOG = Logger.getLogger(StormThetaJoin.class);
 
@@ -51,6 +73,8 @@ public class StormThetaJoin extends StormBoltComponent {
 	List<Integer> _joinParams;
 
 	private final Predicate _joinPredicate;
+	// for ParallelProbe mode: a copy of _joinPredicate for each worker
+	private List<Predicate> _workerPredicates;
 	// private OptimalPartition _partitioning;
 
 	private List<Index> _firstRelationIndexes, _secondRelationIndexes;
@@ -59,6 +83,13 @@ public class StormThetaJoin extends StormBoltComponent {
 
 	private boolean _existIndexes = false;
 
+	// windowed join: the storages are split into segments, see setWindow
+	private WindowSemantics _window;
+	private WindowSegments<ThetaSegment> _firstWindowStorage, _secondWindowStorage;
+	// positions for count-based windows
+	private long _firstNumReceived = 0, _secondNumReceived = 0;
+	private long _numLateTuples = 0;
+
 	// for agg batch sending
 	private final Semaphore _semAgg = new Semaphore(1, true);
 	private boolean _firstTime = true;
@@ -99,16 +130,25 @@ public class StormThetaJoin extends StormBoltComponent {
 		_joinPredicate = joinPredicate;
 
 		InputDeclarer currentBolt = builder.setBolt(getID(), this, parallelism);
+		attachTickTuples(currentBolt);
 
 		final EquiMatrixAssignment _currentMappingAssignment = new EquiMatrixAssignment(
 				firstCardinality, secondCardinality, parallelism, -1);
 		final String dim = _currentMappingAssignment.getMappingDimensions();
 		LOG.info(getID() + " Initial Dimensions is: " + dim);
 
-		if (interComp == null)
+		if (interComp == null) {
 			currentBolt = MyUtilities.thetaAttachEmitterComponents(currentBolt, firstEmitter,
 					secondEmitter, allCompNames, _currentMappingAssignment, conf);
-		else {
+			if (MyUtilities.isHierarchicalEOF(conf))
+				currentBolt = attachEndOfInput(builder, currentBolt, firstEmitter, secondEmitter);
+			if (MyUtilities.isCheckpointMode(conf))
+				currentBolt = attachCheckpoint(currentBolt, firstEmitter, secondEmitter);
+			if (MyUtilities.isLatencyMarkersMode(conf))
+				currentBolt = attachLatencyMarkers(currentBolt, firstEmitter, secondEmitter);
+			if (MyUtilities.isOnlineAggMode(conf))
+				currentBolt = attachOnlineAgg(builder, currentBolt, cp);
+		} else {
 			currentBolt = MyUtilities.thetaAttachEmitterComponentsWithInterChanging(currentBolt,
 					firstEmitter, secondEmitter, allCompNames, _currentMappingAssignment, conf,
 					interComp);
@@ -162,7 +202,7 @@ public class StormThetaJoin extends StormBoltComponent {
 				_semAgg.acquire();
 			} catch (final InterruptedException ex) {
 			}
-		tuple = _operatorChain.process(tuple);
+		tuple = _operatorChain.process(tuple, lineageTimestamp);
 		if (MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis))
 			_semAgg.release();
 
@@ -182,6 +222,9 @@ public class StormThetaJoin extends StormBoltComponent {
 					// next to last
 					// because we measure the latency of the last operator
 					timestamp = System.currentTimeMillis();
+				else if (MyUtilities.isWindowTimestampsMode(getConf()))
+					// time-based windows downstream
+					timestamp = lineageTimestamp;
 			// timestamp = System.nanoTime();
 			tupleSend(tuple, stormTupleRcv, timestamp);
 		}
@@ -200,8 +243,23 @@ public class StormThetaJoin extends StormBoltComponent {
 		_typeOfValueIndexed = new ArrayList<Object>(visitor._typeOfValueIndexed);
 	}
 
+	// empty indexes of a relation, null if there are no indexes
+	private List<Index> createSegmentIndexes(boolean isFirstRelation) {
+		if (!_existIndexes)
+			return null;
+		final PredicateCreateIndexesVisitor visitor = new PredicateCreateIndexesVisitor();
+		_joinPredicate.accept(visitor);
+		return new ArrayList<Index>(isFirstRelation ? visitor._firstRelationIndexes
+				: visitor._secondRelationIndexes);
+	}
+
 	@Override
 	public void execute(Tuple stormTupleRcv) {
+		startExecuteTimer();
+		if (processTick(stormTupleRcv))
+			return;
+		checkElasticEpoch();
+
 		if (_firstTime && MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis)) {
 			_periodicAggBatch = new PeriodicAggBatchSend(_aggBatchOutputMillis, this);
 			_firstTime = false;
@@ -212,6 +270,18 @@ public class StormThetaJoin extends StormBoltComponent {
 			return;
 		}
 
+		if (processEndOfInput(stormTupleRcv))
+			return;
+
+		if (processCheckpoint(stormTupleRcv))
+			return;
+
+		if (processLatencyMarker(stormTupleRcv))
+			return;
+
+		if (processOnlineAgg(stormTupleRcv))
+			return;
+
 		if (!MyUtilities.isManualBatchingMode(getConf())) {
 			final String inputComponentIndex = stormTupleRcv
 					.getStringByField(StormComponent.COMP_INDEX); // getString(0);
@@ -269,6 +339,7 @@ public class StormThetaJoin extends StormBoltComponent {
 							inputTupleHash, stormTupleRcv, false);
 			}
 		}
+		countDataTuple();
 		getCollector().ack(stormTupleRcv);
 	}
 
@@ -304,72 +375,182 @@ public class StormThetaJoin extends StormBoltComponent {
 		return _periodicAggBatch;
 	}
 
-	private void join(Tuple stormTuple, List<String> tuple, boolean isFromFirstEmitter,
-			TupleStorage oppositeStorage, boolean isLastInBatch) {
-
-		if (oppositeStorage == null || oppositeStorage.size() == 0)
-			return;
-
-		for (int i = 0; i < oppositeStorage.size(); i++) {
-			String oppositeTupleString = oppositeStorage.get(i);
-
-			long lineageTimestamp = 0;
-			if (MyUtilities.isCustomTimestampMode(getConf()))
-				lineageTimestamp = stormTuple.getLongByField(StormComponent.TIMESTAMP);
-			if (MyUtilities.isStoreTimestamp(getConf(), getHierarchyPosition())) {
-				// timestamp has to be removed
-				final String parts[] = oppositeTupleString.split("\\@");
-				final long storedTimestamp = Long.valueOf(parts[0]);
-				oppositeTupleString = parts[1];
-
-				// now we set the maximum TS to the tuple
-				if (storedTimestamp > lineageTimestamp)
-					lineageTimestamp = storedTimestamp;
-			}
+	/*
+	 * null if the tuples do not join
+	 */
+	private JoinResult createJoinedTuple(List<String> tuple, String oppositeTupleString,
+			boolean isFromFirstEmitter, long receivedTimestamp, Predicate joinPredicate) {
+		long lineageTimestamp = receivedTimestamp;
+		if (MyUtilities.isStoreTimestamp(getConf(), getHierarchyPosition())) {
+			// timestamp has to be removed
+			final String parts[] = oppositeTupleString.split("\\@");
+			final long storedTimestamp = Long.valueOf(parts[0]);
+			oppositeTupleString = parts[1];
+
+			// now we set the maximum TS to the tuple
+			if (storedTimestamp > lineageTimestamp)
+				lineageTimestamp = storedTimestamp;
+		}
 
-			final List<String> oppositeTuple = MyUtilities.stringToTuple(oppositeTupleString,
-					getComponentConfiguration());
-			List<String> firstTuple, secondTuple;
-			if (isFromFirstEmitter) {
-				firstTuple = tuple;
-				secondTuple = oppositeTuple;
-			} else {
-				firstTuple = oppositeTuple;
-				secondTuple = tuple;
-			}
+		final List<String> oppositeTuple = MyUtilities.stringToTuple(oppositeTupleString,
+				getComponentConfiguration());
+		List<String> firstTuple, secondTuple;
+		if (isFromFirstEmitter) {
+			firstTuple = tuple;
+			secondTuple = oppositeTuple;
+		} else {
+			firstTuple = oppositeTuple;
+			secondTuple = tuple;
+		}
 
-			// Check joinCondition
-			// if existIndexes == true, the join condition is already checked
-			// before
-			if (_joinPredicate == null || _existIndexes
-					|| _joinPredicate.test(firstTuple, secondTuple)) { // if
-				// null,
-				// cross
-				// product
+		// Check joinCondition
+		// if existIndexes == true, the join condition is already checked
+		// before
+		// if null, cross product
+		if (joinPredicate != null && !_existIndexes && !joinPredicate.test(firstTuple, secondTuple))
+			return null;
+
+		// Create the output tuple by omitting the oppositeJoinKeys
+		// (ONLY for equi-joins since they are added
+		// by the first relation), if any (in case of cartesian product
+		// there are none)
+		// Cartesian product - Outputs all attributes
+		return new JoinResult(MyUtilities.createOutputTuple(firstTuple, secondTuple),
+				lineageTimestamp);
+	}
 
-				// Create the output tuple by omitting the oppositeJoinKeys
-				// (ONLY for equi-joins since they are added
-				// by the first relation), if any (in case of cartesian product
-				// there are none)
-				List<String> outputTuple = null;
+	private void join(Tuple stormTuple, final List<String> tuple,
+			final boolean isFromFirstEmitter, final TupleStorage oppositeStorage,
+			boolean isDeletion, boolean isLastInBatch) {
 
-				// Cartesian product - Outputs all attributes
-				outputTuple = MyUtilities.createOutputTuple(firstTuple, secondTuple);
+		if (oppositeStorage == null || oppositeStorage.size() == 0)
+			return;
 
-				applyOperatorsAndSend(stormTuple, outputTuple, lineageTimestamp, isLastInBatch);
+		long receivedTimestamp = 0;
+		if (MyUtilities.isCustomTimestampMode(getConf()))
+			receivedTimestamp = stormTuple.getLongByField(StormComponent.TIMESTAMP);
+
+		final ParallelProber prober = getParallelProber();
+		if (prober != null) {
+			// matching is done in parallel, operators are applied serially
+			if (_workerPredicates == null)
+				_workerPredicates = prober.getWorkerCopy(_joinPredicate);
+			final long timestamp = receivedTimestamp;
+			final List<JoinResult> results = prober.probe(oppositeStorage.size(),
+					new ProbeRange() {
+						@Override
+						public void probe(int worker, int from, int to, List<JoinResult> results) {
+							final Predicate joinPredicate = _workerPredicates.get(worker);
+							for (int i = from; i < to; i++) {
+								final JoinResult result = createJoinedTuple(tuple,
+										oppositeStorage.get(i), isFromFirstEmitter, timestamp,
+										joinPredicate);
+								if (result != null)
+									results.add(result);
+							}
+						}
+					});
+			for (final JoinResult result : results)
+				applyOperatorsAndSend(stormTuple, isDeletion ? MyUtilities.toDeletion(result
+						.getTuple()) : result.getTuple(), result.getLineageTimestamp(),
+						isLastInBatch);
+			return;
+		}
 
-			}
+		for (int i = 0; i < oppositeStorage.size(); i++) {
+			final JoinResult result = createJoinedTuple(tuple, oppositeStorage.get(i),
+					isFromFirstEmitter, receivedTimestamp, _joinPredicate);
+			if (result != null)
+				applyOperatorsAndSend(stormTuple, isDeletion ? MyUtilities.toDeletion(result
+						.getTuple()) : result.getTuple(), result.getLineageTimestamp(),
+						isLastInBatch);
 		}
 	}
 
+	/*
+	 * For a deleted tuple (isDeletion), the output tuples are deleted as well
+	 */
 	protected void performJoin(Tuple stormTupleRcv, List<String> tuple, String inputTupleHash,
 			boolean isFromFirstEmitter, List<Index> oppositeIndexes,
-			List<String> valuesToApplyOnIndex, TupleStorage oppositeStorage, boolean isLastInBatch) {
+			List<String> valuesToApplyOnIndex, TupleStorage oppositeStorage, boolean isDeletion,
+			boolean isLastInBatch) {
 
 		final TupleStorage tuplesToJoin = new TupleStorage();
 		selectTupleToJoin(oppositeStorage, oppositeIndexes, isFromFirstEmitter,
 				valuesToApplyOnIndex, tuplesToJoin);
-		join(stormTupleRcv, tuple, isFromFirstEmitter, tuplesToJoin, isLastInBatch);
+		join(stormTupleRcv, tuple, isFromFirstEmitter, tuplesToJoin, isDeletion, isLastInBatch);
+	}
+
+	// the stored tuples and the index entries of both the relations
+	private long getNumStateBytes() {
+		if (_window == null)
+			return _firstRelationStorage.getNumBytes() + _secondRelationStorage.getNumBytes();
+		long result = 0;
+		for (final ThetaSegment segment : _firstWindowStorage.getSegments())
+			result += segment._storage.getNumBytes();
+		for (final ThetaSegment segment : _secondWindowStorage.getSegments())
+			result += segment._storage.getNumBytes();
+		return result;
+	}
+
+	private long getNumIndexEntries() {
+		if (_window == null)
+			return getNumIndexEntries(_firstRelationIndexes)
+					+ getNumIndexEntries(_secondRelationIndexes);
+		long result = 0;
+		for (final ThetaSegment segment : _firstWindowStorage.getSegments())
+			result += getNumIndexEntries(segment._indexes);
+		for (final ThetaSegment segment : _secondWindowStorage.getSegments())
+			result += getNumIndexEntries(segment._indexes);
+		return result;
+	}
+
+	// the number of stored tuples of a relation
+	private int getStorageSize(boolean isFirstRelation) {
+		if (_window == null)
+			return (isFirstRelation ? _firstRelationStorage : _secondRelationStorage).size();
+		int size = 0;
+		for (final ThetaSegment segment : (isFirstRelation ? _firstWindowStorage
+				: _secondWindowStorage).getSegments())
+			size += segment._storage.size();
+		return size;
+	}
+
+	@Override
+	protected void registerGauges(ComponentMetrics metrics) {
+		metrics.registerGauge("state_tuples", new Gauge() {
+			@Override
+			public long getValue() {
+				return getStorageSize(true) + getStorageSize(false);
+			}
+		});
+		metrics.registerGauge("state_bytes", new Gauge() {
+			@Override
+			public long getValue() {
+				return getNumStateBytes();
+			}
+		});
+		metrics.registerGauge("index_entries", new Gauge() {
+			@Override
+			public long getValue() {
+				return getNumIndexEntries();
+			}
+		});
+		if (_window != null) {
+			metrics.registerGauge("evicted_segments", new Gauge() {
+				@Override
+				public long getValue() {
+					return _firstWindowStorage.getNumEvictedSegments()
+							+ _secondWindowStorage.getNumEvictedSegments();
+				}
+			});
+			metrics.registerGauge("late_tuples", new Gauge() {
+				@Override
+				public long getValue() {
+					return _numLateTuples;
+				}
+			});
+		}
 	}
 
 	@Override
@@ -377,8 +558,8 @@ public class StormThetaJoin extends StormBoltComponent {
 		if (_statsUtils.isTestMode())
 			if (getHierarchyPosition() == StormComponent.FINAL_COMPONENT) {
 				// computing variables
-				final int size1 = _firstRelationStorage.size();
-				final int size2 = _secondRelationStorage.size();
+				final int size1 = getStorageSize(true);
+				final int size2 = getStorageSize(false);
 				final int totalSize = size1 + size2;
 				final String ts = _dateFormat.format(_cal.getTime());
 
@@ -435,6 +616,15 @@ public class StormThetaJoin extends StormBoltComponent {
 	private void processNonLastTuple(String inputComponentIndex, String inputTupleString, //
 			List<String> tuple, // these two are the same
 			String inputTupleHash, Tuple stormTupleRcv, boolean isLastInBatch) {
+		final boolean isDeletion = MyUtilities.isDeletion(tuple, getConf());
+		if (isDeletion) {
+			if (_window != null)
+				throw new RuntimeException(getID()
+						+ ": Deletions are not supported for windowed joins!");
+			tuple = MyUtilities.fromDeletion(tuple);
+			inputTupleString = MyUtilities.tupleToString(tuple, getConf());
+		}
+
 		boolean isFromFirstEmitter = false;
 
 		TupleStorage affectedStorage, oppositeStorage;
@@ -462,32 +652,127 @@ public class StormThetaJoin extends StormBoltComponent {
 					+ _secondEmitterIndex + ".");
 
 		// add the stormTuple to the specific storage
-		if (MyUtilities.isStoreTimestamp(getConf(), getHierarchyPosition())) {
+		if (!isDeletion && MyUtilities.isStoreTimestamp(getConf(), getHierarchyPosition())) {
 			final long incomingTimestamp = stormTupleRcv.getLongByField(StormComponent.TIMESTAMP);
 			inputTupleString = incomingTimestamp + SystemParameters.STORE_TIMESTAMP_DELIMITER
 					+ inputTupleString;
 		}
-		final int row_id = affectedStorage.insert(inputTupleString);
+
+		if (_window != null) {
+			processWindowedTuple(inputComponentIndex, inputTupleString, tuple, inputTupleHash,
+					isFromFirstEmitter, stormTupleRcv, isLastInBatch);
+			return;
+		}
+
+		int row_id;
+		if (isDeletion) {
+			// remove the stormTuple from the specific storage; there is nothing
+			// to retract if it was never inserted
+			row_id = findStoredTuple(inputComponentIndex, inputTupleString, tuple,
+					affectedStorage, affectedIndexes);
+			if (row_id == -1)
+				return;
+			affectedStorage.remove(row_id);
+		} else
+			row_id = affectedStorage.insert(inputTupleString);
+		logChange(isFromFirstEmitter ? 0 : 1, null, inputTupleString, isDeletion);
 
 		List<String> valuesToApplyOnIndex = null;
 
 		if (_existIndexes)
 			valuesToApplyOnIndex = updateIndexes(inputComponentIndex, tuple, affectedIndexes,
-					row_id);
+					row_id, isDeletion);
 
 		performJoin(stormTupleRcv, tuple, inputTupleHash, isFromFirstEmitter, oppositeIndexes,
-				valuesToApplyOnIndex, oppositeStorage, isLastInBatch);
+				valuesToApplyOnIndex, oppositeStorage, isDeletion, isLastInBatch);
 
 		if ((_firstRelationStorage.size() + _secondRelationStorage.size())
 				% _statsUtils.getDipInputFreqPrint() == 0)
 			printStatistics(SystemParameters.INPUT_PRINT);
 	}
 
+	/*
+	 * a logged value is the stored tuple (with its timestamp, if any), or the
+	 * deleted tuple
+	 */
+	@Override
+	protected void restoreChange(int relation, String key, String value, boolean isDeletion) {
+		final String inputComponentIndex = relation == 0 ? _firstEmitterIndex
+				: _secondEmitterIndex;
+		final TupleStorage affectedStorage = relation == 0 ? _firstRelationStorage
+				: _secondRelationStorage;
+		final List<Index> affectedIndexes = relation == 0 ? _firstRelationIndexes
+				: _secondRelationIndexes;
+
+		String tupleString = value;
+		if (!isDeletion && MyUtilities.isStoreTimestamp(getConf(), getHierarchyPosition()))
+			tupleString = value.split("\\@")[1];
+		final List<String> tuple = MyUtilities.stringToTuple(tupleString, getConf());
+
+		int row_id;
+		if (isDeletion) {
+			row_id = findStoredTuple(inputComponentIndex, value, tuple, affectedStorage,
+					affectedIndexes);
+			affectedStorage.remove(row_id);
+		} else
+			row_id = affectedStorage.insert(value);
+		if (_existIndexes)
+			updateIndexes(inputComponentIndex, tuple, affectedIndexes, row_id, isDeletion);
+	}
+
+	/*
+	 * A tuple is stored (and indexed) in the segment of its position, and
+	 * joined with the live segments of the opposite relation. The tuples which
+	 * are already out of the window (late tuples in a time-based window) are
+	 * dropped.
+	 */
+	private void processWindowedTuple(String inputComponentIndex, String inputTupleString,
+			List<String> tuple, String inputTupleHash, boolean isFromFirstEmitter,
+			Tuple stormTupleRcv, boolean isLastInBatch) {
+		WindowSegments<ThetaSegment> affectedStorage, oppositeStorage;
+		if (isFromFirstEmitter) {
+			affectedStorage = _firstWindowStorage;
+			oppositeStorage = _secondWindowStorage;
+		} else {
+			affectedStorage = _secondWindowStorage;
+			oppositeStorage = _firstWindowStorage;
+		}
+
+		long position;
+		if (_window.isTimeBased()) {
+			position = stormTupleRcv.getLongByField(StormComponent.TIMESTAMP);
+			// the time is the same for both the relations
+			oppositeStorage.advance(position);
+		} else
+			position = isFromFirstEmitter ? _firstNumReceived++ : _secondNumReceived++;
+		affectedStorage.advance(position);
+
+		final ThetaSegment segment = affectedStorage.getSegment(position);
+		if (segment == null) {
+			_numLateTuples++;
+			return;
+		}
+		final int row_id = segment._storage.insert(inputTupleString);
+		List<String> valuesToApplyOnIndex = null;
+		if (_existIndexes)
+			valuesToApplyOnIndex = updateIndexes(inputComponentIndex, tuple, segment._indexes,
+					row_id, false);
+
+		for (final ThetaSegment oppositeSegment : oppositeStorage.getSegments())
+			performJoin(stormTupleRcv, tuple, inputTupleHash, isFromFirstEmitter,
+					oppositeSegment._indexes, valuesToApplyOnIndex, oppositeSegment._storage,
+					false, isLastInBatch);
+	}
+
 	private void selectTupleToJoin(TupleStorage oppositeStorage, List<Index> oppositeIndexes,
 			boolean isFromFirstEmitter, List<String> valuesToApplyOnIndex, TupleStorage tuplesToJoin) {
 
 		if (!_existIndexes) {
-			tuplesToJoin.copy(oppositeStorage);
+			if (oppositeStorage.isDense())
+				tuplesToJoin.copy(oppositeStorage);
+			else
+				// there were deletions
+				tuplesToJoin.copyCompacted(oppositeStorage);
 			return;
 		}
 
@@ -572,8 +857,36 @@ public class StormThetaJoin extends StormBoltComponent {
 		}
 	}
 
-	private List<String> updateIndexes(String inputComponentIndex, List<String> tuple,
-			List<Index> affectedIndexes, int row_id) {
+	/*
+	 * Invoked by ThetaJoinStaticComponent. Each segment has its own indexes,
+	 * so that they are evicted together with the tuples.
+	 */
+	public void setWindow(WindowSemantics window) {
+		if (MyUtilities.isCheckpointMode(getConf()))
+			throw new RuntimeException(getID()
+					+ ": Windowed joins do not support DIP_CHECKPOINT_DIR mode!");
+		_window = window;
+		_firstWindowStorage = new WindowSegments<ThetaSegment>(window) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected ThetaSegment createSegment() {
+				return new ThetaSegment(createSegmentIndexes(true));
+			}
+		};
+		_secondWindowStorage = new WindowSegments<ThetaSegment>(window) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected ThetaSegment createSegment() {
+				return new ThetaSegment(createSegmentIndexes(false));
+			}
+		};
+	}
+
+	// the values of a tuple which are indexed, one per index
+	private PredicateUpdateIndexesVisitor getValuesToIndex(String inputComponentIndex,
+			List<String> tuple) {
 		boolean comeFromFirstEmitter;
 
 		if (inputComponentIndex.equals(_firstEmitterIndex))
@@ -584,27 +897,84 @@ public class StormThetaJoin extends StormBoltComponent {
 		final PredicateUpdateIndexesVisitor visitor = new PredicateUpdateIndexesVisitor(
 				comeFromFirstEmitter, tuple);
 		_joinPredicate.accept(visitor);
+		return visitor;
+	}
+
+	// the key of a value in its index
+	private Object getIndexKey(Object typeOfValueToIndex, String valueToIndex) {
+		if (typeOfValueToIndex instanceof Integer)
+			return Integer.parseInt(valueToIndex);
+		else if (typeOfValueToIndex instanceof Double)
+			return Double.parseDouble(valueToIndex);
+		else if (typeOfValueToIndex instanceof Date)
+			try {
+				return _format.parse(valueToIndex);
+			} catch (final ParseException e) {
+				throw new RuntimeException("Parsing problem in StormThetaJoin.updatedIndexes "
+						+ e.getMessage());
+			}
+		else if (typeOfValueToIndex instanceof String)
+			return valueToIndex;
+		else
+			throw new RuntimeException("non supported type");
+	}
+
+	/*
+	 * The row_id of a stored tuple which is equal to the deleted one, -1 if
+	 * there is none. With indexes, only the rows with the same key in the
+	 * first index are checked, otherwise all the rows.
+	 */
+	private int findStoredTuple(String inputComponentIndex, String inputTupleString,
+			List<String> tuple, TupleStorage affectedStorage, List<Index> affectedIndexes) {
+		TIntArrayList candidates = null;
+		if (_existIndexes) {
+			final PredicateUpdateIndexesVisitor visitor = getValuesToIndex(inputComponentIndex,
+					tuple);
+			final Object key = getIndexKey(visitor._typesOfValuesToIndex.get(0),
+					visitor._valuesToIndex.get(0));
+			candidates = affectedIndexes.get(0).getValuesWithOutOperator(key);
+			if (candidates == null)
+				return -1;
+		}
+
+		final boolean isStoreTimestamp = MyUtilities.isStoreTimestamp(getConf(),
+				getHierarchyPosition());
+		final int numCandidates = candidates != null ? candidates.size() : affectedStorage
+				.getLastId() + 1;
+		for (int i = 0; i < numCandidates; i++) {
+			final int row_id = candidates != null ? candidates.get(i) : i;
+			if (!affectedStorage.contains(row_id))
+				continue;
+			String storedTupleString = affectedStorage.get(row_id);
+			if (isStoreTimestamp)
+				// timestamp has to be removed
+				storedTupleString = storedTupleString.substring(storedTupleString
+						.indexOf(SystemParameters.STORE_TIMESTAMP_DELIMITER) + 1);
+			if (storedTupleString.equals(inputTupleString))
+				return row_id;
+		}
+		return -1;
+	}
+
+	/*
+	 * Puts the tuple with row_id to the indexes, or removes it from them (for
+	 * a deleted tuple)
+	 */
+	private List<String> updateIndexes(String inputComponentIndex, List<String> tuple,
+			List<Index> affectedIndexes, int row_id, boolean isRemoval) {
+		final PredicateUpdateIndexesVisitor visitor = getValuesToIndex(inputComponentIndex, tuple);
 
 		final List<String> valuesToIndex = new ArrayList<String>(visitor._valuesToIndex);
 		final List<Object> typesOfValuesToIndex = new ArrayList<Object>(
 				visitor._typesOfValuesToIndex);
 
-		for (int i = 0; i < affectedIndexes.size(); i++)
-			if (typesOfValuesToIndex.get(i) instanceof Integer)
-				affectedIndexes.get(i).put(row_id, Integer.parseInt(valuesToIndex.get(i)));
-			else if (typesOfValuesToIndex.get(i) instanceof Double)
-				affectedIndexes.get(i).put(row_id, Double.parseDouble(valuesToIndex.get(i)));
-			else if (typesOfValuesToIndex.get(i) instanceof Date)
-				try {
-					affectedIndexes.get(i).put(row_id, _format.parse(valuesToIndex.get(i)));
-				} catch (final ParseException e) {
-					throw new RuntimeException("Parsing problem in StormThetaJoin.updatedIndexes "
-							+ e.getMessage());
-				}
-			else if (typesOfValuesToIndex.get(i) instanceof String)
-				affectedIndexes.get(i).put(row_id, valuesToIndex.get(i));
+		for (int i = 0; i < affectedIndexes.size(); i++) {
+			final Object key = getIndexKey(typesOfValuesToIndex.get(i), valuesToIndex.get(i));
+			if (isRemoval)
+				affectedIndexes.get(i).remove(row_id, key);
 			else
-				throw new RuntimeException("non supported type");
+				affectedIndexes.get(i).put(row_id, key);
+		}
 		return valuesToIndex;
 	}
 }
\ No newline at end of file
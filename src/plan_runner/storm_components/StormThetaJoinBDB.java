@@ -96,6 +96,7 @@ public class StormThetaJoinBDB extends StormBoltComponent {
 		_joinPredicate = joinPredicate;
 
 		InputDeclarer currentBolt = builder.setBolt(getID(), this, parallelism);
+		attachTickTuples(currentBolt);
 
 		final EquiMatrixAssignment _currentMappingAssignment = new EquiMatrixAssignment(
 				firstCardinality, secondCardinality, parallelism, -1);
@@ -233,6 +234,11 @@ public class StormThetaJoinBDB extends StormBoltComponent {
 
 	@Override
 	public void execute(Tuple stormTupleRcv) {
+		startExecuteTimer();
+		if (processTick(stormTupleRcv))
+			return;
+		checkElasticEpoch();
+
 		if (_firstTime && MyUtilities.isAggBatchOutputMode(_aggBatchOutputMillis)) {
 			_periodicAggBatch = new PeriodicAggBatchSend(_aggBatchOutputMillis, this);
 			_firstTime = false;
@@ -299,6 +305,7 @@ public class StormThetaJoinBDB extends StormBoltComponent {
 							inputTupleHash, stormTupleRcv, false);
 			}
 		}
+		countDataTuple();
 		getCollector().ack(stormTupleRcv);
 	}
 
@@ -0,0 +1,78 @@
+package plan_runner.storm_components.synchronization;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import backtype.storm.tuple.Tuple;
+
+/*
+ * Used in DIP_CHECKPOINT_DIR mode on the receiver side: aligns the checkpoint barriers.
+ * The tuples a parent task sends after the barrier of a checkpoint belong to the next checkpoint,
+ *   so they are blocked until the barrier arrives from all the parent tasks which are not done yet.
+ *   Then the state of the receiver is consistent with the state of its parents at the checkpoint.
+ * A barrier is ordered with respect to the data tuples from the same parent task,
+ *   because Storm keeps the order of the tuples between two tasks.
+ */
+public class CheckpointTracker {
+
+	private int _numActiveParents;
+
+	// the parent tasks whose barrier arrived
+	private final Set<Integer> _barrierTasks = new HashSet<Integer>();
+	private long _barrierId;
+	private List<Tuple> _blockedTuples = new ArrayList<Tuple>();
+
+	public CheckpointTracker(int numParentTasks) {
+		_numActiveParents = numParentTasks;
+	}
+
+	/*
+	 * returns true if the tuple is blocked (it is kept until release)
+	 */
+	public boolean block(Tuple tuple) {
+		if (!_barrierTasks.contains(tuple.getSourceTask()))
+			return false;
+		_blockedTuples.add(tuple);
+		return true;
+	}
+
+	public long getBarrierId() {
+		return _barrierId;
+	}
+
+	public int getNumBlockedTuples() {
+		return _blockedTuples.size();
+	}
+
+	public boolean isAligned() {
+		return !_barrierTasks.isEmpty() && _barrierTasks.size() == _numActiveParents;
+	}
+
+	// a parent task is done with its input, and it sends no more barriers
+	public void parentFinished() {
+		_numActiveParents--;
+	}
+
+	public void receiveBarrier(int sourceTask, long id) {
+		if (_barrierTasks.isEmpty())
+			_barrierId = id;
+		else if (id != _barrierId)
+			throw new RuntimeException("Received the barrier of checkpoint " + id
+					+ " while aligning checkpoint " + _barrierId + "!");
+		_barrierTasks.add(sourceTask);
+	}
+
+	/*
+	 * invoked once aligned: returns the blocked tuples, in the order of
+	 * arrival
+	 */
+	public List<Tuple> release() {
+		_barrierTasks.clear();
+		final List<Tuple> result = _blockedTuples;
+		_blockedTuples = new ArrayList<Tuple>();
+		return result;
+	}
+
+}
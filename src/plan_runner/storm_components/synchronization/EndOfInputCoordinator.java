@@ -0,0 +1,98 @@
+package plan_runner.storm_components.synchronization;
+
+import gnu.trove.map.hash.TIntLongHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import plan_runner.storm_components.StormEmitter;
+import plan_runner.utilities.SystemParameters;
+import backtype.storm.task.OutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.InputDeclarer;
+import backtype.storm.topology.OutputFieldsDeclarer;
+import backtype.storm.topology.TopologyBuilder;
+import backtype.storm.topology.base.BaseRichBolt;
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Tuple;
+import backtype.storm.tuple.Values;
+
+/*
+ * DIP_HIERARCHICAL_EOF mode: a single-task bolt per (child) component.
+ * Instead of each parent task broadcasting LAST_ACK to each child task (all-to-all),
+ *   every parent task sends one punctuation to the coordinator,
+ *   and the coordinator sends one punctuation to each child task.
+ * The punctuation sent to a child task contains the total number of tuples
+ *   the parents sent to that task (a watermark), so the child task knows
+ *   when all of its own inputs are processed.
+ */
+public class EndOfInputCoordinator extends BaseRichBolt {
+	private static final long serialVersionUID = 1L;
+	private static Logger LOG = Logger.getLogger(EndOfInputCoordinator.class);
+
+	public static final String ID_SUFFIX = "_EOI";
+
+	private final String _ID;
+	private final String _childID;
+	private final List<String> _parentIDs = new ArrayList<String>();
+
+	private int _numRemainingParents;
+	private List<Integer> _childTasks;
+	private TIntLongHashMap _expectedPerTask;
+	private OutputCollector _collector;
+
+	public EndOfInputCoordinator(String childID, List<StormEmitter> parents,
+			TopologyBuilder builder) {
+		_childID = childID;
+		_ID = childID + ID_SUFFIX;
+
+		InputDeclarer currentBolt = builder.setBolt(_ID, this, 1);
+		for (final StormEmitter parent : parents)
+			for (final String parentID : parent.getEmitterIDs()) {
+				_parentIDs.add(parentID);
+				currentBolt = currentBolt.globalGrouping(parentID, SystemParameters.EOI_STREAM);
+			}
+	}
+
+	@Override
+	public void declareOutputFields(OutputFieldsDeclarer declarer) {
+		declarer.declareStream(SystemParameters.EOI_STREAM, true,
+				new Fields(SystemParameters.EOI));
+	}
+
+	@Override
+	public void execute(Tuple stormTupleRcv) {
+		final Map<Integer, Long> sentPerTask = (Map<Integer, Long>) stormTupleRcv.getValue(0);
+		for (final Map.Entry<Integer, Long> entry : sentPerTask.entrySet())
+			_expectedPerTask.adjustOrPutValue(entry.getKey(), entry.getValue(), entry.getValue());
+		_numRemainingParents--;
+
+		if (_numRemainingParents == 0) {
+			LOG.info(_ID + ": all the parent tasks of " + _childID
+					+ " are done, sending end-of-input punctuations.");
+			for (final int childTask : _childTasks)
+				_collector.emitDirect(childTask, SystemParameters.EOI_STREAM, new Values(
+						_expectedPerTask.get(childTask)));
+		}
+		_collector.ack(stormTupleRcv);
+	}
+
+	public String getID() {
+		return _ID;
+	}
+
+	@Override
+	public void prepare(Map map, TopologyContext tc, OutputCollector collector) {
+		_collector = collector;
+		_numRemainingParents = 0;
+		for (final String parentID : _parentIDs)
+			_numRemainingParents += tc.getComponentTasks(parentID).size();
+		_childTasks = tc.getComponentTasks(_childID);
+		// no entry value is 0
+		_expectedPerTask = new TIntLongHashMap();
+	}
+
+}
@@ -0,0 +1,78 @@
+package plan_runner.storm_components.synchronization;
+
+import gnu.trove.iterator.TIntLongIterator;
+import gnu.trove.map.hash.TIntLongHashMap;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+
+import backtype.storm.tuple.Values;
+
+/*
+ * Used in DIP_HIERARCHICAL_EOF mode, both on the sender and on the receiver side.
+ * A sender counts how many data tuples (or batches) it sent to each of the child tasks,
+ *   and when it is done it ships these counts to the EndOfInputCoordinator of the child component.
+ * A receiver counts how many data tuples it received, and it is done when
+ *   the coordinator told it how many tuples to expect and all of them arrived.
+ * Counts are needed because punctuations travel through the coordinator,
+ *   so they can overtake the last data tuples of a parent task.
+ */
+public class EndOfInputTracker implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	// sender side: taskId -> the number of sent data tuples
+	private final TIntLongHashMap _sentPerTask = new TIntLongHashMap();
+
+	// receiver side
+	private long _numReceived = 0;
+	private long _numExpected = -1; // unknown until the coordinator speaks
+	private boolean _isFinished = false;
+
+	public void countReceived() {
+		_numReceived++;
+	}
+
+	public void countSent(List<Integer> taskIds) {
+		if (taskIds != null)
+			for (final int taskId : taskIds)
+				_sentPerTask.adjustOrPutValue(taskId, 1, 1);
+	}
+
+	// a punctuation carries a java.util map because Storm knows how to
+	// serialize it
+	public Values createPunctuation() {
+		final HashMap<Integer, Long> sentPerTask = new HashMap<Integer, Long>();
+		for (final TIntLongIterator it = _sentPerTask.iterator(); it.hasNext();) {
+			it.advance();
+			sentPerTask.put(it.key(), it.value());
+		}
+		return new Values(sentPerTask);
+	}
+
+	public long getNumExpected() {
+		return _numExpected;
+	}
+
+	public long getNumReceived() {
+		return _numReceived;
+	}
+
+	/*
+	 * returns true only once: when all the expected tuples arrived
+	 */
+	public boolean isJustFinished() {
+		if (_isFinished || _numExpected < 0 || _numReceived < _numExpected)
+			return false;
+		if (_numReceived > _numExpected)
+			throw new RuntimeException("Received " + _numReceived + " tuples, but only "
+					+ _numExpected + " are sent by the parents!");
+		_isFinished = true;
+		return true;
+	}
+
+	public void setNumExpected(long numExpected) {
+		_numExpected = numExpected;
+	}
+
+}
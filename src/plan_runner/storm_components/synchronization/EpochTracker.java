@@ -0,0 +1,116 @@
+package plan_runner.storm_components.synchronization;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import backtype.storm.tuple.Tuple;
+
+/*
+ * Used in Elastic mode (see ElasticSchedule) on each task of an elastic join.
+ * An epoch change has two phases:
+ *   - alignment, as in CheckpointTracker: the tuples a parent task sends after its epoch barrier
+ *     are routed by the new ring, so they are blocked until the barrier arrives from all
+ *     the parent tasks which are not done yet; then all the tuples of the old epoch are processed,
+ *   - migration: the task sends the keys it does not own any more to their new owners,
+ *     followed by a "done" message to each other task of the join. All the tuples are blocked
+ *     until the "done" message arrives from all the other tasks, so the state of the keys
+ *     a task now owns is complete before any tuple of the new epoch is joined with it.
+ * The migrated tuples are never blocked: they belong to keys which no tuple of the old epoch
+ *   can reach on this task. Another task may already be one epoch ahead, so the "done"
+ *   messages are counted per epoch.
+ */
+public class EpochTracker {
+
+	private int _numActiveParents;
+	private final int _numPeers;
+
+	private int _epoch;
+	private boolean _isMigrating;
+	// the parent tasks whose barrier arrived
+	private final Set<Integer> _barrierTasks = new HashSet<Integer>();
+	// the number of "done" messages per epoch
+	private final Map<Integer, Integer> _numMigratedPeers = new HashMap<Integer, Integer>();
+	private List<Tuple> _blockedTuples = new ArrayList<Tuple>();
+
+	/*
+	 * numPeers is the number of the other tasks of the join
+	 */
+	public EpochTracker(int numParentTasks, int numPeers) {
+		_numActiveParents = numParentTasks;
+		_numPeers = numPeers;
+	}
+
+	/*
+	 * returns true if the tuple is blocked (it is kept until release)
+	 */
+	public boolean block(Tuple tuple) {
+		if (!_isMigrating && !_barrierTasks.contains(tuple.getSourceTask()))
+			return false;
+		_blockedTuples.add(tuple);
+		return true;
+	}
+
+	public int getEpoch() {
+		return _epoch;
+	}
+
+	public int getNumBlockedTuples() {
+		return _blockedTuples.size();
+	}
+
+	public boolean isAligned() {
+		return !_isMigrating && !_barrierTasks.isEmpty()
+				&& _barrierTasks.size() == _numActiveParents;
+	}
+
+	public boolean isMigrated() {
+		if (!_isMigrating)
+			return false;
+		final Integer numMigrated = _numMigratedPeers.get(_epoch);
+		return _numPeers == (numMigrated == null ? 0 : numMigrated);
+	}
+
+	// another task sent all the keys it lost in the epoch
+	public void migrationDone(int epoch) {
+		final Integer numMigrated = _numMigratedPeers.get(epoch);
+		_numMigratedPeers.put(epoch, numMigrated == null ? 1 : numMigrated + 1);
+	}
+
+	// a parent task is done with its input, and it sends no more barriers
+	public void parentFinished() {
+		_numActiveParents--;
+	}
+
+	public void receiveBarrier(int sourceTask, int epoch) {
+		if (epoch != _epoch + 1)
+			throw new RuntimeException("Received the barrier of epoch " + epoch
+					+ " while in epoch " + _epoch + "!");
+		_barrierTasks.add(sourceTask);
+	}
+
+	/*
+	 * invoked once migrated: returns the blocked tuples, in the order of
+	 * arrival
+	 */
+	public List<Tuple> release() {
+		_numMigratedPeers.remove(_epoch);
+		_isMigrating = false;
+		final List<Tuple> result = _blockedTuples;
+		_blockedTuples = new ArrayList<Tuple>();
+		return result;
+	}
+
+	/*
+	 * invoked once aligned: returns the new epoch
+	 */
+	public int startMigration() {
+		_barrierTasks.clear();
+		_isMigrating = true;
+		return ++_epoch;
+	}
+
+}
@@ -0,0 +1,92 @@
+package plan_runner.storm_components.synchronization;
+
+import plan_runner.utilities.statistics.LatencyHistogram;
+import backtype.storm.tuple.Tuple;
+
+/*
+ * Used in DIP_LATENCY_MARKERS mode: a marker is sampled at each data source task
+ *   (every DIP_LATENCY_MARKER_MILLIS) and travels along the data path down to the final component,
+ *   on a stream of its own, so data tuples carry no timestamp (unlike CUSTOM_TIMESTAMP mode).
+ * No latency is computed from the clocks of two machines:
+ *   - each task measures (with its own System.nanoTime) the residence of the marker,
+ *     from its arrival (creation, on a data source) until it is sent further;
+ *     in ManualBatch mode it waits behind the pending batch of its destination,
+ *     so the residence contains the batching delay,
+ *   - the residences are appended to the marker (its path, e.g. "CUSTOMER:1200,CUSTOMER_ORDERS:35000"),
+ *     and the final component sums them up,
+ *   - each hop anchors the marker, so Storm acks it to the data source once the final component is done:
+ *     the data source measures the end-to-end latency, including queueing and network transfer,
+ *     on its own clock.
+ * Each marker goes to a single task of a single child (round robin), so that it is acked once.
+ */
+public class LatencyMarker {
+
+	public static final long DEFAULT_PERIOD_MILLIS = 1000;
+
+	private static final char HOP_DELIMITER = ',';
+	private static final char NANOS_DELIMITER = ':';
+
+	// the sum of the residences of a path
+	public static long getPathNanos(String path) {
+		long result = 0;
+		int start = 0;
+		while (start < path.length()) {
+			int end = path.indexOf(HOP_DELIMITER, start);
+			if (end == -1)
+				end = path.length();
+			result += Long.parseLong(path.substring(path.lastIndexOf(NANOS_DELIMITER, end) + 1,
+					end));
+			start = end + 1;
+		}
+		return result;
+	}
+
+	// for the final log of a component
+	public static String summary(LatencyHistogram nanos) {
+		return "p50 " + nanos.getPercentile(50) / 1000 + "us, p99 " + nanos.getPercentile(99)
+				/ 1000 + "us (" + nanos.getCount() + " markers)";
+	}
+
+	private final String _path;
+	private final long _arrivalNanos = System.nanoTime();
+	// the received marker tuple, null on a data source
+	private final Tuple _anchor;
+
+	// on a data source
+	public LatencyMarker() {
+		this("", null);
+	}
+
+	public LatencyMarker(String path, Tuple anchor) {
+		_path = path;
+		_anchor = anchor;
+	}
+
+	public Tuple getAnchor() {
+		return _anchor;
+	}
+
+	public long getArrivalNanos() {
+		return _arrivalNanos;
+	}
+
+	public long getResidenceNanos() {
+		return System.nanoTime() - _arrivalNanos;
+	}
+
+	/*
+	 * the path which is sent further, with the residence on componentID
+	 */
+	public String addHop(String componentID, long residenceNanos) {
+		final StringBuilder sb = new StringBuilder(_path.length() + componentID.length() + 12);
+		if (_path.length() > 0)
+			sb.append(_path).append(HOP_DELIMITER);
+		sb.append(componentID).append(NANOS_DELIMITER).append(residenceNanos);
+		return sb.toString();
+	}
+
+	public String getPath() {
+		return _path;
+	}
+
+}
@@ -0,0 +1,132 @@
+package plan_runner.storm_components.synchronization;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import plan_runner.operators.AggregateOperator;
+import plan_runner.operators.ChainOperator;
+import plan_runner.utilities.SystemParameters;
+import plan_runner.utilities.statistics.OnlineEstimator;
+import backtype.storm.task.OutputCollector;
+import backtype.storm.task.TopologyContext;
+import backtype.storm.topology.OutputFieldsDeclarer;
+import backtype.storm.topology.TopologyBuilder;
+import backtype.storm.topology.base.BaseRichBolt;
+import backtype.storm.tuple.Fields;
+import backtype.storm.tuple.Tuple;
+import backtype.storm.tuple.Values;
+
+/*
+ * DIP_ONLINE_AGG mode: a bolt per final component, which merges the running estimates
+ *   of its tasks (each task aggregates only the tuples it receives).
+ * Every DIP_ONLINE_AGG_MILLIS milliseconds each task of the final component sends the moments
+ *   of its groups (see OnlineEstimator), split by the hash of the group among the merge tasks;
+ *   they replace the ones the task sent before.
+ * The merged estimates are emitted on ESTIMATE_STREAM (group, estimate, half-width of its
+ *   interval) and printed, at most every DIP_ONLINE_AGG_MILLIS milliseconds.
+ * Without GROUP BY there is a single group, so there is a single merge task.
+ */
+public class OnlineAggMerger extends BaseRichBolt {
+	private static final long serialVersionUID = 1L;
+	private static Logger LOG = Logger.getLogger(OnlineAggMerger.class);
+
+	public static final String ID_SUFFIX = "_ONLINE_AGG";
+	public static final String GROUP = "GROUP";
+	public static final String HALF_WIDTH = "HALF_WIDTH";
+
+	/*
+	 * the merge tasks of the component componentID, or null if it does not
+	 * estimate an aggregation
+	 */
+	public static List<Integer> getMergeTasks(String componentID, ChainOperator chain,
+			TopologyContext tc) {
+		if (OnlineEstimator.find(chain) == null)
+			return null;
+		return tc.getComponentTasks(componentID + ID_SUFFIX);
+	}
+
+	private final String _ID;
+	private final int _function;
+
+	private Map<Integer, Double> _probabilities;
+	private Map<Integer, Map<String, double[]>> _moments;
+	private long _estimateMillis;
+	private long _lastEstimateMillis;
+	private double _confidence;
+	private OutputCollector _collector;
+
+	/*
+	 * the merge tasks of the final component componentID, if its chain
+	 * estimates an aggregation
+	 */
+	public OnlineAggMerger(String componentID, ChainOperator chain, Map conf,
+			TopologyBuilder builder) {
+		_ID = componentID + ID_SUFFIX;
+		_function = OnlineEstimator.find(chain).getFunction();
+
+		int parallelism = 1;
+		if (((AggregateOperator) chain.getLastOperator()).hasGroupBy())
+			parallelism = SystemParameters.getInt(conf, componentID + "_PAR");
+		builder.setBolt(_ID, this, parallelism).directGrouping(componentID,
+				SystemParameters.ESTIMATE_STREAM);
+	}
+
+	@Override
+	public void declareOutputFields(OutputFieldsDeclarer declarer) {
+		declarer.declareStream(SystemParameters.ESTIMATE_STREAM, new Fields(GROUP,
+				SystemParameters.ESTIMATE, HALF_WIDTH));
+	}
+
+	@Override
+	public void execute(Tuple stormTupleRcv) {
+		_probabilities.put(stormTupleRcv.getSourceTask(), stormTupleRcv.getDouble(0));
+		_moments.put(stormTupleRcv.getSourceTask(),
+				(Map<String, double[]>) stormTupleRcv.getValue(1));
+		_collector.ack(stormTupleRcv);
+
+		final long now = System.currentTimeMillis();
+		if (now - _lastEstimateMillis < _estimateMillis)
+			return;
+		_lastEstimateMillis = now;
+		final List<Integer> tasks = new ArrayList<Integer>(_moments.keySet());
+		final List<Map<String, double[]>> taskMoments = new ArrayList<Map<String, double[]>>();
+		final List<Double> probabilities = new ArrayList<Double>();
+		for (final int task : tasks) {
+			taskMoments.add(_moments.get(task));
+			probabilities.add(_probabilities.get(task));
+		}
+		final Map<String, double[]> estimates = OnlineEstimator.merge(_function, taskMoments,
+				probabilities);
+
+		final double z = OnlineEstimator.getZ(_confidence);
+		for (final Map.Entry<String, double[]> entry : estimates.entrySet())
+			_collector.emit(SystemParameters.ESTIMATE_STREAM, new Values(entry.getKey(),
+					entry.getValue()[0], OnlineEstimator.getHalfWidth(entry.getValue(), z)));
+		if (!estimates.isEmpty())
+			LOG.info(_ID + ": online estimates from " + tasks.size() + " tasks, with "
+					+ _confidence * 100 + "% confidence:\n"
+					+ OnlineEstimator.toString(estimates, z));
+	}
+
+	public String getID() {
+		return _ID;
+	}
+
+	@Override
+	public void prepare(Map map, TopologyContext tc, OutputCollector collector) {
+		_collector = collector;
+		_probabilities = new HashMap<Integer, Double>();
+		_moments = new HashMap<Integer, Map<String, double[]>>();
+		_estimateMillis = 1000;
+		if (SystemParameters.isExisting(map, "DIP_ONLINE_AGG_MILLIS"))
+			_estimateMillis = SystemParameters.getInt(map, "DIP_ONLINE_AGG_MILLIS");
+		_confidence = OnlineEstimator.DEFAULT_CONFIDENCE;
+		if (SystemParameters.isExisting(map, "DIP_ONLINE_AGG_CONFIDENCE"))
+			_confidence = SystemParameters.getDouble(map, "DIP_ONLINE_AGG_CONFIDENCE");
+	}
+
+}
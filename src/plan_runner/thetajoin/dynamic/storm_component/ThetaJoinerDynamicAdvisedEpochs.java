@@ -159,6 +159,7 @@ public class ThetaJoinerDynamicAdvisedEpochs extends StormBoltComponent {
 
 		_joinPredicate = joinPredicate;
 		_currentBolt = builder.setBolt(cp.getName(), this, _parallelism);
+		attachTickTuples(_currentBolt);
 
 		if (hierarchyPosition == FINAL_COMPONENT && (!MyUtilities.isAckEveryTuple(conf)))
 			killer.registerComponent(this, _parallelism);
@@ -354,6 +355,10 @@ public class ThetaJoinerDynamicAdvisedEpochs extends StormBoltComponent {
 	 */
 	@Override
 	public void execute(Tuple stormTupleRcv) {
+		startExecuteTimer();
+
+		if (processTick(stormTupleRcv))
+			return;
 
 		if (_firstTime && MyUtilities.isAggBatchOutputMode(_batchOutputMillis)) {
 			_periodicAggBatch = new PeriodicAggBatchSend(_batchOutputMillis, this);
@@ -896,6 +901,7 @@ public class ThetaJoinerDynamicAdvisedEpochs extends StormBoltComponent {
 		// THIS IS FOR OUTPUTTING STATISTICS!
 		if ((numberOfTuplesMemory) % _statsUtils.getDipInputFreqPrint() == 0)
 			printStatistics(SystemParameters.INPUT_PRINT);
+		countDataTuple();
 		getCollector().ack(stormTupleRcv);
 	}
 
@@ -43,6 +43,8 @@ public class BalancedBinaryTreeIndex<KeyType extends Comparable<KeyType>> implem
 
 	private final TreeMap<KeyType, TIntArrayList> _index;
 
+	private int _size = 0;
+
 	private KeyType _diff = null;
 
 	public BalancedBinaryTreeIndex() {
@@ -94,8 +96,7 @@ public class BalancedBinaryTreeIndex<KeyType extends Comparable<KeyType>> implem
 
 	@Override
 	public TIntArrayList getValuesWithOutOperator(KeyType key, KeyType... keys) {
-		// TODO Auto-generated method stub
-		return null;
+		return _index.get(key);
 	}
 
 	private KeyType performOperation(KeyType k, KeyType diff, boolean isInverse) {
@@ -139,7 +140,18 @@ public class BalancedBinaryTreeIndex<KeyType extends Comparable<KeyType>> implem
 
 		}
 		idsList.add(row_id);
+		_size++;
+
+	}
 
+	@Override
+	public void remove(Integer row_id, KeyType key) {
+		final TIntArrayList idsList = _index.get(key);
+		if (idsList != null && idsList.remove(row_id)) {
+			if (idsList.isEmpty())
+				_index.remove(key);
+			_size--;
+		}
 	}
 
 	public BalancedBinaryTreeIndex setDiff(Object diff) {
@@ -148,4 +160,9 @@ public class BalancedBinaryTreeIndex<KeyType extends Comparable<KeyType>> implem
 		return this;
 	}
 
+	@Override
+	public int size() {
+		return _size;
+	}
+
 }
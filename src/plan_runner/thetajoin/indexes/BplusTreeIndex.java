@@ -86,6 +86,8 @@ public class BplusTreeIndex<KeyType extends Comparable<KeyType>> implements Inde
 
 	private final int _order, _slots;
 
+	private int _size = 0;
+
 	private KeyType _diff = null;
 
 	/**
@@ -329,6 +331,17 @@ public class BplusTreeIndex<KeyType extends Comparable<KeyType>> implements Inde
 
 		}
 		idsList.add(row_id);
+		_size++;
+	}
+
+	@Override
+	public void remove(Integer row_id, KeyType key) {
+		// the list is in the leaf node, so it is updated in place.
+		// A key without row-ids stays in the tree (BPlusTree.remove does not
+		// rebalance correctly), it is reused if the key is put again.
+		final TIntArrayList idsList = getValuesWithOutOperator(key);
+		if (idsList != null && idsList.remove(row_id))
+			_size--;
 	}
 
 	public BplusTreeIndex setDiff(Object diff) {
@@ -337,4 +350,9 @@ public class BplusTreeIndex<KeyType extends Comparable<KeyType>> implements Inde
 		return this;
 	}
 
+	@Override
+	public int size() {
+		return _size;
+	}
+
 }
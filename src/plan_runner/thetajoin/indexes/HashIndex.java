@@ -17,6 +17,8 @@ public class HashIndex<KeyType> implements Index<KeyType> {
 
 	private final HashMap<KeyType, TIntArrayList> _index;
 
+	private int _size = 0;
+
 	public HashIndex() {
 		_index = new HashMap<KeyType, TIntArrayList>();
 	}
@@ -42,7 +44,23 @@ public class HashIndex<KeyType> implements Index<KeyType> {
 			_index.put(key, idsList);
 		}
 		idsList.add(row_id);
+		_size++;
+
+	}
+
+	@Override
+	public void remove(Integer row_id, KeyType key) {
+		final TIntArrayList idsList = _index.get(key);
+		if (idsList != null && idsList.remove(row_id)) {
+			if (idsList.isEmpty())
+				_index.remove(key);
+			_size--;
+		}
+	}
 
+	@Override
+	public int size() {
+		return _size;
 	}
 
 }
@@ -17,4 +17,10 @@ public interface Index<KeyType> extends Serializable {
 
 	public void put(Integer row_id, KeyType key);
 
+	// the inverse of put (e.g. for a deleted tuple)
+	public void remove(Integer row_id, KeyType key);
+
+	// the number of (key, row-id) entries
+	public int size();
+
 }
\ No newline at end of file
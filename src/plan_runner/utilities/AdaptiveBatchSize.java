@@ -0,0 +1,57 @@
+package plan_runner.utilities;
+
+import java.util.Map;
+
+/*
+ * The size of the per-destination output batches of a bolt in ManualBatch mode (DIP_ADAPTIVE_BATCH).
+ * A batch is sent when it has getSize() tuples, or when its first tuple waited for
+ *   DIP_BATCH_MAX_MILLIS (the latency bound), see ManualBatcher.
+ * The size adapts to the cost of emitting a batch, which is what a sender can measure of its
+ *   downstream: when the transfer queues are full, emit blocks.
+ *   If an emit takes longer than DIP_BATCH_TARGET_EMIT_MICROS, the size is doubled
+ *   (fewer, larger messages), otherwise it is slowly decreased (lower latency).
+ * The size stays within [DIP_BATCH_MIN_SIZE, DIP_BATCH_MAX_SIZE], and starts from <COMP>_BS if set.
+ */
+public class AdaptiveBatchSize {
+	public static final int DEFAULT_MIN_SIZE = 1;
+	public static final int DEFAULT_MAX_SIZE = 4096;
+	public static final long DEFAULT_TARGET_EMIT_MICROS = 200;
+
+	private final int _minSize, _maxSize;
+	private final long _targetEmitNanos;
+
+	private int _size;
+
+	public AdaptiveBatchSize(String compName, Map conf) {
+		_minSize = SystemParameters.isExisting(conf, "DIP_BATCH_MIN_SIZE") ? SystemParameters
+				.getInt(conf, "DIP_BATCH_MIN_SIZE") : DEFAULT_MIN_SIZE;
+		_maxSize = SystemParameters.isExisting(conf, "DIP_BATCH_MAX_SIZE") ? SystemParameters
+				.getInt(conf, "DIP_BATCH_MAX_SIZE") : DEFAULT_MAX_SIZE;
+		_targetEmitNanos = 1000 * (SystemParameters.isExisting(conf,
+				"DIP_BATCH_TARGET_EMIT_MICROS") ? SystemParameters.getInt(conf,
+				"DIP_BATCH_TARGET_EMIT_MICROS") : DEFAULT_TARGET_EMIT_MICROS);
+		if (_minSize < 1 || _minSize > _maxSize)
+			throw new RuntimeException("Invalid batch size bounds [" + _minSize + ", " + _maxSize
+					+ "]!");
+
+		int initialSize = _minSize;
+		if (SystemParameters.isExisting(conf, compName + "_BS"))
+			initialSize = MyUtilities.getCompBatchSize(compName, conf);
+		_size = Math.min(Math.max(initialSize, _minSize), _maxSize);
+	}
+
+	public int getSize() {
+		return _size;
+	}
+
+	/*
+	 * invoked after each emitted batch
+	 */
+	public void recordEmit(long emitNanos) {
+		if (emitNanos > _targetEmitNanos)
+			_size = Math.min(_size * 2, _maxSize);
+		else if (_size > _minSize)
+			_size = Math.max(_size - Math.max(_size / 16, 1), _minSize);
+	}
+
+}
@@ -1,5 +1,6 @@
 package plan_runner.utilities;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -17,6 +18,8 @@ public class BatchStreamGrouping implements CustomStreamGrouping {
 	// the number of tasks on the level this stream grouping is sending to
 	private int _numTargetTasks;
 	private List<Integer> _targetTasks;
+	// the result for each destination, so that none is allocated per batch
+	private List<List<Integer>> _singleTargetTasks;
 	private final List<String> _fullHashList;
 
 	private final Map _map;
@@ -36,15 +39,19 @@ public class BatchStreamGrouping implements CustomStreamGrouping {
 			// send to everyone
 			return _targetTasks;
 
+		if (!isBalanced() && stormTuple.size() > 2 && stormTuple.get(2) instanceof Integer)
+			// the sender already chose the destination, see ManualBatcher
+			return _singleTargetTasks.get((Integer) stormTuple.get(2));
+
 		final int endIndex = tupleBatch.indexOf(SystemParameters.MANUAL_BATCH_HASH_DELIMITER);
 		final String aHash = tupleBatch.substring(0, endIndex);
 
 		if (!isBalanced())
-			return Arrays.asList(_targetTasks.get(MyUtilities.chooseHashTargetIndex(aHash,
-					_numTargetTasks)));
+			return _singleTargetTasks.get(MyUtilities.chooseHashTargetIndex(aHash,
+					_numTargetTasks));
 		else
-			return Arrays.asList(_targetTasks.get(MyUtilities.chooseBalancedTargetIndex(aHash,
-					_fullHashList, _numTargetTasks)));
+			return _singleTargetTasks.get(MyUtilities.chooseBalancedTargetIndex(aHash,
+					_fullHashList, _numTargetTasks));
 	}
 
 	private boolean isBalanced() {
@@ -55,5 +62,8 @@ public class BatchStreamGrouping implements CustomStreamGrouping {
 	public void prepare(WorkerTopologyContext wtc, GlobalStreamId gsi, List<Integer> targetTasks) {
 		_targetTasks = targetTasks;
 		_numTargetTasks = targetTasks.size();
+		_singleTargetTasks = new ArrayList<List<Integer>>(_numTargetTasks);
+		for (final Integer targetTask : targetTasks)
+			_singleTargetTasks.add(Arrays.asList(targetTask));
 	}
 }
\ No newline at end of file
@@ -0,0 +1,71 @@
+package plan_runner.utilities;
+
+import java.io.Serializable;
+
+import plan_runner.utilities.statistics.HyperLogLog;
+
+/*
+ * A Bloom filter over strings (e.g. join keys), sized for an expected number of keys
+ *   and a false positive probability.
+ * The k bit positions are derived from a single 64-bit hash (double hashing, Kirsch and Mitzenmacher).
+ * There are no false negatives: if mightContain returns false, the key was never added.
+ */
+public class BloomFilter implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public static final double DEFAULT_FALSE_POSITIVE_PROBABILITY = 0.01;
+
+	private final long[] _bits;
+	private final long _numBits;
+	private final int _numHashes;
+
+	public BloomFilter(long expectedKeys, double falsePositiveProbability) {
+		expectedKeys = Math.max(expectedKeys, 1);
+		final double ln2 = Math.log(2);
+		final long numBits = (long) Math.ceil(-expectedKeys * Math.log(falsePositiveProbability)
+				/ (ln2 * ln2));
+		_bits = new long[(int) Math.max((numBits + 63) / 64, 1)];
+		_numBits = 64L * _bits.length;
+		_numHashes = Math.max((int) Math.round(((double) _numBits) / expectedKeys * ln2), 1);
+	}
+
+	public void add(String key) {
+		addHash(HyperLogLog.hash(key));
+	}
+
+	// for keys which are already hashed to 64 bits
+	public void addHash(long hash) {
+		final int hash1 = (int) hash;
+		final int hash2 = (int) (hash >>> 32);
+		for (int i = 1; i <= _numHashes; i++) {
+			final long position = getPosition(hash1 + i * hash2);
+			_bits[(int) (position >>> 6)] |= 1L << position;
+		}
+	}
+
+	// in bytes
+	public long getSize() {
+		return 8L * _bits.length;
+	}
+
+	private long getPosition(int combinedHash) {
+		// a non-negative position in [0, _numBits)
+		return (combinedHash & 0x7fffffffL) % _numBits;
+	}
+
+	public boolean mightContain(String key) {
+		return mightContainHash(HyperLogLog.hash(key));
+	}
+
+	public boolean mightContainHash(long hash) {
+		final int hash1 = (int) hash;
+		final int hash2 = (int) (hash >>> 32);
+		for (int i = 1; i <= _numHashes; i++) {
+			final long position = getPosition(hash1 + i * hash2);
+			if ((_bits[(int) (position >>> 6)] & (1L << position)) == 0)
+				return false;
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,65 @@
+package plan_runner.utilities;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Consistent hashing of the keys (tuple hashes) of an elastic join onto its active tasks.
+ * Each task owns DIP_ELASTIC_VIRTUAL_NODES points of the ring, and a key belongs to
+ *   the first point at or after the position of the key (wrapping around).
+ * The points of a task depend only on its index, so adding the task k moves only the keys
+ *   which now fall onto the points of k, and removing it moves only its own keys.
+ * Senders and receivers build the same ring independently: no state is exchanged.
+ */
+public class ConsistentHashRing {
+
+	public static final int DEFAULT_VIRTUAL_NODES = 64;
+
+	// SplitMix64 finalizer: spreads the (poorly distributed) String hash codes
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	private final int _numActiveTasks;
+	// sorted positions of the points, and the task index of each
+	private final long[] _positions;
+	private final int[] _taskIndexes;
+
+	/*
+	 * the active tasks are the tasks [0, numActiveTasks) of the component
+	 */
+	public ConsistentHashRing(int numActiveTasks, int numVirtualNodes) {
+		_numActiveTasks = numActiveTasks;
+		final TreeMap<Long, Integer> points = new TreeMap<Long, Integer>();
+		for (int task = 0; task < numActiveTasks; task++)
+			for (int node = 0; node < numVirtualNodes; node++)
+				points.put(mix(((long) task << 32 | node) + 0x9E3779B97F4A7C15L), task);
+
+		_positions = new long[points.size()];
+		_taskIndexes = new int[points.size()];
+		int i = 0;
+		for (final Map.Entry<Long, Integer> point : points.entrySet()) {
+			_positions[i] = point.getKey();
+			_taskIndexes[i] = point.getValue();
+			i++;
+		}
+	}
+
+	public int getNumActiveTasks() {
+		return _numActiveTasks;
+	}
+
+	// the index (among the tasks of the component) of the owner of key
+	public int getTaskIndex(String key) {
+		int i = Arrays.binarySearch(_positions, mix(key.hashCode()));
+		if (i < 0)
+			i = -i - 1;
+		if (i == _positions.length)
+			i = 0;
+		return _taskIndexes[i];
+	}
+
+}
@@ -6,5 +6,14 @@ public interface CustomReader {
 
 	public void close();
 
+	// the position of the next line, see seek
+	public long getPosition();
+
 	public String readLine() throws IOException;
+
+	/*
+	 * continues reading from position (obtained by getPosition from a reader
+	 * of the same file section); invoked before the first readLine
+	 */
+	public void seek(long position) throws IOException;
 }
@@ -0,0 +1,103 @@
+package plan_runner.utilities;
+
+import java.util.Map;
+
+import backtype.storm.generated.Grouping;
+import backtype.storm.task.TopologyContext;
+
+/*
+ * Elastic mode (DIP_ELASTIC): the number of active tasks of an equi-join changes at runtime.
+ * Storm cannot add tasks to a running topology, so <NAME>_PAR tasks are created up front,
+ *   and <NAME>_ELASTIC_SCHEDULE (e.g. "0:2,3600000:8,7200000:4") says how many of them
+ *   are active from which moment on (in milliseconds after a sender started).
+ * The i-th entry of the schedule is the epoch i; the keys are spread over the active tasks
+ *   of an epoch by a ConsistentHashRing, so only the affected key ranges move between epochs.
+ * Each sender task switches to the next epoch on its own clock: its data tuples are tagged
+ *   with their epoch (routed by the ring of that epoch), and an epoch barrier goes to each
+ *   task of the join. The join tasks align the barriers and migrate the keys they lost
+ *   before they process any tuple of the new epoch (see EpochTracker).
+ */
+public class ElasticSchedule {
+
+	/*
+	 * null if the component is not an elastic join
+	 */
+	public static ElasticSchedule create(String compName, Map conf) {
+		if (!MyUtilities.isElasticMode(conf)
+				|| !SystemParameters.isExisting(conf, compName + "_ELASTIC_SCHEDULE"))
+			return null;
+		return new ElasticSchedule(compName, conf);
+	}
+
+	/*
+	 * the schedule of the elastic child of the task, or null if it has none;
+	 * a component can feed at most one elastic join, as its data tuples carry
+	 * a single epoch
+	 */
+	public static ElasticSchedule findTarget(TopologyContext tc, Map conf) {
+		ElasticSchedule result = null;
+		final Map<String, Grouping> componentGroup = tc.getThisTargets().get(
+				SystemParameters.DATA_STREAM);
+		if (componentGroup != null)
+			for (final String componentId : componentGroup.keySet()) {
+				final ElasticSchedule schedule = create(componentId, conf);
+				if (schedule == null)
+					continue;
+				if (result != null)
+					throw new RuntimeException(tc.getThisComponentId()
+							+ " cannot send to more than one elastic join!");
+				result = schedule;
+			}
+		return result;
+	}
+
+	private final long[] _startMillis;
+	private final int[] _numActiveTasks;
+	private final int _numVirtualNodes;
+	// built on demand
+	private final ConsistentHashRing[] _rings;
+
+	private ElasticSchedule(String compName, Map conf) {
+		final int parallelism = SystemParameters.getInt(conf, compName + "_PAR");
+		final String[] entries = SystemParameters.getString(conf, compName + "_ELASTIC_SCHEDULE")
+				.split(",");
+		_startMillis = new long[entries.length];
+		_numActiveTasks = new int[entries.length];
+		for (int i = 0; i < entries.length; i++) {
+			final String[] parts = entries[i].trim().split(":");
+			if (parts.length != 2)
+				throw new RuntimeException(compName + "_ELASTIC_SCHEDULE: " + entries[i]
+						+ " is not of the form MILLIS:TASKS!");
+			_startMillis[i] = Long.parseLong(parts[0].trim());
+			_numActiveTasks[i] = Integer.parseInt(parts[1].trim());
+			if (i == 0 ? _startMillis[i] != 0 : _startMillis[i] <= _startMillis[i - 1])
+				throw new RuntimeException(compName
+						+ "_ELASTIC_SCHEDULE has to start at 0 and increase!");
+			if (_numActiveTasks[i] < 1 || _numActiveTasks[i] > parallelism)
+				throw new RuntimeException(compName + "_ELASTIC_SCHEDULE: " + _numActiveTasks[i]
+						+ " active tasks, while " + compName + "_PAR is " + parallelism + "!");
+		}
+		_numVirtualNodes = SystemParameters.isExisting(conf, "DIP_ELASTIC_VIRTUAL_NODES") ? SystemParameters
+				.getInt(conf, "DIP_ELASTIC_VIRTUAL_NODES") : ConsistentHashRing.DEFAULT_VIRTUAL_NODES;
+		_rings = new ConsistentHashRing[entries.length];
+	}
+
+	// the epoch of a sender which started elapsedMillis ago
+	public int getEpoch(long elapsedMillis) {
+		int epoch = 0;
+		while (epoch + 1 < _startMillis.length && _startMillis[epoch + 1] <= elapsedMillis)
+			epoch++;
+		return epoch;
+	}
+
+	public int getNumActiveTasks(int epoch) {
+		return _numActiveTasks[epoch];
+	}
+
+	public ConsistentHashRing getRing(int epoch) {
+		if (_rings[epoch] == null)
+			_rings[epoch] = new ConsistentHashRing(_numActiveTasks[epoch], _numVirtualNodes);
+		return _rings[epoch];
+	}
+
+}
@@ -4,6 +4,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
+import plan_runner.storm_components.StormComponent;
 import backtype.storm.generated.GlobalStreamId;
 import backtype.storm.grouping.CustomStreamGrouping;
 import backtype.storm.task.WorkerTopologyContext;
@@ -13,6 +14,7 @@ import backtype.storm.task.WorkerTopologyContext;
  *   it uses uniform key (not number of tuples!) distribution
  * Otherwise, we encode fieldGrouping exactly the same as the Storm authors.
  * Because of NoACK possibility, have to be used everywhere in the code.
+ * If the target is an elastic join, the ring of the epoch of the tuple decides (see ElasticSchedule).
  */
 public class HashStreamGrouping implements CustomStreamGrouping {
 
@@ -28,6 +30,10 @@ public class HashStreamGrouping implements CustomStreamGrouping {
 
 	private final Map _map;
 
+	// for Elastic mode, null if the target is not an elastic join
+	private ElasticSchedule _elasticSchedule;
+	private int _epochIndex;
+
 	/*
 	 * fullHashList is null if grouping is not balanced
 	 */
@@ -43,6 +49,11 @@ public class HashStreamGrouping implements CustomStreamGrouping {
 		if (MyUtilities.isFinalAck(tuple, _map))
 			// send to everyone
 			return _targetTasks;
+		if (_elasticSchedule != null) {
+			final int epoch = (Integer) stormTuple.get(_epochIndex);
+			return Arrays.asList(_targetTasks.get(_elasticSchedule.getRing(epoch).getTaskIndex(
+					tupleHash)));
+		}
 		if (!isBalanced())
 			return Arrays.asList(_targetTasks.get(MyUtilities.chooseHashTargetIndex(tupleHash,
 					_numTargetTasks)));
@@ -59,6 +70,10 @@ public class HashStreamGrouping implements CustomStreamGrouping {
 	public void prepare(WorkerTopologyContext wtc, GlobalStreamId gsi, List<Integer> targetTasks) {
 		_targetTasks = targetTasks;
 		_numTargetTasks = targetTasks.size();
+		_elasticSchedule = ElasticSchedule.create(wtc.getComponentId(targetTasks.get(0)), _map);
+		if (_elasticSchedule != null)
+			_epochIndex = wtc.getComponentOutputFields(gsi.get_componentId(), gsi.get_streamId())
+					.fieldIndex(StormComponent.EPOCH);
 	}
 
 }
\ No newline at end of file
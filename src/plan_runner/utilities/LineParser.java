@@ -0,0 +1,151 @@
+package plan_runner.utilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import plan_runner.expressions.ColumnReference;
+import plan_runner.expressions.ValueExpression;
+import plan_runner.operators.ChainOperator;
+import plan_runner.operators.Operator;
+import plan_runner.operators.ProjectOperator;
+import plan_runner.operators.SelectOperator;
+import plan_runner.predicates.ComparisonPredicate;
+import plan_runner.predicates.LikePredicate;
+import plan_runner.predicates.Predicate;
+
+/*
+ * Splits the lines of a data source into tuples, as fileLineToTuple does,
+ *   but only the columns which the operator chain of the component reads become Strings.
+ * The chain has to start with selections followed by a projection (as created by EarlyProjection):
+ *   the projection keeps only the columns it reads, so the needed columns are
+ *   the ones referred to by the selections and the projection.
+ *   The other columns are null, and the line is not scanned beyond the last needed column
+ *   (e.g. the wide COMMENT column of most TPC-H tables).
+ * In Deletions mode, the DELETE_MARKER column of a deleted tuple (see MyUtilities.isDeletion) is kept,
+ *   and the needed columns are counted after it.
+ * Otherwise, or if DIP_READ_SPLIT_DELIMITER is not a single character, all the columns are parsed.
+ */
+public class LineParser {
+
+	/*
+	 * the needed column indexes of the tuples which chain receives, or null if
+	 * all the columns might be needed
+	 */
+	public static boolean[] findNeededColumns(ChainOperator chain) {
+		if (chain == null)
+			return null;
+		final List<Integer> columns = new ArrayList<Integer>();
+		for (final Operator operator : chain.getOperators())
+			if (operator instanceof SelectOperator) {
+				if (!addColumns(((SelectOperator) operator).getPredicate(), columns))
+					return null;
+			} else if (operator instanceof ProjectOperator) {
+				for (final ValueExpression ve : ((ProjectOperator) operator).getExpressions())
+					addColumns(ve, columns);
+				int maxColumn = -1;
+				for (final int column : columns)
+					maxColumn = Math.max(maxColumn, column);
+				final boolean[] result = new boolean[maxColumn + 1];
+				for (final int column : columns)
+					result[column] = true;
+				return result;
+			} else
+				// e.g. an aggregation over the whole tuple
+				return null;
+		// no projection: the whole tuple is sent
+		return null;
+	}
+
+	// returns false if the columns of the predicate are unknown
+	private static boolean addColumns(Predicate predicate, List<Integer> columns) {
+		if (predicate instanceof ComparisonPredicate)
+			for (final Object ve : ((ComparisonPredicate) predicate).getExpressions())
+				addColumns((ValueExpression) ve, columns);
+		else if (predicate instanceof LikePredicate)
+			for (final ValueExpression ve : ((LikePredicate) predicate).getExpressions())
+				addColumns(ve, columns);
+		else if (predicate.getInnerPredicates().isEmpty())
+			return false;
+		for (final Predicate inner : predicate.getInnerPredicates())
+			if (!addColumns(inner, columns))
+				return false;
+		return true;
+	}
+
+	private static void addColumns(ValueExpression ve, List<Integer> columns) {
+		if (ve instanceof ColumnReference)
+			columns.add(((ColumnReference) ve).getColumnIndex());
+		for (final Object inner : ve.getInnerExpressions())
+			addColumns((ValueExpression) inner, columns);
+	}
+
+	// the character of a regex which matches a single character, or -1
+	private static int getDelimiter(String regex) {
+		if (regex.length() == 2 && regex.charAt(0) == '\\'
+				&& !Character.isLetterOrDigit(regex.charAt(1)))
+			return regex.charAt(1);
+		if (regex.length() == 1 && ".$|()[{^?*+\\".indexOf(regex.charAt(0)) == -1)
+			return regex.charAt(0);
+		return -1;
+	}
+
+	private final Map _conf;
+	private final boolean[] _neededColumns;
+	private final int _delimiter;
+	// the beginning of the line of a deleted tuple, null if not in Deletions
+	// mode
+	private final String _deletionPrefix;
+
+	public LineParser(ChainOperator chain, Map conf) {
+		_conf = conf;
+		_delimiter = getDelimiter(SystemParameters.getString(conf, "DIP_READ_SPLIT_DELIMITER"));
+		_neededColumns = _delimiter == -1 ? null : findNeededColumns(chain);
+		_deletionPrefix = MyUtilities.isDeletionMode(conf) ? SystemParameters.DELETE_MARKER
+				+ (char) _delimiter : null;
+	}
+
+	public boolean isPruning() {
+		return _neededColumns != null;
+	}
+
+	/*
+	 * a single pass over the line, which stops after the last needed column
+	 */
+	public List<String> parse(String line) {
+		if (_neededColumns == null)
+			return MyUtilities.fileLineToTuple(line, _conf);
+		final List<String> result = new ArrayList<String>(_neededColumns.length + 1);
+		int start = 0;
+		if (_deletionPrefix != null && line.startsWith(_deletionPrefix)) {
+			result.add(SystemParameters.DELETE_MARKER);
+			start = _deletionPrefix.length();
+		}
+		for (int column = 0; column < _neededColumns.length; column++) {
+			int end = line.indexOf(_delimiter, start);
+			if (end == -1)
+				end = line.length();
+			result.add(_neededColumns[column] ? line.substring(start, end) : null);
+			if (end == line.length())
+				// possibly fewer columns than expected
+				break;
+			start = end + 1;
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		if (_neededColumns == null)
+			return "all the columns";
+		final StringBuilder sb = new StringBuilder();
+		for (int column = 0; column < _neededColumns.length; column++)
+			if (_neededColumns[column]) {
+				if (sb.length() > 0)
+					sb.append(", ");
+				sb.append(column);
+			}
+		return "columns " + sb;
+	}
+
+}
@@ -12,7 +12,9 @@ import plan_runner.conversion.TypeConversion;
 import plan_runner.expressions.ColumnReference;
 import plan_runner.operators.AggregateAvgOperator;
 import plan_runner.operators.AggregateOperator;
+import plan_runner.operators.AggregateSketchOperator;
 import plan_runner.operators.AggregateSumOperator;
+import plan_runner.operators.TopKOperator;
 import plan_runner.storage.AggregationStorage;
 import plan_runner.storm_components.StormComponent;
 
@@ -35,14 +37,30 @@ public class LocalMergeResults {
 			// we create empty aggregations, which we later fill, one from
 			// tasks, other from a file
 			_computedAgg = createOverallAgg(lastAgg, map);
-			_fileAgg = (AggregateOperator) DeepCopy.copy(_computedAgg);
-			fillAggFromResultFile(map);
+			// an approximate result is not compared with the exact one
+			if (!(_computedAgg instanceof AggregateSketchOperator)) {
+				_fileAgg = (AggregateOperator) DeepCopy.copy(_computedAgg);
+				fillAggFromResultFile(map);
+			}
 		}
-		((AggregationStorage) _computedAgg.getStorage()).addContent((AggregationStorage) (lastAgg
+		// for a top-k, lastAgg.getStorage() holds only the top groups of the
+		// task, and they are merged into all the groups
+		AggregateOperator mergedAgg = _computedAgg;
+		if (mergedAgg instanceof TopKOperator)
+			mergedAgg = ((TopKOperator) mergedAgg).getAggregation();
+		((AggregationStorage) mergedAgg.getStorage()).addContent((AggregationStorage) (lastAgg
 				.getStorage()));
 	}
 
 	private static AggregateOperator createOverallAgg(AggregateOperator lastAgg, Map map) {
+		if (lastAgg instanceof TopKOperator) {
+			final TopKOperator topK = (TopKOperator) lastAgg;
+			return new TopKOperator(createOverallAgg(topK.getAggregation(), map), topK.getK(),
+					topK.isDescending(), map);
+		}
+		if (lastAgg instanceof AggregateSketchOperator)
+			return ((AggregateSketchOperator) lastAgg).createMerging(map);
+
 		final TypeConversion wrapper = lastAgg.getType();
 		AggregateOperator overallAgg;
 
@@ -138,6 +156,10 @@ public class LocalMergeResults {
 	}
 
 	private static void localCompare(Map map) {
+		if (_computedAgg instanceof AggregateSketchOperator) {
+			LOG.info("\nThe result is approximate, it is not validated.");
+			return;
+		}
 		if (_fileAgg == null) {
 			LOG.info("\nCannot validate the result, result file " + getResultFilePath(map)
 					+ " does not exist."
@@ -0,0 +1,56 @@
+package plan_runner.utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import backtype.storm.generated.GlobalStreamId;
+import backtype.storm.grouping.CustomStreamGrouping;
+import backtype.storm.task.WorkerTopologyContext;
+
+/*
+ * For a receiver which can process any tuple at any of its tasks (e.g. a broadcast join):
+ *   tuples are sent round-robin to the target tasks in the same worker, if there are any,
+ *   so that they do not go over the network; otherwise round-robin to all the target tasks.
+ * As in HashStreamGrouping, the last ack is sent to all the target tasks.
+ */
+public class LocalShuffleStreamGrouping implements CustomStreamGrouping {
+	private static final long serialVersionUID = 1L;
+
+	private List<Integer> _targetTasks;
+	private List<List<Integer>> _chosenTasks;
+	private int _nextIndex = 0;
+
+	private final Map _map;
+
+	public LocalShuffleStreamGrouping(Map map) {
+		_map = map;
+	}
+
+	@Override
+	public List<Integer> chooseTasks(int taskId, List<Object> stormTuple) {
+		final List<String> tuple = (List<String>) stormTuple.get(1);
+		if (MyUtilities.isFinalAck(tuple, _map))
+			// send to everyone
+			return _targetTasks;
+		final List<Integer> result = _chosenTasks.get(_nextIndex);
+		_nextIndex = (_nextIndex + 1) % _chosenTasks.size();
+		return result;
+	}
+
+	@Override
+	public void prepare(WorkerTopologyContext wtc, GlobalStreamId gsi, List<Integer> targetTasks) {
+		_targetTasks = targetTasks;
+
+		final List<Integer> localTasks = new ArrayList<Integer>(targetTasks);
+		localTasks.retainAll(wtc.getThisWorkerTasks());
+		final List<Integer> candidates = localTasks.isEmpty() ? targetTasks : localTasks;
+
+		// singleton lists are created only once
+		_chosenTasks = new ArrayList<List<Integer>>(candidates.size());
+		for (final Integer task : candidates)
+			_chosenTasks.add(Arrays.asList(task));
+	}
+
+}
@@ -0,0 +1,78 @@
+package plan_runner.utilities;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import plan_runner.components.DataSourceComponent;
+import plan_runner.expressions.ValueExpression;
+import plan_runner.operators.ChainOperator;
+
+/*
+ * The output of a (small) DataSourceComponent, computed locally by the task which needs it,
+ *   rather than received over the network: the whole file is scanned,
+ *   and the operators of the component (selection, projection) are applied.
+ * In GenerateData mode, the table is generated as by the data source (see TpchGenerator).
+ * The hash of an output tuple is the one the component would use for sending it,
+ *   so it can be compared with the hash of the tuples of the opposite join side.
+ * Used for semi-join reduction (DataSourceComponent.setSemiJoinSource).
+ */
+public class LocalTableScan implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final String _name;
+	private final String _inputPath;
+	private final ChainOperator _chain;
+	private final List<Integer> _hashIndexes;
+	private final List<ValueExpression> _hashExpressions;
+
+	public LocalTableScan(DataSourceComponent source) {
+		if (source.getChainOperator().getAggregation() != null)
+			throw new RuntimeException(source.getName()
+					+ " cannot be scanned locally, it has an aggregation!");
+		_name = source.getName();
+		_inputPath = source.getInputPath();
+		_chain = source.getChainOperator();
+		_hashIndexes = source.getHashIndexes();
+		_hashExpressions = source.getHashExpressions();
+	}
+
+	public String getHash(List<String> tuple, Map conf) {
+		return MyUtilities.createHashString(tuple, _hashIndexes, _hashExpressions, conf);
+	}
+
+	public String getName() {
+		return _name;
+	}
+
+	/*
+	 * the output tuples of the component
+	 */
+	public List<List<String>> scan(Map conf) {
+		final List<List<String>> result = new ArrayList<List<String>>();
+		CustomReader reader = null;
+		try {
+			if (MyUtilities.isGenerateDataMode(conf))
+				// the whole table, as a single section
+				reader = TpchGenerator.create(MyUtilities.getTableName(_inputPath), 0, 1, conf);
+			else
+				reader = new SerializableFileInputStream(_inputPath);
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final List<String> tuple = _chain.process(MyUtilities.fileLineToTuple(line, conf));
+				if (tuple != null)
+					result.add(tuple);
+			}
+		} catch (final IOException ex) {
+			throw new RuntimeException("Cannot scan " + _inputPath + ":\n"
+					+ MyUtilities.getStackTrace(ex));
+		} finally {
+			if (reader != null)
+				reader.close();
+		}
+		return result;
+	}
+
+}
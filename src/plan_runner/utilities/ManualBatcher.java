@@ -0,0 +1,183 @@
+package plan_runner.utilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import plan_runner.storm_components.synchronization.LatencyMarker;
+
+/*
+ * The output batches of a component in ManualBatch mode, one per destination task.
+ * Each destination is flushed on its own, when its batch has
+ *   - <COMP>_BS tuples (or the AdaptiveBatchSize size in AdaptiveBatch mode), or
+ *   - DIP_BATCH_MAX_BYTES characters, or
+ *   - a first tuple which waited for DIP_BATCH_MAX_MILLIS (0, the default, turns it off).
+ * The latency bound is checked on each added tuple, and on the executor thread of the component,
+ *   so that slow streams are flushed as well: on each nextTuple of a spout, and on the tick tuples
+ *   of a bolt (see getTickSecs), as a Storm collector is not thread-safe.
+ * The methods are synchronized for the gauge of the MetricsReporter (see getBytes).
+ * The buffers are reused after each flush: only the emitted String is allocated,
+ *   which the receivers split into tuples (see StormOperator).
+ * A batch is emitted together with the index of its destination,
+ *   so that BatchStreamGrouping does not compute it again.
+ * In DIP_LATENCY_MARKERS mode, a marker waits for the pending batch of its destination,
+ *   as a tuple would.
+ * In Elastic mode, the ring of the current epoch decides the destination (see ElasticSchedule).
+ */
+public class ManualBatcher {
+
+	public interface BatchEmitter {
+		// timestamp is the minimum timestamp of the tuples in the batch
+		public List<Integer> emitBatch(int destination, String batch, long timestamp);
+
+		public void emitMarker(int destination, LatencyMarker marker);
+	}
+
+	public static final int DEFAULT_MAX_BYTES = 64 * 1024;
+	public static final long DEFAULT_MAX_MILLIS = 0;
+
+	private static long getMaxMillis(Map conf) {
+		return SystemParameters.isExisting(conf, "DIP_BATCH_MAX_MILLIS") ? SystemParameters
+				.getInt(conf, "DIP_BATCH_MAX_MILLIS") : DEFAULT_MAX_MILLIS;
+	}
+
+	/*
+	 * the period of the tick tuples of a bolt, or 0 if it needs none; the
+	 * ticks have a granularity of a second, so a slow stream waits for up to
+	 * DIP_BATCH_MAX_MILLIS plus a tick
+	 */
+	public static int getTickSecs(Map conf) {
+		final long maxMillis = getMaxMillis(conf);
+		if (!MyUtilities.isManualBatchingMode(conf) || maxMillis <= 0)
+			return 0;
+		return (int) Math.max(1, (maxMillis + 999) / 1000);
+	}
+
+	private final BatchEmitter _emitter;
+	private final AdaptiveBatchSize _adaptiveBatch;
+	private final int _batchSize;
+	private final int _maxBytes;
+	private final long _maxMillis;
+
+	private final StringBuilder[] _buffers;
+	private final int[] _numTuples;
+	private final long[] _timestamps;
+	private final long[] _firstMillis;
+	// the markers which wait for the batch of each destination
+	private final List<LatencyMarker>[] _markers;
+	private long _lastExpiryCheckMillis;
+	// for Elastic mode
+	private ConsistentHashRing _ring;
+
+	/*
+	 * adaptiveBatch is null if not in AdaptiveBatch mode
+	 */
+	public ManualBatcher(String compName, int numDestinations, AdaptiveBatchSize adaptiveBatch,
+			Map conf, BatchEmitter emitter) {
+		_emitter = emitter;
+		_adaptiveBatch = adaptiveBatch;
+		_batchSize = adaptiveBatch == null ? MyUtilities.getCompBatchSize(compName, conf) : -1;
+		_maxBytes = SystemParameters.isExisting(conf, "DIP_BATCH_MAX_BYTES") ? SystemParameters
+				.getInt(conf, "DIP_BATCH_MAX_BYTES") : DEFAULT_MAX_BYTES;
+		_maxMillis = getMaxMillis(conf);
+
+		_buffers = new StringBuilder[numDestinations];
+		_numTuples = new int[numDestinations];
+		_timestamps = new long[numDestinations];
+		_firstMillis = new long[numDestinations];
+		_markers = new List[numDestinations];
+		for (int i = 0; i < numDestinations; i++) {
+			_buffers[i] = new StringBuilder();
+			_markers[i] = new ArrayList<LatencyMarker>();
+		}
+	}
+
+	/*
+	 * the hash decides the destination, as in BatchStreamGrouping
+	 */
+	public synchronized void add(String tupleHash, String tupleString, long timestamp) {
+		final int destination = _ring != null ? _ring.getTaskIndex(tupleHash) : MyUtilities
+				.chooseHashTargetIndex(tupleHash, _buffers.length);
+		final StringBuilder buffer = _buffers[destination];
+		if (_numTuples[destination]++ == 0) {
+			_timestamps[destination] = timestamp;
+			_firstMillis[destination] = System.currentTimeMillis();
+		} else
+			// on a bolt, tuples might arrive out of order wrt timestamps
+			_timestamps[destination] = MyUtilities.getMin(timestamp, _timestamps[destination]);
+		buffer.append(tupleHash).append(SystemParameters.MANUAL_BATCH_HASH_DELIMITER)
+				.append(tupleString).append(SystemParameters.MANUAL_BATCH_TUPLE_DELIMITER);
+
+		final int batchSize = _adaptiveBatch != null ? _adaptiveBatch.getSize() : _batchSize;
+		if (_numTuples[destination] >= batchSize || buffer.length() >= _maxBytes)
+			flush(destination);
+		flushExpired(System.currentTimeMillis());
+	}
+
+	/*
+	 * the marker is sent right after the pending tuples of the destination
+	 */
+	public synchronized void addMarker(int destination, LatencyMarker marker) {
+		if (_numTuples[destination] == 0)
+			_emitter.emitMarker(destination, marker);
+		else
+			_markers[destination].add(marker);
+	}
+
+	public synchronized void flush(int destination) {
+		if (_numTuples[destination] == 0)
+			return;
+		final StringBuilder buffer = _buffers[destination];
+		final String batch = buffer.toString();
+		if (buffer.capacity() > 2 * _maxBytes)
+			// do not keep a buffer of an unusually large batch
+			_buffers[destination] = new StringBuilder(_maxBytes);
+		else
+			buffer.setLength(0);
+		_numTuples[destination] = 0;
+
+		final long startNanos = _adaptiveBatch != null ? System.nanoTime() : 0;
+		_emitter.emitBatch(destination, batch, _timestamps[destination]);
+		if (_adaptiveBatch != null)
+			_adaptiveBatch.recordEmit(System.nanoTime() - startNanos);
+
+		final List<LatencyMarker> markers = _markers[destination];
+		if (!markers.isEmpty()) {
+			for (final LatencyMarker marker : markers)
+				_emitter.emitMarker(destination, marker);
+			markers.clear();
+		}
+	}
+
+	public synchronized void flushAll() {
+		for (int i = 0; i < _buffers.length; i++)
+			flush(i);
+	}
+
+	// the latency bound is checked at most once per millisecond
+	public synchronized void flushExpired(long currentMillis) {
+		if (_maxMillis <= 0 || currentMillis == _lastExpiryCheckMillis)
+			return;
+		_lastExpiryCheckMillis = currentMillis;
+		for (int i = 0; i < _buffers.length; i++)
+			if (_numTuples[i] > 0 && currentMillis - _firstMillis[i] >= _maxMillis)
+				flush(i);
+	}
+
+	/*
+	 * Elastic mode: the batches of the previous epoch have to be flushed
+	 * before
+	 */
+	public synchronized void setRing(ConsistentHashRing ring) {
+		_ring = ring;
+	}
+
+	// the number of characters waiting in the buffers
+	public synchronized long getBytes() {
+		long result = 0;
+		for (final StringBuilder buffer : _buffers)
+			result += buffer.length();
+		return result;
+	}
+
+}
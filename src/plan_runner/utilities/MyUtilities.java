@@ -9,6 +9,8 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -20,16 +22,20 @@ import plan_runner.conversion.DoubleConversion;
 import plan_runner.conversion.TypeConversion;
 import plan_runner.expressions.ValueExpression;
 import plan_runner.operators.AggregateOperator;
+import plan_runner.operators.ChainOperator;
 import plan_runner.storm_components.InterchangingComponent;
 import plan_runner.storm_components.StormComponent;
 import plan_runner.storm_components.StormEmitter;
 import plan_runner.storm_components.StormSrcHarmonizer;
+import plan_runner.storm_components.synchronization.EndOfInputCoordinator;
 import plan_runner.thetajoin.matrix_mapping.MatrixAssignment;
+import plan_runner.utilities.statistics.ChainOperatorProfile;
 import backtype.storm.generated.Grouping;
 import backtype.storm.spout.SpoutOutputCollector;
 import backtype.storm.task.OutputCollector;
 import backtype.storm.task.TopologyContext;
 import backtype.storm.topology.InputDeclarer;
+import backtype.storm.topology.TopologyBuilder;
 import backtype.storm.tuple.Tuple;
 import backtype.storm.tuple.Values;
 
@@ -67,6 +73,85 @@ public class MyUtilities {
 		return currentBolt;
 	}
 
+	/*
+	 * DIP_HIERARCHICAL_EOF mode: end-of-input punctuations from the emitters
+	 * are aggregated in an EndOfInputCoordinator, which then notifies each
+	 * task of the component compID
+	 */
+	public static InputDeclarer attachEndOfInput(TopologyBuilder builder, String compID,
+			InputDeclarer currentBolt, StormEmitter emitter1, StormEmitter... emittersArray) {
+		final List<StormEmitter> emittersList = new ArrayList<StormEmitter>();
+		emittersList.add(emitter1);
+		emittersList.addAll(Arrays.asList(emittersArray));
+
+		final EndOfInputCoordinator coordinator = new EndOfInputCoordinator(compID,
+				emittersList, builder);
+		return currentBolt.directGrouping(coordinator.getID(), SystemParameters.EOI_STREAM);
+	}
+
+	/*
+	 * DIP_CHECKPOINT_DIR mode: each task of the current bolt receives the
+	 * checkpoint barriers from each task of the emitters
+	 */
+	public static InputDeclarer attachCheckpoint(InputDeclarer currentBolt,
+			StormEmitter emitter1, StormEmitter... emittersArray) {
+		final List<StormEmitter> emittersList = new ArrayList<StormEmitter>();
+		emittersList.add(emitter1);
+		emittersList.addAll(Arrays.asList(emittersArray));
+
+		for (final StormEmitter emitter : emittersList) {
+			final String[] emitterIDs = emitter.getEmitterIDs();
+			for (final String emitterID : emitterIDs)
+				currentBolt = currentBolt.allGrouping(emitterID,
+						SystemParameters.CHECKPOINT_STREAM);
+		}
+		return currentBolt;
+	}
+
+	/*
+	 * Elastic mode: the epoch barriers of the parents, and the migrated keys
+	 * from the other tasks of the join itself, see EpochTracker
+	 */
+	public static InputDeclarer attachElastic(String componentID, InputDeclarer currentBolt,
+			StormEmitter emitter1, StormEmitter... emittersArray) {
+		final List<StormEmitter> emittersList = new ArrayList<StormEmitter>();
+		emittersList.add(emitter1);
+		emittersList.addAll(Arrays.asList(emittersArray));
+
+		for (final StormEmitter emitter : emittersList) {
+			final String[] emitterIDs = emitter.getEmitterIDs();
+			for (final String emitterID : emitterIDs)
+				currentBolt = currentBolt.allGrouping(emitterID, SystemParameters.EPOCH_STREAM);
+		}
+		return currentBolt.directGrouping(componentID, SystemParameters.MIGRATION_STREAM);
+	}
+
+	// OnlineAgg mode: the final component receives the progress of the sources
+	public static InputDeclarer attachOnlineAgg(InputDeclarer currentBolt, List<String> sourceNames) {
+		for (final String sourceName : new HashSet<String>(sourceNames))
+			currentBolt = currentBolt.allGrouping(sourceName, SystemParameters.PROGRESS_STREAM);
+		return currentBolt;
+	}
+
+	/*
+	 * DIP_LATENCY_MARKERS mode: the sender chooses the task which receives a
+	 * marker, see LatencyMarker
+	 */
+	public static InputDeclarer attachLatencyMarkers(InputDeclarer currentBolt,
+			StormEmitter emitter1, StormEmitter... emittersArray) {
+		final List<StormEmitter> emittersList = new ArrayList<StormEmitter>();
+		emittersList.add(emitter1);
+		emittersList.addAll(Arrays.asList(emittersArray));
+
+		for (final StormEmitter emitter : emittersList) {
+			final String[] emitterIDs = emitter.getEmitterIDs();
+			for (final String emitterID : emitterIDs)
+				currentBolt = currentBolt.directGrouping(emitterID,
+						SystemParameters.LATENCY_MARKER_STREAM);
+		}
+		return currentBolt;
+	}
+
 	public static InputDeclarer attachEmitterHash(Map map, List<String> fullHashList,
 			InputDeclarer currentBolt, StormEmitter emitter1, StormEmitter... emittersArray) {
 		final List<StormEmitter> emittersList = new ArrayList<StormEmitter>();
@@ -82,6 +167,25 @@ public class MyUtilities {
 		return currentBolt;
 	}
 
+	/*
+	 * for a receiver which can process any tuple at any of its tasks (e.g. a
+	 * broadcast join): tasks in the same worker are preferred
+	 */
+	public static InputDeclarer attachEmitterLocalShuffle(Map map, InputDeclarer currentBolt,
+			StormEmitter emitter1, StormEmitter... emittersArray) {
+		final List<StormEmitter> emittersList = new ArrayList<StormEmitter>();
+		emittersList.add(emitter1);
+		emittersList.addAll(Arrays.asList(emittersArray));
+
+		for (final StormEmitter emitter : emittersList) {
+			final String[] emitterIDs = emitter.getEmitterIDs();
+			for (final String emitterID : emitterIDs)
+				currentBolt = currentBolt.customGrouping(emitterID,
+						new LocalShuffleStreamGrouping(map));
+		}
+		return currentBolt;
+	}
+
 	public static void checkBatchOutput(long batchOutputMillis, AggregateOperator aggregation,
 			Map conf) {
 		if (aggregation == null && batchOutputMillis != 0)
@@ -117,6 +221,9 @@ public class MyUtilities {
 			List<ValueExpression> hashExpressions, Map map) {
 		if (hashIndexes == null && hashExpressions == null)
 			return SINGLE_HASH_KEY;
+		if (isDeletion(tuple, map))
+			// a deleted tuple goes to the same task as the inserted one
+			tuple = fromDeletion(tuple);
 
 		final String columnDelimiter = getColumnDelimiter(map);
 
@@ -185,13 +292,27 @@ public class MyUtilities {
 	public static Values createTupleValues(List<String> tuple, long timestamp,
 			String componentIndex, List<Integer> hashIndexes,
 			List<ValueExpression> hashExpressions, Map conf) {
+		return createTupleValues(tuple, timestamp, 0, componentIndex, hashIndexes,
+				hashExpressions, conf);
+	}
+
+	/*
+	 * epoch is used in Elastic mode only
+	 */
+	public static Values createTupleValues(List<String> tuple, long timestamp, int epoch,
+			String componentIndex, List<Integer> hashIndexes,
+			List<ValueExpression> hashExpressions, Map conf) {
 
 		final String outputTupleHash = MyUtilities.createHashString(tuple, hashIndexes,
 				hashExpressions, conf);
+		Values result;
 		if (MyUtilities.isCustomTimestampMode(conf))
-			return new Values(componentIndex, tuple, outputTupleHash, timestamp);
+			result = new Values(componentIndex, tuple, outputTupleHash, timestamp);
 		else
-			return new Values(componentIndex, tuple, outputTupleHash);
+			result = new Values(componentIndex, tuple, outputTupleHash);
+		if (MyUtilities.isElasticMode(conf))
+			result.add(epoch);
+		return result;
 	}
 
 	public static Values createUniversalFinalAckTuple(Map map) {
@@ -202,10 +323,16 @@ public class MyUtilities {
 					Arrays.asList(SystemParameters.LAST_ACK));
 			values.add(lastTuple);
 			values.add("N/A");
-		} else
+		} else {
 			values.add(SystemParameters.LAST_ACK);
+			// it goes to all the destinations
+			values.add(-1);
+		}
 		if (MyUtilities.isCustomTimestampMode(map))
 			values.add(0);
+		if (MyUtilities.isElasticMode(map))
+			// it goes to all the tasks, whatever the epoch
+			values.add(0);
 		return values;
 	}
 
@@ -243,6 +370,24 @@ public class MyUtilities {
 	 * currentBolt; }
 	 */
 
+	/*
+	 * DIP_LATENCY_MARKERS mode: the (sorted) task ids of each child component
+	 * which receives latency markers
+	 */
+	public static List<List<Integer>> findLatencyMarkerTargets(TopologyContext tc) {
+		final List<List<Integer>> result = new ArrayList<List<Integer>>();
+		final Map<String, Grouping> componentGroup = tc.getThisTargets().get(
+				SystemParameters.LATENCY_MARKER_STREAM);
+		if (componentGroup != null)
+			for (final String componentId : componentGroup.keySet()) {
+				final List<Integer> tasks = new ArrayList<Integer>(
+						tc.getComponentTasks(componentId));
+				Collections.sort(tasks);
+				result.add(tasks);
+			}
+		return result;
+	}
+
 	// collects all the task ids for "default" stream id
 	public static List<Integer> findTargetTaskIds(TopologyContext tc) {
 		final List<Integer> result = new ArrayList<Integer>();
@@ -355,10 +500,27 @@ public class MyUtilities {
 		return batchOutputMillis != 0L;
 	}
 
+	/*
+	 * the state of each task is periodically checkpointed to
+	 * DIP_CHECKPOINT_DIR, see CheckpointStore
+	 */
+	public static boolean isCheckpointMode(Map map) {
+		return SystemParameters.isExisting(map, "DIP_CHECKPOINT_DIR");
+	}
+
 	public static boolean isCustomTimestampMode(Map map) {
 		return SystemParameters.isExisting(map, "CUSTOM_TIMESTAMP")
 				&& SystemParameters.getBoolean(map, "CUSTOM_TIMESTAMP");
 	}
+
+	/*
+	 * data tuples carry the epoch of the elastic join they go to, see
+	 * ElasticSchedule
+	 */
+	public static boolean isElasticMode(Map map) {
+		return SystemParameters.isExisting(map, "DIP_ELASTIC")
+				&& SystemParameters.getBoolean(map, "DIP_ELASTIC");
+	}
 	
 	public static boolean isStatisticsCollector(Map map, int hierarchyPosition) {
 		return hierarchyPosition == StormComponent.FINAL_COMPONENT
@@ -378,6 +540,13 @@ public class MyUtilities {
 			return false;
 	}
 
+	// LAST_ACK is not broadcast from each parent task to each child task,
+	// but aggregated per component
+	public static boolean isHierarchicalEOF(Map map) {
+		return !isAckEveryTuple(map) && SystemParameters.isExisting(map, "DIP_HIERARCHICAL_EOF")
+				&& SystemParameters.getBoolean(map, "DIP_HIERARCHICAL_EOF");
+	}
+
 	public static boolean isFinalAck(List<String> tuple, Map map) {
 		return (!isAckEveryTuple(map)) && isFinalAck(tuple.get(0));
 	}
@@ -390,6 +559,168 @@ public class MyUtilities {
 		return (!isAckEveryTuple(map)) && isFinalAck(tupleString);
 	}
 
+	/*
+	 * Deletions mode (DIP_DELETIONS): deletions (retractions) flow through the same streams
+	 *   as insertions: a deleted tuple is prefixed by the DELETE_MARKER column
+	 *   (e.g. a line "DELETE|1|..." of a data source file deletes the tuple "1|...").
+	 * The marker is removed before the tuple is processed, and added to the deltas it produces,
+	 *   see ChainOperator.process, StormDstJoin and StormThetaJoin.
+	 * Otherwise, a first column DELETE is an ordinary value.
+	 */
+	public static boolean isDeletion(List<String> tuple, Map map) {
+		return isDeletionMode(map) && isDeletion(tuple);
+	}
+
+	// in Deletions mode only, see isDeletion(tuple, map)
+	public static boolean isDeletion(List<String> tuple) {
+		return !tuple.isEmpty() && SystemParameters.DELETE_MARKER.equals(tuple.get(0));
+	}
+
+	public static List<String> fromDeletion(List<String> tuple) {
+		return new ArrayList<String>(tuple.subList(1, tuple.size()));
+	}
+
+	public static List<String> toDeletion(List<String> tuple) {
+		final List<String> result = new ArrayList<String>(tuple.size() + 1);
+		result.add(SystemParameters.DELETE_MARKER);
+		result.addAll(tuple);
+		return result;
+	}
+
+	public static boolean isDeletionMode(Map map) {
+		return SystemParameters.isExisting(map, "DIP_DELETIONS")
+				&& SystemParameters.getBoolean(map, "DIP_DELETIONS");
+	}
+
+	public static boolean isCollectStatisticsMode(Map map) {
+		return SystemParameters.isExisting(map, "DIP_COLLECT_STATISTICS")
+				&& SystemParameters.getBoolean(map, "DIP_COLLECT_STATISTICS");
+	}
+
+	public static boolean isProfileOperatorsMode(Map map) {
+		return SystemParameters.isExisting(map, "DIP_PROFILE_OPERATORS")
+				&& SystemParameters.getBoolean(map, "DIP_PROFILE_OPERATORS");
+	}
+
+	public static boolean isMetricsMode(Map map) {
+		return SystemParameters.isExisting(map, "DIP_METRICS")
+				&& SystemParameters.getBoolean(map, "DIP_METRICS");
+	}
+
+	/*
+	 * the final component sends running estimates to an OnlineAggMerger, see
+	 * OnlineEstimator
+	 */
+	public static boolean isOnlineAggMode(Map map) {
+		return SystemParameters.isExisting(map, "DIP_ONLINE_AGG")
+				&& SystemParameters.getBoolean(map, "DIP_ONLINE_AGG");
+	}
+
+	/*
+	 * latency markers are sampled at the data sources, see LatencyMarker
+	 */
+	public static boolean isLatencyMarkersMode(Map map) {
+		return SystemParameters.isExisting(map, "DIP_LATENCY_MARKERS")
+				&& SystemParameters.getBoolean(map, "DIP_LATENCY_MARKERS");
+	}
+
+	/*
+	 * the number of rows of a relation: exact in GenerateData mode, otherwise
+	 * estimated from the mean length of the first lines of the file
+	 */
+	public static long getNumRows(String inputPath, Map conf) {
+		if (isGenerateDataMode(conf))
+			return TpchGenerator.getNumRows(getTableName(inputPath), TpchGenerator.getScale(conf));
+		final File file = new File(inputPath);
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new FileReader(file));
+			long bytes = 0;
+			int lines = 0;
+			String line;
+			while (lines < 1000 && (line = reader.readLine()) != null) {
+				bytes += line.length() + 1;
+				lines++;
+			}
+			if (lines == 0)
+				return 0;
+			return Math.round(file.length() / ((double) bytes / lines));
+		} catch (final IOException e) {
+			throw new RuntimeException("Cannot estimate the size of " + inputPath + ": "
+					+ getStackTrace(e));
+		} finally {
+			try {
+				if (reader != null)
+					reader.close();
+			} catch (final IOException e) {
+			}
+		}
+	}
+
+	// e.g. CUSTOMER for .../customer.tbl
+	public static String getTableName(String inputPath) {
+		String tableName = new File(inputPath).getName();
+		if (tableName.contains("."))
+			tableName = tableName.substring(0, tableName.indexOf('.'));
+		return tableName.toUpperCase();
+	}
+
+	/*
+	 * data sources generate their tables, see TpchGenerator
+	 */
+	public static boolean isGenerateDataMode(Map map) {
+		return SystemParameters.isExisting(map, "DIP_GENERATE_DATA")
+				&& SystemParameters.getBoolean(map, "DIP_GENERATE_DATA");
+	}
+
+	/*
+	 * data sources read and parse in a background thread, see ReadAheadReader
+	 */
+	public static boolean isReadAheadMode(Map map) {
+		return SystemParameters.isExisting(map, "DIP_READ_AHEAD")
+				&& SystemParameters.getBoolean(map, "DIP_READ_AHEAD");
+	}
+
+	public static boolean isSemiJoinMode(Map map) {
+		return SystemParameters.isExisting(map, "DIP_SEMIJOIN")
+				&& SystemParameters.getBoolean(map, "DIP_SEMIJOIN");
+	}
+
+	/*
+	 * COUNT(DISTINCT), QUANTILE and FREQUENT in SQL are computed by sketches,
+	 * see AggregateSketchOperator
+	 */
+	public static boolean isApproximateMode(Map map) {
+		return SystemParameters.isExisting(map, "DIP_APPROXIMATE")
+				&& SystemParameters.getBoolean(map, "DIP_APPROXIMATE");
+	}
+
+	public static boolean isBroadcastJoinMode(Map map) {
+		return SystemParameters.isExisting(map, "DIP_BROADCAST_JOIN")
+				&& SystemParameters.getBoolean(map, "DIP_BROADCAST_JOIN");
+	}
+
+	/*
+	 * set when there is a time-based window, see WindowSemantics.check
+	 */
+	public static boolean isWindowTimestampsMode(Map map) {
+		return SystemParameters.isExisting(map, "DIP_WINDOW_TIMESTAMPS")
+				&& SystemParameters.getBoolean(map, "DIP_WINDOW_TIMESTAMPS");
+	}
+
+	public static boolean isParallelProbeMode(Map map) {
+		return SystemParameters.isExisting(map, "DIP_PROBE_THREADS")
+				&& SystemParameters.getInt(map, "DIP_PROBE_THREADS") > 1;
+	}
+
+	/*
+	 * on top of ManualBatch mode, only for bolts
+	 */
+	public static boolean isAdaptiveBatchingMode(Map map) {
+		return isManualBatchingMode(map) && SystemParameters.isExisting(map, "DIP_ADAPTIVE_BATCH")
+				&& SystemParameters.getBoolean(map, "DIP_ADAPTIVE_BATCH");
+	}
+
 	public static boolean isManualBatchingMode(Map map) {
 		return SystemParameters.isExisting(map, "BATCH_SEND_MODE")
 				&& SystemParameters.getString(map, "BATCH_SEND_MODE").equalsIgnoreCase(
@@ -443,6 +774,13 @@ public class MyUtilities {
 		printPartialResult(componentName, numProcessedTuples, compContent, map, log);
 	}
 
+	// ProfileOperators mode: invoked when a component is done
+	public static void printOperatorProfile(String componentName, ChainOperator chain, Map map,
+			Logger log) {
+		if (chain != null && chain.getProfile() != null)
+			log.info(chain.getProfile().getReport(componentName, chain.getOperators(), map));
+	}
+
 	private static void printPartialResult(String componentName, int numProcessedTuples,
 			String compContent, Map map, Logger log) {
 		final StringBuilder sb = new StringBuilder();
@@ -454,6 +792,22 @@ public class MyUtilities {
 		log.info(sb.toString());
 	}
 
+	// ProfileOperators mode: invoked when a component starts
+	public static void startOperatorProfiling(ChainOperator chain, Map map) {
+		if (chain != null && isProfileOperatorsMode(map)) {
+			int samplingFreq = ChainOperatorProfile.DEFAULT_SAMPLING_FREQ;
+			if (SystemParameters.isExisting(map, "DIP_PROFILE_SAMPLING_FREQ"))
+				samplingFreq = SystemParameters.getInt(map, "DIP_PROFILE_SAMPLING_FREQ");
+			chain.startProfiling(samplingFreq);
+		}
+	}
+
+	// Deletions mode: invoked when a component starts
+	public static void startOperatorDeletions(ChainOperator chain, Map map) {
+		if (chain != null && isDeletionMode(map))
+			chain.startDeletions();
+	}
+
 	// in ProcessFinalAck and dumpSignal we have acking at the end, because we
 	// return after that
 	public static void processFinalAck(int numRemainingParents, int hierarchyPosition, Map conf,
@@ -542,28 +896,30 @@ public class MyUtilities {
 	}
 
 	// this is for Spout
-	public static void sendTuple(Values stormTupleSnd, SpoutOutputCollector collector, Map conf) {
+	// returns the ids of the tasks the tuple is sent to
+	public static List<Integer> sendTuple(Values stormTupleSnd, SpoutOutputCollector collector,
+			Map conf) {
 		String msgId = null;
 		if (MyUtilities.isAckEveryTuple(conf))
 			msgId = "T"; // as short as possible
 
 		if (msgId != null)
-			collector.emit(stormTupleSnd, msgId);
+			return collector.emit(stormTupleSnd, msgId);
 		else
-			collector.emit(stormTupleSnd);
+			return collector.emit(stormTupleSnd);
 	}
 
 	/*
 	 * no acking at the end, because for one tuple arrived in JoinComponent, we
 	 * might have multiple tuples to be sent.
 	 */
-	public static void sendTuple(Values stormTupleSnd, Tuple stormTupleRcv,
+	public static List<Integer> sendTuple(Values stormTupleSnd, Tuple stormTupleRcv,
 			OutputCollector collector, Map conf) {
 		// stormTupleRcv is equals to null when we send tuples in batch fashion
 		if (isAckEveryTuple(conf) && stormTupleRcv != null)
-			collector.emit(stormTupleRcv, stormTupleSnd);
+			return collector.emit(stormTupleRcv, stormTupleSnd);
 		else
-			collector.emit(stormTupleSnd);
+			return collector.emit(stormTupleSnd);
 	}
 
 	public static List<String> stringToTuple(String tupleString, Map conf) { // arraylist
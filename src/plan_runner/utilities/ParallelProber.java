@@ -0,0 +1,135 @@
+package plan_runner.utilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/*
+ * Intra-task parallelism of a join bolt (DIP_PROBE_THREADS > 1).
+ * Probing a received tuple against a long list of opposite-relation tuples is split into ranges,
+ *   one per worker; worker 0 is the executor thread itself, the others are pool threads.
+ * The results are handed back in the order of the list, so that the executor thread applies
+ *   the operator chain and emits exactly as in the serial case
+ *   (operators such as aggregations are not thread-safe, and neither is the OutputCollector).
+ * Workers only read the storage, and the executor thread does not insert into it
+ *   before all the workers are done, so the storage has a single writer.
+ * Objects which are not thread-safe (e.g. a join predicate, because of DateConversion)
+ *   have to be copied for each worker, see getWorkerCopy.
+ * Lists shorter than DIP_PROBE_MIN_SIZE are probed serially.
+ */
+public class ParallelProber {
+
+	/*
+	 * a joined tuple, together with the timestamp of its lineage
+	 */
+	public static class JoinResult {
+		private final List<String> _tuple;
+		private final long _lineageTimestamp;
+
+		public JoinResult(List<String> tuple, long lineageTimestamp) {
+			_tuple = tuple;
+			_lineageTimestamp = lineageTimestamp;
+		}
+
+		public long getLineageTimestamp() {
+			return _lineageTimestamp;
+		}
+
+		public List<String> getTuple() {
+			return _tuple;
+		}
+	}
+
+	public interface ProbeRange {
+		// probes the positions [from, to) of the opposite list, and appends
+		// the joined tuples to results
+		public void probe(int worker, int from, int to, List<JoinResult> results);
+	}
+
+	public static final int DEFAULT_MIN_PROBE_SIZE = 1024;
+
+	private final int _numWorkers;
+	private final int _minProbeSize;
+	private final ExecutorService _pool;
+
+	public ParallelProber(final String name, int numWorkers, int minProbeSize) {
+		_numWorkers = numWorkers;
+		_minProbeSize = Math.max(minProbeSize, numWorkers);
+		_pool = Executors.newFixedThreadPool(numWorkers - 1, new ThreadFactory() {
+			private int _threadIndex = 0;
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				final Thread thread = new Thread(runnable, name + "-prober-" + (++_threadIndex));
+				// it should not prevent a worker from exiting
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	public int getNumWorkers() {
+		return _numWorkers;
+	}
+
+	/*
+	 * copies of an object, one for each of the workers; the first one is the
+	 * original
+	 */
+	public <T> List<T> getWorkerCopy(T original) {
+		final List<T> copies = new ArrayList<T>(_numWorkers);
+		copies.add(original);
+		for (int i = 1; i < _numWorkers; i++)
+			copies.add(original == null ? null : (T) DeepCopy.copy(original));
+		return copies;
+	}
+
+	public List<JoinResult> probe(int size, final ProbeRange range) {
+		final List<JoinResult> results = new ArrayList<JoinResult>();
+		if (size < _minProbeSize) {
+			range.probe(0, 0, size, results);
+			return results;
+		}
+
+		final int rangeSize = (size + _numWorkers - 1) / _numWorkers;
+		final List<Future<List<JoinResult>>> futures = new ArrayList<Future<List<JoinResult>>>();
+		for (int worker = 1; worker < _numWorkers; worker++) {
+			final int currentWorker = worker;
+			final int from = worker * rangeSize;
+			final int to = Math.min(from + rangeSize, size);
+			futures.add(_pool.submit(new Callable<List<JoinResult>>() {
+				@Override
+				public List<JoinResult> call() {
+					final List<JoinResult> rangeResults = new ArrayList<JoinResult>();
+					if (from < to)
+						range.probe(currentWorker, from, to, rangeResults);
+					return rangeResults;
+				}
+			}));
+		}
+		// meanwhile, the executor thread probes the first range
+		range.probe(0, 0, Math.min(rangeSize, size), results);
+
+		for (final Future<List<JoinResult>> future : futures)
+			try {
+				results.addAll(future.get());
+			} catch (final InterruptedException ex) {
+				throw new RuntimeException("Interrupted while probing:\n"
+						+ MyUtilities.getStackTrace(ex));
+			} catch (final ExecutionException ex) {
+				throw new RuntimeException("Parallel probe failed:\n"
+						+ MyUtilities.getStackTrace(ex.getCause()));
+			}
+		return results;
+	}
+
+	public void shutdown() {
+		_pool.shutdownNow();
+	}
+
+}
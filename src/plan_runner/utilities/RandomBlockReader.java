@@ -0,0 +1,72 @@
+package plan_runner.utilities;
+
+import java.io.IOException;
+import java.util.Random;
+
+/*
+ * OnlineAgg mode: reads the section of a task in a random order of blocks, so that the lines
+ *   read so far are a sample of the section (a sequential scan follows the order of the file,
+ *   e.g. the dates of ORDERS). The section is split into numBlocks blocks, each read by
+ *   a reader of its own (see createBlock), in the order of a shuffle seeded by seed.
+ * There are no positions to seek to, so the Checkpoint mode is not supported.
+ */
+public abstract class RandomBlockReader implements CustomReader {
+
+	public static final int DEFAULT_BLOCKS = 64;
+
+	private final int[] _order;
+	// the index (in _order) of the block which is read
+	private int _current = -1;
+	private CustomReader _block;
+
+	public RandomBlockReader(int numBlocks, long seed) {
+		_order = new int[numBlocks];
+		for (int i = 0; i < numBlocks; i++)
+			_order[i] = i;
+		final Random random = new Random(seed);
+		for (int i = numBlocks - 1; i > 0; i--) {
+			final int j = random.nextInt(i + 1);
+			final int block = _order[i];
+			_order[i] = _order[j];
+			_order[j] = block;
+		}
+	}
+
+	@Override
+	public void close() {
+		if (_block != null)
+			_block.close();
+	}
+
+	// the reader of the block-th out of numBlocks blocks of the section
+	protected abstract CustomReader createBlock(int block, int numBlocks) throws IOException;
+
+	// the number of the blocks started so far
+	@Override
+	public long getPosition() {
+		return _current + 1;
+	}
+
+	@Override
+	public String readLine() throws IOException {
+		while (true) {
+			if (_block != null) {
+				final String line = _block.readLine();
+				if (line != null)
+					return line;
+				_block.close();
+				_block = null;
+			}
+			if (_current + 1 == _order.length)
+				return null;
+			_current++;
+			_block = createBlock(_order[_current], _order.length);
+		}
+	}
+
+	@Override
+	public void seek(long position) {
+		throw new UnsupportedOperationException("The blocks are read in a random order!");
+	}
+
+}
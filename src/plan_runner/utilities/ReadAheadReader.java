@@ -0,0 +1,146 @@
+package plan_runner.utilities;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+
+/*
+ * ReadAhead mode of a data source (DIP_READ_AHEAD): a background thread reads the lines
+ *   of a CustomReader and splits them into tuples (LineParser),
+ *   so that disk I/O and parsing do not run on the spout thread.
+ * The tuples are handed over by a bounded ring buffer of DIP_READ_AHEAD_SIZE tuples,
+ *   with a single producer (the background thread) and a single consumer (the spout thread).
+ *   It is lock-free: each side only writes its own counter, and publishes it after
+ *   writing (the producer) or reading (the consumer) the slots.
+ * A full buffer parks the producer for a while; an empty buffer returns null
+ *   to the consumer, which never blocks (nextTuple must not block).
+ * Each tuple comes with the position of the next line, so that a checkpoint
+ *   can be taken after any consumed tuple (see getPosition).
+ */
+public class ReadAheadReader {
+	private static Logger LOG = Logger.getLogger(ReadAheadReader.class);
+
+	public static final int DEFAULT_SIZE = 4096;
+	private static final long FULL_PARK_NANOS = 100000;
+
+	private final CustomReader _reader;
+	private final LineParser _parser;
+
+	private final List<String>[] _tuples;
+	private final long[] _positions;
+	private final int _mask;
+	// the number of produced (written by the producer) and consumed tuples
+	private final AtomicLong _produced = new AtomicLong();
+	private final AtomicLong _consumed = new AtomicLong();
+	private volatile boolean _isProducerDone = false;
+	private volatile boolean _isClosed = false;
+	private volatile IOException _error;
+
+	private final Thread _producer;
+	// the position after the last consumed tuple
+	private long _position;
+
+	/*
+	 * size is rounded up to a power of two
+	 */
+	public ReadAheadReader(String name, CustomReader reader, int size, LineParser parser) {
+		_reader = reader;
+		_parser = parser;
+		final int capacity = Integer.highestOneBit(Math.max(size, 2) - 1) << 1;
+		_tuples = new List[capacity];
+		_positions = new long[capacity];
+		_mask = capacity - 1;
+		_position = reader.getPosition();
+
+		_producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				produce();
+			}
+		}, name + "-read-ahead");
+		// it should not prevent a worker from exiting
+		_producer.setDaemon(true);
+	}
+
+	/*
+	 * stops the background thread, and then closes the reader, so that it is
+	 * not closed in the middle of a readLine
+	 */
+	public void close() {
+		_isClosed = true;
+		LockSupport.unpark(_producer);
+		try {
+			_producer.join();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		_reader.close();
+	}
+
+	// the position of the next line after the last consumed tuple
+	public long getPosition() {
+		return _position;
+	}
+
+	/*
+	 * true once all the tuples are consumed; an I/O error of the producer is
+	 * rethrown here
+	 */
+	public boolean isEOF() {
+		if (_error != null)
+			throw new RuntimeException("Read-ahead failed: " + MyUtilities.getStackTrace(_error));
+		return _isProducerDone && _consumed.get() == _produced.get();
+	}
+
+	/*
+	 * the next tuple, or null if none is read yet (or at EOF, see isEOF)
+	 */
+	public List<String> poll() {
+		final long consumed = _consumed.get();
+		if (consumed == _produced.get())
+			return null;
+		final int slot = (int) consumed & _mask;
+		final List<String> tuple = _tuples[slot];
+		_position = _positions[slot];
+		_tuples[slot] = null;
+		// the slot is free for the producer
+		_consumed.lazySet(consumed + 1);
+		return tuple;
+	}
+
+	private void produce() {
+		try {
+			long produced = _produced.get();
+			String line;
+			while (!_isClosed && (line = _reader.readLine()) != null) {
+				final List<String> tuple = _parser.parse(line);
+				while (produced - _consumed.get() == _tuples.length) {
+					if (_isClosed)
+						return;
+					LockSupport.parkNanos(FULL_PARK_NANOS);
+				}
+				final int slot = (int) produced & _mask;
+				_tuples[slot] = tuple;
+				_positions[slot] = _reader.getPosition();
+				// the slot is visible to the consumer
+				_produced.lazySet(++produced);
+			}
+		} catch (final IOException e) {
+			LOG.info(MyUtilities.getStackTrace(e));
+			_error = e;
+		} finally {
+			_isProducerDone = true;
+		}
+	}
+
+	/*
+	 * the reader is used only by the background thread from now on
+	 */
+	public void start() {
+		_producer.start();
+	}
+
+}
@@ -86,6 +86,11 @@ public class SerializableFileInputStream extends InputStream implements Serializ
 				|| (_filePosition > _fileEndPtr);
 	}
 
+	@Override
+	public long getPosition() {
+		return _filePosition;
+	}
+
 	protected void fillBuffer() throws IOException {
 		if (_eofReached)
 			return;
@@ -224,6 +229,20 @@ public class SerializableFileInputStream extends InputStream implements Serializ
 		return ret;
 	}
 
+	@Override
+	public void seek(long position) throws IOException {
+		// a line was read before the position was taken, so it is at the
+		// beginning of a line
+		if (position != _filePosition)
+			_omitFirstLine = false;
+		_filePtr = position;
+		_filePosition = position;
+		_bufferPtr = 0;
+		_bufferSize = 0;
+		_eofReached = false;
+		fillBuffer();
+	}
+
 	// Modified by Aleksandar
 	private void setParameters(int section, int parts) {
 		if (section >= parts)
@@ -0,0 +1,203 @@
+package plan_runner.utilities;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import plan_runner.components.Component;
+import plan_runner.components.DataSourceComponent;
+
+/*
+ * Source scheduling (DIP_SOURCE_SCHEDULE, e.g. "CUSTOMER:1,ORDERS:4"): the order in which
+ *   several relations arrive at the joins (which drives the state of online joins and the time
+ *   to the first results) is set by pacing their data sources.
+ * DIP_SOURCE_SCHEDULE_RATE rows per second are read over all these relations, shared
+ *   according to DIP_SOURCE_SCHEDULE_POLICY:
+ *   - WEIGHTED (default): in proportion to the weights of the relations which are not done yet,
+ *   - PROPORTIONAL: in proportion to the sizes of the relations, so that all are done together,
+ *   - SMALLEST_FIRST: one relation after the other, the smallest first
+ *     (e.g. the build side of a join before its probe side).
+ * Each task computes the same schedule from the sizes of the relations (exact for generated
+ *   tables, estimated from the file size otherwise), and reads its share of the rows
+ *   the schedule allows so far: the spouts cannot receive tuples, so they do not coordinate.
+ * Hence a relation which is behind does not hold the others back, and once its schedule is over,
+ *   a relation reads whatever is left (the sizes are estimates) at full speed.
+ */
+public class SourceSchedule implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public static final String WEIGHTED = "WEIGHTED";
+	public static final String PROPORTIONAL = "PROPORTIONAL";
+	public static final String SMALLEST_FIRST = "SMALLEST_FIRST";
+
+	/*
+	 * null if DIP_SOURCE_SCHEDULE is not set
+	 */
+	public static SourceSchedule create(List<Component> plan, Map conf) {
+		if (!SystemParameters.isExisting(conf, "DIP_SOURCE_SCHEDULE"))
+			return null;
+		return new SourceSchedule(plan, conf);
+	}
+
+	private final String[] _names;
+	private final String[] _inputPaths;
+	private final int[] _parallelisms;
+	private final double[] _weights;
+	private final String _policy;
+	private final double _rowsPerSecond;
+
+	// computed by each task (see prepare): the number of rows of each relation
+	// read at each of the times (in seconds), linear in between
+	private transient double[] _times;
+	private transient double[][] _numRows;
+
+	private SourceSchedule(List<Component> plan, Map conf) {
+		final String[] entries = SystemParameters.getString(conf, "DIP_SOURCE_SCHEDULE").split(",");
+		_names = new String[entries.length];
+		_inputPaths = new String[entries.length];
+		_parallelisms = new int[entries.length];
+		_weights = new double[entries.length];
+		for (int i = 0; i < entries.length; i++) {
+			final String[] parts = entries[i].trim().split(":");
+			_names[i] = parts[0].trim();
+			_weights[i] = parts.length > 1 ? Double.parseDouble(parts[1].trim()) : 1;
+			if (_weights[i] <= 0)
+				throw new RuntimeException("DIP_SOURCE_SCHEDULE: the weight of " + _names[i]
+						+ " has to be positive!");
+			for (final Component component : plan)
+				if (component.getName().equals(_names[i])) {
+					if (!(component instanceof DataSourceComponent))
+						throw new RuntimeException("DIP_SOURCE_SCHEDULE: " + _names[i]
+								+ " is not a DataSourceComponent!");
+					_inputPaths[i] = ((DataSourceComponent) component).getInputPath();
+				}
+			if (_inputPaths[i] == null)
+				throw new RuntimeException("DIP_SOURCE_SCHEDULE: there is no component "
+						+ _names[i] + "!");
+			_parallelisms[i] = SystemParameters.getInt(conf, _names[i] + "_PAR");
+		}
+		_policy = SystemParameters.isExisting(conf, "DIP_SOURCE_SCHEDULE_POLICY") ? SystemParameters
+				.getString(conf, "DIP_SOURCE_SCHEDULE_POLICY").toUpperCase() : WEIGHTED;
+		if (!_policy.equals(WEIGHTED) && !_policy.equals(PROPORTIONAL)
+				&& !_policy.equals(SMALLEST_FIRST))
+			throw new RuntimeException("Unknown DIP_SOURCE_SCHEDULE_POLICY " + _policy + "!");
+		if (!SystemParameters.isExisting(conf, "DIP_SOURCE_SCHEDULE_RATE"))
+			throw new RuntimeException(
+					"DIP_SOURCE_SCHEDULE requires DIP_SOURCE_SCHEDULE_RATE (rows per second)!");
+		_rowsPerSecond = SystemParameters.getDouble(conf, "DIP_SOURCE_SCHEDULE_RATE");
+		if (_rowsPerSecond <= 0)
+			throw new RuntimeException("DIP_SOURCE_SCHEDULE_RATE has to be positive!");
+	}
+
+	private int getIndex(String name) {
+		for (int i = 0; i < _names.length; i++)
+			if (_names[i].equals(name))
+				return i;
+		throw new RuntimeException(name + " is not in DIP_SOURCE_SCHEDULE!");
+	}
+
+	public String[] getNames() {
+		return _names;
+	}
+
+	/*
+	 * the number of rows a task of the relation may have read elapsedMillis
+	 * after it started
+	 */
+	public long getNumAllowed(String name, long elapsedMillis) {
+		final int relation = getIndex(name);
+		final double seconds = elapsedMillis / 1000.0;
+		final int last = _times.length - 1;
+		int point = 0;
+		while (point < last && _times[point + 1] <= seconds)
+			point++;
+		// the schedule of the relation is over
+		if (point == last || _numRows[point][relation] == _numRows[last][relation])
+			return Long.MAX_VALUE;
+		final double fraction = (seconds - _times[point]) / (_times[point + 1] - _times[point]);
+		final double rows = _numRows[point][relation] + fraction
+				* (_numRows[point + 1][relation] - _numRows[point][relation]);
+		return (long) Math.ceil(rows / _parallelisms[relation]);
+	}
+
+	// the time (in seconds) at which the relation starts and ends
+	public double[] getPeriod(String name) {
+		final int relation = getIndex(name);
+		final int last = _times.length - 1;
+		// an empty relation is done from the start
+		if (_numRows[last][relation] == 0)
+			return new double[] { 0, 0 };
+		int start = 0;
+		while (start < last && _numRows[start + 1][relation] == 0)
+			start++;
+		int end = last;
+		while (end > 0 && _numRows[end - 1][relation] == _numRows[last][relation])
+			end--;
+		return new double[] { _times[start], _times[end] };
+	}
+
+	/*
+	 * computes the schedule: at each step, the active relations share the rate
+	 * until one of them is done
+	 */
+	public void prepare(Map conf) {
+		final int numRelations = _names.length;
+		final double[] sizes = new double[numRelations];
+		for (int i = 0; i < numRelations; i++)
+			sizes[i] = MyUtilities.getNumRows(_inputPaths[i], conf);
+
+		final List<Double> times = new ArrayList<Double>();
+		final List<double[]> numRows = new ArrayList<double[]>();
+		final double[] read = new double[numRelations];
+		double now = 0;
+		times.add(now);
+		numRows.add(read.clone());
+		while (true) {
+			final double[] shares = new double[numRelations];
+			double totalShare = 0;
+			int smallest = -1;
+			for (int i = 0; i < numRelations; i++)
+				if (read[i] < sizes[i]) {
+					if (_policy.equals(SMALLEST_FIRST)) {
+						if (smallest == -1 || sizes[i] < sizes[smallest])
+							smallest = i;
+						continue;
+					}
+					shares[i] = _policy.equals(PROPORTIONAL) ? sizes[i] : _weights[i];
+					totalShare += shares[i];
+				}
+			if (smallest != -1) {
+				shares[smallest] = 1;
+				totalShare = 1;
+			}
+			if (totalShare == 0)
+				break;
+
+			// until the next relation is done
+			double step = Double.MAX_VALUE;
+			for (int i = 0; i < numRelations; i++)
+				if (shares[i] > 0)
+					step = Math.min(step, (sizes[i] - read[i]) * totalShare
+							/ (shares[i] * _rowsPerSecond));
+			for (int i = 0; i < numRelations; i++)
+				if (shares[i] > 0)
+					read[i] = Math.min(sizes[i], read[i] + step * _rowsPerSecond * shares[i]
+							/ totalShare);
+			for (int i = 0; i < numRelations; i++)
+				if (shares[i] > 0 && sizes[i] - read[i] < 1e-6 * sizes[i])
+					read[i] = sizes[i];
+			now += step;
+			times.add(now);
+			numRows.add(read.clone());
+		}
+
+		_times = new double[times.size()];
+		_numRows = new double[times.size()][];
+		for (int i = 0; i < _times.length; i++) {
+			_times[i] = times.get(i);
+			_numRows[i] = numRows.get(i);
+		}
+	}
+
+}
@@ -52,6 +52,7 @@ public class SplitFileInputStream implements Serializable, CustomReader {
 		}
 	}
 
+	private final String _path;
 	private DataInputStream _in;
 
 	private BufferedReader _reader;
@@ -62,6 +63,7 @@ public class SplitFileInputStream implements Serializable, CustomReader {
 	private long _fileEndPtr;
 
 	public SplitFileInputStream(String path, int section, int parts) {
+		_path = path;
 		setParameters(path, section, parts);
 	}
 
@@ -79,6 +81,11 @@ public class SplitFileInputStream implements Serializable, CustomReader {
 		return _filePosition > _fileEndPtr;
 	}
 
+	@Override
+	public long getPosition() {
+		return _filePosition;
+	}
+
 	private void openFileSection(String path, long fileBeginning) {
 		FileInputStream fstream = null;
 		try {
@@ -113,6 +120,17 @@ public class SplitFileInputStream implements Serializable, CustomReader {
 			return line;
 	}
 
+	@Override
+	public void seek(long position) {
+		// a line was read before the position was taken, so it is at the
+		// beginning of a line
+		if (position != _filePosition)
+			_omitFirstLine = false;
+		close();
+		_filePosition = position;
+		openFileSection(_path, position);
+	}
+
 	private void setParameters(String path, int section, int parts) {
 		if (section >= parts)
 			throw new RuntimeException("The section can take value from 0 to " + (parts - 1));
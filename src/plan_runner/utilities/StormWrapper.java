@@ -28,6 +28,8 @@ import backtype.storm.utils.NimbusClient;
 public class StormWrapper {
 	private static Logger LOG = Logger.getLogger(StormWrapper.class);
 	private static long startTime;
+	// local execution: invoked once the topology is done, before exiting
+	private static Runnable localEndHook;
 
 	// both local and clustered execution
 
@@ -95,6 +97,8 @@ public class StormWrapper {
 		final long endTime = System.currentTimeMillis();
 		LOG.info("Running time (sec):" + ((endTime - startTime) / 1000));
 		LocalMergeResults.localPrintAndCompare(conf);
+		if (localEndHook != null)
+			localEndHook.run();
 		// Should be killed with the following two lines
 		// cluster.killTopology(topologyName);
 		// cluster.shutdown();
@@ -102,6 +106,10 @@ public class StormWrapper {
 		System.exit(0);
 	}
 
+	public static void setLocalEndHook(Runnable hook) {
+		localEndHook = hook;
+	}
+
 	public static void submitTopology(Config conf, TopologyBuilder builder) {
 		// transform mine parameters into theirs
 		final boolean distributed = SystemParameters.getBoolean(conf, "DIP_DISTRIBUTED");
@@ -124,7 +132,10 @@ public class StormWrapper {
 			}
 			if (SystemParameters.isExisting(conf, "DIP_NUM_ACKERS")) {
 				// if not set, it's by default the value from storm.yaml
-				final int numAckers = SystemParameters.getInt(conf, "DIP_NUM_ACKERS");
+				int numAckers = SystemParameters.getInt(conf, "DIP_NUM_ACKERS");
+				if (MyUtilities.isLatencyMarkersMode(conf))
+					// the markers are acked to the data sources
+					numAckers = Math.max(numAckers, 1);
 				conf.setNumAckers(numAckers);
 			}
 
@@ -139,7 +150,9 @@ public class StormWrapper {
 			}
 		} else {
 			// number of ackers has to be specified in Local Mode
-			final int numAckers = SystemParameters.getInt(conf, "DIP_NUM_ACKERS");
+			int numAckers = SystemParameters.getInt(conf, "DIP_NUM_ACKERS");
+			if (MyUtilities.isLatencyMarkersMode(conf))
+				numAckers = Math.max(numAckers, 1);
 			conf.setNumAckers(numAckers);
 
 			conf.setFallBackOnJavaSerialization(false);
@@ -47,10 +47,40 @@ public class SystemParameters {
 	public static final String DATA_STREAM = Utils.DEFAULT_STREAM_ID; /* "default" */
 	public static final String EOF_STREAM = "2";
 	public static final String DUMP_RESULTS_STREAM = "3";
+	// end-of-input punctuation for DIP_HIERARCHICAL_EOF mode
+	// (from a task to the EndOfInputCoordinator and from it to the child tasks)
+	public static final String EOI_STREAM = "16";
+	// checkpoint barriers for DIP_CHECKPOINT_DIR mode
+	// (from each task to each task of the child component)
+	public static final String CHECKPOINT_STREAM = "17";
+	// latency markers for DIP_LATENCY_MARKERS mode
+	// (from a task to a single task of a child component, see LatencyMarker)
+	public static final String LATENCY_MARKER_STREAM = "18";
+	// epoch barriers for DIP_ELASTIC mode
+	// (from each task to each task of the elastic join, see ElasticSchedule)
+	public static final String EPOCH_STREAM = "19";
+	// the keys which move between the tasks of an elastic join (a direct
+	// stream), see EpochTracker
+	public static final String MIGRATION_STREAM = "20";
+	// the progress of each data source task for DIP_ONLINE_AGG mode
+	// (to each task of the final component, see OnlineEstimator)
+	public static final String PROGRESS_STREAM = "21";
+	// the moments of the estimators for DIP_ONLINE_AGG mode (a direct stream
+	// from the final component to an OnlineAggMerger), and the merged
+	// estimates from it
+	public static final String ESTIMATE_STREAM = "22";
 
 	public static final String LAST_ACK = "LAST_ACK";
 	public static final String EOF = "EOF";
 	public static final String DUMP_RESULTS = "DumpResults";
+	public static final String EOI = "EOI";
+	public static final String CHECKPOINT = "CHECKPOINT";
+	public static final String LATENCY_MARKER = "LATENCY_MARKER";
+	public static final String MIGRATION = "MIGRATION";
+	public static final String PROGRESS = "PROGRESS";
+	public static final String ESTIMATE = "ESTIMATE";
+	// the first column of a deleted (retracted) tuple, see MyUtilities.isDeletion
+	public static final String DELETE_MARKER = "DELETE";
 
 	public static final long BYTES_IN_MB = 1024 * 1024;
 
@@ -0,0 +1,51 @@
+package plan_runner.utilities;
+
+import java.io.Serializable;
+
+/*
+ * A token bucket rate limiter: tokens are added at a constant rate (per second),
+ *   up to a burst; each sent tuple takes a token.
+ * Unlike sleeping every x tuples, the caller is never blocked:
+ *   when there are no tokens, it simply sends nothing for now (see StormDataSource.nextTuple).
+ */
+public class TokenBucket implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final double _tokensPerNano;
+	private final double _burst;
+
+	private double _tokens;
+	private long _lastRefillNanos = -1;
+
+	public TokenBucket(double tokensPerSecond, double burst) {
+		if (tokensPerSecond <= 0 || burst < 1)
+			throw new RuntimeException("Invalid token bucket with rate " + tokensPerSecond
+					+ " and burst " + burst + "!");
+		_tokensPerNano = tokensPerSecond / 1e9;
+		_burst = burst;
+		_tokens = burst;
+	}
+
+	/*
+	 * takes up to max tokens, returns how many were taken
+	 */
+	public int acquire(int max) {
+		refill();
+		final int result = (int) Math.min(max, Math.floor(_tokens));
+		_tokens -= result;
+		return result;
+	}
+
+	// gives back unused tokens
+	public void release(int tokens) {
+		_tokens = Math.min(_burst, _tokens + tokens);
+	}
+
+	private void refill() {
+		final long now = System.nanoTime();
+		if (_lastRefillNanos != -1)
+			_tokens = Math.min(_burst, _tokens + (now - _lastRefillNanos) * _tokensPerNano);
+		_lastRefillNanos = now;
+	}
+
+}
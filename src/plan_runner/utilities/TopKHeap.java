@@ -0,0 +1,134 @@
+package plan_runner.utilities;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+ * Keeps the k best values with respect to a primitive (double) key, in O(log k) per offer.
+ * The keys are kept in a primitive array, so no boxing happens per offered value.
+ * The best keys are the largest ones (descending order) or the smallest ones (ascending order);
+ *   among the values with the same key, the smaller value is better,
+ *   so that the result does not depend on the order of the offers.
+ * Internally, it is a binary heap whose root is the worst of the kept values.
+ */
+public class TopKHeap<V extends Comparable<V>> implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final int _k;
+	private final boolean _isDescending;
+
+	private final double[] _keys;
+	private final Object[] _values;
+	private int _size = 0;
+
+	public TopKHeap(int k, boolean isDescending) {
+		if (k <= 0)
+			throw new RuntimeException("Invalid k = " + k + " for a top-k heap!");
+		_k = k;
+		_isDescending = isDescending;
+		_keys = new double[k];
+		_values = new Object[k];
+	}
+
+	/*
+	 * negative if (key1, value1) is better than (key2, value2)
+	 */
+	private int compare(double key1, V value1, double key2, V value2) {
+		if (key1 != key2) {
+			if (_isDescending)
+				return key1 > key2 ? -1 : 1;
+			else
+				return key1 < key2 ? -1 : 1;
+		}
+		return value1.compareTo(value2);
+	}
+
+	private int compare(int i, int j) {
+		return compare(_keys[i], (V) _values[i], _keys[j], (V) _values[j]);
+	}
+
+	/*
+	 * the kept values, from the best one
+	 */
+	public List<V> getSorted() {
+		final Integer[] positions = new Integer[_size];
+		for (int i = 0; i < _size; i++)
+			positions[i] = i;
+		Arrays.sort(positions, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i, Integer j) {
+				return TopKHeap.this.compare(i, j);
+			}
+		});
+
+		final List<V> result = new ArrayList<V>(_size);
+		for (final Integer position : positions)
+			result.add((V) _values[position]);
+		return result;
+	}
+
+	public int getK() {
+		return _k;
+	}
+
+	/*
+	 * returns true if the value is kept (for now)
+	 */
+	public boolean offer(double key, V value) {
+		if (_size < _k) {
+			_keys[_size] = key;
+			_values[_size] = value;
+			siftUp(_size++);
+			return true;
+		}
+		if (compare(key, value, _keys[0], (V) _values[0]) >= 0)
+			return false;
+		_keys[0] = key;
+		_values[0] = value;
+		siftDown(0);
+		return true;
+	}
+
+	private void siftDown(int i) {
+		while (true) {
+			final int left = 2 * i + 1;
+			if (left >= _size)
+				return;
+			// the worse child
+			int child = left;
+			if (left + 1 < _size && compare(left + 1, left) > 0)
+				child = left + 1;
+			if (compare(child, i) <= 0)
+				return;
+			swap(i, child);
+			i = child;
+		}
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			final int parent = (i - 1) / 2;
+			if (compare(i, parent) <= 0)
+				return;
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	public int size() {
+		return _size;
+	}
+
+	private void swap(int i, int j) {
+		final double key = _keys[i];
+		_keys[i] = _keys[j];
+		_keys[j] = key;
+		final Object value = _values[i];
+		_values[i] = _values[j];
+		_values[j] = value;
+	}
+
+}
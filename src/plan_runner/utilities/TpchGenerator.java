@@ -0,0 +1,627 @@
+package plan_runner.utilities;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Map;
+
+/*
+ * GenerateData mode of a data source (DIP_GENERATE_DATA): the rows of a TPC-H table
+ *   are generated in-process, instead of being read from a .tbl file (as dbgen in resources/tpch_skew).
+ *   - DIP_GENERATOR_SCALE is the scale factor (DIP_DB_SIZE if not set, otherwise 1),
+ *   - DIP_GENERATOR_SKEW is the Zipf exponent z (0, the default, is the uniform TPC-H data).
+ * The schema, the cardinalities, the key relationships (e.g. sparse orderkeys, no orders of
+ *   a custkey divisible by 3, the 4 suppliers of a part) and the value ranges follow the TPC-H specification,
+ *   but the rows are not byte-identical to dbgen.
+ * As in the skewed dbgen, with z > 0 each random choice (foreign keys, dates, quantities, ...)
+ *   is drawn from a Zipf distribution over its range, the lowest value being the most frequent one.
+ * Rows are deterministic and independent of each other: the random values of a row come from
+ *   a generator seeded with the index of the row (of the order, for ORDERS and LINEITEM,
+ *   so that these two tables agree). Hence the rows are split into disjoint ranges,
+ *   one per task (section), and the position of a row is simply its index.
+ */
+public class TpchGenerator implements CustomReader {
+
+	/*
+	 * SplitMix64: a small generator which is cheap to reseed for each row
+	 */
+	private static class Random {
+		private long _state;
+
+		public Random(long seed) {
+			_state = seed;
+		}
+
+		public double nextDouble() {
+			return (nextLong() >>> 11) * 0x1.0p-53;
+		}
+
+		// uniform in [low, high]
+		public long nextLong(long low, long high) {
+			return low + (long) (nextDouble() * (high - low + 1));
+		}
+
+		public long nextLong() {
+			long z = (_state += 0x9E3779B97F4A7C15L);
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			return z ^ (z >>> 31);
+		}
+	}
+
+	/*
+	 * A random choice in [low, high]: uniform, or Zipf with exponent z (the rejection-inversion
+	 * sampler of Hoermann and Derflinger, which takes constant time whatever the range)
+	 */
+	private static class Distribution {
+		private static double helper1(double x) {
+			return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+		}
+
+		private static double helper2(double x) {
+			return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+		}
+
+		private final long _low, _n;
+		private final double _z;
+		private double _hIntegralX1, _hIntegralN, _s;
+
+		public Distribution(long low, long high, double z) {
+			_low = low;
+			_n = high - low + 1;
+			_z = z;
+			if (_z > 0) {
+				_hIntegralX1 = hIntegral(1.5) - 1;
+				_hIntegralN = hIntegral(_n + 0.5);
+				_s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+			}
+		}
+
+		private double h(double x) {
+			return Math.exp(-_z * Math.log(x));
+		}
+
+		private double hIntegral(double x) {
+			final double logX = Math.log(x);
+			return helper2((1 - _z) * logX) * logX;
+		}
+
+		private double hIntegralInverse(double x) {
+			double t = x * (1 - _z);
+			if (t < -1)
+				t = -1;
+			return Math.exp(helper1(t) * x);
+		}
+
+		public long next(Random random) {
+			if (_z <= 0)
+				return _low + (long) (random.nextDouble() * _n);
+			while (true) {
+				final double u = _hIntegralN + random.nextDouble() * (_hIntegralX1 - _hIntegralN);
+				final double x = hIntegralInverse(u);
+				long k = (long) (x + 0.5);
+				if (k < 1)
+					k = 1;
+				else if (k > _n)
+					k = _n;
+				if (k - x <= _s || u >= hIntegral(k + 0.5) - h(k))
+					return _low + k - 1;
+			}
+		}
+	}
+
+	public static final String[] TABLES = { "REGION", "NATION", "SUPPLIER", "CUSTOMER", "PART",
+			"PARTSUPP", "ORDERS", "LINEITEM" };
+
+	private static final String[] REGIONS = { "AFRICA", "AMERICA", "ASIA", "EUROPE", "MIDDLE EAST" };
+	private static final String[] NATIONS = { "ALGERIA", "ARGENTINA", "BRAZIL", "CANADA", "EGYPT",
+			"ETHIOPIA", "FRANCE", "GERMANY", "INDIA", "INDONESIA", "IRAN", "IRAQ", "JAPAN", "JORDAN",
+			"KENYA", "MOROCCO", "MOZAMBIQUE", "PERU", "CHINA", "ROMANIA", "SAUDI ARABIA", "VIETNAM",
+			"RUSSIA", "UNITED KINGDOM", "UNITED STATES" };
+	private static final int[] NATION_REGIONS = { 0, 1, 1, 1, 4, 0, 3, 3, 2, 2, 4, 4, 2, 4, 0, 0, 0,
+			1, 2, 3, 4, 2, 3, 3, 1 };
+	private static final String[] COLORS = { "almond", "antique", "aquamarine", "azure", "beige",
+			"bisque", "black", "blanched", "blue", "blush", "brown", "burlywood", "burnished",
+			"chartreuse", "chiffon", "chocolate", "coral", "cornflower", "cornsilk", "cream", "cyan",
+			"dark", "deep", "dim", "dodger", "drab", "firebrick", "floral", "forest", "frosted",
+			"gainsboro", "ghost", "goldenrod", "green", "grey", "honeydew", "hot", "indian", "ivory",
+			"khaki", "lace", "lavender", "lawn", "lemon", "light", "lime", "linen", "magenta", "maroon",
+			"medium", "metallic", "midnight", "mint", "misty", "moccasin", "navajo", "navy", "olive",
+			"orange", "orchid", "pale", "papaya", "peach", "peru", "pink", "plum", "powder", "puff",
+			"purple", "red", "rose", "rosy", "royal", "saddle", "salmon", "sandy", "seashell", "sienna",
+			"sky", "slate", "smoke", "snow", "spring", "steel", "tan", "thistle", "tomato",
+			"turquoise", "violet", "wheat", "white", "yellow" };
+	private static final String[] TYPES_1 = { "STANDARD", "SMALL", "MEDIUM", "LARGE", "ECONOMY",
+			"PROMO" };
+	private static final String[] TYPES_2 = { "ANODIZED", "BURNISHED", "PLATED", "POLISHED",
+			"BRUSHED" };
+	private static final String[] TYPES_3 = { "TIN", "NICKEL", "BRASS", "STEEL", "COPPER" };
+	private static final String[] CONTAINERS_1 = { "SM", "LG", "MED", "JUMBO", "WRAP" };
+	private static final String[] CONTAINERS_2 = { "CASE", "BOX", "BAG", "JAR", "PKG", "PACK",
+			"CAN", "DRUM" };
+	private static final String[] SEGMENTS = { "AUTOMOBILE", "BUILDING", "FURNITURE", "MACHINERY",
+			"HOUSEHOLD" };
+	private static final String[] PRIORITIES = { "1-URGENT", "2-HIGH", "3-MEDIUM",
+			"4-NOT SPECIFIED", "5-LOW" };
+	private static final String[] INSTRUCTIONS = { "DELIVER IN PERSON", "COLLECT COD", "NONE",
+			"TAKE BACK RETURN" };
+	private static final String[] MODES = { "REG AIR", "AIR", "RAIL", "SHIP", "TRUCK", "MAIL", "FOB" };
+	private static final String[] WORDS = { "foxes", "ideas", "theodolites", "pinto beans",
+			"instructions", "dependencies", "excuses", "platelets", "asymptotes", "courts", "dolphins",
+			"multipliers", "sauternes", "warthogs", "frets", "dinos", "attainments", "somas",
+			"Tiresias", "patterns", "forges", "braids", "hockey players", "frays", "warhorses",
+			"dugouts", "notornis", "epitaphs", "pearls", "tithes", "waters", "orbits", "gifts",
+			"sheaves", "depths", "sentiments", "decoys", "realms", "pains", "grouches", "escapades",
+			"packages", "requests", "accounts", "deposits", "sleep", "wake", "are", "cajole", "haggle",
+			"nag", "use", "boost", "affix", "detect", "integrate", "maintain", "nod", "was", "lose",
+			"sublate", "solve", "thrash", "promise", "engage", "hinder", "print", "x-ray", "breach",
+			"eat", "grow", "impress", "mold", "poach", "serve", "run", "dazzle", "snooze", "doze",
+			"unwind", "kindle", "play", "hang", "believe", "doubt", "furious", "sly", "careful",
+			"blithe", "quick", "fluffy", "slow", "quiet", "ruthless", "thin", "close", "dogged",
+			"daring", "brave", "stealthy", "permanent", "enticing", "idle", "busy", "regular", "final",
+			"ironic", "even", "bold", "silent", "sometimes", "always", "never", "furiously", "slyly",
+			"carefully", "blithely", "quickly", "fluffily", "about", "above", "according to",
+			"across", "after", "against", "along", "alongside of", "among", "around", "at", "atop",
+			"before", "behind", "beneath", "beside", "besides", "between", "beyond", "by", "despite",
+			"during", "except", "for", "from", "in place of", "inside", "instead of", "into", "near",
+			"of", "on", "outside", "over", "past", "since", "through", "throughout", "to", "toward",
+			"under", "until", "up", "upon", "without", "with", "within" };
+	private static final String ALPHANUMERIC = "0123456789abcdefghijklmnopqrstuvwxyz"
+			+ "ABCDEFGHIJKLMNOPQRSTUVWXYZ,";
+
+	// the days (as in dbgen) are counted from STARTDATE 1992-01-01
+	private static final int END_DAY = 2556; // 1998-12-31
+	private static final int CURRENT_DAY = 1263; // 1995-06-17
+	private static final String[] DATES = new String[END_DAY + 1];
+	// as dbgen, the comments are substrings of a text pool
+	private static final int TEXT_POOL_SIZE = 1 << 20;
+	private static final String TEXT_POOL;
+
+	private static final long REGION_SEED = 1, NATION_SEED = 2, SUPPLIER_SEED = 3,
+			CUSTOMER_SEED = 4, PART_SEED = 5, PARTSUPP_SEED = 6, ORDERS_SEED = 7, LINEITEM_SEED = 8;
+	private static final int MAX_LINES = 7;
+	// the positions of LINEITEM rows are orderIndex * LINE_POSITIONS + line
+	private static final int LINE_POSITIONS = 8;
+
+	static {
+		final Calendar calendar = new GregorianCalendar(1992, Calendar.JANUARY, 1);
+		final StringBuilder sb = new StringBuilder();
+		for (int day = 0; day <= END_DAY; day++) {
+			sb.setLength(0);
+			sb.append(calendar.get(Calendar.YEAR)).append('-');
+			appendPadded(sb, calendar.get(Calendar.MONTH) + 1, 2);
+			sb.append('-');
+			appendPadded(sb, calendar.get(Calendar.DAY_OF_MONTH), 2);
+			DATES[day] = sb.toString();
+			calendar.add(Calendar.DAY_OF_MONTH, 1);
+		}
+
+		final Random random = new Random(0);
+		sb.setLength(0);
+		while (sb.length() < TEXT_POOL_SIZE) {
+			final int sentence = (int) random.nextLong(3, 12);
+			for (int i = 0; i < sentence; i++) {
+				sb.append(WORDS[(int) random.nextLong(0, WORDS.length - 1)]);
+				sb.append(i == sentence - 1 ? ". " : " ");
+			}
+		}
+		TEXT_POOL = sb.toString();
+	}
+
+	private static void appendCents(StringBuilder sb, long cents) {
+		if (cents < 0) {
+			sb.append('-');
+			cents = -cents;
+		}
+		sb.append(cents / 100).append('.');
+		appendPadded(sb, cents % 100, 2);
+	}
+
+	private static void appendPadded(StringBuilder sb, long value, int width) {
+		final String digits = String.valueOf(value);
+		for (int i = digits.length(); i < width; i++)
+			sb.append('0');
+		sb.append(digits);
+	}
+
+	/*
+	 * The generator of the rows of the section-th out of parts tasks
+	 */
+	public static TpchGenerator create(String tableName, int section, int parts, Map conf) {
+		double skew = 0;
+		if (SystemParameters.isExisting(conf, "DIP_GENERATOR_SKEW"))
+			skew = SystemParameters.getDouble(conf, "DIP_GENERATOR_SKEW");
+		return new TpchGenerator(tableName, getScale(conf), skew, section, parts);
+	}
+
+	public static double getScale(Map conf) {
+		if (SystemParameters.isExisting(conf, "DIP_GENERATOR_SCALE"))
+			return SystemParameters.getDouble(conf, "DIP_GENERATOR_SCALE");
+		else if (SystemParameters.isExisting(conf, "DIP_DB_SIZE"))
+			return SystemParameters.getDouble(conf, "DIP_DB_SIZE");
+		return 1;
+	}
+
+	// the number of rows at scale factor scale (LINEITEM has about 4 rows per order)
+	public static long getNumRows(String tableName, double scale) {
+		if (tableName.equals("REGION"))
+			return REGIONS.length;
+		else if (tableName.equals("NATION"))
+			return NATIONS.length;
+		final long base;
+		if (tableName.equals("SUPPLIER"))
+			base = 10000;
+		else if (tableName.equals("CUSTOMER"))
+			base = 150000;
+		else if (tableName.equals("PART"))
+			base = 200000;
+		else if (tableName.equals("PARTSUPP"))
+			base = 800000;
+		else if (tableName.equals("ORDERS"))
+			base = 1500000;
+		else if (tableName.equals("LINEITEM"))
+			base = 6000000;
+		else
+			throw new RuntimeException("Unknown TPC-H table " + tableName + "!");
+		return Math.max(1, (long) (base * scale));
+	}
+
+	// orderkeys are sparse: only the first 8 of each 32 keys are used
+	private static long getOrderKey(long orderIndex) {
+		return (orderIndex >>> 3 << 5) + (orderIndex & 7) + 1;
+	}
+
+	private static long getRetailPrice(long partKey) {
+		return 90000 + ((partKey / 10) % 20001) + 100 * (partKey % 1000);
+	}
+
+	private static long mix(long seed, long index) {
+		return new Random(seed * 0x632BE59BD9B4E019L + index).nextLong();
+	}
+
+	private final String _tableName;
+	private final double _skew;
+	private final long _numSuppliers, _numCustomers, _numParts;
+	// the rows (orders, for LINEITEM) of this section are [_first, _last)
+	private final long _first, _last;
+	private long _current;
+
+	private final StringBuilder _sb = new StringBuilder(256);
+
+	private final Distribution _nationKey, _phone, _acctBal, _segment, _addressLength;
+	private final Distribution _mfgr, _brand, _type, _size, _container;
+	private final Distribution _availQty, _supplyCost;
+	private final Distribution _custKey, _orderDate, _priority, _clerk, _lines, _partKey,
+			_suppIndex, _quantity, _discount, _tax, _shipDelay, _commitDelay, _receiptDelay,
+			_returnFlag, _instruction, _mode;
+
+	// the current order (ORDERS and LINEITEM)
+	private long _orderIndex = -1;
+	private final Random _random = new Random(0);
+	private final Order _order = new Order();
+
+	public TpchGenerator(String tableName, double scale, double skew, int section, int parts) {
+		_tableName = tableName.toUpperCase();
+		_skew = skew;
+		_numSuppliers = getNumRows("SUPPLIER", scale);
+		_numCustomers = getNumRows("CUSTOMER", scale);
+		_numParts = getNumRows("PART", scale);
+		final long numRows = _tableName.equals("LINEITEM") ? getNumRows("ORDERS", scale)
+				: getNumRows(_tableName, scale);
+		_first = numRows * section / parts;
+		_last = numRows * (section + 1) / parts;
+		_current = _tableName.equals("LINEITEM") ? _first * LINE_POSITIONS : _first;
+
+		_nationKey = distribution(0, NATIONS.length - 1);
+		_phone = distribution(0, 9999999999L);
+		_acctBal = distribution(-99999, 999999);
+		_segment = distribution(0, SEGMENTS.length - 1);
+		_addressLength = distribution(10, 40);
+
+		_mfgr = distribution(1, 5);
+		_brand = distribution(1, 5);
+		_type = distribution(0, TYPES_1.length * TYPES_2.length * TYPES_3.length - 1);
+		_size = distribution(1, 50);
+		_container = distribution(0, CONTAINERS_1.length * CONTAINERS_2.length - 1);
+		_availQty = distribution(1, 9999);
+		_supplyCost = distribution(100, 100000);
+
+		_custKey = distribution(1, _numCustomers);
+		_orderDate = distribution(0, END_DAY - 151);
+		_priority = distribution(0, PRIORITIES.length - 1);
+		_clerk = distribution(1, Math.max(1, (long) (1000 * scale)));
+		_lines = distribution(1, MAX_LINES);
+		_partKey = distribution(1, _numParts);
+		_suppIndex = distribution(0, 3);
+		_quantity = distribution(1, 50);
+		_discount = distribution(0, 10);
+		_tax = distribution(0, 8);
+		_shipDelay = distribution(1, 121);
+		_commitDelay = distribution(30, 90);
+		_receiptDelay = distribution(1, 30);
+		_returnFlag = distribution(0, 1);
+		_instruction = distribution(0, INSTRUCTIONS.length - 1);
+		_mode = distribution(0, MODES.length - 1);
+	}
+
+	private void appendAddress(Random random) {
+		final long length = _addressLength.next(random);
+		for (int i = 0; i < length; i++)
+			_sb.append(ALPHANUMERIC.charAt((int) random.nextLong(0, ALPHANUMERIC.length() - 1)));
+	}
+
+	private void appendComment(Random random, int minLength, int maxLength) {
+		final int length = (int) random.nextLong(minLength, maxLength);
+		final int offset = (int) random.nextLong(0, TEXT_POOL.length() - length);
+		_sb.append(TEXT_POOL, offset, offset + length);
+	}
+
+	// e.g. 25-989-741-2988, where 25 is 10 + nationkey
+	private void appendPhone(Random random, long nationKey) {
+		final long number = _phone.next(random);
+		_sb.append(nationKey + 10).append('-');
+		appendPadded(_sb, number / 10000000 % 1000, 3);
+		_sb.append('-');
+		appendPadded(_sb, number / 10000 % 1000, 3);
+		_sb.append('-');
+		appendPadded(_sb, number % 10000, 4);
+	}
+
+	@Override
+	public void close() {
+	}
+
+	private Distribution distribution(long low, long high) {
+		return new Distribution(low, high, _skew);
+	}
+
+	private void generateCustomer(long index) {
+		final Random random = new Random(mix(CUSTOMER_SEED, index));
+		final long custKey = index + 1;
+		final long nationKey = _nationKey.next(random);
+		_sb.append(custKey).append("|Customer#");
+		appendPadded(_sb, custKey, 9);
+		_sb.append('|');
+		appendAddress(random);
+		_sb.append('|').append(nationKey).append('|');
+		appendPhone(random, nationKey);
+		_sb.append('|');
+		appendCents(_sb, _acctBal.next(random));
+		_sb.append('|').append(SEGMENTS[(int) _segment.next(random)]).append('|');
+		appendComment(random, 29, 116);
+	}
+
+	private void generateLineitem(long index) {
+		final int line = (int) (index % LINE_POSITIONS);
+		_sb.append(_order._orderKey).append('|').append(_order._partKeys[line]).append('|')
+				.append(_order._suppKeys[line]).append('|').append(line + 1).append('|')
+				.append(_order._quantities[line]).append('|');
+		appendCents(_sb, _order._extendedPrices[line]);
+		_sb.append("|0.");
+		appendPadded(_sb, _order._discounts[line], 2);
+		_sb.append("|0.");
+		appendPadded(_sb, _order._taxes[line], 2);
+		_sb.append('|').append(_order._returnFlags[line]).append('|')
+				.append(_order._shipDays[line] > CURRENT_DAY ? 'O' : 'F').append('|')
+				.append(DATES[_order._shipDays[line]]).append('|')
+				.append(DATES[_order._commitDays[line]]).append('|')
+				.append(DATES[_order._receiptDays[line]]).append('|')
+				.append(INSTRUCTIONS[_order._instructions[line]]).append('|')
+				.append(MODES[_order._modes[line]]).append('|');
+		appendComment(new Random(mix(LINEITEM_SEED, index)), 10, 43);
+	}
+
+	private void generateNation(long index) {
+		final Random random = new Random(mix(NATION_SEED, index));
+		_sb.append(index).append('|').append(NATIONS[(int) index]).append('|')
+				.append(NATION_REGIONS[(int) index]).append('|');
+		appendComment(random, 31, 114);
+	}
+
+	/*
+	 * the order with all its lines; _random is left for the comment of the order
+	 */
+	private void generateOrder(long orderIndex) {
+		_orderIndex = orderIndex;
+		final Random random = _random;
+		random._state = mix(ORDERS_SEED, orderIndex);
+		final Order order = _order;
+		order._orderKey = getOrderKey(orderIndex);
+		// as dbgen, a third of the customers has no orders
+		long custKey = _custKey.next(random);
+		int delta = 1;
+		while (custKey % 3 == 0) {
+			custKey = Math.min(Math.max(custKey + delta, 1), _numCustomers);
+			delta = -delta * 2;
+		}
+		order._custKey = custKey;
+		order._orderDay = (int) _orderDate.next(random);
+		order._priority = (int) _priority.next(random);
+		order._clerk = _clerk.next(random);
+		order._numLines = (int) _lines.next(random);
+
+		order._totalPrice = 0;
+		int numShipped = 0;
+		for (int line = 0; line < order._numLines; line++) {
+			final long partKey = _partKey.next(random);
+			final long suppIndex = _suppIndex.next(random);
+			order._partKeys[line] = partKey;
+			order._suppKeys[line] = getSuppKey(partKey, suppIndex);
+			order._quantities[line] = (int) _quantity.next(random);
+			order._extendedPrices[line] = order._quantities[line] * getRetailPrice(partKey);
+			order._discounts[line] = (int) _discount.next(random);
+			order._taxes[line] = (int) _tax.next(random);
+			order._shipDays[line] = order._orderDay + (int) _shipDelay.next(random);
+			order._commitDays[line] = order._orderDay + (int) _commitDelay.next(random);
+			order._receiptDays[line] = order._shipDays[line] + (int) _receiptDelay.next(random);
+			final long returnFlag = _returnFlag.next(random);
+			order._returnFlags[line] = order._receiptDays[line] <= CURRENT_DAY ? (returnFlag == 0 ? 'R'
+					: 'A') : 'N';
+			order._instructions[line] = (int) _instruction.next(random);
+			order._modes[line] = (int) _mode.next(random);
+
+			order._totalPrice += order._extendedPrices[line] * (100 - order._discounts[line]) / 100
+					* (100 + order._taxes[line]) / 100;
+			if (order._shipDays[line] <= CURRENT_DAY)
+				numShipped++;
+		}
+		order._status = numShipped == order._numLines ? 'F' : (numShipped == 0 ? 'O' : 'P');
+	}
+
+	private void generateOrders() {
+		final Order order = _order;
+		_sb.append(order._orderKey).append('|').append(order._custKey).append('|')
+				.append(order._status).append('|');
+		appendCents(_sb, order._totalPrice);
+		_sb.append('|').append(DATES[order._orderDay]).append('|')
+				.append(PRIORITIES[order._priority]).append("|Clerk#");
+		appendPadded(_sb, order._clerk, 9);
+		_sb.append("|0|");
+		appendComment(_random, 19, 78);
+	}
+
+	private void generatePart(long index) {
+		final Random random = new Random(mix(PART_SEED, index));
+		final long partKey = index + 1;
+		_sb.append(partKey).append('|');
+		// 5 distinct colors
+		final int[] colors = new int[5];
+		for (int i = 0; i < colors.length; i++) {
+			int color;
+			boolean isDuplicate;
+			do {
+				color = (int) random.nextLong(0, COLORS.length - 1);
+				isDuplicate = false;
+				for (int j = 0; j < i; j++)
+					isDuplicate |= colors[j] == color;
+			} while (isDuplicate);
+			colors[i] = color;
+			if (i > 0)
+				_sb.append(' ');
+			_sb.append(COLORS[color]);
+		}
+		final long mfgr = _mfgr.next(random);
+		final int type = (int) _type.next(random);
+		final int container = (int) _container.next(random);
+		_sb.append("|Manufacturer#").append(mfgr).append("|Brand#").append(mfgr)
+				.append(_brand.next(random)).append('|')
+				.append(TYPES_1[type / (TYPES_2.length * TYPES_3.length)]).append(' ')
+				.append(TYPES_2[type / TYPES_3.length % TYPES_2.length]).append(' ')
+				.append(TYPES_3[type % TYPES_3.length]).append('|').append(_size.next(random))
+				.append('|').append(CONTAINERS_1[container / CONTAINERS_2.length]).append(' ')
+				.append(CONTAINERS_2[container % CONTAINERS_2.length]).append('|');
+		appendCents(_sb, getRetailPrice(partKey));
+		_sb.append('|');
+		appendComment(random, 5, 22);
+	}
+
+	private void generatePartsupp(long index) {
+		final Random random = new Random(mix(PARTSUPP_SEED, index));
+		final long partKey = index / 4 + 1;
+		_sb.append(partKey).append('|').append(getSuppKey(partKey, index % 4)).append('|')
+				.append(_availQty.next(random)).append('|');
+		appendCents(_sb, _supplyCost.next(random));
+		_sb.append('|');
+		appendComment(random, 49, 198);
+	}
+
+	private void generateRegion(long index) {
+		final Random random = new Random(mix(REGION_SEED, index));
+		_sb.append(index).append('|').append(REGIONS[(int) index]).append('|');
+		appendComment(random, 31, 115);
+	}
+
+	private void generateSupplier(long index) {
+		final Random random = new Random(mix(SUPPLIER_SEED, index));
+		final long suppKey = index + 1;
+		final long nationKey = _nationKey.next(random);
+		_sb.append(suppKey).append("|Supplier#");
+		appendPadded(_sb, suppKey, 9);
+		_sb.append('|');
+		appendAddress(random);
+		_sb.append('|').append(nationKey).append('|');
+		appendPhone(random, nationKey);
+		_sb.append('|');
+		appendCents(_sb, _acctBal.next(random));
+		_sb.append('|');
+		appendComment(random, 25, 100);
+	}
+
+	@Override
+	public long getPosition() {
+		return _current;
+	}
+
+	// the i-th (0 to 3) supplier of a part, as in dbgen
+	private long getSuppKey(long partKey, long i) {
+		return (partKey + i * (_numSuppliers / 4 + (partKey - 1) / _numSuppliers)) % _numSuppliers
+				+ 1;
+	}
+
+	/*
+	 * the next row, with a trailing delimiter as in the .tbl files
+	 */
+	@Override
+	public String readLine() {
+		_sb.setLength(0);
+		if (_tableName.equals("LINEITEM")) {
+			final long orderIndex = _current / LINE_POSITIONS;
+			if (orderIndex >= _last)
+				return null;
+			if (orderIndex != _orderIndex)
+				generateOrder(orderIndex);
+			generateLineitem(_current);
+			// the next line, or the first line of the next order
+			_current++;
+			if (_current % LINE_POSITIONS == _order._numLines)
+				_current = (orderIndex + 1) * LINE_POSITIONS;
+		} else {
+			if (_current >= _last)
+				return null;
+			if (_tableName.equals("REGION"))
+				generateRegion(_current);
+			else if (_tableName.equals("NATION"))
+				generateNation(_current);
+			else if (_tableName.equals("SUPPLIER"))
+				generateSupplier(_current);
+			else if (_tableName.equals("CUSTOMER"))
+				generateCustomer(_current);
+			else if (_tableName.equals("PART"))
+				generatePart(_current);
+			else if (_tableName.equals("PARTSUPP"))
+				generatePartsupp(_current);
+			else if (_tableName.equals("ORDERS")) {
+				generateOrder(_current);
+				generateOrders();
+			} else
+				throw new RuntimeException("Unknown TPC-H table " + _tableName + "!");
+			_current++;
+		}
+		_sb.append('|');
+		return _sb.toString();
+	}
+
+	@Override
+	public void seek(long position) {
+		_current = position;
+		_orderIndex = -1;
+	}
+
+	private static class Order {
+		private long _orderKey, _custKey, _clerk, _totalPrice;
+		private int _orderDay, _priority, _numLines;
+		private char _status;
+		private final long[] _partKeys = new long[MAX_LINES];
+		private final long[] _suppKeys = new long[MAX_LINES];
+		private final int[] _quantities = new int[MAX_LINES];
+		private final long[] _extendedPrices = new long[MAX_LINES];
+		private final int[] _discounts = new int[MAX_LINES];
+		private final int[] _taxes = new int[MAX_LINES];
+		private final int[] _shipDays = new int[MAX_LINES];
+		private final int[] _commitDays = new int[MAX_LINES];
+		private final int[] _receiptDays = new int[MAX_LINES];
+		private final char[] _returnFlags = new char[MAX_LINES];
+		private final int[] _instructions = new int[MAX_LINES];
+		private final int[] _modes = new int[MAX_LINES];
+	}
+
+}
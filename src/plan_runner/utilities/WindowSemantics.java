@@ -0,0 +1,101 @@
+package plan_runner.utilities;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/*
+ * Window over a stream, either time-based (the position of a tuple is its CUSTOM_TIMESTAMP)
+ *   or count-based (the position of a tuple is the number of tuples received before it).
+ * A window of size range moves by slide; a tumbling window has slide == range.
+ * The state is kept in segments of slide positions each (panes), which are evicted as a whole:
+ *   for a tumbling window, only the current segment is alive,
+ *   for a sliding window, a segment is evicted once all of its positions are at least range old.
+ *   Hence, the window boundaries are aligned to slide.
+ */
+public class WindowSemantics implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public static WindowSemantics slidingCount(long range, long slide) {
+		return new WindowSemantics(false, range, slide);
+	}
+
+	public static WindowSemantics slidingTime(long rangeMillis, long slideMillis) {
+		return new WindowSemantics(true, rangeMillis, slideMillis);
+	}
+
+	public static WindowSemantics tumblingCount(long range) {
+		return new WindowSemantics(false, range, range);
+	}
+
+	public static WindowSemantics tumblingTime(long rangeMillis) {
+		return new WindowSemantics(true, rangeMillis, rangeMillis);
+	}
+
+	private final boolean _isTimeBased;
+	private final long _range, _slide;
+
+	private WindowSemantics(boolean isTimeBased, long range, long slide) {
+		if (range <= 0 || slide <= 0 || slide > range)
+			throw new RuntimeException("Invalid window with range " + range + " and slide "
+					+ slide + "!");
+		_isTimeBased = isTimeBased;
+		_range = range;
+		_slide = slide;
+	}
+
+	/*
+	 * Invoked when a windowed component is created. Time-based windows are
+	 * driven by the CUSTOM_TIMESTAMP field, so all the data sources have to
+	 * set it (not only the next to last ones).
+	 */
+	public void check(Map conf) {
+		if (_isTimeBased) {
+			if (!MyUtilities.isCustomTimestampMode(conf))
+				throw new RuntimeException("Time-based windows require CUSTOM_TIMESTAMP mode!");
+			SystemParameters.putInMap(conf, "DIP_WINDOW_TIMESTAMPS", "true");
+		}
+	}
+
+	/*
+	 * the oldest segment which may contain tuples of the window ending at
+	 * position
+	 */
+	public long getOldestLiveSegmentId(long position) {
+		if (isTumbling())
+			return getSegmentId(position);
+		// the window is (position - range, position]
+		final long oldestPosition = position - _range + 1;
+		return oldestPosition < 0 ? 0 : getSegmentId(oldestPosition);
+	}
+
+	public long getRange() {
+		return _range;
+	}
+
+	public long getSegmentId(long position) {
+		return position / _slide;
+	}
+
+	public long getSlide() {
+		return _slide;
+	}
+
+	public boolean isTimeBased() {
+		return _isTimeBased;
+	}
+
+	public boolean isTumbling() {
+		return _range == _slide;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(isTumbling() ? "Tumbling" : "Sliding");
+		sb.append(_isTimeBased ? " time" : " count").append(" window with range ").append(_range);
+		if (!isTumbling())
+			sb.append(" and slide ").append(_slide);
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,106 @@
+package plan_runner.utilities.statistics;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+import plan_runner.operators.Operator;
+import plan_runner.utilities.SystemParameters;
+
+/*
+ * DIP_PROFILE_OPERATORS mode: per-operator profile of a ChainOperator (of a single task).
+ * For each operator it counts input and output tuples (its actual selectivity),
+ *   and for 1 in DIP_PROFILE_SAMPLING_FREQ tuples entering the chain
+ *   it measures the time spent in each operator (System.nanoTime is not free,
+ *   so the measurement is sampled).
+ * The report also contains the estimates of the cost-based optimizer, if any
+ *   (<COMPONENT>_EST_CARDINALITY and <COMPONENT>_EST_SELECTIVITY from the config map).
+ */
+public class ChainOperatorProfile implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public static final int DEFAULT_SAMPLING_FREQ = 100;
+
+	private final int _samplingFreq;
+	private long _numChainTuples = 0;
+
+	private final long[] _numInput;
+	private final long[] _numOutput;
+	private final long[] _numSampled;
+	private final long[] _sampledNanos;
+
+	public ChainOperatorProfile(int numOperators, int samplingFreq) {
+		_samplingFreq = samplingFreq;
+		_numInput = new long[numOperators];
+		_numOutput = new long[numOperators];
+		_numSampled = new long[numOperators];
+		_sampledNanos = new long[numOperators];
+	}
+
+	public void addSampledNanos(int operatorIndex, long nanos) {
+		_numSampled[operatorIndex]++;
+		_sampledNanos[operatorIndex] += nanos;
+	}
+
+	public void countInput(int operatorIndex) {
+		_numInput[operatorIndex]++;
+	}
+
+	public void countOutput(int operatorIndex) {
+		_numOutput[operatorIndex]++;
+	}
+
+	public String getReport(String compName, List<Operator> operators, Map conf) {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("\nOPERATOR PROFILE of ").append(compName).append(" (every ")
+				.append(_samplingFreq).append("th tuple is timed):\n");
+		for (int i = 0; i < _numInput.length; i++) {
+			final long avgNanos = _numSampled[i] == 0 ? 0 : _sampledNanos[i] / _numSampled[i];
+			sb.append(i).append(". ").append(operators.get(i).getClass().getSimpleName());
+			sb.append(": input = ").append(_numInput[i]);
+			sb.append(", output = ").append(_numOutput[i]);
+			sb.append(", selectivity = ").append(ratio(_numOutput[i], _numInput[i]));
+			sb.append(", avg time = ").append(avgNanos).append("ns");
+			// extrapolated from the samples
+			sb.append(", total time ~ ").append(avgNanos * _numInput[i] / 1000000).append("ms\n");
+		}
+
+		final long chainInput = _numChainTuples;
+		final long chainOutput = _numInput.length == 0 ? chainInput
+				: _numOutput[_numInput.length - 1];
+		sb.append("Chain: input = ").append(chainInput).append(", output = ").append(chainOutput)
+				.append(", selectivity = ").append(ratio(chainOutput, chainInput)).append("\n");
+
+		final String cardKey = compName + "_EST_CARDINALITY";
+		final String selKey = compName + "_EST_SELECTIVITY";
+		if (SystemParameters.isExisting(conf, cardKey)) {
+			int parallelism = 1;
+			if (SystemParameters.isExisting(conf, compName + "_PAR"))
+				parallelism = SystemParameters.getInt(conf, compName + "_PAR");
+			final long estCardinality = Long.parseLong(SystemParameters.getString(conf, cardKey));
+			sb.append("Estimated: output cardinality = ").append(estCardinality)
+					.append(" (per task ").append(estCardinality / parallelism).append(")");
+			if (SystemParameters.isExisting(conf, selKey))
+				// for joins, it includes the join selectivity
+				sb.append(", selectivity = ").append(SystemParameters.getString(conf, selKey));
+			sb.append("\n");
+		}
+		sb.append("END OF OPERATOR PROFILE\n");
+		return sb.toString();
+	}
+
+	private static String ratio(long numerator, long denominator) {
+		if (denominator == 0)
+			return "N/A";
+		return String.valueOf(((double) numerator) / denominator);
+	}
+
+	/*
+	 * invoked once per tuple entering the chain; returns true if the tuple
+	 * has to be timed
+	 */
+	public boolean startTuple() {
+		return _numChainTuples++ % _samplingFreq == 0;
+	}
+
+}
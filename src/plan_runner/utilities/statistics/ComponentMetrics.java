@@ -0,0 +1,185 @@
+package plan_runner.utilities.statistics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * DIP_METRICS mode: the metrics of a single task of a component.
+ * The owner task updates counters and histograms on the hot path (no allocation, no formatting),
+ *   gauges are only sampled when a snapshot is taken.
+ * Components may register histograms of their own (e.g. of latency markers) besides the fixed ones.
+ * Snapshots are formatted by the MetricsReporter thread, which reads the values without synchronization.
+ */
+public class ComponentMetrics {
+	private final String _componentID;
+	private final int _taskID;
+
+	private long _numReceived;
+	private long _numSent;
+	// how long execute takes for a data tuple
+	private final LatencyHistogram _executeNanos = new LatencyHistogram();
+	// CustomTimestamp mode: end-to-end tuple latency
+	private final LatencyHistogram _tupleLatencyMillis = new LatencyHistogram();
+	private final Map<String, Gauge> _gauges = new LinkedHashMap<String, Gauge>();
+	private final Map<String, LatencyHistogram> _histograms = new LinkedHashMap<String, LatencyHistogram>();
+
+	// for computing rates between two consecutive snapshots
+	private long _lastSnapshotMillis;
+	private long _lastNumReceived;
+	private long _lastNumSent;
+
+	public ComponentMetrics(String componentID, int taskID) {
+		_componentID = componentID;
+		_taskID = taskID;
+		_lastSnapshotMillis = System.currentTimeMillis();
+	}
+
+	private static void appendHistogramCSV(StringBuilder sb, LatencyHistogram histogram) {
+		sb.append(',').append(histogram.getCount());
+		sb.append(',').append(histogram.getPercentile(50));
+		sb.append(',').append(histogram.getPercentile(99));
+		sb.append(',').append(histogram.getPercentile(99.9));
+		sb.append(',').append(histogram.getMax());
+	}
+
+	private static void appendHistogramJSON(StringBuilder sb, String name,
+			LatencyHistogram histogram) {
+		sb.append(",\"").append(name).append("\":{");
+		sb.append("\"count\":").append(histogram.getCount());
+		sb.append(",\"p50\":").append(histogram.getPercentile(50));
+		sb.append(",\"p99\":").append(histogram.getPercentile(99));
+		sb.append(",\"p999\":").append(histogram.getPercentile(99.9));
+		sb.append(",\"max\":").append(histogram.getMax());
+		sb.append('}');
+	}
+
+	public void countReceived(long executeNanos) {
+		_numReceived++;
+		_executeNanos.record(executeNanos);
+	}
+
+	public void countSent() {
+		_numSent++;
+	}
+
+	public String getComponentID() {
+		return _componentID;
+	}
+
+	public LatencyHistogram getExecuteNanos() {
+		return _executeNanos;
+	}
+
+	public Map<String, Gauge> getGauges() {
+		return _gauges;
+	}
+
+	public Map<String, LatencyHistogram> getHistograms() {
+		return _histograms;
+	}
+
+	public long getNumReceived() {
+		return _numReceived;
+	}
+
+	public long getNumSent() {
+		return _numSent;
+	}
+
+	public String getCSVHeader() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("timestamp,component,task,received,sent,received_per_sec,sent_per_sec");
+		final List<String> histograms = new ArrayList<String>();
+		histograms.add("execute_nanos");
+		histograms.add("latency_ms");
+		histograms.addAll(_histograms.keySet());
+		for (final String histogram : histograms)
+			sb.append(',').append(histogram).append("_count,").append(histogram)
+					.append("_p50,").append(histogram).append("_p99,").append(histogram)
+					.append("_p999,").append(histogram).append("_max");
+		for (final String gaugeName : _gauges.keySet())
+			sb.append(',').append(gaugeName);
+		return sb.toString();
+	}
+
+	public int getTaskID() {
+		return _taskID;
+	}
+
+	public LatencyHistogram getTupleLatencyMillis() {
+		return _tupleLatencyMillis;
+	}
+
+	public void recordTupleLatency(long latencyMillis) {
+		_tupleLatencyMillis.record(latencyMillis);
+	}
+
+	/*
+	 * has to be invoked before the MetricsReporter is started
+	 */
+	public void registerGauge(String name, Gauge gauge) {
+		_gauges.put(name, gauge);
+	}
+
+	/*
+	 * has to be invoked before the MetricsReporter is started; the histogram
+	 * is updated by its owner
+	 */
+	public void registerHistogram(String name, LatencyHistogram histogram) {
+		_histograms.put(name, histogram);
+	}
+
+	/*
+	 * invoked only from MetricsReporter
+	 */
+	String snapshot(boolean isCSV) {
+		final long now = System.currentTimeMillis();
+		final long numReceived = _numReceived;
+		final long numSent = _numSent;
+		final double elapsedSec = Math.max(now - _lastSnapshotMillis, 1) / 1000.0;
+		final long receivedPerSec = (long) ((numReceived - _lastNumReceived) / elapsedSec);
+		final long sentPerSec = (long) ((numSent - _lastNumSent) / elapsedSec);
+		_lastSnapshotMillis = now;
+		_lastNumReceived = numReceived;
+		_lastNumSent = numSent;
+
+		final StringBuilder sb = new StringBuilder();
+		if (isCSV) {
+			sb.append(now).append(',').append(_componentID).append(',').append(_taskID);
+			sb.append(',').append(numReceived).append(',').append(numSent);
+			sb.append(',').append(receivedPerSec).append(',').append(sentPerSec);
+			appendHistogramCSV(sb, _executeNanos);
+			appendHistogramCSV(sb, _tupleLatencyMillis);
+			for (final LatencyHistogram histogram : _histograms.values())
+				appendHistogramCSV(sb, histogram);
+			for (final Gauge gauge : _gauges.values())
+				sb.append(',').append(gauge.getValue());
+		} else {
+			sb.append("{\"timestamp\":").append(now);
+			sb.append(",\"component\":\"").append(_componentID).append('"');
+			sb.append(",\"task\":").append(_taskID);
+			sb.append(",\"received\":").append(numReceived);
+			sb.append(",\"sent\":").append(numSent);
+			sb.append(",\"received_per_sec\":").append(receivedPerSec);
+			sb.append(",\"sent_per_sec\":").append(sentPerSec);
+			appendHistogramJSON(sb, "execute_nanos", _executeNanos);
+			appendHistogramJSON(sb, "latency_ms", _tupleLatencyMillis);
+			for (final Map.Entry<String, LatencyHistogram> entry : _histograms.entrySet())
+				appendHistogramJSON(sb, entry.getKey(), entry.getValue());
+			sb.append(",\"gauges\":{");
+			boolean isFirst = true;
+			for (final Map.Entry<String, Gauge> entry : _gauges.entrySet()) {
+				if (!isFirst)
+					sb.append(',');
+				isFirst = false;
+				sb.append('"').append(entry.getKey()).append("\":")
+						.append(entry.getValue().getValue());
+			}
+			sb.append("}}");
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,179 @@
+package plan_runner.utilities.statistics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import plan_runner.utilities.TopKHeap;
+
+/*
+ * Count-Min sketch (Cormode and Muthukrishnan) for the frequencies of the values,
+ *   together with the most frequent values (heavy hitters) seen so far.
+ * There are depth rows of width counters; a value increments one counter per row,
+ *   and its frequency is estimated as the minimum of them, overestimating by at most
+ *   2n / width with probability 1 - 2^-depth.
+ * The heavy hitter candidates are the numTop values with the largest estimates when they were added.
+ * Sketches with the same width and depth can be merged: the counters are added up,
+ *   and the candidates are united and estimated again.
+ */
+public class CountMinSketch implements Sketch<CountMinSketch> {
+	private static final long serialVersionUID = 1L;
+
+	public static final int DEFAULT_WIDTH = 2048;
+	public static final int DEFAULT_DEPTH = 4;
+	public static final int DEFAULT_NUM_TOP = 10;
+
+	private final int _width, _depth, _numTop;
+	private final long[] _counters;
+
+	// heavy hitter candidates with their estimates when they were added
+	private final Map<String, Long> _top = new HashMap<String, Long>();
+
+	public CountMinSketch() {
+		this(DEFAULT_WIDTH, DEFAULT_DEPTH, DEFAULT_NUM_TOP);
+	}
+
+	public CountMinSketch(int width, int depth, int numTop) {
+		if (width <= 0 || depth <= 0 || numTop <= 0)
+			throw new RuntimeException("Invalid Count-Min sketch with width " + width
+					+ ", depth " + depth + " and " + numTop + " heavy hitters!");
+		_width = width;
+		_depth = depth;
+		_numTop = numTop;
+		_counters = new long[width * depth];
+	}
+
+	@Override
+	public void add(Object value) {
+		add(value.toString());
+	}
+
+	public void add(String value) {
+		final long hash = HyperLogLog.hash(value);
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < _depth; row++) {
+			final int position = getPosition(hash, row);
+			_counters[position]++;
+			estimate = Math.min(estimate, _counters[position]);
+		}
+		updateTop(value, estimate);
+	}
+
+	@Override
+	public CountMinSketch createEmpty() {
+		return new CountMinSketch(_width, _depth, _numTop);
+	}
+
+	/*
+	 * width;depth;numTop;position:counter,...;length:value... (non-zero
+	 * counters only, the candidates are prefixed by their length)
+	 */
+	@Override
+	public CountMinSketch decode(String str) {
+		final String[] parts = str.split(";", 5);
+		final CountMinSketch result = new CountMinSketch(Integer.parseInt(parts[0]),
+				Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+		if (!parts[3].isEmpty())
+			for (final String counter : parts[3].split(",")) {
+				final int colon = counter.indexOf(':');
+				result._counters[Integer.parseInt(counter.substring(0, colon))] = Long
+						.parseLong(counter.substring(colon + 1));
+			}
+		final String candidates = parts[4];
+		int position = 0;
+		while (position < candidates.length()) {
+			final int colon = candidates.indexOf(':', position);
+			final int length = Integer.parseInt(candidates.substring(position, colon));
+			final String value = candidates.substring(colon + 1, colon + 1 + length);
+			result._top.put(value, result.estimate(value));
+			position = colon + 1 + length;
+		}
+		return result;
+	}
+
+	@Override
+	public String encode() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(_width).append(";").append(_depth).append(";").append(_numTop).append(";");
+		boolean isFirst = true;
+		for (int i = 0; i < _counters.length; i++)
+			if (_counters[i] != 0) {
+				if (!isFirst)
+					sb.append(",");
+				sb.append(i).append(":").append(_counters[i]);
+				isFirst = false;
+			}
+		sb.append(";");
+		for (final String value : _top.keySet())
+			sb.append(value.length()).append(":").append(value);
+		return sb.toString();
+	}
+
+	public long estimate(String value) {
+		final long hash = HyperLogLog.hash(value);
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < _depth; row++)
+			estimate = Math.min(estimate, _counters[getPosition(hash, row)]);
+		return estimate;
+	}
+
+	/*
+	 * the heavy hitters with their estimated frequencies, from the most
+	 * frequent one: value:frequency, ...
+	 */
+	@Override
+	public String getEstimate() {
+		final TopKHeap<String> heap = new TopKHeap<String>(_numTop, true);
+		for (final String value : _top.keySet())
+			heap.offer(estimate(value), value);
+		final StringBuilder sb = new StringBuilder();
+		for (final String value : heap.getSorted()) {
+			if (sb.length() > 0)
+				sb.append(", ");
+			sb.append(value).append(":").append(estimate(value));
+		}
+		return sb.toString();
+	}
+
+	// double hashing, from the two halves of the hash
+	private int getPosition(long hash, int row) {
+		final int hash1 = (int) hash;
+		final int hash2 = (int) (hash >>> 32);
+		return row * _width + ((hash1 + row * hash2) & Integer.MAX_VALUE) % _width;
+	}
+
+	@Override
+	public void merge(CountMinSketch other) {
+		if (other._width != _width || other._depth != _depth)
+			throw new RuntimeException("Cannot merge Count-Min sketches of different sizes!");
+		for (int i = 0; i < _counters.length; i++)
+			_counters[i] += other._counters[i];
+		for (final String value : other._top.keySet())
+			_top.put(value, 0L);
+		// the candidates are estimated again over the merged counters
+		final TopKHeap<String> heap = new TopKHeap<String>(_numTop, true);
+		for (final String value : _top.keySet())
+			heap.offer(estimate(value), value);
+		_top.clear();
+		for (final String value : heap.getSorted())
+			_top.put(value, estimate(value));
+	}
+
+	private void updateTop(String value, long estimate) {
+		if (_top.containsKey(value) || _top.size() < _numTop) {
+			_top.put(value, estimate);
+			return;
+		}
+		String minValue = null;
+		long minEstimate = Long.MAX_VALUE;
+		for (final Map.Entry<String, Long> candidate : _top.entrySet())
+			if (candidate.getValue() < minEstimate) {
+				minValue = candidate.getKey();
+				minEstimate = candidate.getValue();
+			}
+		if (estimate > minEstimate) {
+			_top.remove(minValue);
+			_top.put(value, estimate);
+		}
+	}
+
+}
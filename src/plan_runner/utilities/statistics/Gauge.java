@@ -0,0 +1,11 @@
+package plan_runner.utilities.statistics;
+
+/*
+ * A value which is sampled by the MetricsReporter, rather than updated on
+ * the hot path (e.g. the number of bytes in a join storage).
+ */
+public interface Gauge {
+
+	public long getValue();
+
+}
@@ -0,0 +1,116 @@
+package plan_runner.utilities.statistics;
+
+import java.io.Serializable;
+
+/*
+ * A fixed-size log-linear histogram of non-negative long values (HDR-style).
+ * Values below SUB_BUCKETS are counted exactly; above that each power of two
+ *   is split into SUB_BUCKETS/2 linear sub-buckets, so the relative error of a
+ *   reported percentile is below 2 / SUB_BUCKETS (~6%).
+ * Recording a value is a few shifts and an array increment: no allocation.
+ * Not thread-safe: a reader from another thread (MetricsReporter) may see
+ *   slightly stale counts, which is fine for monitoring.
+ */
+public class LatencyHistogram implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // 32
+	private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2; // 16
+	// the highest magnitude is reached for Long.MAX_VALUE (msb = 62)
+	private static final int MAX_MAGNITUDE = 62 - (SUB_BUCKET_BITS - 1);
+	private static final int NUM_BUCKETS = SUB_BUCKETS + MAX_MAGNITUDE * HALF_SUB_BUCKETS;
+
+	private final long[] _counts = new long[NUM_BUCKETS];
+	private long _totalCount;
+	private long _sum;
+	private long _min = Long.MAX_VALUE;
+	private long _max;
+
+	private static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		final int msb = 63 - Long.numberOfLeadingZeros(value);
+		final int magnitude = msb - (SUB_BUCKET_BITS - 1); // >= 1
+		final int subBucket = (int) (value >>> magnitude); // [16, 31]
+		return SUB_BUCKETS + (magnitude - 1) * HALF_SUB_BUCKETS + (subBucket - HALF_SUB_BUCKETS);
+	}
+
+	// the middle of the range of values which fall into the bucket
+	private static long bucketValue(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+		final int magnitude = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+		final long subBucket = (index - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+		final long lowest = subBucket << magnitude;
+		return lowest + ((1L << magnitude) >>> 1);
+	}
+
+	public long getCount() {
+		return _totalCount;
+	}
+
+	public long getMax() {
+		return _max;
+	}
+
+	public double getMean() {
+		return _totalCount == 0 ? 0 : ((double) _sum) / _totalCount;
+	}
+
+	public long getMin() {
+		return _totalCount == 0 ? 0 : _min;
+	}
+
+	/*
+	 * percentile is in (0, 100], e.g. 99.9
+	 */
+	public long getPercentile(double percentile) {
+		if (_totalCount == 0)
+			return 0;
+		long rank = (long) Math.ceil(percentile / 100 * _totalCount);
+		if (rank < 1)
+			rank = 1;
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			seen += _counts[i];
+			if (seen >= rank)
+				// never report more than what was actually recorded
+				return Math.min(bucketValue(i), _max);
+		}
+		return _max;
+	}
+
+	public void merge(LatencyHistogram other) {
+		for (int i = 0; i < NUM_BUCKETS; i++)
+			_counts[i] += other._counts[i];
+		_totalCount += other._totalCount;
+		_sum += other._sum;
+		if (other._totalCount > 0) {
+			_min = Math.min(_min, other._min);
+			_max = Math.max(_max, other._max);
+		}
+	}
+
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+		_counts[bucketIndex(value)]++;
+		_totalCount++;
+		_sum += value;
+		if (value < _min)
+			_min = value;
+		if (value > _max)
+			_max = value;
+	}
+
+	public void reset() {
+		for (int i = 0; i < NUM_BUCKETS; i++)
+			_counts[i] = 0;
+		_totalCount = 0;
+		_sum = 0;
+		_min = Long.MAX_VALUE;
+		_max = 0;
+	}
+
+}
@@ -0,0 +1,118 @@
+package plan_runner.utilities.statistics;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.log4j.Logger;
+
+import plan_runner.utilities.MyUtilities;
+import plan_runner.utilities.SystemParameters;
+
+/*
+ * DIP_METRICS mode: periodically appends a snapshot of ComponentMetrics to
+ *   DIP_METRICS_DIR/<topologyName>_<componentName>_<taskID>.json (or .csv),
+ *   one snapshot per line.
+ * Optional config parameters:
+ *   DIP_METRICS_DIR (default: java.io.tmpdir)
+ *   DIP_METRICS_FORMAT JSON or CSV (default: JSON)
+ *   DIP_METRICS_PERIOD_MILLIS (default: 1000)
+ * It runs on its own (daemon) thread, like PeriodicAggBatchSend,
+ *   so that nothing is formatted on the thread which processes tuples.
+ * In local mode, the metrics of all the tasks can also be read in-process (see Benchmark).
+ */
+public class MetricsReporter extends Timer {
+
+	private class ReportTask extends TimerTask {
+		@Override
+		public void run() {
+			report();
+		}
+	}
+
+	private static Logger LOG = Logger.getLogger(MetricsReporter.class);
+
+	private static final long DEFAULT_PERIOD_MILLIS = 1000;
+
+	// the metrics of all the tasks of this JVM, null if not enabled
+	private static List<ComponentMetrics> _localMetrics;
+
+	public static synchronized void enableLocalMetrics() {
+		if (_localMetrics == null)
+			_localMetrics = new ArrayList<ComponentMetrics>();
+	}
+
+	public static synchronized List<ComponentMetrics> getLocalMetrics() {
+		return new ArrayList<ComponentMetrics>(_localMetrics);
+	}
+
+	// all the gauges are registered at this point
+	private static synchronized void registerLocalMetrics(ComponentMetrics metrics) {
+		if (_localMetrics != null)
+			_localMetrics.add(metrics);
+	}
+
+	private final ComponentMetrics _metrics;
+	private final boolean _isCSV;
+	private final String _path;
+	private boolean _isHeaderWritten = false;
+	private boolean _isFinished = false;
+
+	public MetricsReporter(ComponentMetrics metrics, Map conf) {
+		super(true);
+		_metrics = metrics;
+		_isCSV = SystemParameters.isExisting(conf, "DIP_METRICS_FORMAT")
+				&& SystemParameters.getString(conf, "DIP_METRICS_FORMAT").equalsIgnoreCase("CSV");
+
+		String dir = System.getProperty("java.io.tmpdir");
+		if (SystemParameters.isExisting(conf, "DIP_METRICS_DIR"))
+			dir = SystemParameters.getString(conf, "DIP_METRICS_DIR");
+		new File(dir).mkdirs();
+		_path = dir + "/" + SystemParameters.getString(conf, "DIP_TOPOLOGY_NAME") + "_"
+				+ metrics.getComponentID() + "_" + metrics.getTaskID()
+				+ (_isCSV ? ".csv" : ".json");
+
+		long period = DEFAULT_PERIOD_MILLIS;
+		if (SystemParameters.isExisting(conf, "DIP_METRICS_PERIOD_MILLIS"))
+			period = SystemParameters.getInt(conf, "DIP_METRICS_PERIOD_MILLIS");
+		scheduleAtFixedRate(new ReportTask(), period, period);
+		registerLocalMetrics(metrics);
+	}
+
+	/*
+	 * the last snapshot, taken when the component is done
+	 */
+	public synchronized void finalReport() {
+		if (_isFinished)
+			return;
+		cancel();
+		report();
+		_isFinished = true;
+	}
+
+	private synchronized void report() {
+		if (_isFinished)
+			return;
+		PrintWriter writer = null;
+		try {
+			writer = new PrintWriter(new FileWriter(_path, true));
+			if (_isCSV && !_isHeaderWritten) {
+				writer.println(_metrics.getCSVHeader());
+				_isHeaderWritten = true;
+			}
+			writer.println(_metrics.snapshot(_isCSV));
+		} catch (final IOException ex) {
+			LOG.info("Cannot write metrics to " + _path + ": " + MyUtilities.getStackTrace(ex));
+		} finally {
+			if (writer != null)
+				writer.close();
+		}
+	}
+
+}
@@ -0,0 +1,226 @@
+package plan_runner.utilities.statistics;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import plan_runner.operators.AggregateAvgOperator;
+import plan_runner.operators.AggregateCountOperator;
+import plan_runner.operators.AggregateSumOperator;
+import plan_runner.operators.ChainOperator;
+import plan_runner.operators.Operator;
+import plan_runner.utilities.MyUtilities;
+
+/*
+ * OnlineAgg mode (DIP_ONLINE_AGG): the running estimate of a SUM, COUNT or AVG (per group)
+ *   from the tuples aggregated so far, with its confidence interval.
+ * The data sources read their sections in a random order of blocks (see RandomBlockReader),
+ *   so when a fraction f_i of each ancestor relation i is read, a join result has been seen
+ *   with the probability p = f_1 * ... * f_k (as in the ripple joins of Haas and Hellerstein):
+ *   - SUM and COUNT are scaled up by 1 / p (Horvitz-Thompson), with the variance
+ *     (1 - p) / p^2 * sum(x^2) over the tuples seen,
+ *   - AVG is the mean of the tuples seen, with the variance (1 - p) * s^2 / n.
+ * Each task of the final component sends its moments to an OnlineAggMerger, which merges
+ *   them with the ones of the other tasks (see merge).
+ * The intervals treat the join results as sampled independently, while the results
+ *   which share an input tuple are seen together: with skewed join keys, they are too narrow.
+ */
+public class OnlineEstimator implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public static final int SUM = 0;
+	public static final int COUNT = 1;
+	public static final int AVG = 2;
+
+	public static final double DEFAULT_CONFIDENCE = 0.95;
+
+	/*
+	 * the estimator of the last operator of the chain, or null if it is not an
+	 * aggregation which is estimated
+	 */
+	public static OnlineEstimator find(ChainOperator chain) {
+		if (chain == null)
+			return null;
+		final Operator lastOperator = chain.getLastOperator();
+		if (lastOperator instanceof AggregateSumOperator)
+			return ((AggregateSumOperator) lastOperator).getEstimator();
+		if (lastOperator instanceof AggregateCountOperator)
+			return ((AggregateCountOperator) lastOperator).getEstimator();
+		if (lastOperator instanceof AggregateAvgOperator)
+			return ((AggregateAvgOperator) lastOperator).getEstimator();
+		return null;
+	}
+
+	/*
+	 * the z such that [-z, z] holds the confidence of a standard normal
+	 * variable (Abramowitz and Stegun 26.2.23, the error is below 4.5e-4)
+	 */
+	public static double getZ(double confidence) {
+		final double t = Math.sqrt(-2 * Math.log((1 - confidence) / 2));
+		return t - (2.515517 + 0.802853 * t + 0.010328 * t * t)
+				/ (1 + 1.432788 * t + 0.189269 * t * t + 0.001308 * t * t * t);
+	}
+
+	/*
+	 * the estimate and its variance from the moments of a group (the number
+	 * of tuples, the sum and the sum of squares of their values), or null if
+	 * no tuple of the group has been seen
+	 */
+	private static double[] estimate(int function, double[] moments, double probability) {
+		final double n = moments[0];
+		final double sum = moments[1];
+		final double squares = moments[2];
+		if (n <= 0 || probability <= 0)
+			return null;
+		if (function == AVG)
+			return new double[] {
+					sum / n,
+					n > 1 ? (1 - probability) * (squares - sum * sum / n) / (n - 1) / n
+							: Double.POSITIVE_INFINITY };
+		return new double[] { sum / probability,
+				(1 - probability) / (probability * probability) * squares };
+	}
+
+	/*
+	 * the estimates (and their variances) per group from the moments of
+	 * several tasks, each with the probability of its tuples to have been
+	 * seen: SUM and COUNT estimates add up over the tasks, while AVG is the
+	 * mean of all the tuples (with the probability weighted by the number of
+	 * tuples of each task)
+	 */
+	public static Map<String, double[]> merge(int function,
+			List<Map<String, double[]>> taskMoments, List<Double> probabilities) {
+		final Map<String, double[]> result = new TreeMap<String, double[]>();
+		// for AVG, the pooled moments and the sum of n * probability
+		final Map<String, double[]> pooled = new HashMap<String, double[]>();
+		final Map<String, Double> weights = new HashMap<String, Double>();
+		for (int task = 0; task < taskMoments.size(); task++) {
+			final double probability = probabilities.get(task);
+			for (final Map.Entry<String, double[]> entry : taskMoments.get(task).entrySet()) {
+				final String group = entry.getKey();
+				if (function == AVG) {
+					final double[] groupMoments = entry.getValue();
+					if (groupMoments[0] <= 0)
+						continue;
+					double[] sums = pooled.get(group);
+					if (sums == null) {
+						sums = new double[3];
+						pooled.put(group, sums);
+						weights.put(group, 0.0);
+					}
+					for (int i = 0; i < 3; i++)
+						sums[i] += groupMoments[i];
+					weights.put(group, weights.get(group) + groupMoments[0] * probability);
+					continue;
+				}
+				final double[] estimate = estimate(function, entry.getValue(), probability);
+				if (estimate == null)
+					continue;
+				final double[] sums = result.get(group);
+				if (sums == null)
+					result.put(group, estimate);
+				else {
+					sums[0] += estimate[0];
+					sums[1] += estimate[1];
+				}
+			}
+		}
+		for (final Map.Entry<String, double[]> entry : pooled.entrySet()) {
+			final double[] sums = entry.getValue();
+			final double[] estimate = estimate(function, sums, weights.get(entry.getKey())
+					/ sums[0]);
+			if (estimate != null)
+				result.put(entry.getKey(), estimate);
+		}
+		return result;
+	}
+
+	/*
+	 * a line per group: the estimate and the half-width of its interval, from
+	 * the estimates and variances of getEstimates or merge
+	 */
+	public static String toString(Map<String, double[]> estimates, double z) {
+		final StringBuilder sb = new StringBuilder();
+		for (final Map.Entry<String, double[]> entry : estimates.entrySet()) {
+			if (entry.getKey().length() > 0)
+				sb.append(entry.getKey()).append(" = ");
+			sb.append(entry.getValue()[0]).append(" +- ").append(getHalfWidth(entry.getValue(), z));
+			sb.append("\n");
+		}
+		return sb.toString();
+	}
+
+	// the half-width of the interval of an estimate and its variance
+	public static double getHalfWidth(double[] estimate, double z) {
+		return z * Math.sqrt(Math.max(estimate[1], 0));
+	}
+
+	private final int _function;
+	// per group: the number of tuples, the sum and the sum of squares of
+	// their values
+	private final Map<String, double[]> _moments = new TreeMap<String, double[]>();
+
+	public OnlineEstimator(int function) {
+		_function = function;
+	}
+
+	public void add(String group, double value) {
+		update(group, value, 1);
+	}
+
+	public void clear() {
+		_moments.clear();
+	}
+
+	/*
+	 * the estimates and their variances per group; probability is the
+	 * probability of a tuple to have been seen
+	 */
+	public Map<String, double[]> getEstimates(double probability) {
+		final Map<String, double[]> result = new TreeMap<String, double[]>();
+		for (final Map.Entry<String, double[]> entry : _moments.entrySet()) {
+			final double[] estimate = estimate(_function, entry.getValue(), probability);
+			if (estimate != null)
+				result.put(entry.getKey(), estimate);
+		}
+		return result;
+	}
+
+	public int getFunction() {
+		return _function;
+	}
+
+	/*
+	 * a copy of the moments of the groups, split into numParts parts by the
+	 * hash of the group (e.g. for the merge tasks)
+	 */
+	public List<HashMap<String, double[]>> getMoments(int numParts) {
+		final List<HashMap<String, double[]>> result = new ArrayList<HashMap<String, double[]>>();
+		for (int i = 0; i < numParts; i++)
+			result.add(new HashMap<String, double[]>());
+		for (final Map.Entry<String, double[]> entry : _moments.entrySet())
+			result.get(MyUtilities.chooseHashTargetIndex(entry.getKey(), numParts)).put(
+					entry.getKey(), entry.getValue().clone());
+		return result;
+	}
+
+	// a deleted tuple
+	public void remove(String group, double value) {
+		update(group, value, -1);
+	}
+
+	private void update(String group, double value, int sign) {
+		double[] moments = _moments.get(group);
+		if (moments == null) {
+			moments = new double[3];
+			_moments.put(group, moments);
+		}
+		moments[0] += sign;
+		moments[1] += sign * value;
+		moments[2] += sign * value * value;
+	}
+
+}
@@ -0,0 +1,193 @@
+package plan_runner.utilities.statistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+ * Mergeable quantile sketch (a simplified KLL, Karnin et al.) estimating a single quantile q.
+ * The values are kept in levels of at most k values each; a value at level h stands for 2^h values.
+ *   A full level is compacted: it is sorted, and every other value is promoted to the next level.
+ *   The offset of the promoted values alternates, so that the errors cancel out rather than add up.
+ * Merging appends the levels of the other sketch, and compacts the full ones.
+ * The rank error is O(log(n / k) / k), with O(k log(n / k)) values kept.
+ */
+public class QuantileSketch implements Sketch<QuantileSketch> {
+	private static final long serialVersionUID = 1L;
+
+	public static final int DEFAULT_SIZE = 200;
+
+	private final double _quantile;
+	private final int _k;
+
+	private final List<double[]> _levels = new ArrayList<double[]>();
+	private final List<Integer> _sizes = new ArrayList<Integer>();
+	private boolean _isOddOffset = false;
+
+	public QuantileSketch(double quantile) {
+		this(quantile, DEFAULT_SIZE);
+	}
+
+	public QuantileSketch(double quantile, int k) {
+		if (quantile < 0 || quantile > 1)
+			throw new RuntimeException("Quantile has to be in [0, 1], but it is " + quantile
+					+ "!");
+		if (k < 2)
+			throw new RuntimeException("Invalid size " + k + " of a quantile sketch!");
+		_quantile = quantile;
+		_k = k;
+	}
+
+	@Override
+	public void add(Object value) {
+		if (value instanceof Number)
+			add(((Number) value).doubleValue());
+		else
+			add(Double.parseDouble(value.toString()));
+	}
+
+	public void add(double value) {
+		append(0, value);
+		if (_sizes.get(0) >= _k)
+			compact();
+	}
+
+	private void append(int level, double value) {
+		addLevels(level);
+		double[] values = _levels.get(level);
+		final int size = _sizes.get(level);
+		if (size == values.length) {
+			values = Arrays.copyOf(values, 2 * values.length);
+			_levels.set(level, values);
+		}
+		values[size] = value;
+		_sizes.set(level, size + 1);
+	}
+
+	private void addLevels(int maxLevel) {
+		while (_levels.size() <= maxLevel) {
+			_levels.add(new double[_k]);
+			_sizes.add(0);
+		}
+	}
+
+	// compacts the full levels, from the lowest one
+	private void compact() {
+		for (int level = 0; level < _levels.size(); level++) {
+			final int size = _sizes.get(level);
+			if (size < _k)
+				continue;
+			final double[] values = _levels.get(level);
+			Arrays.sort(values, 0, size);
+			// with an odd size, the largest value stays
+			final int numPaired = size - size % 2;
+			for (int i = _isOddOffset ? 1 : 0; i < numPaired; i += 2)
+				append(level + 1, values[i]);
+			_isOddOffset = !_isOddOffset;
+			if (numPaired < size)
+				values[0] = values[size - 1];
+			_sizes.set(level, size - numPaired);
+		}
+	}
+
+	@Override
+	public QuantileSketch createEmpty() {
+		return new QuantileSketch(_quantile, _k);
+	}
+
+	/*
+	 * quantile;k;level0values/level1values/... (values separated by ,)
+	 */
+	@Override
+	public QuantileSketch decode(String str) {
+		final String[] parts = str.split(";", -1);
+		final QuantileSketch result = new QuantileSketch(Double.parseDouble(parts[0]),
+				Integer.parseInt(parts[1]));
+		final String[] levels = parts[2].split("/", -1);
+		result.addLevels(levels.length - 1);
+		for (int level = 0; level < levels.length; level++)
+			if (!levels[level].isEmpty())
+				for (final String value : levels[level].split(","))
+					result.append(level, Double.parseDouble(value));
+		return result;
+	}
+
+	@Override
+	public String encode() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(_quantile).append(";").append(_k).append(";");
+		for (int level = 0; level < _levels.size(); level++) {
+			if (level > 0)
+				sb.append("/");
+			final double[] values = _levels.get(level);
+			final int size = _sizes.get(level);
+			for (int i = 0; i < size; i++) {
+				if (i > 0)
+					sb.append(",");
+				sb.append(values[i]);
+			}
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String getEstimate() {
+		return String.valueOf(getQuantile(_quantile));
+	}
+
+	/*
+	 * the value of rank q * n among the n added values
+	 */
+	public double getQuantile(double q) {
+		int numValues = 0;
+		for (final int size : _sizes)
+			numValues += size;
+		if (numValues == 0)
+			return Double.NaN;
+
+		// the values with their weights, sorted by value
+		final double[] values = new double[numValues];
+		final long[] weights = new long[numValues];
+		int position = 0;
+		long totalWeight = 0;
+		for (int level = 0; level < _levels.size(); level++)
+			for (int i = 0; i < _sizes.get(level); i++) {
+				values[position] = _levels.get(level)[i];
+				weights[position++] = 1L << level;
+				totalWeight += 1L << level;
+			}
+		final Integer[] order = new Integer[numValues];
+		for (int i = 0; i < numValues; i++)
+			order[i] = i;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i, Integer j) {
+				return Double.compare(values[i], values[j]);
+			}
+		});
+
+		final double rank = q * totalWeight;
+		long cumulativeWeight = 0;
+		for (final int i : order) {
+			cumulativeWeight += weights[i];
+			if (cumulativeWeight >= rank)
+				return values[i];
+		}
+		return values[order[numValues - 1]];
+	}
+
+	@Override
+	public void merge(QuantileSketch other) {
+		if (other._k != _k)
+			throw new RuntimeException("Cannot merge quantile sketches of different sizes (" + _k
+					+ " and " + other._k + ")!");
+		for (int level = 0; level < other._levels.size(); level++) {
+			final double[] values = other._levels.get(level);
+			for (int i = 0; i < other._sizes.get(level); i++)
+				append(level, values[i]);
+		}
+		compact();
+	}
+
+}
@@ -0,0 +1,25 @@
+package plan_runner.utilities.statistics;
+
+import java.io.Serializable;
+
+/*
+ * A fixed-size summary of a stream of values, which can be merged with the summaries
+ *   of other parts of the stream (e.g. of different tasks), see AggregateSketchOperator.
+ */
+public interface Sketch<S extends Sketch<S>> extends Serializable {
+	public void add(Object value);
+
+	// an empty sketch with the same parameters
+	public S createEmpty();
+
+	// the inverse of encode, the parameters are from the encoded string
+	public S decode(String str);
+
+	// a single line without the column delimiter, for sending the sketch
+	public String encode();
+
+	// the approximate result, for printing
+	public String getEstimate();
+
+	public void merge(S other);
+}
@@ -0,0 +1,167 @@
+package plan_runner.utilities.statistics;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import plan_runner.utilities.MyUtilities;
+
+/*
+ * Statistics of a (part of a) table, collected in a single pass:
+ *   the number of rows, a HyperLogLog per column and a uniform row sample (reservoir sampling).
+ * Histograms and most-common-values of a column are derived from the sample
+ *   when the statistics are used (sql.estimators.StatisticsCatalog),
+ *   so that the partial statistics of different tasks can be merged.
+ * Column values are kept as strings, a collector does not need to know the schema.
+ */
+public class TableStatistics implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public static final int DEFAULT_SAMPLE_SIZE = 10000;
+	public static final String FILE_EXTENSION = ".stats";
+
+	private final String _tableName;
+	private final int _sampleSize;
+	private long _numRows = 0;
+	private HyperLogLog[] _distinct;
+	private final List<String[]> _sample = new ArrayList<String[]>();
+	private final Random _random = new Random(1);
+
+	public TableStatistics(String tableName, int sampleSize) {
+		_tableName = tableName;
+		_sampleSize = sampleSize;
+	}
+
+	/*
+	 * the name of a (partial) statistics file, as expected by
+	 * sql.estimators.StatisticsCatalog
+	 */
+	public static String getFileName(String tableName, String source, int taskIndex) {
+		return tableName + "." + source + "." + taskIndex + FILE_EXTENSION;
+	}
+
+	public static TableStatistics read(File file) {
+		ObjectInputStream ois = null;
+		try {
+			ois = new ObjectInputStream(new FileInputStream(file));
+			return (TableStatistics) ois.readObject();
+		} catch (final Exception ex) {
+			throw new RuntimeException("Cannot read statistics from " + file + ":\n"
+					+ MyUtilities.getStackTrace(ex));
+		} finally {
+			if (ois != null)
+				try {
+					ois.close();
+				} catch (final IOException ex) {
+				}
+		}
+	}
+
+	public void add(List<String> tuple) {
+		if (_distinct == null) {
+			_distinct = new HyperLogLog[tuple.size()];
+			for (int i = 0; i < _distinct.length; i++)
+				_distinct[i] = new HyperLogLog();
+		}
+		final int numColumns = Math.min(tuple.size(), _distinct.length);
+		for (int i = 0; i < numColumns; i++)
+			_distinct[i].add(tuple.get(i));
+
+		_numRows++;
+		if (_sample.size() < _sampleSize)
+			_sample.add(tuple.toArray(new String[tuple.size()]));
+		else {
+			final long position = (long) (_random.nextDouble() * _numRows);
+			if (position < _sampleSize)
+				_sample.set((int) position, tuple.toArray(new String[tuple.size()]));
+		}
+	}
+
+	public long getNumDistinctValues(int columnIndex) {
+		if (_distinct == null || columnIndex >= _distinct.length)
+			return 0;
+		return _distinct[columnIndex].estimate();
+	}
+
+	public long getNumRows() {
+		return _numRows;
+	}
+
+	// values of a column in the sample rows
+	public List<String> getSample(int columnIndex) {
+		final List<String> result = new ArrayList<String>(_sample.size());
+		for (final String[] row : _sample)
+			if (columnIndex < row.length)
+				result.add(row[columnIndex]);
+		return result;
+	}
+
+	public String getTableName() {
+		return _tableName;
+	}
+
+	/*
+	 * Merges statistics of two disjoint parts of the same table. The sample
+	 * stays uniform: each part contributes proportionally to its number of
+	 * rows.
+	 */
+	public void merge(TableStatistics other) {
+		if (other._numRows == 0)
+			return;
+		if (_distinct == null)
+			_distinct = other._distinct;
+		else
+			for (int i = 0; i < Math.min(_distinct.length, other._distinct.length); i++)
+				_distinct[i].merge(other._distinct[i]);
+
+		final long totalRows = _numRows + other._numRows;
+		final int totalSampleSize = Math.min(_sampleSize, _sample.size() + other._sample.size());
+		final int fromThis = (int) Math.min(_sample.size(),
+				Math.round(((double) totalSampleSize) * _numRows / totalRows));
+		final int fromOther = Math.min(other._sample.size(), totalSampleSize - fromThis);
+
+		final List<String[]> merged = new ArrayList<String[]>(totalSampleSize);
+		merged.addAll(subsample(_sample, fromThis));
+		merged.addAll(subsample(other._sample, fromOther));
+		_sample.clear();
+		_sample.addAll(merged);
+		_numRows = totalRows;
+	}
+
+	private List<String[]> subsample(List<String[]> rows, int size) {
+		final List<String[]> copy = new ArrayList<String[]>(rows);
+		// partial Fisher-Yates shuffle
+		for (int i = 0; i < size; i++) {
+			final int j = i + _random.nextInt(copy.size() - i);
+			final String[] tmp = copy.get(i);
+			copy.set(i, copy.get(j));
+			copy.set(j, tmp);
+		}
+		return copy.subList(0, size);
+	}
+
+	public void write(File file) {
+		ObjectOutputStream oos = null;
+		try {
+			oos = new ObjectOutputStream(new FileOutputStream(file));
+			oos.writeObject(this);
+		} catch (final IOException ex) {
+			throw new RuntimeException("Cannot write statistics to " + file + ":\n"
+					+ MyUtilities.getStackTrace(ex));
+		} finally {
+			if (oos != null)
+				try {
+					oos.close();
+				} catch (final IOException ex) {
+				}
+		}
+	}
+
+}
@@ -0,0 +1,70 @@
+package sql.estimators;
+
+import java.util.List;
+
+import plan_runner.conversion.StringConversion;
+import plan_runner.conversion.TypeConversion;
+
+/*
+ * Each of the buckets holds (approximately) the same number of values.
+ * Built from a sorted sample; within a bucket values are assumed to be uniformly distributed.
+ */
+public class EquiDepthHistogram {
+	public static final int DEFAULT_NUM_BUCKETS = 100;
+
+	private final TypeConversion _tc;
+	// numBuckets + 1 boundaries, the first is the minimum and the last is the
+	// maximum
+	private final Object[] _boundaries;
+
+	public EquiDepthHistogram(List<Comparable> sortedValues, int numBuckets, TypeConversion tc) {
+		if (sortedValues.isEmpty())
+			throw new RuntimeException("Cannot build a histogram out of no values!");
+		_tc = tc;
+		numBuckets = Math.min(numBuckets, sortedValues.size());
+		_boundaries = new Object[numBuckets + 1];
+		for (int i = 0; i <= numBuckets; i++) {
+			final int position = (int) (((long) i) * (sortedValues.size() - 1) / numBuckets);
+			_boundaries[i] = sortedValues.get(position);
+		}
+	}
+
+	/*
+	 * the estimated fraction of values strictly less than value
+	 */
+	public double getFractionLessThan(Comparable value) {
+		final int numBuckets = _boundaries.length - 1;
+		// the first boundary which is not less than value
+		int low = 0, high = _boundaries.length;
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (((Comparable) _boundaries[middle]).compareTo(value) < 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		if (low == 0)
+			return 0;
+		if (low > numBuckets)
+			return 1;
+
+		// value is in the bucket (_boundaries[low - 1], _boundaries[low]]
+		final int bucket = low - 1;
+		double withinBucket = 0.5;
+		if (!(_tc instanceof StringConversion)) {
+			final double width = _tc.getDistance(_boundaries[low], _boundaries[bucket]);
+			if (width > 0)
+				withinBucket = _tc.getDistance(value, _boundaries[bucket]) / width;
+		}
+		return (bucket + withinBucket) / numBuckets;
+	}
+
+	public Object getMax() {
+		return _boundaries[_boundaries.length - 1];
+	}
+
+	public Object getMin() {
+		return _boundaries[0];
+	}
+
+}
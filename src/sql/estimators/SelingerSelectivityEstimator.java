@@ -4,11 +4,13 @@ import java.util.List;
 
 import net.sf.jsqlparser.expression.Expression;
 import net.sf.jsqlparser.expression.Parenthesis;
+import net.sf.jsqlparser.expression.StringValue;
 import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
 import net.sf.jsqlparser.expression.operators.conditional.OrExpression;
 import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
 import net.sf.jsqlparser.expression.operators.relational.GreaterThan;
 import net.sf.jsqlparser.expression.operators.relational.GreaterThanEquals;
+import net.sf.jsqlparser.expression.operators.relational.LikeExpression;
 import net.sf.jsqlparser.expression.operators.relational.MinorThan;
 import net.sf.jsqlparser.expression.operators.relational.MinorThanEquals;
 import net.sf.jsqlparser.expression.operators.relational.NotEqualsTo;
@@ -74,6 +76,16 @@ public class SelingerSelectivityEstimator implements SelectivityEstimator {
 		final Column column = columns.get(0);
 		final String fullSchemaColumnName = _tan.getFullSchemaColumnName(column);
 
+		if (_schema.hasStatistics(fullSchemaColumnName)) {
+			Object conditionConstant = findConditionConstant(equals.getRightExpression());
+			if (conditionConstant == null)
+				conditionConstant = findConditionConstant(equals.getLeftExpression());
+			if (conditionConstant != null)
+				// most-common values are taken into account
+				return _schema.getEqualsSelectivity(fullSchemaColumnName, toColumnType(
+						conditionConstant, _schema.getType(fullSchemaColumnName)));
+		}
+
 		final long distinctValues = _schema.getNumDistinctValues(fullSchemaColumnName);
 		return 1.0 / distinctValues;
 	}
@@ -103,7 +115,9 @@ public class SelingerSelectivityEstimator implements SelectivityEstimator {
 		else if (expr instanceof Parenthesis) {
 			final Parenthesis pnths = (Parenthesis) expr;
 			return estimate(pnths.getExpression());
-		} else
+		} else if (expr instanceof LikeExpression && isEstimableLike((LikeExpression) expr))
+			return estimate((LikeExpression) expr);
+		else
 			return HardCodedSelectivities.estimate(_queryName, expr);
 	}
 
@@ -127,6 +141,17 @@ public class SelingerSelectivityEstimator implements SelectivityEstimator {
 		return 1 - estimate(minorThan);
 	}
 
+	/*
+	 * R.A LIKE 'pattern', only with collected statistics
+	 */
+	public double estimate(LikeExpression like) {
+		final Column column = (Column) like.getLeftExpression();
+		final String fullSchemaColumnName = _tan.getFullSchemaColumnName(column);
+		final String pattern = ((StringValue) like.getRightExpression()).getValue();
+		final double selectivity = _schema.getLikeSelectivity(fullSchemaColumnName, pattern);
+		return like.isNot() ? 1 - selectivity : selectivity;
+	}
+
 	public double estimate(List<Expression> exprs) {
 		// this is treated as a list of AndExpressions
 		if (exprs.size() == 1)
@@ -144,6 +169,9 @@ public class SelingerSelectivityEstimator implements SelectivityEstimator {
 		final Column column = columns.get(0);
 		final TypeConversion tc = _schema.getType(ParserUtil.getFullSchemaColumnName(column, _tan));
 
+		if (_schema.hasStatistics(_tan.getFullSchemaColumnName(column)))
+			return estimateFromStatistics(mt, column, tc);
+
 		// TODO: assume uniform distribution
 		final String fullSchemaColumnName = _tan.getFullSchemaColumnName(column);
 		Object minValue = _schema.getRange(fullSchemaColumnName).getMin();
@@ -218,6 +246,48 @@ public class SelingerSelectivityEstimator implements SelectivityEstimator {
 		return estimate(or.getLeftExpression()) + estimate(or.getRightExpression());
 	}
 
+	/*
+	 * an equi-depth histogram is used instead of assuming uniform distribution
+	 * between MIN and MAX
+	 */
+	private double estimateFromStatistics(MinorThan mt, Column column, TypeConversion tc) {
+		final String fullSchemaColumnName = _tan.getFullSchemaColumnName(column);
+		final Object rightConstant = findConditionConstant(mt.getRightExpression());
+		if (rightConstant != null) {
+			// R.A < 4
+			final Comparable constant = (Comparable) toColumnType(rightConstant, tc);
+			return _schema.getFractionLessThan(fullSchemaColumnName, constant);
+		}
+		final Object leftConstant = findConditionConstant(mt.getLeftExpression());
+		if (leftConstant != null) {
+			// 4 < R.A
+			final Comparable constant = (Comparable) toColumnType(leftConstant, tc);
+			return Math.max(1 - _schema.getFractionLessThan(fullSchemaColumnName, constant)
+					- _schema.getEqualsSelectivity(fullSchemaColumnName, constant), 0);
+		}
+		// no constants on both sides; columns within a single table are
+		// compared
+		return HardCodedSelectivities.estimate(_queryName, mt);
+	}
+
+	private boolean isEstimableLike(LikeExpression like) {
+		if (!(like.getLeftExpression() instanceof Column)
+				|| !(like.getRightExpression() instanceof StringValue))
+			return false;
+		final Column column = (Column) like.getLeftExpression();
+		return _schema.hasStatistics(_tan.getFullSchemaColumnName(column));
+	}
+
+	// a constant has to be of the same type as the column, so that they can be
+	// compared
+	private Object toColumnType(Object constant, TypeConversion tc) {
+		if (tc instanceof DoubleConversion && constant instanceof Long)
+			return longToDouble((Long) constant);
+		if (tc instanceof LongConversion && constant instanceof Double)
+			return doubleToLong((Double) constant);
+		return constant;
+	}
+
 	/*
 	 * WHERE R.A < 4, or WHERE 4 < R.A, This method returns 4.
 	 */
@@ -0,0 +1,220 @@
+package sql.estimators;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+import plan_runner.conversion.TypeConversion;
+import plan_runner.utilities.statistics.TableStatistics;
+
+/*
+ * Collected statistics of the tables, used instead of the hand-written
+ *   DISTINCT/MIN/MAX annotations of a schema file.
+ * Loaded from DIP_STATISTICS_DIR, which contains files <TABLE>.<SOURCE>.<TASK_INDEX>.stats
+ *   written by DataSourceComponents (DIP_COLLECT_STATISTICS mode, SOURCE is the component name)
+ *   or by the offline scan (sql.main.CollectStatistics, SOURCE is OFFLINE).
+ * Partial statistics of the same SOURCE are merged; if a table is read by multiple sources,
+ *   the one which saw the most rows is taken.
+ * For each column, an equi-depth histogram and a most-common-value list are built out of the sample.
+ */
+public class StatisticsCatalog {
+	private static Logger LOG = Logger.getLogger(StatisticsCatalog.class);
+
+	private static final int MAX_MCVS = 100;
+
+	private static class ColumnSummary {
+		private final long _numDistinct;
+		private final EquiDepthHistogram _histogram; // null if no sample
+		// value -> frequency, only values which appear multiple times in the
+		// sample
+		private final Map<Object, Double> _mcvs = new HashMap<Object, Double>();
+		private double _mcvsFrequency = 0;
+		private final List<String> _rawSample;
+
+		private ColumnSummary(TableStatistics table, int columnIndex, TypeConversion tc) {
+			_rawSample = table.getSample(columnIndex);
+
+			final List<Comparable> values = new ArrayList<Comparable>(_rawSample.size());
+			for (final String rawValue : _rawSample)
+				try {
+					values.add((Comparable) tc.fromString(rawValue));
+				} catch (final RuntimeException ex) {
+					// e.g. an empty string in a numeric column
+				}
+			Collections.sort(values);
+			_histogram = values.isEmpty() ? null : new EquiDepthHistogram(values,
+					EquiDepthHistogram.DEFAULT_NUM_BUCKETS, tc);
+
+			// the sample is sorted, so equal values are consecutive
+			final List<Object> mcvValues = new ArrayList<Object>();
+			final List<Integer> mcvCounts = new ArrayList<Integer>();
+			for (int i = 0; i < values.size();) {
+				int j = i + 1;
+				while (j < values.size() && values.get(j).compareTo(values.get(i)) == 0)
+					j++;
+				if (j - i > 1) {
+					mcvValues.add(values.get(i));
+					mcvCounts.add(j - i);
+				}
+				i = j;
+			}
+			final List<Integer> sortedCounts = new ArrayList<Integer>(mcvCounts);
+			Collections.sort(sortedCounts, Collections.reverseOrder());
+			final int minCount = sortedCounts.isEmpty() ? 0 : sortedCounts.get(Math.min(
+					MAX_MCVS, sortedCounts.size()) - 1);
+			for (int i = 0; i < mcvValues.size() && _mcvs.size() < MAX_MCVS; i++)
+				if (mcvCounts.get(i) >= minCount) {
+					final double frequency = ((double) mcvCounts.get(i)) / values.size();
+					_mcvs.put(mcvValues.get(i), frequency);
+					_mcvsFrequency += frequency;
+				}
+
+			// the number of distinct values cannot be smaller than what we saw
+			_numDistinct = Math.max(Math.min(table.getNumDistinctValues(columnIndex),
+					table.getNumRows()), 1);
+		}
+	}
+
+	private final String _dirPath;
+	private final Map<String, TableStatistics> _tables = new HashMap<String, TableStatistics>();
+	private final Map<String, ColumnSummary> _columns = new HashMap<String, ColumnSummary>();
+
+	public StatisticsCatalog(String dirPath) {
+		_dirPath = dirPath;
+		final File[] files = new File(dirPath).listFiles();
+		if (files == null)
+			throw new RuntimeException("Statistics directory " + dirPath + " does not exist!");
+
+		// table -> source -> merged statistics
+		final Map<String, Map<String, TableStatistics>> collected = new HashMap<String, Map<String, TableStatistics>>();
+		for (final File file : files) {
+			final String fileName = file.getName();
+			if (!fileName.endsWith(TableStatistics.FILE_EXTENSION))
+				continue;
+			final String[] parts = fileName.split("\\.");
+			if (parts.length < 4)
+				continue;
+			final String tableName = parts[0];
+			final String source = parts[1];
+
+			Map<String, TableStatistics> sources = collected.get(tableName);
+			if (sources == null) {
+				sources = new HashMap<String, TableStatistics>();
+				collected.put(tableName, sources);
+			}
+			final TableStatistics partial = TableStatistics.read(file);
+			final TableStatistics merged = sources.get(source);
+			if (merged == null)
+				sources.put(source, partial);
+			else
+				merged.merge(partial);
+		}
+
+		for (final Map.Entry<String, Map<String, TableStatistics>> entry : collected.entrySet()) {
+			TableStatistics best = null;
+			for (final TableStatistics candidate : entry.getValue().values())
+				if (best == null || candidate.getNumRows() > best.getNumRows())
+					best = candidate;
+			_tables.put(entry.getKey(), best);
+			LOG.info("Statistics for table " + entry.getKey() + " are loaded: "
+					+ best.getNumRows() + " rows.");
+		}
+	}
+
+	private static String likeToRegex(String likePattern) {
+		final StringBuilder sb = new StringBuilder();
+		for (final char c : likePattern.toCharArray())
+			if (c == '%')
+				sb.append(".*");
+			else if (c == '_')
+				sb.append('.');
+			else
+				sb.append(Pattern.quote(String.valueOf(c)));
+		return sb.toString();
+	}
+
+	public boolean containsColumn(String tableSchemaName, int columnIndex, TypeConversion tc) {
+		return containsTable(tableSchemaName)
+				&& getColumnSummary(tableSchemaName, columnIndex, tc)._histogram != null;
+	}
+
+	public boolean containsTable(String tableSchemaName) {
+		return _tables.containsKey(tableSchemaName);
+	}
+
+	private ColumnSummary getColumnSummary(String tableSchemaName, int columnIndex,
+			TypeConversion tc) {
+		final String key = tableSchemaName + "." + columnIndex;
+		ColumnSummary summary = _columns.get(key);
+		if (summary == null) {
+			final TableStatistics table = _tables.get(tableSchemaName);
+			if (table == null)
+				throw new RuntimeException("No statistics for table " + tableSchemaName + " in "
+						+ _dirPath + " !");
+			summary = new ColumnSummary(table, columnIndex, tc);
+			_columns.put(key, summary);
+		}
+		return summary;
+	}
+
+	/*
+	 * most-common values have their own frequency, the rest of the values
+	 * are assumed to be equally frequent
+	 */
+	public double getEqualsSelectivity(String tableSchemaName, int columnIndex,
+			TypeConversion tc, Object value) {
+		final ColumnSummary summary = getColumnSummary(tableSchemaName, columnIndex, tc);
+		final Double frequency = summary._mcvs.get(value);
+		if (frequency != null)
+			return frequency;
+		final long numOtherValues = Math.max(summary._numDistinct - summary._mcvs.size(), 1);
+		return Math.max(1 - summary._mcvsFrequency, 0) / numOtherValues;
+	}
+
+	public double getFractionLessThan(String tableSchemaName, int columnIndex,
+			TypeConversion tc, Comparable value) {
+		return getColumnSummary(tableSchemaName, columnIndex, tc)._histogram
+				.getFractionLessThan(value);
+	}
+
+	/*
+	 * the fraction of the sample matching the pattern
+	 */
+	public double getLikeSelectivity(String tableSchemaName, int columnIndex, TypeConversion tc,
+			String likePattern) {
+		final List<String> sample = getColumnSummary(tableSchemaName, columnIndex, tc)._rawSample;
+		if (sample.isEmpty())
+			return 1;
+		final Pattern regex = Pattern.compile(likeToRegex(likePattern), Pattern.DOTALL);
+		int numMatches = 0;
+		for (final String value : sample)
+			if (regex.matcher(value).matches())
+				numMatches++;
+		// a pattern which does not match anything in the sample is still
+		// assumed to match something
+		return Math.max(numMatches, 1) / (double) sample.size();
+	}
+
+	public Object getMax(String tableSchemaName, int columnIndex, TypeConversion tc) {
+		return getColumnSummary(tableSchemaName, columnIndex, tc)._histogram.getMax();
+	}
+
+	public Object getMin(String tableSchemaName, int columnIndex, TypeConversion tc) {
+		return getColumnSummary(tableSchemaName, columnIndex, tc)._histogram.getMin();
+	}
+
+	public long getNumDistinctValues(String tableSchemaName, int columnIndex, TypeConversion tc) {
+		return getColumnSummary(tableSchemaName, columnIndex, tc)._numDistinct;
+	}
+
+	public long getTableSize(String tableSchemaName) {
+		return _tables.get(tableSchemaName).getNumRows();
+	}
+
+}
@@ -0,0 +1,79 @@
+package sql.main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import plan_runner.utilities.MyUtilities;
+import plan_runner.utilities.SystemParameters;
+import plan_runner.utilities.statistics.TableStatistics;
+import sql.util.ParserUtil;
+import sql.util.TableAliasName;
+
+/*
+ * Offline scan: collects statistics of all the tables from the query of a parser config file,
+ *   and writes them to DIP_STATISTICS_DIR.
+ * The same config file, run through ParserMain, then uses the statistics.
+ * Alternatively, statistics can be collected while running a query (DIP_COLLECT_STATISTICS).
+ */
+public class CollectStatistics {
+	private static Logger LOG = Logger.getLogger(CollectStatistics.class);
+
+	public static final String SOURCE = "OFFLINE";
+
+	public static void main(String[] args) {
+		final String parserConfPath = args[0];
+		final Map map = new ParserMain().createConfig(parserConfPath);
+		new CollectStatistics().collect(map);
+	}
+
+	public void collect(Map map) {
+		final String dataPath = SystemParameters.getString(map, "DIP_DATA_PATH");
+		final String extension = SystemParameters.getString(map, "DIP_EXTENSION");
+		final File dir = new File(SystemParameters.getString(map, "DIP_STATISTICS_DIR"));
+		dir.mkdirs();
+		int sampleSize = TableStatistics.DEFAULT_SAMPLE_SIZE;
+		if (SystemParameters.isExisting(map, "DIP_STATISTICS_SAMPLE_SIZE"))
+			sampleSize = SystemParameters.getInt(map, "DIP_STATISTICS_SAMPLE_SIZE");
+
+		final TableAliasName tan = ParserUtil.parseQuery(map).getTan();
+		// a table might appear multiple times in a query (e.g. N1 and N2)
+		final Set<String> tableSchemaNames = new HashSet<String>();
+		for (final String tableCompName : tan.getComponentNames())
+			tableSchemaNames.add(tan.getSchemaName(tableCompName));
+
+		for (final String tableSchemaName : tableSchemaNames) {
+			final String path = dataPath + tableSchemaName.toLowerCase() + extension;
+			final TableStatistics statistics = new TableStatistics(tableSchemaName, sampleSize);
+			BufferedReader reader = null;
+			try {
+				reader = new BufferedReader(new FileReader(path));
+				String line;
+				while ((line = reader.readLine()) != null)
+					statistics.add(MyUtilities.fileLineToTuple(line, map));
+			} catch (final IOException ex) {
+				throw new RuntimeException("Cannot read table " + path + ":\n"
+						+ MyUtilities.getStackTrace(ex));
+			} finally {
+				if (reader != null)
+					try {
+						reader.close();
+					} catch (final IOException ex) {
+					}
+			}
+
+			final File file = new File(dir, TableStatistics.getFileName(tableSchemaName, SOURCE,
+					0));
+			statistics.write(file);
+			LOG.info("Statistics of table " + tableSchemaName + " (" + statistics.getNumRows()
+					+ " rows) are written to " + file);
+		}
+	}
+
+}
@@ -10,12 +10,14 @@ import plan_runner.utilities.SystemParameters;
 import sql.optimizers.Optimizer;
 import sql.optimizers.index.IndexRuleOptimizer;
 import sql.optimizers.index.IndexSimpleOptimizer;
+import sql.optimizers.name.NameCostDPOptimizer;
 import sql.optimizers.name.NameCostOptimizer;
 import sql.optimizers.name.NameManualOptimizer;
 import sql.optimizers.name.NameManualParOptimizer;
 import sql.optimizers.name.NameRuleOptimizer;
 import sql.optimizers.name.manual_batching.ManualBatchingOptimizer;
 import sql.util.ParserUtil;
+import sql.util.PlanCache;
 
 public class ParserMain {
 	private static Logger LOG = Logger.getLogger(ParserMain.class);
@@ -26,7 +28,13 @@ public class ParserMain {
 
 		Map map = pm.createConfig(parserConfPath);
 		// map has to filled before plan is created
-		final QueryPlan plan = pm.generatePlan(map);
+		final PlanCache cache = PlanCache.create(map);
+		QueryPlan plan = cache == null ? null : cache.load(map);
+		if (plan == null) {
+			plan = pm.generatePlan(map);
+			if (cache != null)
+				cache.store(plan, map);
+		}
 		// we have to set ackers after we know how many workers are there(which
 		// is done in generatePlan)
 		map = pm.putAckers(plan, map);
@@ -71,6 +79,8 @@ public class ParserMain {
 			return new NameRuleOptimizer(map);
 		else if ("NAME_COST_LEFTY".equalsIgnoreCase(optStr))
 			return new NameCostOptimizer(map);
+		else if ("NAME_COST_DP_LEFTY".equalsIgnoreCase(optStr))
+			return new NameCostDPOptimizer(map);
 		else if ("NAME_MANUAL_BATCHING".equalsIgnoreCase(optStr))
 			return new ManualBatchingOptimizer(map);
 		throw new RuntimeException("Unknown " + optStr + " optimizer!");
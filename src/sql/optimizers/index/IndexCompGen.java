@@ -10,6 +10,7 @@ import plan_runner.components.DataSourceComponent;
 import plan_runner.components.EquiJoinComponent;
 import plan_runner.expressions.ValueExpression;
 import plan_runner.query_plans.QueryPlan;
+import plan_runner.utilities.MyUtilities;
 import plan_runner.utilities.SystemParameters;
 import sql.optimizers.CompGen;
 import sql.schema.Schema;
@@ -24,6 +25,7 @@ import sql.visitors.squall.IndexJoinHashVisitor;
 public class IndexCompGen implements CompGen {
 	private final SQLVisitor _pq;
 
+	private final Map _map;
 	private final Schema _schema;
 	private final String _dataPath;
 	private final String _extension;
@@ -37,10 +39,23 @@ public class IndexCompGen implements CompGen {
 	public IndexCompGen(Schema schema, SQLVisitor pq, Map map) {
 		_schema = schema;
 		_pq = pq;
+		_map = map;
 		_dataPath = SystemParameters.getString(map, "DIP_DATA_PATH");
 		_extension = SystemParameters.getString(map, "DIP_EXTENSION");
 	}
 
+	/*
+	 * For broadcast join: there are no selectivity estimates here, so the size
+	 * of the whole relation is considered. Only DataSourceComponents are
+	 * broadcasted.
+	 */
+	private long getRelationSize(Component component) {
+		if (!(component instanceof DataSourceComponent))
+			return Long.MAX_VALUE;
+		final String tableSchemaName = _pq.getTan().getSchemaName(component.getName());
+		return _schema.getTableSize(tableSchemaName);
+	}
+
 	// set hash for this component, knowing its position in the query plan.
 	// Conditions are related only to parents of join,
 	// but we have to filter who belongs to my branch in IndexJoinHashVisitor.
@@ -101,6 +116,10 @@ public class IndexCompGen implements CompGen {
 		addHash(left, joinCondition);
 		addHash(right, joinCondition);
 
+		if (MyUtilities.isBroadcastJoinMode(_map))
+			ParserUtil.addBroadcastJoin(joinComponent, getRelationSize(left),
+					getRelationSize(right), _map);
+
 		_subPlans.remove(left);
 		_subPlans.remove(right);
 		_subPlans.add(joinComponent);
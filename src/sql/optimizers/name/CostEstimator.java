@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.Map;
 
 import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
 import net.sf.jsqlparser.schema.Column;
 import plan_runner.components.Component;
 import plan_runner.components.DataSourceComponent;
@@ -73,6 +74,11 @@ public class CostEstimator {
 	private double computeJoinSelectivity(EquiJoinComponent joinComponent,
 			List<Expression> joinCondition, long leftCardinality, long rightCardinality) {
 
+		final double statsSelectivity = computeJoinSelectivityFromStatistics(joinCondition,
+				leftCardinality, rightCardinality);
+		if (statsSelectivity >= 0)
+			return statsSelectivity;
+
 		final Component[] parents = joinComponent.getParents();
 		double selectivity = 1;
 
@@ -102,6 +108,41 @@ public class CostEstimator {
 		return selectivity;
 	}
 
+	/*
+	 * With collected statistics (DIP_STATISTICS_DIR) for all the join columns,
+	 * |R join S| = |R| * |S| / max(distinct(R.A), distinct(S.B)) for each
+	 * R.A = S.B, which also works for bushy plans. Returns -1 if statistics are
+	 * missing.
+	 */
+	private double computeJoinSelectivityFromStatistics(List<Expression> joinCondition,
+			long leftCardinality, long rightCardinality) {
+		double outputCardinality = ((double) leftCardinality) * rightCardinality;
+		for (final Expression expr : joinCondition) {
+			if (!(expr instanceof EqualsTo))
+				return -1;
+			final EqualsTo equals = (EqualsTo) expr;
+			if (!(equals.getLeftExpression() instanceof Column)
+					|| !(equals.getRightExpression() instanceof Column))
+				return -1;
+			final String leftColumn = _pq.getTan().getFullSchemaColumnName(
+					(Column) equals.getLeftExpression());
+			final String rightColumn = _pq.getTan().getFullSchemaColumnName(
+					(Column) equals.getRightExpression());
+			if (!_schema.hasStatistics(leftColumn) || !_schema.hasStatistics(rightColumn))
+				return -1;
+
+			// after selections, there cannot be more distinct values than
+			// tuples
+			final long leftDistinct = Math.min(_schema.getNumDistinctValues(leftColumn),
+					leftCardinality);
+			final long rightDistinct = Math.min(_schema.getNumDistinctValues(rightColumn),
+					rightCardinality);
+			outputCardinality /= Math.max(Math.max(leftDistinct, rightDistinct), 1);
+		}
+		final long inputCardinality = leftCardinality + rightCardinality;
+		return inputCardinality == 0 ? 0 : outputCardinality / inputCardinality;
+	}
+
 	/*
 	 * @allJoinCompNames - all the component names from the join condition
 	 * joinCompNames - all the component names from the join condition
@@ -11,12 +11,12 @@ import plan_runner.components.Component;
 import plan_runner.components.DataSourceComponent;
 import plan_runner.components.EquiJoinComponent;
 import plan_runner.components.OperatorComponent;
+import plan_runner.operators.TopKOperator;
 import plan_runner.utilities.SystemParameters;
 import sql.schema.Schema;
 import sql.util.ImproperParallelismException;
 import sql.util.ParserUtil;
 import sql.util.TableAliasName;
-import sql.visitors.jsql.SQLVisitor;
 
 public class CostParallelismAssigner {
 	/*
@@ -58,6 +58,8 @@ public class CostParallelismAssigner {
 
 	// cardinalities
 	protected Map<String, Integer> _sourcePars;
+	// the tables of the query, parsed only once
+	private List<Table> _tableList;
 
 	public CostParallelismAssigner(Schema schema, TableAliasName tan, Map map) {
 		_schema = schema;
@@ -71,8 +73,9 @@ public class CostParallelismAssigner {
 	 * idempotent, no side effects, can be called multiple times.
 	 */
 	public Map<String, Integer> computeSourcePar(int totalSourcePar) {
-		final SQLVisitor pq = ParserUtil.parseQuery(_map);
-		final List<Table> tableList = pq.getTableList();
+		if (_tableList == null)
+			_tableList = ParserUtil.parseQuery(_map).getTableList();
+		final List<Table> tableList = _tableList;
 		if (totalSourcePar < tableList.size())
 			throw new RuntimeException(
 					"There is not enought nodes such that all the sources get at least parallelism = 1");
@@ -333,6 +336,10 @@ public class CostParallelismAssigner {
 			}
 		}
 
+		// a single task merges the top groups of all the tasks of a top-k
+		if (parent.getChainOperator().getLastOperator() instanceof TopKOperator)
+			parallelism = 1;
+
 		// cannot be less than 1
 		if (parallelism < 1)
 			parallelism = 1;
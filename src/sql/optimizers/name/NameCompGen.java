@@ -5,11 +5,18 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.log4j.Logger;
+
 import net.sf.jsqlparser.expression.BinaryExpression;
 import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.Function;
 import net.sf.jsqlparser.expression.Parenthesis;
 import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
 import net.sf.jsqlparser.expression.operators.conditional.OrExpression;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.statement.select.Limit;
+import net.sf.jsqlparser.statement.select.OrderByElement;
+import net.sf.jsqlparser.statement.select.SelectExpressionItem;
 import net.sf.jsqlparser.statement.select.SelectItem;
 import plan_runner.components.Component;
 import plan_runner.components.DataSourceComponent;
@@ -19,8 +26,10 @@ import plan_runner.expressions.ValueExpression;
 import plan_runner.operators.AggregateOperator;
 import plan_runner.operators.ProjectOperator;
 import plan_runner.operators.SelectOperator;
+import plan_runner.operators.TopKOperator;
 import plan_runner.query_plans.QueryPlan;
 import plan_runner.utilities.DeepCopy;
+import plan_runner.utilities.MyUtilities;
 import plan_runner.utilities.SystemParameters;
 import sql.optimizers.CompGen;
 import sql.schema.Schema;
@@ -38,6 +47,12 @@ import sql.visitors.squall.NameWhereVisitor;
  *   since we don't want multiple CG sharing the same copy of DataSourceComponent.
  */
 public class NameCompGen implements CompGen {
+	private static Logger LOG = Logger.getLogger(NameCompGen.class);
+
+	// for semi-join reduction
+	private static final double DEFAULT_SEMIJOIN_MAX_SELECTIVITY = 0.5;
+	private static final long DEFAULT_SEMIJOIN_MAX_TUPLES = 1000000;
+
 	private final SQLVisitor _pq;
 
 	private final Map _map;
@@ -134,11 +149,49 @@ public class NameCompGen implements CompGen {
 	 * HASH
 	 *************************************************************************************/
 
+	/*
+	 * Semi-join reduction (DIP_SEMIJOIN mode) between two DataSourceComponents:
+	 * if the smaller one keeps only a fraction of its relation (a selective
+	 * WHERE clause), most of the tuples of the larger one find no partner, so
+	 * they are dropped already at the larger source. The smaller one is
+	 * scanned by each task of the larger one, so it has to be small enough.
+	 */
+	private void addSemiJoinReduction(Component left, Component right) {
+		if (!(left instanceof DataSourceComponent) || !(right instanceof DataSourceComponent))
+			return;
+		final CostParams leftParams = _compCost.get(left.getName());
+		final CostParams rightParams = _compCost.get(right.getName());
+
+		DataSourceComponent small, large;
+		CostParams smallParams;
+		if (leftParams.getCardinality() <= rightParams.getCardinality()) {
+			small = (DataSourceComponent) left;
+			large = (DataSourceComponent) right;
+			smallParams = leftParams;
+		} else {
+			small = (DataSourceComponent) right;
+			large = (DataSourceComponent) left;
+			smallParams = rightParams;
+		}
+
+		double maxSelectivity = DEFAULT_SEMIJOIN_MAX_SELECTIVITY;
+		if (SystemParameters.isExisting(_map, "DIP_SEMIJOIN_MAX_SELECTIVITY"))
+			maxSelectivity = SystemParameters.getDouble(_map, "DIP_SEMIJOIN_MAX_SELECTIVITY");
+		long maxTuples = DEFAULT_SEMIJOIN_MAX_TUPLES;
+		if (SystemParameters.isExisting(_map, "DIP_SEMIJOIN_MAX_TUPLES"))
+			maxTuples = SystemParameters.getInt(_map, "DIP_SEMIJOIN_MAX_TUPLES");
+
+		if (smallParams.getSelectivity() <= maxSelectivity
+				&& smallParams.getCardinality() <= maxTuples)
+			large.setSemiJoinSource(small);
+	}
+
 	// set hash for this component, knowing its position in the query plan.
 	// Conditions are related only to parents of join,
 	// but we have to filter who belongs to my branch in NameJoinHashVisitor.
 	// We don't want to hash on something which will be used to join with same
 	// later component in the hierarchy.
+
 	private void addJoinHash(Component component, List<Expression> joinCondition) {
 		final TupleSchema tupleSchema = _compCost.get(component.getName()).getSchema();
 		final NameJoinHashVisitor joinOn = new NameJoinHashVisitor(tupleSchema, component);
@@ -230,13 +283,15 @@ public class NameCompGen implements CompGen {
 			 * as the only operation To be akin to Sum and Count aggregates, we
 			 * opted for a)
 			 */
-			if (firstAgg.getDistinct() == null)
+			if (firstAgg.getDistinct() == null && !isTopK(selectVisitor))
 				lastComponent.addOperator(firstAgg);
 			else
 				// in general groupByVEs is not a ColumnReference (it can be an
 				// addition, for example).
 				// ProjectOperator is not obliged to create schema which fully
 				// fits in what FinalAggregation wants
+				// For a top-k, each group has to be in a single task, so that
+				// the top groups of a task are the top groups overall
 				addHash(lastComponent, selectVisitor.getGroupByVEs());
 		} else
 			throw new RuntimeException("For now only one aggregate function supported!");
@@ -425,6 +480,14 @@ public class NameCompGen implements CompGen {
 		addJoinHash(left, joinCondition);
 		addJoinHash(right, joinCondition);
 
+		boolean isBroadcast = false;
+		if (_costEst != null && MyUtilities.isBroadcastJoinMode(_map))
+			isBroadcast = ParserUtil.addBroadcastJoin(joinComponent,
+					_compCost.get(left.getName()).getCardinality(),
+					_compCost.get(right.getName()).getCardinality(), _map);
+		if (_costEst != null && MyUtilities.isSemiJoinMode(_map) && !isBroadcast)
+			addSemiJoinReduction(left, right);
+
 		createCompCost(joinComponent);
 		if (_costEst != null)
 			_costEst.setInputParams(joinComponent, joinCondition);
@@ -472,8 +535,9 @@ public class NameCompGen implements CompGen {
 		final AggregateOperator firstAgg = aggOps.get(0);
 
 		// Setting new level of components is only necessary for distinct in
-		// aggregates
-		if (firstAgg.getDistinct() != null) {
+		// aggregates and for top-k (ORDER BY aggregate LIMIT k)
+		final boolean isTopK = isTopK(selectVisitor);
+		if (firstAgg.getDistinct() != null || isTopK) {
 			opComp = createAndAddOperatorComp(lastComponent);
 
 			createCompCost(opComp);
@@ -483,15 +547,46 @@ public class NameCompGen implements CompGen {
 			// we can use the same firstAgg, because we no tupleSchema change
 			// occurred after LAST_COMPONENT:FinalAgg and NEW_COMPONENT:FinalAgg
 			// Namely, NEW_COMPONENT has only FinalAgg operator
-			opComp.addOperator(firstAgg);
+			final TopKOperator topK = isTopK ? createTopK(firstAgg) : null;
+			if (isTopK)
+				opComp.addOperator(topK);
+			else
+				opComp.addOperator(firstAgg);
 
 			if (_costEst != null)
 				_costEst.setOutputParamsAndPar(opComp);
+
+			if (isTopK)
+				opComp = createMergeTopK(opComp, topK);
 		}
 
 		return opComp;
 	}
 
+	/*
+	 * the top groups of all the tasks of topKComp are merged in a single task
+	 * (see CostParallelismAssigner)
+	 */
+	private OperatorComponent createMergeTopK(OperatorComponent topKComp, TopKOperator topK) {
+		final OperatorComponent mergeComp = createAndAddOperatorComp(topKComp);
+
+		createCompCost(mergeComp);
+		if (_costEst != null)
+			_costEst.setInputParams(mergeComp);
+
+		mergeComp.addOperator(topK.createMerging(_map));
+
+		if (_costEst != null)
+			_costEst.setOutputParamsAndPar(mergeComp);
+		return mergeComp;
+	}
+
+	private TopKOperator createTopK(AggregateOperator agg) {
+		final int k = (int) _pq.getLimit().getRowCount();
+		final boolean isDescending = !_pq.getOrderByElements().get(0).isAsc();
+		return new TopKOperator(agg, k, isDescending, _map);
+	}
+
 	public Map<String, CostParams> getCompCost() {
 		return _compCost;
 	}
@@ -512,6 +607,48 @@ public class NameCompGen implements CompGen {
 		return selectVisitor;
 	}
 
+	/*
+	 * if the expression is an aggregate function, or an alias of it from the
+	 * SELECT clause
+	 */
+	private boolean isAggregate(Expression expr) {
+		if (expr instanceof Function)
+			return true;
+		if (expr instanceof Column)
+			for (final SelectItem item : _pq.getSelectItems())
+				if (item instanceof SelectExpressionItem) {
+					final SelectExpressionItem exprItem = (SelectExpressionItem) item;
+					if (exprItem.getExpression() instanceof Function
+							&& ((Column) expr).getColumnName().equalsIgnoreCase(
+									exprItem.getAlias()))
+						return true;
+				}
+		return false;
+	}
+
+	/*
+	 * ORDER BY aggregate LIMIT k, for a single aggregate with GroupBy (without
+	 * GroupBy, there is a single output tuple anyway). The other ORDER BY
+	 * elements are not considered, groups with the same aggregate value are
+	 * ordered by their GroupBy columns (see TopKOperator).
+	 */
+	private boolean isTopK(NameSelectItemsVisitor selectVisitor) {
+		final Limit limit = _pq.getLimit();
+		if (limit == null || limit.isLimitAll() || limit.isRowCountJdbcParameter())
+			return false;
+		if (selectVisitor.getAggOps().size() != 1 || selectVisitor.getGroupByVEs() == null
+				|| selectVisitor.getGroupByVEs().isEmpty())
+			return false;
+		final List<OrderByElement> orderBy = _pq.getOrderByElements();
+		if (orderBy == null || orderBy.isEmpty() || !isAggregate(orderBy.get(0).getExpression())) {
+			LOG.info("LIMIT is supported only together with ORDER BY the aggregate, it is ignored!");
+			return false;
+		}
+		if (limit.getOffset() != 0 || limit.isOffsetJdbcParameter())
+			throw new RuntimeException("OFFSET is not supported!");
+		return true;
+	}
+
 	/*
 	 * get a list of WhereExpressions (connected by OR) belonging to source For
 	 * example (N1.NATION = FRANCE AND N2.NATION = GERMANY) OR (N1.NATION =
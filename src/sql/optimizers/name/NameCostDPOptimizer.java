@@ -0,0 +1,261 @@
+package sql.optimizers.name;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import plan_runner.components.Component;
+import plan_runner.components.EquiJoinComponent;
+import plan_runner.conversion.DateConversion;
+import plan_runner.conversion.DoubleConversion;
+import plan_runner.conversion.IntegerConversion;
+import plan_runner.conversion.LongConversion;
+import plan_runner.conversion.TypeConversion;
+import plan_runner.query_plans.QueryPlan;
+import plan_runner.utilities.SystemParameters;
+import sql.optimizers.Optimizer;
+import sql.schema.ColumnNameType;
+import sql.util.ImproperParallelismException;
+import sql.util.ParserUtil;
+import sql.util.TupleSchema;
+import sql.visitors.jsql.SQLVisitor;
+
+/*
+ * For lefty plans, Selinger-style dynamic programming over the sets of joined relations.
+ * Parallelism is obtained from cost formula (as in NameCostOptimizer),
+ *   and plans are compared by their estimated cost:
+ *     the bytes sent over the network (output of all the components except the last one)
+ *     + DIP_DP_STATE_WEIGHT * the largest per-task join state (bytes stored in a join task).
+ * For each set of relations, only DIP_DP_KEEP (default 1) cheapest subplans are extended.
+ * Subplans with a per-task state above DIP_DP_MAX_TASK_STATE_MB are thrown away.
+ * Above DIP_DP_MAX_TABLES (default 8) relations, the greedy NameCostOptimizer is used.
+ */
+public class NameCostDPOptimizer implements Optimizer {
+	private static Logger LOG = Logger.getLogger(NameCostDPOptimizer.class);
+
+	public static final int DEFAULT_MAX_TABLES = 8;
+	public static final int DEFAULT_KEEP = 1;
+	public static final double DEFAULT_STATE_WEIGHT = 1.0;
+
+	// in bytes, rough estimates of the serialized size of a column
+	private static final int NUMERIC_COLUMN_SIZE = 8;
+	private static final int DATE_COLUMN_SIZE = 10;
+	private static final int STRING_COLUMN_SIZE = 20;
+
+	private final SQLVisitor _pq;
+	private final Map _map;
+
+	private final int _maxTables;
+	private final int _keep;
+	private final double _stateWeight;
+	private final double _maxTaskStateBytes; // <= 0 means no limit
+
+	private final Map<NameCompGen, Double> _costs = new HashMap<NameCompGen, Double>();
+
+	public NameCostDPOptimizer(Map map) {
+		_map = map;
+		_pq = ParserUtil.parseQuery(map);
+
+		_maxTables = SystemParameters.isExisting(map, "DIP_DP_MAX_TABLES") ? SystemParameters
+				.getInt(map, "DIP_DP_MAX_TABLES") : DEFAULT_MAX_TABLES;
+		_keep = SystemParameters.isExisting(map, "DIP_DP_KEEP") ? SystemParameters.getInt(map,
+				"DIP_DP_KEEP") : DEFAULT_KEEP;
+		_stateWeight = SystemParameters.isExisting(map, "DIP_DP_STATE_WEIGHT") ? SystemParameters
+				.getDouble(map, "DIP_DP_STATE_WEIGHT") : DEFAULT_STATE_WEIGHT;
+		_maxTaskStateBytes = SystemParameters.isExisting(map, "DIP_DP_MAX_TASK_STATE_MB") ? SystemParameters
+				.getDouble(map, "DIP_DP_MAX_TASK_STATE_MB") * 1024 * 1024
+				: 0;
+	}
+
+	private void addEquiJoin(Component firstComp, Component secondComp, NameCompGen ncg,
+			List<NameCompGen> listNcg) {
+		try {
+			ncg.generateEquiJoin(firstComp, secondComp);
+		} catch (final ImproperParallelismException exc) {
+			LOG.info("This subplan will never generated the optimal query plan, so it's thrown:\n"
+					+ exc.getMessage());
+			return;
+		}
+
+		final double[] estimates = estimate(ncg);
+		if (_maxTaskStateBytes > 0 && estimates[1] > _maxTaskStateBytes) {
+			LOG.info("Subplan " + ParserUtil.getSourceNameList(ncg.getQueryPlan()
+					.getLastComponent()) + " is thrown: estimated per-task state of "
+					+ (long) estimates[1] + " bytes exceeds DIP_DP_MAX_TASK_STATE_MB.");
+			return;
+		}
+		_costs.put(ncg, getCost(estimates));
+		listNcg.add(ncg);
+	}
+
+	private NameCompGen chooseBest(List<NameCompGen> ncgList) {
+		if (ncgList.isEmpty()) {
+			final String errorMsg = "No query plans can be efficiently executed with specified parallelisms.\n"
+					+ "Try to reduce DIP_TOTAL_SRC_PAR or increase DIP_DP_MAX_TASK_STATE_MB in config file.";
+			LOG.info(errorMsg);
+			System.exit(1);
+		}
+		final NameCompGen best = Collections.min(ncgList, _costComparator);
+		LOG.info("Chosen join order "
+				+ ParserUtil.getSourceNameList(best.getQueryPlan().getLastComponent())
+				+ " with estimated cost " + _costs.get(best));
+		return best;
+	}
+
+	private final Comparator<NameCompGen> _costComparator = new Comparator<NameCompGen>() {
+		@Override
+		public int compare(NameCompGen ncg1, NameCompGen ncg2) {
+			final int result = _costs.get(ncg1).compareTo(_costs.get(ncg2));
+			if (result != 0)
+				return result;
+			// the same cost, less nodes is better
+			return ParserUtil.getTotalParallelism(ncg1) - ParserUtil.getTotalParallelism(ncg2);
+		}
+	};
+
+	/*
+	 * the estimated cost of a (sub)plan, by which the plans are compared
+	 */
+	public double getCost(NameCompGen ncg) {
+		return getCost(estimate(ncg));
+	}
+
+	private double getCost(double[] estimates) {
+		return estimates[0] + _stateWeight * estimates[1];
+	}
+
+	/*
+	 * returns {network bytes, maximum per-task join state in bytes}
+	 */
+	private double[] estimate(NameCompGen ncg) {
+		final QueryPlan plan = ncg.getQueryPlan();
+		final Component last = plan.getLastComponent();
+		double networkBytes = 0;
+		double maxTaskState = 0;
+		for (final Component comp : plan.getPlan()) {
+			if (comp != last)
+				networkBytes += getOutputBytes(ncg, comp);
+			if (comp instanceof EquiJoinComponent) {
+				double stateBytes = 0;
+				for (final Component parent : comp.getParents())
+					stateBytes += getOutputBytes(ncg, parent);
+				final int parallelism = ncg.getCostParameters(comp.getName()).getParallelism();
+				maxTaskState = Math.max(maxTaskState, stateBytes / Math.max(parallelism, 1));
+			}
+		}
+		return new double[] { networkBytes, maxTaskState };
+	}
+
+	@Override
+	public QueryPlan generate() {
+		final int totalSourcePar = SystemParameters.getInt(_map, "DIP_TOTAL_SRC_PAR");
+		final NameCompGenFactory factory = new NameCompGenFactory(_map, _pq.getTan(),
+				totalSourcePar);
+		final List<String> sourceNames = factory.getParAssigner().getSortedSourceNames();
+		final int numSources = sourceNames.size();
+		if (numSources > _maxTables) {
+			LOG.info("There are " + numSources + " relations (DIP_DP_MAX_TABLES = " + _maxTables
+					+ "), using the greedy optimizer.");
+			return new NameCostOptimizer(_map).generate();
+		}
+		NameCompGen optimal = null;
+
+		// **************creating single-relation plans********************
+		if (numSources == 1) {
+			optimal = factory.create();
+			optimal.generateDataSource(sourceNames.get(0));
+		}
+
+		// **************creating 2-way joins********************
+		// a symmetric join, so each pair of relations is considered only once
+		List<NameCompGen> ncgListFirst = new ArrayList<NameCompGen>();
+		for (int i = 0; i < numSources; i++) {
+			final String firstCompName = sourceNames.get(i);
+			final List<String> joinedWith = _pq.getJte().getJoinedWithSingleDir(firstCompName);
+			if (joinedWith != null)
+				for (final String secondCompName : joinedWith) {
+					final NameCompGen ncg = factory.create();
+					final Component first = ncg.generateDataSource(firstCompName);
+					final Component second = ncg.generateDataSource(secondCompName);
+					addEquiJoin(first, second, ncg, ncgListFirst);
+				}
+		}
+		if (numSources == 2)
+			optimal = chooseBest(ncgListFirst);
+
+		// **************creating multi-way joins********************
+		for (int level = 2; level < numSources; level++) {
+			ncgListFirst = prune(ncgListFirst);
+			final List<NameCompGen> ncgListSecond = new ArrayList<NameCompGen>();
+			for (final NameCompGen ncg : ncgListFirst) {
+				final List<String> ancestors = ParserUtil.getSourceNameList(ncg.getQueryPlan()
+						.getLastComponent());
+				for (final String compName : _pq.getJte().getJoinedWith(ancestors)) {
+					// the subplan is kept intact, it might be extended with
+					// other relations
+					final NameCompGen newNcg = ncg.deepCopy();
+					final Component firstComp = newNcg.getQueryPlan().getLastComponent();
+					final Component secondComp = newNcg.generateDataSource(compName);
+					addEquiJoin(firstComp, secondComp, newNcg, ncgListSecond);
+				}
+			}
+
+			if (level == numSources - 1)
+				optimal = chooseBest(ncgListSecond);
+			ncgListFirst = ncgListSecond;
+		}
+
+		ParserUtil.parallelismToMap(optimal, _map);
+
+		return optimal.getQueryPlan();
+	}
+
+	private double getOutputBytes(NameCompGen ncg, Component comp) {
+		final CostParams params = ncg.getCostParameters(comp.getName());
+		return ((double) params.getCardinality()) * getTupleSize(params.getSchema());
+	}
+
+	private int getTupleSize(TupleSchema schema) {
+		int size = 0;
+		for (final ColumnNameType cnt : schema.getSchema()) {
+			final TypeConversion tc = cnt.getType();
+			if (tc instanceof IntegerConversion || tc instanceof LongConversion
+					|| tc instanceof DoubleConversion)
+				size += NUMERIC_COLUMN_SIZE;
+			else if (tc instanceof DateConversion)
+				size += DATE_COLUMN_SIZE;
+			else
+				size += STRING_COLUMN_SIZE;
+		}
+		return size;
+	}
+
+	/*
+	 * for each set of relations, keeps the _keep cheapest subplans
+	 */
+	private List<NameCompGen> prune(List<NameCompGen> ncgList) {
+		final Map<Set<String>, List<NameCompGen>> collection = new HashMap<Set<String>, List<NameCompGen>>();
+		for (final NameCompGen ncg : ncgList) {
+			final Set<String> ancestors = ParserUtil.getSourceNameSet(ncg.getQueryPlan()
+					.getLastComponent());
+			ParserUtil.addToCollection(ancestors, ncg, collection);
+		}
+
+		final List<NameCompGen> pruned = new ArrayList<NameCompGen>();
+		for (final List<NameCompGen> valueList : collection.values()) {
+			Collections.sort(valueList, _costComparator);
+			pruned.addAll(valueList.subList(0, Math.min(_keep, valueList.size())));
+		}
+
+		// costs of the thrown subplans are not needed anymore
+		_costs.keySet().retainAll(pruned);
+		return pruned;
+	}
+
+}
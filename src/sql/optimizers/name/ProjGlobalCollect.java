@@ -79,7 +79,12 @@ public class ProjGlobalCollect {
 							// true
 							// otherwise, it's the same as COUNT(*)
 							collectInternalExprs(fun);
-					} else
+					} else if (fun.getName().equalsIgnoreCase("QUANTILE"))
+						// the second parameter is a constant
+						_exprList.add((Expression) fun.getParameters().getExpressions().get(0));
+					else if (fun.getName().equalsIgnoreCase("FREQUENT"))
+						collectInternalExprs(fun);
+					else
 						// add whole function, might be processed earlier than
 						// at the final agg
 						_exprList.add(selectExpr);
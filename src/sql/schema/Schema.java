@@ -6,6 +6,7 @@ import java.util.Map;
 import plan_runner.conversion.TypeConversion;
 import plan_runner.utilities.MyUtilities;
 import plan_runner.utilities.SystemParameters;
+import sql.estimators.StatisticsCatalog;
 import sql.schema.parser.ParseException;
 import sql.schema.parser.SchemaParser;
 import sql.schema.parser.SchemaParser.ColumnInfo;
@@ -36,9 +37,14 @@ public class Schema {
 
 	private Map<String, TableInfo> _schemaInfo;
 
+	// collected statistics, which take precedence over the schema annotations
+	private StatisticsCatalog _catalog;
+
 	public Schema(Map map) {
 		this(SystemParameters.getString(map, "DIP_SCHEMA_PATH"), SystemParameters.getDouble(map,
 				"DIP_DB_SIZE"));
+		if (SystemParameters.isExisting(map, "DIP_STATISTICS_DIR"))
+			_catalog = new StatisticsCatalog(SystemParameters.getString(map, "DIP_STATISTICS_DIR"));
 	}
 
 	public Schema(String path, double scallingFactor) {
@@ -76,7 +82,37 @@ public class Schema {
 		return column;
 	}
 
+	private int getColumnIndex(String fullSchemaColumnName) {
+		final String[] parts = fullSchemaColumnName.split("\\.");
+		final List<ColumnNameType> tableSchema = getTableSchema(parts[0]);
+		for (int i = 0; i < tableSchema.size(); i++)
+			if (tableSchema.get(i).getName().equals(parts[1]))
+				return i;
+		throw new RuntimeException("Column " + fullSchemaColumnName + " does not exist !");
+	}
+
+	/*
+	 * The following methods can be invoked only if hasStatistics returns true
+	 */
+	public double getEqualsSelectivity(String fullSchemaColumnName, Object value) {
+		return _catalog.getEqualsSelectivity(getTableName(fullSchemaColumnName),
+				getColumnIndex(fullSchemaColumnName), getType(fullSchemaColumnName), value);
+	}
+
+	public double getFractionLessThan(String fullSchemaColumnName, Comparable value) {
+		return _catalog.getFractionLessThan(getTableName(fullSchemaColumnName),
+				getColumnIndex(fullSchemaColumnName), getType(fullSchemaColumnName), value);
+	}
+
+	public double getLikeSelectivity(String fullSchemaColumnName, String likePattern) {
+		return _catalog.getLikeSelectivity(getTableName(fullSchemaColumnName),
+				getColumnIndex(fullSchemaColumnName), getType(fullSchemaColumnName), likePattern);
+	}
+
 	public long getNumDistinctValues(String fullSchemaColumnName) {
+		if (hasStatistics(fullSchemaColumnName))
+			return _catalog.getNumDistinctValues(getTableName(fullSchemaColumnName),
+					getColumnIndex(fullSchemaColumnName), getType(fullSchemaColumnName));
 		final ColumnInfo column = getColumnInfo(fullSchemaColumnName);
 		final long distinct = column.getDistinctValues();
 		if (distinct == SchemaParser.INVALID)
@@ -94,6 +130,14 @@ public class Schema {
 		// TODO : if we don't have it, we can assume integers from [0,
 		// distinctValues]
 
+		if (hasStatistics(fullSchemaColumnName)) {
+			final String tableSchemaName = getTableName(fullSchemaColumnName);
+			final int columnIndex = getColumnIndex(fullSchemaColumnName);
+			final TypeConversion tc = getType(fullSchemaColumnName);
+			return new Range(_catalog.getMin(tableSchemaName, columnIndex, tc), _catalog.getMax(
+					tableSchemaName, columnIndex, tc));
+		}
+
 		final ColumnInfo column = getColumnInfo(fullSchemaColumnName);
 		final Object min = column.getMinValue();
 		final Object max = column.getMaxValue();
@@ -115,6 +159,10 @@ public class Schema {
 		return (double) secondSize / firstSize;
 	}
 
+	private String getTableName(String fullSchemaColumnName) {
+		return fullSchemaColumnName.split("\\.")[0];
+	}
+
 	// helper methods, interface to Parser classes
 	private TableInfo getTableInfo(String tableSchemaName) {
 		final TableInfo table = _schemaInfo.get(tableSchemaName);
@@ -132,6 +180,8 @@ public class Schema {
 	 * CARDINALITY METHODS ******
 	 */
 	public long getTableSize(String tableSchemaName) {
+		if (_catalog != null && _catalog.containsTable(tableSchemaName))
+			return _catalog.getTableSize(tableSchemaName);
 		final TableInfo table = getTableInfo(tableSchemaName);
 		final long tableSize = table.getTableSize();
 		if (tableSize == SchemaParser.INVALID)
@@ -155,4 +205,14 @@ public class Schema {
 		return column.getType();
 	}
 
+	/*
+	 * true if there are collected statistics (DIP_STATISTICS_DIR) for the
+	 * column
+	 */
+	public boolean hasStatistics(String fullSchemaColumnName) {
+		return _catalog != null
+				&& _catalog.containsColumn(getTableName(fullSchemaColumnName),
+						getColumnIndex(fullSchemaColumnName), getType(fullSchemaColumnName));
+	}
+
 }
\ No newline at end of file
@@ -27,6 +27,7 @@ import org.apache.log4j.Logger;
 
 import plan_runner.components.Component;
 import plan_runner.components.DataSourceComponent;
+import plan_runner.components.EquiJoinComponent;
 import plan_runner.components.ThetaJoinStaticComponent;
 import plan_runner.conversion.TypeConversion;
 import plan_runner.expressions.ColumnReference;
@@ -51,6 +52,8 @@ public class ParserUtil {
 
 	public static final int NOT_FOUND = -1;
 	private final static String SQL_EXTENSION = ".sql";
+	// for broadcast join
+	public static final long DEFAULT_BROADCAST_MAX_TUPLES = 10000;
 
 	private static HashMap<String, Integer> _uniqueNumbers = new HashMap<String, Integer>();
 
@@ -89,6 +92,35 @@ public class ParserUtil {
 
 	}
 
+	/*
+	 * Broadcast join (DIP_BROADCAST_JOIN mode): if one of the parents is a
+	 * DataSourceComponent with at most DIP_BROADCAST_MAX_TUPLES tuples, it is
+	 * replicated to all the tasks of the join, rather than the both parents
+	 * being partitioned by the join key. The sizes are given in the order of
+	 * the parents; the sizes of the other components are ignored. Returns
+	 * whether a parent is broadcasted.
+	 */
+	public static boolean addBroadcastJoin(EquiJoinComponent joinComponent, long firstSize,
+			long secondSize, Map map) {
+		long maxTuples = DEFAULT_BROADCAST_MAX_TUPLES;
+		if (SystemParameters.isExisting(map, "DIP_BROADCAST_MAX_TUPLES"))
+			maxTuples = SystemParameters.getInt(map, "DIP_BROADCAST_MAX_TUPLES");
+
+		final Component[] parents = joinComponent.getParents();
+		final long[] sizes = { firstSize, secondSize };
+		DataSourceComponent small = null;
+		long smallSize = maxTuples;
+		for (int i = 0; i < parents.length; i++)
+			if (parents[i] instanceof DataSourceComponent && sizes[i] <= smallSize) {
+				small = (DataSourceComponent) parents[i];
+				smallSize = sizes[i];
+			}
+		if (small == null)
+			return false;
+		joinComponent.setBroadcastParent(small);
+		return true;
+	}
+
 	/*
 	 * This has to same semantic as addAndExprToComps the only difference is
 	 * that collocatedExprs is a different type we need to keep all the ancestor
@@ -632,8 +664,17 @@ public class ParserUtil {
 		final Map<String, Integer> compNamePars = new HashMap<String, Integer>();
 		for (final Component comp : cg.getQueryPlan().getPlan()) {
 			final String compName = comp.getName();
-			final int parallelism = cg.getCostParameters(compName).getParallelism();
-			compNamePars.put(compName, parallelism);
+			final CostParams costParams = cg.getCostParameters(compName);
+			compNamePars.put(compName, costParams.getParallelism());
+
+			// estimates are not used at runtime,
+			// but they are reported next to the actual numbers (DIP_PROFILE_OPERATORS mode)
+			if (costParams.getCardinality() > 0) {
+				SystemParameters.putInMap(map, compName + "_EST_CARDINALITY",
+						costParams.getCardinality());
+				SystemParameters.putInMap(map, compName + "_EST_SELECTIVITY",
+						costParams.getSelectivity());
+			}
 		}
 		return parallelismToMap(compNamePars, map);
 	}
@@ -691,7 +732,7 @@ public class ParserUtil {
 		}
 	}
 
-	private static String readSQL(Map map) {
+	static String readSQL(Map map) {
 		final String queryName = SystemParameters.getString(map, "DIP_QUERY_NAME");
 		final String sqlPath = SystemParameters.getString(map, "DIP_SQL_ROOT") + queryName
 				+ SQL_EXTENSION;
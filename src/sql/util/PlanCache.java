@@ -0,0 +1,186 @@
+package sql.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.log4j.Logger;
+
+import plan_runner.query_plans.QueryPlan;
+import plan_runner.utilities.MyUtilities;
+import plan_runner.utilities.SystemParameters;
+
+/*
+ * Optimized query plans are kept in DIP_PLAN_CACHE_DIR, so that a query which was already run
+ *   skips the parsing of the SQL and of the schema, and the optimizers.
+ * The key is a hash of the SQL (with its whitespace normalized), of the schema file, of the
+ *   files in DIP_STATISTICS_DIR and of the configuration before optimization; the entry is
+ *   the (gzipped) serialized QueryPlan, with the entries the optimizer added to the
+ *   configuration (e.g. the parallelism).
+ * Any change of the query, of the statistics (in the schema or collected), or of a parameter
+ *   is a miss.
+ */
+public class PlanCache {
+	private static Logger LOG = Logger.getLogger(PlanCache.class);
+
+	// changes whenever the format of an entry does
+	private static final int VERSION = 1;
+	private static final String EXTENSION = ".plan";
+
+	/*
+	 * null if DIP_PLAN_CACHE_DIR is not set
+	 */
+	public static PlanCache create(Map map) {
+		if (!SystemParameters.isExisting(map, "DIP_PLAN_CACHE_DIR"))
+			return null;
+		return new PlanCache(map);
+	}
+
+	private static String hash(Map map) {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update(String.valueOf(VERSION).getBytes("UTF-8"));
+			final String sql = ParserUtil.readSQL(map).replaceAll("\\s+", " ").trim();
+			digest.update(sql.getBytes("UTF-8"));
+			digest.update(readBytes(new File(SystemParameters.getString(map, "DIP_SCHEMA_PATH"))));
+			if (SystemParameters.isExisting(map, "DIP_STATISTICS_DIR"))
+				// recollected statistics may change the plan
+				for (final File file : listFiles(new File(SystemParameters.getString(map,
+						"DIP_STATISTICS_DIR")))) {
+					if (!file.isFile())
+						continue;
+					digest.update(file.getName().getBytes("UTF-8"));
+					digest.update(readBytes(file));
+				}
+			for (final Object entry : new TreeMap<String, Object>(toStringKeys(map)).entrySet())
+				digest.update(entry.toString().getBytes("UTF-8"));
+
+			final StringBuilder sb = new StringBuilder();
+			for (final byte b : digest.digest())
+				sb.append(String.format("%02x", b));
+			return sb.toString();
+		} catch (final NoSuchAlgorithmException e) {
+			throw new RuntimeException(MyUtilities.getStackTrace(e));
+		} catch (final IOException e) {
+			throw new RuntimeException("Cannot read the query, the schema or the statistics: "
+					+ MyUtilities.getStackTrace(e));
+		}
+	}
+
+	// sorted by name, as the order of File.listFiles is not specified
+	private static File[] listFiles(File dir) {
+		final File[] files = dir.listFiles();
+		if (files == null)
+			return new File[0];
+		Arrays.sort(files);
+		return files;
+	}
+
+	private static byte[] readBytes(File file) throws IOException {
+		final byte[] result = new byte[(int) file.length()];
+		final FileInputStream fis = new FileInputStream(file);
+		try {
+			int offset = 0;
+			while (offset < result.length) {
+				final int read = fis.read(result, offset, result.length - offset);
+				if (read < 0)
+					break;
+				offset += read;
+			}
+		} finally {
+			fis.close();
+		}
+		return result;
+	}
+
+	private static Map<String, Object> toStringKeys(Map map) {
+		final Map<String, Object> result = new HashMap<String, Object>();
+		for (final Object key : map.keySet())
+			result.put(key.toString(), map.get(key));
+		return result;
+	}
+
+	private final File _file;
+	// the configuration before optimization
+	private final Map<String, Object> _original;
+
+	private PlanCache(Map map) {
+		final File dir = new File(SystemParameters.getString(map, "DIP_PLAN_CACHE_DIR"));
+		dir.mkdirs();
+		_file = new File(dir, hash(map) + EXTENSION);
+		_original = toStringKeys(map);
+	}
+
+	/*
+	 * on a hit, the plan; the entries the optimizer added are put in map
+	 */
+	public QueryPlan load(Map map) {
+		if (!_file.exists())
+			return null;
+		ObjectInputStream ois = null;
+		try {
+			ois = new ObjectInputStream(new GZIPInputStream(new BufferedInputStream(
+					new FileInputStream(_file))));
+			final QueryPlan plan = (QueryPlan) ois.readObject();
+			final Map<String, Object> added = (Map<String, Object>) ois.readObject();
+			map.putAll(added);
+			LOG.info("Plan cache hit: " + _file.getName());
+			return plan;
+		} catch (final Exception e) {
+			// e.g. the classes changed, so it is recomputed and overwritten
+			LOG.info("Cannot read the cached plan " + _file + ": " + MyUtilities.getStackTrace(e));
+			return null;
+		} finally {
+			try {
+				if (ois != null)
+					ois.close();
+			} catch (final IOException e) {
+			}
+		}
+	}
+
+	/*
+	 * map is the configuration after optimization; the entry is written to a
+	 * temporary file and renamed, so that a concurrent run never reads half of
+	 * it
+	 */
+	public void store(QueryPlan plan, Map map) {
+		final Map<String, Object> added = new HashMap<String, Object>();
+		for (final Map.Entry<String, Object> entry : toStringKeys(map).entrySet())
+			if (!entry.getValue().equals(_original.get(entry.getKey())))
+				added.put(entry.getKey(), entry.getValue());
+
+		final File tmpFile = new File(_file.getPath() + "." + System.nanoTime() + ".tmp");
+		try {
+			final ObjectOutputStream oos = new ObjectOutputStream(new GZIPOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmpFile))));
+			try {
+				oos.writeObject(plan);
+				oos.writeObject(added);
+			} finally {
+				oos.close();
+			}
+			if (!tmpFile.renameTo(_file))
+				throw new IOException("Cannot rename " + tmpFile + " to " + _file);
+			LOG.info("Plan cache stored: " + _file.getName());
+		} catch (final IOException e) {
+			// the run goes on without the cache
+			tmpFile.delete();
+			LOG.info("Cannot cache the plan in " + _file + ": " + MyUtilities.getStackTrace(e));
+		}
+	}
+
+}
@@ -51,6 +51,8 @@ import net.sf.jsqlparser.schema.Column;
 import net.sf.jsqlparser.schema.Table;
 import net.sf.jsqlparser.statement.select.FromItemVisitor;
 import net.sf.jsqlparser.statement.select.Join;
+import net.sf.jsqlparser.statement.select.Limit;
+import net.sf.jsqlparser.statement.select.OrderByElement;
 import net.sf.jsqlparser.statement.select.PlainSelect;
 import net.sf.jsqlparser.statement.select.Select;
 import net.sf.jsqlparser.statement.select.SelectItem;
@@ -73,6 +75,8 @@ public class SQLVisitor implements SelectVisitor, FromItemVisitor, ExpressionVis
 	private List<Join> _joinList;
 	private List<SelectItem> _selectItems;
 	private Expression _whereExpr;
+	private List<OrderByElement> _orderByElements;
+	private Limit _limit;
 
 	private final String _queryName;
 
@@ -100,6 +104,20 @@ public class SQLVisitor implements SelectVisitor, FromItemVisitor, ExpressionVis
 		return _jte;
 	}
 
+	/*
+	 * null if there is no LIMIT clause
+	 */
+	public Limit getLimit() {
+		return _limit;
+	}
+
+	/*
+	 * null if there is no ORDER BY clause
+	 */
+	public List<OrderByElement> getOrderByElements() {
+		return _orderByElements;
+	}
+
 	public List<SelectItem> getSelectItems() {
 		return _selectItems;
 	}
@@ -312,6 +330,10 @@ public class SQLVisitor implements SelectVisitor, FromItemVisitor, ExpressionVis
 		_whereExpr = plainSelect.getWhere();
 		if (_whereExpr != null)
 			_whereExpr.accept(this);
+
+		// after the subselects are visited, so that the outermost ones are kept
+		_orderByElements = plainSelect.getOrderByElements();
+		_limit = plainSelect.getLimit();
 	}
 
 	// CUSTOM METHODS
@@ -320,6 +342,8 @@ public class SQLVisitor implements SelectVisitor, FromItemVisitor, ExpressionVis
 		_joinList = new ArrayList<Join>();
 		_selectItems = new ArrayList<SelectItem>();
 		_whereExpr = null;
+		_orderByElements = null;
+		_limit = null;
 		select.getSelectBody().accept(this);
 	}
 
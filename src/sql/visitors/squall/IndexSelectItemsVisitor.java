@@ -67,9 +67,11 @@ import plan_runner.expressions.ValueExpression;
 import plan_runner.expressions.ValueSpecification;
 import plan_runner.operators.AggregateCountOperator;
 import plan_runner.operators.AggregateOperator;
+import plan_runner.operators.AggregateSketchOperator;
 import plan_runner.operators.AggregateSumOperator;
 import plan_runner.operators.DistinctOperator;
 import plan_runner.query_plans.QueryPlan;
+import plan_runner.utilities.MyUtilities;
 import sql.optimizers.index.IndexTranslator;
 import sql.schema.Schema;
 import sql.util.ParserUtil;
@@ -128,6 +130,12 @@ public class IndexSelectItemsVisitor implements SelectItemVisitor, ExpressionVis
 	 * veList used only in DISTINCT mode
 	 */
 	protected void createCount(List<ValueExpression> veList, boolean isDistinct) {
+		if (isDistinct && MyUtilities.isApproximateMode(_map)) {
+			// a sketch per group, rather than all the distinct values
+			_agg = AggregateSketchOperator.countDistinct(veList, _map);
+			return;
+		}
+
 		// COUNT(R.A) and COUNT(1) have the same semantics as COUNT(*), since we
 		// do not have NULLs in R.A
 		_agg = new AggregateCountOperator(_map);
@@ -139,6 +147,37 @@ public class IndexSelectItemsVisitor implements SelectItemVisitor, ExpressionVis
 		}
 	}
 
+	/*
+	 * FREQUENT(expr): the most frequent values of expr, DIP_APPROXIMATE mode
+	 * only
+	 */
+	protected void createFrequent(ValueExpression ve) {
+		if (!MyUtilities.isApproximateMode(_map))
+			throw new RuntimeException("FREQUENT requires DIP_APPROXIMATE mode!");
+		_agg = AggregateSketchOperator.frequent(ve, _map);
+	}
+
+	/*
+	 * QUANTILE(expr, q), e.g. q = 0.5 for the median, DIP_APPROXIMATE mode
+	 * only
+	 */
+	protected void createQuantile(ValueExpression ve, Function function) {
+		if (!MyUtilities.isApproximateMode(_map))
+			throw new RuntimeException("QUANTILE requires DIP_APPROXIMATE mode!");
+		final List<Expression> params = function.getParameters().getExpressions();
+		if (params.size() != 2)
+			throw new RuntimeException("QUANTILE function has exactly two parameters!");
+		final Expression quantile = params.get(1);
+		double q;
+		if (quantile instanceof DoubleValue)
+			q = ((DoubleValue) quantile).getValue();
+		else if (quantile instanceof LongValue)
+			q = ((LongValue) quantile).getValue();
+		else
+			throw new RuntimeException("The second parameter of QUANTILE has to be a constant!");
+		_agg = AggregateSketchOperator.quantile(ve, q, _map);
+	}
+
 	protected void createSum(ValueExpression ve, boolean isDistinct) {
 		_agg = new AggregateSumOperator(ve, _map);
 
@@ -336,6 +375,10 @@ public class IndexSelectItemsVisitor implements SelectItemVisitor, ExpressionVis
 			createSum(expr, function.isDistinct());
 		} else if (fnName.equalsIgnoreCase("COUNT"))
 			createCount(expressions, function.isDistinct());
+		else if (fnName.equalsIgnoreCase("QUANTILE"))
+			createQuantile(expressions.get(0), function);
+		else if (fnName.equalsIgnoreCase("FREQUENT"))
+			createFrequent(expressions.get(0));
 		else if (fnName.equalsIgnoreCase("EXTRACT_YEAR")) {
 			if (numParams != 1)
 				throw new RuntimeException("EXTRACT_YEAR function has exactly one parameter!");
@@ -158,6 +158,16 @@ public class NameSelectItemsVisitor extends IndexSelectItemsVisitor {
 					// finally, create CountAgg out of expressions (empty if
 					// nonDistinct)
 					createCount(expressions, function.isDistinct());
+			} else if (fnName.equalsIgnoreCase("QUANTILE")) {
+				// the second parameter is a constant
+				recognized = isRecognized((Expression) function.getParameters()
+						.getExpressions().get(0));
+				if (recognized)
+					createQuantile(popFromExprStack(), function);
+			} else if (fnName.equalsIgnoreCase("FREQUENT")) {
+				recognized = isRecognized(function.getParameters());
+				if (recognized)
+					createFrequent(popFromExprStack());
 			}
 		}
 		if (!recognized)
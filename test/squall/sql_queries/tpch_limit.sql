@@ -0,0 +1,9 @@
+# TPCH_LIMIT:ver1.0
+# LIMIT without ORDER BY the aggregate is ignored
+
+SELECT ORDERS.CUSTKEY, SUM(ORDERS.TOTALPRICE)
+FROM ORDERS
+WHERE ORDERS.ORDERDATE < {d '1995-03-15'}
+GROUP BY ORDERS.CUSTKEY
+ORDER BY ORDERS.CUSTKEY
+LIMIT 10
@@ -0,0 +1,9 @@
+# TPCH_TOPK:ver1.0
+# the customers with the largest total price of their orders (ORDER BY aggregate LIMIT k)
+
+SELECT ORDERS.CUSTKEY, SUM(ORDERS.TOTALPRICE)
+FROM ORDERS
+WHERE ORDERS.ORDERDATE < {d '1995-03-15'}
+GROUP BY ORDERS.CUSTKEY
+ORDER BY SUM(ORDERS.TOTALPRICE) DESC
+LIMIT 10
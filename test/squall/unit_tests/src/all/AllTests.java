@@ -1,20 +1,44 @@
 package all;
 
 
+import estimators.EquiDepthHistogramTest;
 import estimators.JSQLTypeConverterTest;
 import estimators.SelingerSelectivityEstimatorTest;
+import estimators.StatisticsCatalogTest;
 import optimizers.cost.CostOptimizerTest;
+import optimizers.cost.NameCostDPOptimizerTest;
 import optimizers.cost.CostParallelismAssignerTest;
 import optimizers.cost.ProjGlobalCollectTest;
 import optimizers.cost.ProjSchemaCreatorTest;
+import plan_runner.storage.CheckpointStoreTest;
+import plan_runner.storm_components.synchronization.EpochTrackerTest;
+import plan_runner.storm_components.synchronization.LatencyMarkerTest;
+import plan_runner.operators.WindowAggregateOperatorTest;
+import plan_runner.storage.FingerprintSetTest;
+import plan_runner.storage.KeyValueStoreTest;
+import plan_runner.storage.TupleStorageTest;
+import plan_runner.storage.WindowSegmentsTest;
+import plan_runner.thetajoin.indexes.IndexRemoveTest;
+import plan_runner.utilities.ConsistentHashRingTest;
+import plan_runner.utilities.LineParserTest;
+import plan_runner.utilities.ManualBatcherTest;
+import plan_runner.utilities.RandomBlockReaderTest;
+import plan_runner.utilities.SourceScheduleTest;
+import plan_runner.utilities.TopKHeapTest;
+import plan_runner.utilities.TpchGeneratorTest;
+import plan_runner.utilities.WindowSemanticsTest;
+import plan_runner.utilities.statistics.OnlineEstimatorTest;
+import plan_runner.utilities.statistics.SketchTest;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
+import sql.optimizers.name.TopKQueryTest;
 import sql.schema.parser.SchemaParserTest;
 import sql.util.ParserUtilTest;
+import sql.util.PlanCacheTest;
 import visitors.squall.NameSelectItemsVisitorTest;
 
 /**
@@ -29,8 +53,32 @@ import visitors.squall.NameSelectItemsVisitorTest;
     NameSelectItemsVisitorTest.class,
     CostParallelismAssignerTest.class,
     CostOptimizerTest.class,
+    NameCostDPOptimizerTest.class,
     ParserUtilTest.class,
-    SchemaParserTest.class
+    SchemaParserTest.class,
+    EquiDepthHistogramTest.class,
+    StatisticsCatalogTest.class,
+    SketchTest.class,
+    FingerprintSetTest.class,
+    LineParserTest.class,
+    ConsistentHashRingTest.class,
+    PlanCacheTest.class,
+    CheckpointStoreTest.class,
+    TopKHeapTest.class,
+    TopKQueryTest.class,
+    TpchGeneratorTest.class,
+    LatencyMarkerTest.class,
+    ManualBatcherTest.class,
+    EpochTrackerTest.class,
+    SourceScheduleTest.class,
+    OnlineEstimatorTest.class,
+    RandomBlockReaderTest.class,
+    WindowSemanticsTest.class,
+    WindowSegmentsTest.class,
+    WindowAggregateOperatorTest.class,
+    TupleStorageTest.class,
+    IndexRemoveTest.class,
+    KeyValueStoreTest.class
 })
 public class AllTests {
 
@@ -0,0 +1,81 @@
+package estimators;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.junit.*;
+import static org.junit.Assert.assertEquals;
+import plan_runner.conversion.LongConversion;
+import plan_runner.conversion.StringConversion;
+import sql.estimators.EquiDepthHistogram;
+
+public class EquiDepthHistogramTest {
+    private static Logger LOG = Logger.getLogger(EquiDepthHistogramTest.class);
+    private static final double DELTA = 1e-9;
+
+    // from, from + 1, ..., to
+    private static List<Comparable> range(long from, long to) {
+        List<Comparable> values = new ArrayList<Comparable>();
+        for (long i = from; i <= to; i++) {
+            values.add(i);
+        }
+        return values;
+    }
+
+    @Test
+    public void testUniform() {
+        LOG.info("test getFractionLessThan on uniform values:");
+        // 101 values, the boundaries are 0, 10, ..., 100
+        EquiDepthHistogram histogram = new EquiDepthHistogram(range(0, 100), 10, new LongConversion());
+        assertEquals(0L, histogram.getMin());
+        assertEquals(100L, histogram.getMax());
+        assertEquals(0, histogram.getFractionLessThan(-5L), DELTA);
+        assertEquals(0, histogram.getFractionLessThan(0L), DELTA);
+        assertEquals(0.25, histogram.getFractionLessThan(25L), DELTA);
+        assertEquals(0.5, histogram.getFractionLessThan(50L), DELTA);
+        assertEquals(1, histogram.getFractionLessThan(100L), DELTA);
+        assertEquals(1, histogram.getFractionLessThan(101L), DELTA);
+    }
+
+    @Test
+    public void testSkewed() {
+        LOG.info("test getFractionLessThan on skewed values:");
+        // 90 times 1, then 2, ..., 11: MIN and MAX alone would give 0.1
+        List<Comparable> values = new ArrayList<Comparable>();
+        for (int i = 0; i < 90; i++) {
+            values.add(1L);
+        }
+        values.addAll(range(2, 11));
+        EquiDepthHistogram histogram = new EquiDepthHistogram(values, 10, new LongConversion());
+        assertEquals(0.91, histogram.getFractionLessThan(2L), DELTA);
+    }
+
+    @Test
+    public void testStrings() {
+        LOG.info("test getFractionLessThan on strings:");
+        List<Comparable> values = new ArrayList<Comparable>();
+        for (char c = 'a'; c <= 'e'; c++) {
+            values.add(String.valueOf(c));
+        }
+        // the boundaries are a, b, ..., e; strings are in the middle of their bucket
+        EquiDepthHistogram histogram = new EquiDepthHistogram(values, 4, new StringConversion());
+        assertEquals(0, histogram.getFractionLessThan("a"), DELTA);
+        assertEquals(0.375, histogram.getFractionLessThan("bb"), DELTA);
+        assertEquals(1, histogram.getFractionLessThan("z"), DELTA);
+    }
+
+    @Test
+    public void testMoreBucketsThanValues() {
+        EquiDepthHistogram histogram = new EquiDepthHistogram(range(7, 7), 100, new LongConversion());
+        assertEquals(7L, histogram.getMin());
+        assertEquals(7L, histogram.getMax());
+        assertEquals(0, histogram.getFractionLessThan(7L), DELTA);
+        assertEquals(1, histogram.getFractionLessThan(8L), DELTA);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testEmpty() {
+        new EquiDepthHistogram(new ArrayList<Comparable>(), 10, new LongConversion());
+    }
+}
@@ -1,9 +1,17 @@
 package estimators;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import net.sf.jsqlparser.expression.DateValue;
+import net.sf.jsqlparser.expression.StringValue;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import net.sf.jsqlparser.expression.operators.relational.LikeExpression;
 import net.sf.jsqlparser.expression.operators.relational.MinorThan;
 import net.sf.jsqlparser.schema.Column;
 import net.sf.jsqlparser.schema.Table;
@@ -11,6 +19,8 @@ import net.sf.jsqlparser.schema.Table;
 import org.apache.log4j.Logger;
 import org.junit.*;
 import static org.junit.Assert.assertEquals;
+import plan_runner.utilities.MyUtilities;
+import plan_runner.utilities.statistics.TableStatistics;
 import sql.estimators.SelingerSelectivityEstimator;
 import sql.schema.Schema;
 import sql.util.TableAliasName;
@@ -23,6 +33,13 @@ public class SelingerSelectivityEstimatorTest {
 	private static Logger LOG = Logger.getLogger(SelingerSelectivityEstimatorTest.class);
     private static Column _columnOrderdate;
     private static SelingerSelectivityEstimator _selEstimator; 
+
+    // with the statistics collected from the orders of the 0.01G database
+    private static final String ORDERS_PATH = "../test/data/tpch/0.01G/orders.tbl";
+    private static File _statsDir;
+    private static List<List<String>> _orders;
+    private static Table _table;
+    private static SelingerSelectivityEstimator _statsEstimator;
     
     public SelingerSelectivityEstimatorTest() {
     }
@@ -44,10 +61,55 @@ public class SelingerSelectivityEstimatorTest {
         String path = "../test/squall/schemas/tpch.txt";
         double scallingFactor = 1;
         _selEstimator = new SelingerSelectivityEstimator("TEST", new Schema(path, scallingFactor), new TableAliasName(tableList, "SelingerTest"));
+
+        _table = table;
+        Map map = new HashMap();
+        map.put("DIP_READ_SPLIT_DELIMITER", "\\|");
+        _orders = new ArrayList<List<String>>();
+        TableStatistics stats = new TableStatistics("ORDERS", TableStatistics.DEFAULT_SAMPLE_SIZE);
+        BufferedReader reader = new BufferedReader(new FileReader(ORDERS_PATH));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            List<String> tuple = MyUtilities.fileLineToTuple(line, map);
+            _orders.add(tuple);
+            stats.add(tuple);
+        }
+        reader.close();
+        _statsDir = File.createTempFile("statistics", "");
+        _statsDir.delete();
+        _statsDir.mkdir();
+        stats.write(new File(_statsDir, TableStatistics.getFileName("ORDERS", "TEST", 0)));
+
+        map.put("DIP_SCHEMA_PATH", path);
+        map.put("DIP_DB_SIZE", "0.01");
+        map.put("DIP_STATISTICS_DIR", _statsDir.getPath());
+        _statsEstimator = new SelingerSelectivityEstimator("TEST", new Schema(map), new TableAliasName(tableList, "SelingerTest"));
     }
 
     @AfterClass
     public static void tearDownClass() throws Exception {
+        for (File file : _statsDir.listFiles()) {
+            file.delete();
+        }
+        _statsDir.delete();
+    }
+
+    private static Column getColumn(String name) {
+        Column column = new Column();
+        column.setTable(_table);
+        column.setColumnName(name);
+        return column;
+    }
+
+    // the fraction of the orders whose column at index starts with prefix
+    private static double getActual(int index, String prefix) {
+        int matches = 0;
+        for (List<String> tuple : _orders) {
+            if (tuple.get(index).startsWith(prefix)) {
+                matches++;
+            }
+        }
+        return ((double) matches) / _orders.size();
     }
     
     @Before
@@ -67,4 +129,30 @@ public class SelingerSelectivityEstimatorTest {
         mt.setRightExpression(new DateValue("d" + "1995-01-01" + "d"));
         assertEquals("0.45571725571725574", String.valueOf(_selEstimator.estimate(mt)));
     }
+
+    @Test
+    public void testEstimateFromStatistics() {
+        LOG.info("test estimate with the collected statistics:");
+        MinorThan mt = new MinorThan();
+        mt.setLeftExpression(getColumn("ORDERDATE"));
+        mt.setRightExpression(new DateValue("d" + "1995-01-01" + "d"));
+        int before = 0;
+        for (List<String> tuple : _orders) {
+            if (tuple.get(4).compareTo("1995-01-01") < 0) {
+                before++;
+            }
+        }
+        assertEquals(((double) before) / _orders.size(), _statsEstimator.estimate(mt), 0.02);
+
+        // ORDERSTATUS is one of the most-common values, which are not uniform
+        EqualsTo equals = new EqualsTo();
+        equals.setLeftExpression(getColumn("ORDERSTATUS"));
+        equals.setRightExpression(new StringValue("'P'"));
+        assertEquals(getActual(2, "P"), _statsEstimator.estimate(equals), 0.01);
+
+        LikeExpression like = new LikeExpression();
+        like.setLeftExpression(getColumn("ORDERPRIORITY"));
+        like.setRightExpression(new StringValue("'1-%'"));
+        assertEquals(getActual(5, "1-"), _statsEstimator.estimate(like), 0.01);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,108 @@
+package estimators;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+import org.junit.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import plan_runner.conversion.LongConversion;
+import plan_runner.conversion.StringConversion;
+import plan_runner.utilities.statistics.TableStatistics;
+import sql.estimators.StatisticsCatalog;
+
+public class StatisticsCatalogTest {
+    private static Logger LOG = Logger.getLogger(StatisticsCatalogTest.class);
+    private static final double DELTA = 1e-9;
+
+    private static File _dir;
+    private static StatisticsCatalog _catalog;
+
+    // rows from, ..., to - 1 of a table (KEY, STATUS): KEY is unique, STATUS is 'O' for each fifth row
+    private static void write(String source, int taskIndex, int from, int to) {
+        TableStatistics stats = new TableStatistics("ORDERS", TableStatistics.DEFAULT_SAMPLE_SIZE);
+        for (int i = from; i < to; i++) {
+            stats.add(Arrays.asList(String.valueOf(i), i % 5 == 0 ? "O" : "F"));
+        }
+        stats.write(new File(_dir, TableStatistics.getFileName("ORDERS", source, taskIndex)));
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        _dir = File.createTempFile("statistics", "");
+        _dir.delete();
+        _dir.mkdir();
+        // two tasks of a source, which are merged
+        write("ORDERS", 0, 0, 500);
+        write("ORDERS", 1, 500, 1000);
+        // a source which saw fewer rows is not taken
+        write("OFFLINE", 0, 0, 100);
+        new File(_dir, "README").createNewFile();
+
+        _catalog = new StatisticsCatalog(_dir.getPath());
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        for (File file : _dir.listFiles()) {
+            file.delete();
+        }
+        _dir.delete();
+    }
+
+    @Test
+    public void testTables() {
+        LOG.info("test containsTable and getTableSize:");
+        assertTrue(_catalog.containsTable("ORDERS"));
+        assertFalse(_catalog.containsTable("LINEITEM"));
+        assertTrue(_catalog.containsColumn("ORDERS", 0, new LongConversion()));
+        assertEquals(1000, _catalog.getTableSize("ORDERS"));
+    }
+
+    @Test
+    public void testRange() {
+        LOG.info("test getMin, getMax and getFractionLessThan:");
+        LongConversion lc = new LongConversion();
+        assertEquals(0L, _catalog.getMin("ORDERS", 0, lc));
+        assertEquals(999L, _catalog.getMax("ORDERS", 0, lc));
+        assertEquals(0.5, _catalog.getFractionLessThan("ORDERS", 0, lc, 500L), 0.01);
+        assertEquals(0, _catalog.getFractionLessThan("ORDERS", 0, lc, 0L), DELTA);
+    }
+
+    @Test
+    public void testEquals() {
+        LOG.info("test getEqualsSelectivity and getNumDistinctValues:");
+        StringConversion sc = new StringConversion();
+        // the most-common values have their own frequency
+        assertEquals(0.8, _catalog.getEqualsSelectivity("ORDERS", 1, sc, "F"), DELTA);
+        assertEquals(0.2, _catalog.getEqualsSelectivity("ORDERS", 1, sc, "O"), DELTA);
+        assertEquals(2, _catalog.getNumDistinctValues("ORDERS", 1, sc));
+
+        LongConversion lc = new LongConversion();
+        long distinct = _catalog.getNumDistinctValues("ORDERS", 0, lc);
+        assertTrue("distinct = " + distinct, distinct > 900 && distinct <= 1000);
+        assertEquals(1.0 / distinct, _catalog.getEqualsSelectivity("ORDERS", 0, lc, 7L), DELTA);
+    }
+
+    @Test
+    public void testLike() {
+        LOG.info("test getLikeSelectivity:");
+        StringConversion sc = new StringConversion();
+        assertEquals(0.8, _catalog.getLikeSelectivity("ORDERS", 1, sc, "F%"), DELTA);
+        assertEquals(1, _catalog.getLikeSelectivity("ORDERS", 1, sc, "_"), DELTA);
+        // no match in the sample is still assumed to be one
+        assertEquals(0.001, _catalog.getLikeSelectivity("ORDERS", 1, sc, "X%"), DELTA);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testMissingDirectory() {
+        new StatisticsCatalog(new File(_dir, "missing").getPath());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testMissingTable() {
+        _catalog.getMin("LINEITEM", 0, new LongConversion());
+    }
+}
@@ -0,0 +1,92 @@
+package optimizers.cost;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.junit.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import plan_runner.components.Component;
+import plan_runner.utilities.SystemParameters;
+import sql.main.ParserMain;
+import sql.optimizers.name.NameCompGen;
+import sql.optimizers.name.NameCompGenFactory;
+import sql.optimizers.name.NameCostDPOptimizer;
+import sql.optimizers.name.NameCostOptimizer;
+import sql.util.ParserUtil;
+import sql.visitors.jsql.SQLVisitor;
+
+public class NameCostDPOptimizerTest {
+    private static Logger LOG = Logger.getLogger(NameCostDPOptimizerTest.class);
+    private static final String CONF_PATH = "../test/squall/unit_tests/confs/";
+
+    // the order in which the relations are joined in a lefty plan
+    private static List<String> getJoinOrder(Component lastComponent) {
+        return ParserUtil.getSourceNameList(lastComponent);
+    }
+
+    // the lefty plan joining the relations in the given order
+    private static NameCompGen createPlan(String parserConfPath, List<String> joinOrder) {
+        Map map = new ParserMain().createConfig(parserConfPath);
+        SQLVisitor pq = ParserUtil.parseQuery(map);
+        NameCompGen ncg = new NameCompGenFactory(map, pq.getTan(),
+                SystemParameters.getInt(map, "DIP_TOTAL_SRC_PAR")).create();
+        Component last = ncg.generateDataSource(joinOrder.get(0));
+        for (int i = 1; i < joinOrder.size(); i++) {
+            last = ncg.generateEquiJoin(last, ncg.generateDataSource(joinOrder.get(i)));
+        }
+        return ncg;
+    }
+
+    // the DP plan is never more expensive than the greedy one, and has the expected join order
+    private void compare(String queryName, String expectedOrder) {
+        LOG.info("test the DP and the greedy plans of " + queryName + ":");
+        String parserConfPath = CONF_PATH + "0_1G_" + queryName + "_ncl";
+        ParserMain pm = new ParserMain();
+        List<String> greedyOrder = getJoinOrder(new NameCostOptimizer(pm.createConfig(parserConfPath))
+                .generate().getLastComponent());
+        NameCostDPOptimizer dp = new NameCostDPOptimizer(pm.createConfig(parserConfPath));
+        List<String> dpOrder = getJoinOrder(dp.generate().getLastComponent());
+
+        assertEquals(expectedOrder, dpOrder.toString());
+        assertEquals(new HashSet<String>(greedyOrder), new HashSet<String>(dpOrder));
+        double greedyCost = dp.getCost(createPlan(parserConfPath, greedyOrder));
+        double dpCost = dp.getCost(createPlan(parserConfPath, dpOrder));
+        LOG.info("Greedy " + greedyOrder + " costs " + greedyCost + ", DP " + dpOrder + " costs " + dpCost);
+        assertTrue(dpCost <= greedyCost);
+    }
+
+    @Test
+    public void testTPCH3() {
+        compare("tpch3", "[CUSTOMER, ORDERS, LINEITEM]");
+    }
+
+    @Test
+    public void testTPCH5() {
+        compare("tpch5", "[NATION, REGION, SUPPLIER, LINEITEM, ORDERS, CUSTOMER]");
+    }
+
+    @Test
+    public void testTPCH7() {
+        compare("tpch7", "[SUPPLIER, N1, LINEITEM, ORDERS, CUSTOMER, N2]");
+    }
+
+    @Test
+    public void testTPCH8() {
+        compare("tpch8", "[N1, REGION, CUSTOMER, ORDERS, LINEITEM, PART, SUPPLIER, N2]");
+    }
+
+    @Test
+    public void testTPCH9() {
+        // cheaper than the greedy [PART, LINEITEM, ORDERS, SUPPLIER, PARTSUPP, NATION]
+        compare("tpch9", "[PART, LINEITEM, PARTSUPP, ORDERS, SUPPLIER, NATION]");
+    }
+
+    @Test
+    public void testTPCH10() {
+        // cheaper than the greedy [CUSTOMER, ORDERS, LINEITEM, NATION]
+        compare("tpch10", "[LINEITEM, ORDERS, CUSTOMER, NATION]");
+    }
+}
@@ -0,0 +1,110 @@
+package plan_runner.operators;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.junit.*;
+import static org.junit.Assert.assertEquals;
+import plan_runner.conversion.IntegerConversion;
+import plan_runner.expressions.ColumnReference;
+import plan_runner.utilities.WindowSemantics;
+
+public class WindowAggregateOperatorTest {
+    private static Logger LOG = Logger.getLogger(WindowAggregateOperatorTest.class);
+
+    private File _storageDir;
+    private Map _conf;
+
+    @Before
+    public void setUp() throws Exception {
+        _storageDir = File.createTempFile("storage", "");
+        _storageDir.delete();
+        _storageDir.mkdir();
+        _conf = new HashMap();
+        _conf.put("DIP_DISTRIBUTED", "false");
+        _conf.put("STORAGE_LOCAL_DIR", _storageDir.getPath());
+        _conf.put("STORAGE_COLD_START", "true");
+        _conf.put("STORAGE_MEMORY_SIZE_MB", "64");
+    }
+
+    @After
+    public void tearDown() {
+        _storageDir.delete();
+    }
+
+    // SUM(column 1) GROUP BY column 0 over the window
+    private ChainOperator createChain(WindowSemantics window) {
+        AggregateSumOperator<Integer> sum = new AggregateSumOperator<Integer>(
+                new ColumnReference<Integer>(new IntegerConversion(), 1), _conf);
+        sum.setGroupByColumns(Arrays.asList(0));
+        return new ChainOperator(new WindowAggregateOperator<Integer>(sum, window, _conf));
+    }
+
+    // the value of the group of the tuple over the window
+    private static String process(ChainOperator chain, String group, int value, long timestamp) {
+        return chain.process(new ArrayList<String>(Arrays.asList(group, String.valueOf(value))),
+                timestamp).get(1);
+    }
+
+    private static List<String> getSortedContent(ChainOperator chain) {
+        List<String> content = new ArrayList<String>(chain.getContent());
+        Collections.sort(content);
+        return content;
+    }
+
+    @Test
+    public void testTumbling() {
+        LOG.info("test a tumbling count window:");
+        ChainOperator chain = createChain(WindowSemantics.tumblingCount(3));
+        assertEquals("1", process(chain, "A", 1, 0));
+        assertEquals("2", process(chain, "B", 2, 0));
+        assertEquals("4", process(chain, "A", 3, 0));
+        // a new window
+        assertEquals("4", process(chain, "A", 4, 0));
+        assertEquals(Arrays.asList("A = 4"), getSortedContent(chain));
+    }
+
+    @Test
+    public void testPaneMerging() {
+        LOG.info("test merging the panes of a sliding count window:");
+        // panes of two tuples, a window of two panes
+        ChainOperator chain = createChain(WindowSemantics.slidingCount(4, 2));
+        int[] expected = {1, 3, 6, 10, 15, 18, 25};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(String.valueOf(expected[i]), process(chain, "A", i + 1, 0));
+        }
+        // the panes of the tuples 3, ..., 7
+        assertEquals(Arrays.asList("A = 25"), getSortedContent(chain));
+
+        // the groups are merged separately
+        assertEquals("8", process(chain, "B", 8, 0));
+        // the pane of the tuples 3 and 4 is out of the window
+        assertEquals(Arrays.asList("A = 18", "B = 8"), getSortedContent(chain));
+    }
+
+    @Test
+    public void testTimeWindowLateTuples() {
+        LOG.info("test late tuples in a time-based window:");
+        _conf.put("CUSTOM_TIMESTAMP", "true");
+        ChainOperator chain = createChain(WindowSemantics.tumblingTime(1000));
+        assertEquals("1", process(chain, "A", 1, 100));
+        assertEquals("3", process(chain, "A", 2, 900));
+        assertEquals("3", process(chain, "A", 3, 1500));
+        // a late tuple goes to the current pane
+        assertEquals("7", process(chain, "A", 4, 800));
+        assertEquals("12", process(chain, "A", 5, 1999));
+        assertEquals("6", process(chain, "A", 6, 2000));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testDeletion() {
+        ChainOperator chain = createChain(WindowSemantics.tumblingCount(3));
+        chain.getAggregation().processDeletion(Arrays.asList("A", "1"));
+    }
+}
@@ -0,0 +1,261 @@
+package plan_runner.storage;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.junit.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import plan_runner.conversion.IntegerConversion;
+import plan_runner.expressions.ColumnReference;
+import plan_runner.operators.AggregateSumOperator;
+import plan_runner.operators.ChainOperator;
+import plan_runner.operators.Operator;
+import plan_runner.operators.ProjectOperator;
+import plan_runner.utilities.MyUtilities;
+
+public class CheckpointStoreTest {
+    private static Logger LOG = Logger.getLogger(CheckpointStoreTest.class);
+    private static final List<String> COMPONENTS = Arrays.asList("ORDERS");
+
+    // the restored changes, as relation:key=value or relation:-key
+    private static class Changes implements CheckpointStore.ChangeListener {
+        private final List<String> _changes = new ArrayList<String>();
+
+        @Override
+        public void restoreChange(int relation, String key, String value, boolean isDeletion) {
+            _changes.add(relation + ":" + (isDeletion ? "-" + key : key + "=" + value));
+        }
+    }
+
+    private File _dir;
+
+    @Before
+    public void setUp() throws Exception {
+        _dir = File.createTempFile("checkpoints", "");
+        _dir.delete();
+        _dir.mkdir();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : _dir.listFiles()) {
+            file.delete();
+        }
+        _dir.delete();
+    }
+
+    private Map createConf(boolean isRecover) {
+        Map conf = new HashMap();
+        conf.put("DIP_CHECKPOINT_DIR", _dir.getPath());
+        conf.put("DIP_NUM_ACKERS", "0");
+        conf.put("ORDERS_PAR", "2");
+        if (isRecover) {
+            conf.put("DIP_CHECKPOINT_RECOVER", "true");
+        }
+        CheckpointStore.prepareRun(conf, COMPONENTS);
+        return conf;
+    }
+
+    // checkpoints 1, ..., numCheckpoints of a task, each with a change and a snapshot
+    private void run(Map conf, int taskIndex, int numCheckpoints) {
+        CheckpointStore store = new CheckpointStore("ORDERS", taskIndex, conf);
+        assertNull(store.restore(new Changes()));
+        for (int id = 1; id <= numCheckpoints; id++) {
+            store.logChange(0, "key" + id, "value" + id, false);
+            if (id % 2 == 0) {
+                store.logChange(1, "key" + (id - 1), null, true);
+            }
+            store.checkpoint(id, "snapshot" + id);
+        }
+        store.logChange(0, "last", null, false);
+        // waits for the files to be written
+        store.finalCheckpoint("final");
+    }
+
+    private void deleteFinalFile(int taskIndex) {
+        for (File file : _dir.listFiles()) {
+            if (file.getName().startsWith("ORDERS_" + taskIndex + "_final_")) {
+                file.delete();
+            }
+        }
+    }
+
+    @Test
+    public void testRestoreFinal() {
+        LOG.info("test restore of tasks which are done:");
+        Map conf = createConf(false);
+        run(conf, 0, 3);
+        run(conf, 1, 2);
+
+        conf = createConf(true);
+        assertEquals("4", conf.get("DIP_CHECKPOINT_RECOVER_ID"));
+        CheckpointStore store = new CheckpointStore("ORDERS", 0, conf);
+        Changes changes = new Changes();
+        Serializable snapshot = store.restore(changes);
+        assertEquals("final", snapshot);
+        assertEquals(3, store.getLastId());
+        assertEquals(Arrays.asList("0:key1=value1", "0:key2=value2", "1:-key1", "0:key3=value3",
+                "0:last=null"), changes._changes);
+
+        store = new CheckpointStore("ORDERS", 1, conf);
+        changes = new Changes();
+        assertEquals("final", store.restore(changes));
+        assertEquals(2, store.getLastId());
+        assertEquals(4, changes._changes.size());
+    }
+
+    @Test
+    public void testRestoreLatestComplete() {
+        LOG.info("test restore of the latest complete checkpoint:");
+        Map conf = createConf(false);
+        run(conf, 0, 3);
+        run(conf, 1, 2);
+        // the tasks failed before their final checkpoints
+        deleteFinalFile(0);
+        deleteFinalFile(1);
+
+        conf = createConf(true);
+        assertEquals("2", conf.get("DIP_CHECKPOINT_RECOVER_ID"));
+        // the checkpoints after it are deleted
+        assertFalse(new File(_dir, "ORDERS_0_3.ckpt").exists());
+        assertTrue(new File(_dir, "ORDERS_0_2.ckpt").exists());
+
+        CheckpointStore store = new CheckpointStore("ORDERS", 0, conf);
+        Changes changes = new Changes();
+        assertEquals("snapshot2", store.restore(changes));
+        assertEquals(2, store.getLastId());
+        assertEquals(Arrays.asList("0:key1=value1", "0:key2=value2", "1:-key1"), changes._changes);
+    }
+
+    @Test
+    public void testFromScratch() {
+        LOG.info("test a run without recovery:");
+        Map conf = createConf(false);
+        run(conf, 0, 3);
+        run(conf, 1, 2);
+
+        conf = createConf(false);
+        assertEquals("0", conf.get("DIP_CHECKPOINT_RECOVER_ID"));
+        assertEquals(0, _dir.listFiles().length);
+        assertNull(new CheckpointStore("ORDERS", 0, conf).restore(new Changes()));
+    }
+
+    private void addStorageConf(Map conf) {
+        conf.put("DIP_DISTRIBUTED", "false");
+        conf.put("STORAGE_LOCAL_DIR", _dir.getPath());
+        conf.put("STORAGE_COLD_START", "true");
+        conf.put("STORAGE_MEMORY_SIZE_MB", "64");
+        conf.put("DIP_DELETIONS", "true");
+    }
+
+    // a projection, and SUM(column 1) GROUP BY column 0
+    private static ChainOperator createChain(Map conf) {
+        AggregateSumOperator<Integer> sum = new AggregateSumOperator<Integer>(
+                new ColumnReference<Integer>(new IntegerConversion(), 1), conf);
+        sum.setGroupByColumns(Arrays.asList(0));
+        ChainOperator chain = new ChainOperator(new ProjectOperator(new int[]{0, 1}), sum);
+        chain.startDeletions();
+        return chain;
+    }
+
+    private static void process(ChainOperator chain, boolean isDeletion, String group, int value) {
+        List<String> tuple = Arrays.asList(group, String.valueOf(value));
+        chain.process(isDeletion ? MyUtilities.toDeletion(tuple) : tuple);
+    }
+
+    private static List<String> getSortedContent(ChainOperator chain) {
+        List<String> content = new ArrayList<String>(chain.getContent());
+        Collections.sort(content);
+        return content;
+    }
+
+    @Test
+    public void testAggregationChanges() {
+        LOG.info("test logging the changed groups of an aggregation:");
+        Map conf = createConf(false);
+        addStorageConf(conf);
+        ChainOperator chain = createChain(conf);
+        CheckpointStore store = new CheckpointStore("ORDERS", 0, conf);
+        store.attachChain(chain);
+        assertNull(store.restore(new Changes()));
+
+        process(chain, false, "A", 1);
+        process(chain, false, "B", 2);
+        process(chain, false, "A", 3);
+        List<Operator> snapshot = (List<Operator>) store.getChainSnapshot(chain);
+        // only the projection is serialized
+        assertTrue(snapshot.get(0) instanceof ProjectOperator);
+        assertNull(snapshot.get(1));
+        store.checkpoint(1, (Serializable) snapshot);
+
+        process(chain, true, "B", 2);
+        process(chain, false, "C", 4);
+        process(chain, true, "A", 1);
+        store.checkpoint(2, store.getChainSnapshot(chain));
+        process(chain, false, "D", 5);
+        List<String> expected = getSortedContent(chain);
+        store.finalCheckpoint(store.getChainSnapshot(chain));
+        run(conf, 1, 2);
+
+        conf = createConf(true);
+        addStorageConf(conf);
+        ChainOperator restoredChain = createChain(conf);
+        store = new CheckpointStore("ORDERS", 0, conf);
+        store.attachChain(restoredChain);
+        Changes changes = new Changes();
+        store.restoreChainSnapshot(restoredChain, (List<Operator>) store.restore(changes));
+        // the changes of the aggregation are not passed to the component
+        assertEquals(0, changes._changes.size());
+        assertEquals(Arrays.asList("A = 3", "C = 4", "D = 5"), expected);
+        assertEquals(expected, getSortedContent(restoredChain));
+
+        // the numbers of tuples of the groups are restored as well
+        process(restoredChain, true, "A", 3);
+        process(restoredChain, false, "C", 1);
+        process(restoredChain, true, "C", 4);
+        assertEquals(Arrays.asList("C = 1", "D = 5"), getSortedContent(restoredChain));
+    }
+
+    @Test
+    public void testAggregationReset() {
+        LOG.info("test logging the reset of an aggregation:");
+        Map conf = createConf(false);
+        addStorageConf(conf);
+        ChainOperator chain = createChain(conf);
+        CheckpointStore store = new CheckpointStore("ORDERS", 0, conf);
+        store.attachChain(chain);
+        process(chain, false, "A", 1);
+        store.checkpoint(1, store.getChainSnapshot(chain));
+        // e.g. after the groups are sent, see PeriodicAggBatchSend
+        chain.getAggregation().clearStorage();
+        process(chain, false, "B", 2);
+        store.finalCheckpoint(store.getChainSnapshot(chain));
+        run(conf, 1, 1);
+
+        conf = createConf(true);
+        addStorageConf(conf);
+        ChainOperator restoredChain = createChain(conf);
+        store = new CheckpointStore("ORDERS", 0, conf);
+        store.attachChain(restoredChain);
+        store.restoreChainSnapshot(restoredChain, (List<Operator>) store.restore(new Changes()));
+        assertEquals(Arrays.asList("B = 2"), getSortedContent(restoredChain));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testAckEveryTuple() {
+        Map conf = new HashMap();
+        conf.put("DIP_CHECKPOINT_DIR", _dir.getPath());
+        conf.put("DIP_NUM_ACKERS", "1");
+        CheckpointStore.prepareRun(conf, COMPONENTS);
+    }
+}
@@ -0,0 +1,118 @@
+package plan_runner.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.junit.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FingerprintSetTest {
+    private static Logger LOG = Logger.getLogger(FingerprintSetTest.class);
+    // small enough for the partitions to be spilled
+    private static final long MEMORY_BYTES = 300 * 1024;
+
+    private File _spillDir;
+    private FingerprintSet _set;
+
+    @Before
+    public void setUp() throws Exception {
+        _spillDir = File.createTempFile("distinct", "");
+        _spillDir.delete();
+        _spillDir.mkdir();
+        _set = new FingerprintSet(MEMORY_BYTES, _spillDir.getPath());
+    }
+
+    @After
+    public void tearDown() {
+        _set.clear();
+        _spillDir.delete();
+    }
+
+    @Test
+    public void testAddWithSpilling() {
+        LOG.info("test add with spilled partitions:");
+        // keys are repeated, both before and after they are spilled
+        Set<String> expected = new HashSet<String>();
+        Random random = new Random(7);
+        for (int i = 0; i < 200000; i++) {
+            String first = String.valueOf(random.nextInt(60000));
+            String second = String.valueOf(random.nextInt(3));
+            assertEquals(expected.add(first + "|" + second), _set.add(Arrays.asList(first, second)));
+        }
+        assertEquals(expected.size(), _set.size());
+        assertTrue(_set.getNumSpilledPartitions() > 0);
+        assertEquals(_set.getNumSpilledPartitions(), _spillDir.list().length);
+
+        // the columns are not simply concatenated
+        assertTrue(_set.add(Arrays.asList("ab", "c")));
+        assertTrue(_set.add(Arrays.asList("a", "bc")));
+        assertFalse(_set.add(Arrays.asList("a", "bc")));
+    }
+
+    @Test
+    public void testContains() {
+        LOG.info("test contains of spilled keys:");
+        Random random = new Random(11);
+        long[] fingerprints = new long[100000];
+        for (int i = 0; i < fingerprints.length; i++) {
+            fingerprints[i] = random.nextLong();
+            assertTrue(_set.add(fingerprints[i], i));
+        }
+        assertTrue(_set.getNumSpilledPartitions() > 0);
+        for (int i = 0; i < fingerprints.length; i++) {
+            assertTrue(_set.contains(fingerprints[i], i));
+            // the same fingerprint with another check is another key
+            assertFalse(_set.contains(fingerprints[i], i + 1));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(_set.contains(random.nextLong(), i));
+        }
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        LOG.info("test serialization with spilled keys:");
+        for (int i = 0; i < 100000; i++) {
+            _set.add(Arrays.asList(String.valueOf(i)));
+        }
+        assertTrue(_set.getNumSpilledPartitions() > 0);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(_set);
+        out.close();
+        FingerprintSet restored = (FingerprintSet) new ObjectInputStream(new ByteArrayInputStream(
+                bytes.toByteArray())).readObject();
+        try {
+            assertEquals(_set.size(), restored.size());
+            for (int i = 0; i < 100000; i++) {
+                assertFalse(restored.add(Arrays.asList(String.valueOf(i))));
+            }
+            assertTrue(restored.add(Arrays.asList("100000")));
+        } finally {
+            restored.clear();
+        }
+    }
+
+    @Test
+    public void testClear() {
+        for (int i = 0; i < 100000; i++) {
+            _set.add(Arrays.asList(String.valueOf(i)));
+        }
+        _set.clear();
+        assertEquals(0, _set.size());
+        assertEquals(0, _set.getNumSpilledPartitions());
+        assertEquals(0, _spillDir.list().length);
+        assertTrue(_set.add(Arrays.asList("0")));
+    }
+}
@@ -0,0 +1,132 @@
+package plan_runner.storage;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.junit.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import plan_runner.conversion.IntegerConversion;
+import plan_runner.expressions.ColumnReference;
+import plan_runner.operators.AggregateCountOperator;
+import plan_runner.operators.AggregateSumOperator;
+import plan_runner.operators.ChainOperator;
+import plan_runner.utilities.MyUtilities;
+
+public class KeyValueStoreTest {
+    private static Logger LOG = Logger.getLogger(KeyValueStoreTest.class);
+
+    private File _storageDir;
+    private Map _conf;
+
+    @Before
+    public void setUp() throws Exception {
+        _storageDir = File.createTempFile("storage", "");
+        _storageDir.delete();
+        _storageDir.mkdir();
+        _conf = new HashMap();
+        _conf.put("DIP_DISTRIBUTED", "false");
+        _conf.put("STORAGE_LOCAL_DIR", _storageDir.getPath());
+        _conf.put("STORAGE_COLD_START", "true");
+        _conf.put("STORAGE_MEMORY_SIZE_MB", "64");
+        _conf.put("DIP_DELETIONS", "true");
+    }
+
+    @After
+    public void tearDown() {
+        _storageDir.delete();
+    }
+
+    @Test
+    public void testRemove() {
+        LOG.info("test removal of single values:");
+        KeyValueStore<String, String> store = new KeyValueStore<String, String>(_conf);
+        store.insert("1", "a|1");
+        store.insert("1", "b|1");
+        store.insert("1", "a|1");
+        store.insert("2", "c|2");
+        long numBytes = store.getNumBytes();
+
+        // a single occurrence is removed
+        assertTrue(store.remove("1", "a|1"));
+        assertEquals(Arrays.asList("b|1", "a|1"), store.access("1"));
+        assertEquals(numBytes - 3, store.getNumBytes());
+        assertFalse(store.remove("1", "c|2"));
+        assertFalse(store.remove("3", "c|2"));
+
+        // the key goes with its last value
+        assertTrue(store.remove("1", "b|1"));
+        assertTrue(store.remove("1", "a|1"));
+        assertNull(store.access("1"));
+        assertEquals(1, store.size());
+
+        assertEquals(Arrays.asList("c|2"), store.removeKey("2"));
+        assertNull(store.removeKey("2"));
+        assertEquals(0, store.size());
+        assertEquals(0, store.getNumBytes());
+    }
+
+    @Test
+    public void testInsertRetract() {
+        LOG.info("test that a retracted tuple is not joined:");
+        // the storage of a relation in StormDstJoin, by the join key
+        KeyValueStore<String, String> store = new KeyValueStore<String, String>(_conf);
+        store.insert("7", "7|x");
+        assertTrue(store.remove("7", "7|x"));
+        // a tuple of the opposite relation finds no partners
+        assertNull(store.access("7"));
+        assertFalse(store.contains("7"));
+    }
+
+    // SUM(column 1) GROUP BY column 0
+    private ChainOperator createSum() {
+        AggregateSumOperator<Integer> sum = new AggregateSumOperator<Integer>(
+                new ColumnReference<Integer>(new IntegerConversion(), 1), _conf);
+        sum.setGroupByColumns(Arrays.asList(0));
+        ChainOperator chain = new ChainOperator(sum);
+        chain.startDeletions();
+        return chain;
+    }
+
+    private static List<String> delete(String... tuple) {
+        return MyUtilities.toDeletion(Arrays.asList(tuple));
+    }
+
+    @Test
+    public void testRetractGroup() {
+        LOG.info("test retraction from aggregated groups:");
+        ChainOperator chain = createSum();
+        assertEquals(Arrays.asList("A", "3"), chain.process(Arrays.asList("A", "3")));
+        assertEquals(Arrays.asList("A", "8"), chain.process(Arrays.asList("A", "5")));
+        assertEquals(Arrays.asList("A", "5"), chain.process(delete("A", "3")));
+        // the group is removed with its last tuple
+        assertEquals(Arrays.asList("A", "0"), chain.process(delete("A", "5")));
+        assertNull(chain.getAggregation().getStorage().access("A"));
+    }
+
+    @Test
+    public void testRetractMissingGroup() {
+        LOG.info("test retraction of a tuple which was never inserted:");
+        ChainOperator chain = createSum();
+        chain.process(Arrays.asList("A", "3"));
+        assertNull(chain.process(delete("B", "3")));
+        AggregationStorage storage = (AggregationStorage) chain.getAggregation().getStorage();
+        assertEquals(1, storage.getNumIgnoredRetractions());
+        assertNull(storage.access("B"));
+
+        // the group is not left with a negative number of tuples
+        assertEquals(Arrays.asList("B", "4"), chain.process(Arrays.asList("B", "4")));
+        assertEquals(Arrays.asList("B", "0"), chain.process(delete("B", "4")));
+        assertNull(storage.access("B"));
+
+        AggregateCountOperator count = new AggregateCountOperator(_conf);
+        count.setGroupByColumns(Arrays.asList(0));
+        assertNull(count.processDeletion(Arrays.asList("C")));
+    }
+}
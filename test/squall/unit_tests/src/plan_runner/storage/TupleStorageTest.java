@@ -0,0 +1,82 @@
+package plan_runner.storage;
+
+import org.apache.log4j.Logger;
+import org.junit.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TupleStorageTest {
+    private static Logger LOG = Logger.getLogger(TupleStorageTest.class);
+
+    private static TupleStorage create(String... tuples) {
+        TupleStorage storage = new TupleStorage();
+        for (String tuple : tuples) {
+            storage.insert(tuple);
+        }
+        return storage;
+    }
+
+    @Test
+    public void testTombstones() {
+        LOG.info("test removal of single tuples:");
+        TupleStorage storage = create("a|1", "b|22", "c|333");
+        assertTrue(storage.isDense());
+        assertEquals(12, storage.getNumBytes());
+
+        assertTrue(storage.remove(1));
+        assertFalse(storage.isDense());
+        assertEquals(2, storage.size());
+        assertEquals(8, storage.getNumBytes());
+        assertFalse(storage.contains(1));
+        // the other ids do not move
+        assertEquals("c|333", storage.get(2));
+        assertEquals(2, storage.getLastId());
+        // a new tuple does not reuse the tombstone
+        assertEquals(3, storage.insert("d|4"));
+
+        // already removed or never inserted
+        assertFalse(storage.remove(1));
+        assertFalse(storage.remove(10));
+        assertEquals(3, storage.size());
+
+        storage.clear();
+        assertTrue(storage.isDense());
+        assertEquals(0, storage.getNumBytes());
+    }
+
+    @Test
+    public void testCopyCompacted() {
+        LOG.info("test copy without the tombstones:");
+        TupleStorage storage = create("a", "b", "c", "d", "e");
+        storage.remove(0);
+        storage.remove(3);
+
+        TupleStorage compacted = new TupleStorage();
+        compacted.copyCompacted(storage);
+        assertTrue(compacted.isDense());
+        assertEquals(3, compacted.size());
+        assertEquals(2, compacted.getLastId());
+        assertEquals("b", compacted.get(0));
+        assertEquals("c", compacted.get(1));
+        assertEquals("e", compacted.get(2));
+        assertEquals(storage.getNumBytes(), compacted.getNumBytes());
+
+        // copy keeps the ids (and the tombstones)
+        TupleStorage copy = new TupleStorage(storage);
+        assertFalse(copy.isDense());
+        assertEquals("e", copy.get(4));
+    }
+
+    @Test
+    public void testInsertRetract() {
+        LOG.info("test that a retracted tuple is not joined:");
+        TupleStorage storage = create("a|1");
+        storage.remove(storage.insert("b|2"));
+        storage.remove(0);
+        // the tuples which are joined, as in StormThetaJoin.selectTupleToJoin
+        TupleStorage tuplesToJoin = new TupleStorage();
+        tuplesToJoin.copyCompacted(storage);
+        assertEquals(0, tuplesToJoin.size());
+    }
+}
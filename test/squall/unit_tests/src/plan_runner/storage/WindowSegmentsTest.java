@@ -0,0 +1,96 @@
+package plan_runner.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.junit.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import plan_runner.utilities.WindowSemantics;
+
+public class WindowSegmentsTest {
+    private static Logger LOG = Logger.getLogger(WindowSegmentsTest.class);
+
+    // each segment is a list of the positions stored in it
+    private static WindowSegments<List<Long>> createSegments(WindowSemantics window) {
+        return new WindowSegments<List<Long>>(window) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected List<Long> createSegment() {
+                return new ArrayList<Long>();
+            }
+        };
+    }
+
+    private static void add(WindowSegments<List<Long>> segments, long position) {
+        segments.advance(position);
+        segments.getSegment(position).add(position);
+    }
+
+    @Test
+    public void testSegmentIds() {
+        LOG.info("test that tuples of a slide share a segment:");
+        WindowSegments<List<Long>> segments = createSegments(WindowSemantics.slidingCount(6, 3));
+        for (long position = 0; position < 6; position++) {
+            add(segments, position);
+        }
+        assertSame(segments.getSegment(0), segments.getSegment(2));
+        assertEquals(Arrays.asList(Arrays.asList(0L, 1L, 2L), Arrays.asList(3L, 4L, 5L)),
+                new ArrayList<List<Long>>(segments.getSegments()));
+        assertEquals(0, segments.getNumEvictedSegments());
+    }
+
+    @Test
+    public void testBulkEviction() {
+        LOG.info("test that expired segments are dropped as a whole:");
+        WindowSegments<List<Long>> segments = createSegments(WindowSemantics.slidingCount(4, 2));
+        for (long position = 0; position < 5; position++) {
+            add(segments, position);
+        }
+        // the window (1, 5] still overlaps the first segment
+        assertEquals(3, segments.getSegments().size());
+
+        add(segments, 5);
+        assertEquals(1, segments.getNumEvictedSegments());
+        assertEquals(Arrays.asList(Arrays.asList(2L, 3L), Arrays.asList(4L, 5L)),
+                new ArrayList<List<Long>>(segments.getSegments()));
+
+        // a jump over several segments evicts all of them at once
+        add(segments, 100);
+        assertEquals(3, segments.getNumEvictedSegments());
+        assertEquals(Arrays.asList(Arrays.asList(100L)),
+                new ArrayList<List<Long>>(segments.getSegments()));
+    }
+
+    @Test
+    public void testTumbling() {
+        WindowSegments<List<Long>> segments = createSegments(WindowSemantics.tumblingCount(3));
+        for (long position = 0; position < 7; position++) {
+            add(segments, position);
+        }
+        assertEquals(2, segments.getNumEvictedSegments());
+        assertEquals(Arrays.asList(Arrays.asList(6L)),
+                new ArrayList<List<Long>>(segments.getSegments()));
+    }
+
+    @Test
+    public void testLateTuples() {
+        LOG.info("test that the window does not move back:");
+        WindowSegments<List<Long>> segments = createSegments(WindowSemantics.slidingTime(100, 50));
+        add(segments, 220);
+        segments.advance(210);
+        assertEquals(220, segments.getPosition());
+        // still in the live segments of the window (120, 220]
+        add(segments, 160);
+        add(segments, 110);
+        // out of the window
+        assertNull(segments.getSegment(90));
+        assertEquals(Arrays.asList(Arrays.asList(110L), Arrays.asList(160L), Arrays.asList(220L)),
+                new ArrayList<List<Long>>(segments.getSegments()));
+        assertEquals(0, segments.getNumEvictedSegments());
+    }
+}
@@ -0,0 +1,148 @@
+package plan_runner.storm_components.synchronization;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+import org.junit.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import backtype.storm.tuple.Tuple;
+
+public class EpochTrackerTest {
+    private static Logger LOG = Logger.getLogger(EpochTrackerTest.class);
+
+    // a tuple which only knows its source task
+    private static Tuple createTuple(final int sourceTask, final String name) {
+        return (Tuple) Proxy.newProxyInstance(Tuple.class.getClassLoader(),
+                new Class[]{Tuple.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getSourceTask")) {
+                            return sourceTask;
+                        } else if (method.getName().equals("toString")) {
+                            return name;
+                        } else if (method.getName().equals("equals")) {
+                            return proxy == args[0];
+                        } else if (method.getName().equals("hashCode")) {
+                            return System.identityHashCode(proxy);
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    // from the barriers of all the parent tasks until the tuples are released
+    private static void changeEpoch(EpochTracker tracker, int[] parentTasks, int numPeers) {
+        int epoch = tracker.getEpoch() + 1;
+        for (int task : parentTasks) {
+            assertFalse(tracker.isAligned());
+            tracker.receiveBarrier(task, epoch);
+        }
+        assertTrue(tracker.isAligned());
+        assertEquals(epoch, tracker.startMigration());
+        for (int i = 0; i < numPeers; i++) {
+            assertFalse(tracker.isMigrated());
+            tracker.migrationDone(epoch);
+        }
+        assertTrue(tracker.isMigrated());
+        tracker.release();
+    }
+
+    @Test
+    public void testAlignment() {
+        LOG.info("test the alignment of the barriers and the migration:");
+        EpochTracker tracker = new EpochTracker(2, 1);
+        Tuple before = createTuple(1, "before");
+        assertFalse(tracker.block(before));
+
+        tracker.receiveBarrier(1, 1);
+        assertFalse(tracker.isAligned());
+        // the tuples after the barrier of a parent task wait for the other ones
+        Tuple after1 = createTuple(1, "after1");
+        assertTrue(tracker.block(after1));
+        assertFalse(tracker.block(createTuple(2, "old")));
+        tracker.receiveBarrier(2, 1);
+        assertTrue(tracker.isAligned());
+
+        assertEquals(1, tracker.startMigration());
+        assertFalse(tracker.isAligned());
+        // all the tuples wait for the migration
+        Tuple after2 = createTuple(2, "after2");
+        assertTrue(tracker.block(after2));
+        assertFalse(tracker.isMigrated());
+        tracker.migrationDone(1);
+        assertTrue(tracker.isMigrated());
+        assertEquals(2, tracker.getNumBlockedTuples());
+        assertEquals(Arrays.asList(after1, after2), tracker.release());
+
+        assertEquals(1, tracker.getEpoch());
+        assertFalse(tracker.isMigrated());
+        assertEquals(0, tracker.getNumBlockedTuples());
+        assertFalse(tracker.block(createTuple(1, "next")));
+    }
+
+    @Test
+    public void testParentFinished() {
+        LOG.info("test LAST_ACK of a parent task during the alignment:");
+        EpochTracker tracker = new EpochTracker(3, 1);
+        tracker.receiveBarrier(1, 1);
+        tracker.parentFinished();
+        assertFalse(tracker.isAligned());
+        // the last parent task without a barrier is done
+        tracker.parentFinished();
+        assertTrue(tracker.isAligned());
+        assertEquals(1, tracker.startMigration());
+        tracker.migrationDone(1);
+        assertTrue(tracker.isMigrated());
+        tracker.release();
+
+        // only the remaining parent task sends barriers
+        changeEpoch(tracker, new int[]{1}, 1);
+        assertEquals(2, tracker.getEpoch());
+
+        // without barriers there is nothing to align
+        tracker.parentFinished();
+        assertFalse(tracker.isAligned());
+    }
+
+    @Test
+    public void testDonePerEpoch() {
+        LOG.info("test the done messages of a peer in the next epoch:");
+        EpochTracker tracker = new EpochTracker(1, 2);
+        tracker.receiveBarrier(1, 1);
+        tracker.startMigration();
+        tracker.migrationDone(1);
+        // this peer is already one epoch ahead
+        tracker.migrationDone(2);
+        assertFalse(tracker.isMigrated());
+        tracker.migrationDone(1);
+        assertTrue(tracker.isMigrated());
+        tracker.release();
+
+        tracker.receiveBarrier(1, 2);
+        assertEquals(2, tracker.startMigration());
+        assertFalse(tracker.isMigrated());
+        tracker.migrationDone(2);
+        assertTrue(tracker.isMigrated());
+        tracker.release();
+    }
+
+    @Test
+    public void testConsecutiveEpochs() {
+        LOG.info("test consecutive epochs:");
+        EpochTracker tracker = new EpochTracker(3, 2);
+        for (int epoch = 1; epoch <= 5; epoch++) {
+            changeEpoch(tracker, new int[]{4, 5, 6}, 2);
+            assertEquals(epoch, tracker.getEpoch());
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testSkippedEpoch() {
+        new EpochTracker(1, 1).receiveBarrier(1, 2);
+    }
+}
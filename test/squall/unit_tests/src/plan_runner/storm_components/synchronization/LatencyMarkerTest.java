@@ -0,0 +1,36 @@
+package plan_runner.storm_components.synchronization;
+
+import org.apache.log4j.Logger;
+import org.junit.*;
+import static org.junit.Assert.assertEquals;
+
+public class LatencyMarkerTest {
+    private static Logger LOG = Logger.getLogger(LatencyMarkerTest.class);
+
+    @Test
+    public void testPath() {
+        LOG.info("test the path of a marker:");
+        // on a data source
+        String path = new LatencyMarker().addHop("CUSTOMER", 1200);
+        assertEquals("CUSTOMER:1200", path);
+        assertEquals(1200, LatencyMarker.getPathNanos(path));
+
+        // the received path is extended by each hop
+        LatencyMarker marker = new LatencyMarker(path, null);
+        assertEquals(path, marker.getPath());
+        path = marker.addHop("CUSTOMER_ORDERS", 35000);
+        assertEquals("CUSTOMER:1200,CUSTOMER_ORDERS:35000", path);
+        path = new LatencyMarker(path, null).addHop("CUSTOMER_ORDERS_LINEITEM", 0);
+        assertEquals(36200, LatencyMarker.getPathNanos(path));
+    }
+
+    @Test
+    public void testSpecialPaths() {
+        assertEquals(0, LatencyMarker.getPathNanos(""));
+        // only the last delimiter of a hop separates the nanoseconds
+        String path = new LatencyMarker("A:B:5", null).addHop("C:D", 7);
+        assertEquals(12, LatencyMarker.getPathNanos(path));
+        assertEquals(Long.MAX_VALUE, LatencyMarker.getPathNanos(new LatencyMarker().addHop("A",
+                Long.MAX_VALUE)));
+    }
+}
@@ -0,0 +1,101 @@
+package plan_runner.thetajoin.indexes;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+import org.junit.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import plan_runner.predicates.ComparisonPredicate;
+
+public class IndexRemoveTest {
+    private static Logger LOG = Logger.getLogger(IndexRemoveTest.class);
+    private static final int NUM_ROWS = 2000;
+    private static final int NUM_KEYS = 100;
+
+    private static final int[] OPERATORS = {ComparisonPredicate.EQUAL_OP,
+            ComparisonPredicate.LESS_OP, ComparisonPredicate.NONLESS_OP,
+            ComparisonPredicate.GREATER_OP, ComparisonPredicate.NONGREATER_OP};
+
+    // a sorted copy, an empty one for null
+    private static TIntArrayList normalize(TIntArrayList rowIds) {
+        TIntArrayList result = new TIntArrayList();
+        if (rowIds != null) {
+            result.addAll(rowIds);
+        }
+        result.sort();
+        return result;
+    }
+
+    /*
+     * Rows are put into both the indexes, and every third row is removed from
+     * the first one (together with some rows which are not there): they have
+     * to answer all the lookups the same as the index of the remaining rows.
+     */
+    private static void compare(Index<Integer> withRemovals, Index<Integer> expected,
+            boolean isRange) {
+        Random random = new Random(11);
+        int[] keys = new int[NUM_ROWS];
+        for (int row = 0; row < NUM_ROWS; row++) {
+            keys[row] = random.nextInt(NUM_KEYS);
+            withRemovals.put(row, keys[row]);
+        }
+        for (int row = 0; row < NUM_ROWS; row++) {
+            if (row % 3 == 0) {
+                withRemovals.remove(row, keys[row]);
+                // a second removal and a wrong key do nothing
+                withRemovals.remove(row, keys[row]);
+                withRemovals.remove(row + 1, (keys[row + 1] + 1) % NUM_KEYS);
+            } else {
+                expected.put(row, keys[row]);
+            }
+        }
+        assertEquals(expected.size(), withRemovals.size());
+
+        for (int key = -1; key <= NUM_KEYS; key++) {
+            assertEquals(normalize(expected.getValuesWithOutOperator(key)),
+                    normalize(withRemovals.getValuesWithOutOperator(key)));
+            if (isRange) {
+                for (int operator : OPERATORS) {
+                    assertEquals(normalize(expected.getValues(operator, key)),
+                            normalize(withRemovals.getValues(operator, key)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testHashIndex() {
+        LOG.info("test remove from a hash index:");
+        HashIndex<Integer> index = new HashIndex<Integer>();
+        compare(index, new HashIndex<Integer>(), false);
+        // a key without rows is dropped
+        index.remove(1, 5);
+        index.put(7, 1000);
+        index.remove(7, 1000);
+        assertNull(index.getValuesWithOutOperator(1000));
+    }
+
+    @Test
+    public void testBalancedBinaryTreeIndex() {
+        LOG.info("test remove from a balanced binary tree index:");
+        compare(new BalancedBinaryTreeIndex<Integer>(), new BalancedBinaryTreeIndex<Integer>(), true);
+    }
+
+    @Test
+    public void testBplusTreeIndex() {
+        LOG.info("test remove from a B+ tree index:");
+        compare(new BplusTreeIndex<Integer>(100, 100), new BplusTreeIndex<Integer>(100, 100), true);
+
+        // a key without rows stays in the tree, and is reused
+        BplusTreeIndex<Integer> index = new BplusTreeIndex<Integer>(100, 100);
+        index.put(1, 5);
+        index.remove(1, 5);
+        assertEquals(0, index.size());
+        index.put(2, 5);
+        assertEquals(normalize(new TIntArrayList(new int[]{2})),
+                normalize(index.getValuesWithOutOperator(5)));
+    }
+}
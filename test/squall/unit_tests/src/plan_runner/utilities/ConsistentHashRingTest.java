@@ -0,0 +1,81 @@
+package plan_runner.utilities;
+
+import org.apache.log4j.Logger;
+import org.junit.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConsistentHashRingTest {
+    private static Logger LOG = Logger.getLogger(ConsistentHashRingTest.class);
+    private static final int NUM_KEYS = 100000;
+
+    private static String getKey(int i) {
+        return "key" + i;
+    }
+
+    @Test
+    public void testSameRing() {
+        LOG.info("test that senders and receivers agree:");
+        ConsistentHashRing sender = new ConsistentHashRing(5, ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        ConsistentHashRing receiver = new ConsistentHashRing(5, ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        assertEquals(5, sender.getNumActiveTasks());
+        for (int i = 0; i < NUM_KEYS; i++) {
+            assertEquals(sender.getTaskIndex(getKey(i)), receiver.getTaskIndex(getKey(i)));
+        }
+    }
+
+    @Test
+    public void testBalance() {
+        LOG.info("test the load of the tasks:");
+        int numTasks = 8;
+        ConsistentHashRing ring = new ConsistentHashRing(numTasks, ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        int[] loads = new int[numTasks];
+        for (int i = 0; i < NUM_KEYS; i++) {
+            loads[ring.getTaskIndex(getKey(i))]++;
+        }
+        for (int load : loads) {
+            assertTrue("load = " + load, Math.abs(load - NUM_KEYS / numTasks) < 0.3 * NUM_KEYS / numTasks);
+        }
+    }
+
+    @Test
+    public void testAddTask() {
+        LOG.info("test that only the keys of an added task move:");
+        ConsistentHashRing before = new ConsistentHashRing(4, ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        ConsistentHashRing after = new ConsistentHashRing(5, ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        int moved = 0;
+        for (int i = 0; i < NUM_KEYS; i++) {
+            int oldTask = before.getTaskIndex(getKey(i));
+            int newTask = after.getTaskIndex(getKey(i));
+            if (oldTask != newTask) {
+                assertEquals(4, newTask);
+                moved++;
+            }
+        }
+        // about a fifth of the keys
+        assertEquals(0.2, ((double) moved) / NUM_KEYS, 0.06);
+    }
+
+    @Test
+    public void testRemoveTask() {
+        LOG.info("test that only the keys of a removed task move:");
+        ConsistentHashRing before = new ConsistentHashRing(3, ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        ConsistentHashRing after = new ConsistentHashRing(2, ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        for (int i = 0; i < NUM_KEYS; i++) {
+            int oldTask = before.getTaskIndex(getKey(i));
+            int newTask = after.getTaskIndex(getKey(i));
+            assertTrue(newTask < 2);
+            if (oldTask != 2) {
+                assertEquals(oldTask, newTask);
+            }
+        }
+    }
+
+    @Test
+    public void testSingleTask() {
+        ConsistentHashRing ring = new ConsistentHashRing(1, 1);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, ring.getTaskIndex(getKey(i)));
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package plan_runner.utilities;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.junit.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import plan_runner.conversion.DoubleConversion;
+import plan_runner.expressions.ColumnReference;
+import plan_runner.expressions.ValueSpecification;
+import plan_runner.operators.ChainOperator;
+import plan_runner.operators.ProjectOperator;
+import plan_runner.operators.SelectOperator;
+import plan_runner.predicates.ComparisonPredicate;
+
+public class LineParserTest {
+    private static Logger LOG = Logger.getLogger(LineParserTest.class);
+    private static final String ORDERS_PATH = "../test/data/tpch/0.01G/orders.tbl";
+
+    private static List<String> _lines;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        _lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(ORDERS_PATH));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            _lines.add(line);
+        }
+        reader.close();
+    }
+
+    private static Map createConf() {
+        Map conf = new HashMap();
+        conf.put("DIP_READ_SPLIT_DELIMITER", "\\|");
+        return conf;
+    }
+
+    // WHERE TOTALPRICE > 100000, projecting ORDERKEY, ORDERPRIORITY and CLERK
+    private static ChainOperator createChain() {
+        return new ChainOperator(new SelectOperator(new ComparisonPredicate(
+                ComparisonPredicate.GREATER_OP, new ColumnReference(new DoubleConversion(), 3),
+                new ValueSpecification(new DoubleConversion(), 100000.0))),
+                new ProjectOperator(new int[]{0, 5, 6}));
+    }
+
+    // the needed columns are as in fileLineToTuple, the others are null
+    private static void assertParsed(List<String> full, List<String> parsed, int offset) {
+        boolean[] needed = new boolean[7];
+        needed[0] = needed[3] = needed[5] = needed[6] = true;
+        assertEquals(offset + needed.length, parsed.size());
+        for (int column = 0; column < needed.length; column++) {
+            if (needed[column]) {
+                assertEquals(full.get(offset + column), parsed.get(offset + column));
+            } else {
+                assertNull(parsed.get(offset + column));
+            }
+        }
+    }
+
+    @Test
+    public void testParse() {
+        LOG.info("test parse against fileLineToTuple:");
+        Map conf = createConf();
+        ChainOperator chain = createChain();
+        LineParser parser = new LineParser(chain, conf);
+        assertTrue(parser.isPruning());
+        assertEquals("columns 0, 3, 5, 6", parser.toString());
+
+        for (String line : _lines) {
+            List<String> full = MyUtilities.fileLineToTuple(line, conf);
+            List<String> parsed = parser.parse(line);
+            assertParsed(full, parsed, 0);
+            assertEquals(chain.process(full), chain.process(parsed));
+        }
+    }
+
+    @Test
+    public void testDeletions() {
+        LOG.info("test parse of deleted tuples:");
+        Map conf = createConf();
+        conf.put("DIP_DELETIONS", "true");
+        ChainOperator chain = createChain();
+        chain.startDeletions();
+        LineParser parser = new LineParser(chain, conf);
+        for (String line : _lines.subList(0, 100)) {
+            List<String> full = MyUtilities.fileLineToTuple(SystemParameters.DELETE_MARKER + "|" + line, conf);
+            List<String> parsed = parser.parse(SystemParameters.DELETE_MARKER + "|" + line);
+            assertTrue(MyUtilities.isDeletion(parsed, conf));
+            assertParsed(full, parsed, 1);
+            assertEquals(chain.process(full), chain.process(parsed));
+            // insertions are parsed as usual
+            assertParsed(MyUtilities.fileLineToTuple(line, conf), parser.parse(line), 0);
+        }
+    }
+
+    @Test
+    public void testAllColumns() {
+        LOG.info("test parse without pruning:");
+        Map conf = createConf();
+        String line = _lines.get(0);
+        // without a projection, the whole tuple is sent
+        ChainOperator select = new ChainOperator(new SelectOperator(new ComparisonPredicate(
+                ComparisonPredicate.GREATER_OP, new ColumnReference(new DoubleConversion(), 3),
+                new ValueSpecification(new DoubleConversion(), 100000.0))));
+        assertFalse(new LineParser(select, conf).isPruning());
+        assertEquals(MyUtilities.fileLineToTuple(line, conf), new LineParser(select, conf).parse(line));
+
+        assertFalse(new LineParser(null, conf).isPruning());
+
+        // a delimiter of multiple characters
+        conf.put("DIP_READ_SPLIT_DELIMITER", "\\|\\|");
+        assertFalse(new LineParser(createChain(), conf).isPruning());
+    }
+
+    @Test
+    public void testShortLine() {
+        // fewer columns than the projection reads
+        LineParser parser = new LineParser(new ChainOperator(new ProjectOperator(new int[]{2})), createConf());
+        assertEquals(Arrays.asList((String) null, null), parser.parse("a|b"));
+        assertEquals(Arrays.asList(null, null, "c"), parser.parse("a||c"));
+    }
+}
@@ -0,0 +1,90 @@
+package plan_runner.utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.junit.*;
+import static org.junit.Assert.assertEquals;
+import plan_runner.storm_components.synchronization.LatencyMarker;
+
+public class ManualBatcherTest {
+    private static Logger LOG = Logger.getLogger(ManualBatcherTest.class);
+
+    // the emitted batches and markers, in order
+    private static class Emitter implements ManualBatcher.BatchEmitter {
+        private final List<String> _emitted = new ArrayList<String>();
+
+        @Override
+        public List<Integer> emitBatch(int destination, String batch, long timestamp) {
+            int numTuples = batch.split(SystemParameters.MANUAL_BATCH_TUPLE_DELIMITER).length;
+            _emitted.add("batch " + destination + ": " + numTuples);
+            return null;
+        }
+
+        @Override
+        public void emitMarker(int destination, LatencyMarker marker) {
+            _emitted.add("marker " + destination + ": " + marker.getPath());
+        }
+    }
+
+    // a hash of a tuple which goes to destination out of 2
+    private static String getHash(int destination) {
+        for (int i = 0; ; i++) {
+            String hash = String.valueOf(i);
+            if (MyUtilities.chooseHashTargetIndex(hash, 2) == destination) {
+                return hash;
+            }
+        }
+    }
+
+    private static ManualBatcher createBatcher(Emitter emitter) {
+        Map conf = new HashMap();
+        conf.put("ORDERS_BS", "3");
+        return new ManualBatcher("ORDERS", 2, null, conf, emitter);
+    }
+
+    @Test
+    public void testMarkerAfterBatch() {
+        LOG.info("test that a marker waits for the batch of its destination:");
+        Emitter emitter = new Emitter();
+        ManualBatcher batcher = createBatcher(emitter);
+        batcher.add(getHash(0), "a", 0);
+        batcher.addMarker(0, new LatencyMarker("m1", null));
+        // nothing waits for destination 1
+        batcher.addMarker(1, new LatencyMarker("m2", null));
+        assertEquals(Arrays.asList("marker 1: m2"), emitter._emitted);
+
+        batcher.add(getHash(1), "b", 0);
+        batcher.add(getHash(0), "c", 0);
+        batcher.addMarker(0, new LatencyMarker("m3", null));
+        assertEquals(1, emitter._emitted.size());
+        // the batch is full
+        batcher.add(getHash(0), "d", 0);
+        assertEquals(Arrays.asList("marker 1: m2", "batch 0: 3", "marker 0: m1", "marker 0: m3"),
+                emitter._emitted);
+
+        // the marker is not sent again
+        batcher.add(getHash(0), "e", 0);
+        batcher.flushAll();
+        assertEquals(Arrays.asList("marker 1: m2", "batch 0: 3", "marker 0: m1", "marker 0: m3",
+                "batch 0: 1", "batch 1: 1"), emitter._emitted);
+    }
+
+    @Test
+    public void testMarkerAfterFlush() {
+        Emitter emitter = new Emitter();
+        ManualBatcher batcher = createBatcher(emitter);
+        batcher.add(getHash(1), "a", 0);
+        batcher.addMarker(1, new LatencyMarker("m1", null));
+        batcher.flush(0);
+        assertEquals(0, emitter._emitted.size());
+        batcher.flush(1);
+        assertEquals(Arrays.asList("batch 1: 1", "marker 1: m1"), emitter._emitted);
+        batcher.addMarker(1, new LatencyMarker("m2", null));
+        assertEquals("marker 1: m2", emitter._emitted.get(2));
+    }
+}
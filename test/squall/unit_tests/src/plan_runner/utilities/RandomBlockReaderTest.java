@@ -0,0 +1,128 @@
+package plan_runner.utilities;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+import org.junit.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class RandomBlockReaderTest {
+    private static Logger LOG = Logger.getLogger(RandomBlockReaderTest.class);
+
+    private File _file;
+
+    @Before
+    public void setUp() throws Exception {
+        _file = File.createTempFile("blocks", ".tbl");
+    }
+
+    @After
+    public void tearDown() {
+        _file.delete();
+    }
+
+    // lines of different lengths, so that the blocks split them at any byte
+    private List<String> writeLines(int numLines) throws Exception {
+        List<String> lines = new ArrayList<String>();
+        Random random = new Random(numLines);
+        FileWriter writer = new FileWriter(_file);
+        for (int i = 0; i < numLines; i++) {
+            StringBuilder line = new StringBuilder(i + "|");
+            for (int j = random.nextInt(40); j > 0; j--) {
+                line.append('x');
+            }
+            lines.add(line.toString());
+            writer.write(line + "\n");
+        }
+        writer.close();
+        return lines;
+    }
+
+    // the section of a task, in blocks as in StormDataSource.openOnlineAgg
+    private RandomBlockReader createReader(final int section, final int parts, int numBlocks) {
+        return new RandomBlockReader(numBlocks, section) {
+            @Override
+            protected CustomReader createBlock(int block, int numBlocks) throws IOException {
+                return new SerializableFileInputStream(_file, 1024, section * numBlocks + block,
+                        parts * numBlocks);
+            }
+        };
+    }
+
+    private static List<String> readAll(CustomReader reader) throws Exception {
+        List<String> lines = new ArrayList<String>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        reader.close();
+        return lines;
+    }
+
+    // each line of the file is read by a single task, exactly once
+    private void checkExactlyOnce(List<String> expected, int parts, int numBlocks)
+            throws Exception {
+        List<String> lines = new ArrayList<String>();
+        for (int section = 0; section < parts; section++) {
+            RandomBlockReader reader = createReader(section, parts, numBlocks);
+            lines.addAll(readAll(reader));
+            assertEquals(numBlocks, reader.getPosition());
+        }
+        expected = new ArrayList<String>(expected);
+        Collections.sort(expected);
+        Collections.sort(lines);
+        assertEquals(expected, lines);
+    }
+
+    @Test
+    public void testExactlyOnce() throws Exception {
+        LOG.info("test that the blocks read each line exactly once:");
+        List<String> lines = writeLines(2000);
+        checkExactlyOnce(lines, 1, 64);
+        checkExactlyOnce(lines, 3, 7);
+        checkExactlyOnce(lines, 4, 64);
+    }
+
+    @Test
+    public void testMoreBlocksThanLines() throws Exception {
+        LOG.info("test blocks without lines:");
+        checkExactlyOnce(writeLines(5), 2, 8);
+    }
+
+    @Test
+    public void testRandomOrder() throws Exception {
+        LOG.info("test that the blocks are not read in the order of the file:");
+        List<String> lines = writeLines(2000);
+        List<String> read = readAll(createReader(0, 1, 64));
+        assertFalse(lines.equals(read));
+        // the same seed gives the same order
+        assertEquals(read, readAll(createReader(0, 1, 64)));
+    }
+
+    @Test
+    public void testGenerator() throws Exception {
+        LOG.info("test the blocks of a generated table:");
+        List<String> expected = readAll(new TpchGenerator("ORDERS", 0.001, 0, 0, 1));
+        List<String> lines = new ArrayList<String>();
+        for (int section = 0; section < 3; section++) {
+            final int fileSection = section;
+            lines.addAll(readAll(new RandomBlockReader(16, section) {
+                @Override
+                protected CustomReader createBlock(int block, int numBlocks) {
+                    return new TpchGenerator("ORDERS", 0.001, 0, fileSection * numBlocks + block,
+                            3 * numBlocks);
+                }
+            }));
+        }
+        Collections.sort(expected);
+        Collections.sort(lines);
+        assertEquals(expected, lines);
+    }
+}
@@ -0,0 +1,133 @@
+package plan_runner.utilities;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.junit.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import plan_runner.components.DataSourceComponent;
+import plan_runner.query_plans.QueryPlan;
+
+public class SourceScheduleTest {
+    private static Logger LOG = Logger.getLogger(SourceScheduleTest.class);
+
+    private File _dir;
+    private QueryPlan _plan;
+
+    // a relation of numRows rows of the same length, so that its size estimate is exact
+    private void addRelation(String name, int numRows) throws Exception {
+        File file = new File(_dir, name.toLowerCase() + ".tbl");
+        FileWriter writer = new FileWriter(file);
+        for (int i = 0; i < numRows; i++) {
+            writer.write("row|\n");
+        }
+        writer.close();
+        new DataSourceComponent(name, file.getPath(), _plan);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        _dir = File.createTempFile("schedule", "");
+        _dir.delete();
+        _dir.mkdir();
+        _plan = new QueryPlan();
+        addRelation("A", 100);
+        addRelation("B", 300);
+        addRelation("EMPTY", 0);
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : _dir.listFiles()) {
+            file.delete();
+        }
+        _dir.delete();
+    }
+
+    // 100 rows per second; A has a single task, B has two
+    private SourceSchedule createSchedule(String schedule, String policy) {
+        Map conf = new HashMap();
+        conf.put("DIP_SOURCE_SCHEDULE", schedule);
+        conf.put("DIP_SOURCE_SCHEDULE_RATE", "100");
+        if (policy != null) {
+            conf.put("DIP_SOURCE_SCHEDULE_POLICY", policy);
+        }
+        conf.put("A_PAR", "1");
+        conf.put("B_PAR", "2");
+        conf.put("EMPTY_PAR", "1");
+        SourceSchedule result = SourceSchedule.create(_plan.getPlan(), conf);
+        result.prepare(conf);
+        return result;
+    }
+
+    @Test
+    public void testWeighted() {
+        LOG.info("test the rate shared by the weights:");
+        SourceSchedule schedule = createSchedule("A:1,B:1", null);
+        // 50 rows per second each, then B alone
+        assertEquals(0, schedule.getNumAllowed("A", 0));
+        assertEquals(50, schedule.getNumAllowed("A", 1000));
+        assertEquals(25, schedule.getNumAllowed("B", 1000));
+        assertEquals(100, schedule.getNumAllowed("B", 3000));
+        assertArrayEquals(new double[]{0, 2}, schedule.getPeriod("A"), 1e-9);
+        assertArrayEquals(new double[]{0, 4}, schedule.getPeriod("B"), 1e-9);
+
+        schedule = createSchedule("A:1,B:4", SourceSchedule.WEIGHTED);
+        assertEquals(20, schedule.getNumAllowed("A", 1000));
+        assertEquals(40, schedule.getNumAllowed("B", 1000));
+    }
+
+    @Test
+    public void testProportional() {
+        LOG.info("test the relations which are done together:");
+        SourceSchedule schedule = createSchedule("A:5,B", SourceSchedule.PROPORTIONAL);
+        assertArrayEquals(new double[]{0, 4}, schedule.getPeriod("A"), 1e-9);
+        assertArrayEquals(new double[]{0, 4}, schedule.getPeriod("B"), 1e-9);
+        assertEquals(50, schedule.getNumAllowed("A", 2000));
+        assertEquals(75, schedule.getNumAllowed("B", 2000));
+    }
+
+    @Test
+    public void testSmallestFirst() {
+        LOG.info("test one relation after the other:");
+        SourceSchedule schedule = createSchedule("B,A", SourceSchedule.SMALLEST_FIRST);
+        assertArrayEquals(new double[]{0, 1}, schedule.getPeriod("A"), 1e-9);
+        assertArrayEquals(new double[]{1, 4}, schedule.getPeriod("B"), 1e-9);
+        assertEquals(50, schedule.getNumAllowed("A", 500));
+        // B waits for A
+        assertEquals(0, schedule.getNumAllowed("B", 500));
+        assertEquals(75, schedule.getNumAllowed("B", 2500));
+    }
+
+    @Test
+    public void testEmptyRelation() {
+        LOG.info("test a relation without rows:");
+        SourceSchedule schedule = createSchedule("A,EMPTY", null);
+        assertEquals(Long.MAX_VALUE, schedule.getNumAllowed("EMPTY", 0));
+        assertArrayEquals(new double[]{0, 0}, schedule.getPeriod("EMPTY"), 1e-9);
+        // A has the whole rate
+        assertEquals(50, schedule.getNumAllowed("A", 500));
+        assertArrayEquals(new double[]{0, 1}, schedule.getPeriod("A"), 1e-9);
+
+        schedule = createSchedule("EMPTY", SourceSchedule.SMALLEST_FIRST);
+        assertEquals(Long.MAX_VALUE, schedule.getNumAllowed("EMPTY", 0));
+    }
+
+    @Test
+    public void testAfterSchedule() {
+        LOG.info("test the rows after the end of a schedule:");
+        SourceSchedule schedule = createSchedule("A,B", null);
+        assertEquals(Long.MAX_VALUE, schedule.getNumAllowed("A", 2000));
+        assertEquals(Long.MAX_VALUE, schedule.getNumAllowed("B", 4000));
+        assertEquals(Long.MAX_VALUE, schedule.getNumAllowed("B", 100000));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testUnknownRelation() {
+        createSchedule("A,C", null);
+    }
+}
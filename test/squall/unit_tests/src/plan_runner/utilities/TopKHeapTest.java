@@ -0,0 +1,86 @@
+package plan_runner.utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+import org.junit.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TopKHeapTest {
+    private static Logger LOG = Logger.getLogger(TopKHeapTest.class);
+
+    @Test
+    public void testDescending() {
+        LOG.info("test the largest keys:");
+        TopKHeap<Integer> heap = new TopKHeap<Integer>(3, true);
+        assertTrue(heap.offer(5, 5));
+        assertTrue(heap.offer(1, 1));
+        assertTrue(heap.offer(3, 3));
+        assertEquals(3, heap.size());
+        // not better than the worst kept one
+        assertFalse(heap.offer(0, 0));
+        assertTrue(heap.offer(4, 4));
+        assertEquals(Arrays.asList(5, 4, 3), heap.getSorted());
+        assertEquals(3, heap.getK());
+    }
+
+    @Test
+    public void testAscending() {
+        LOG.info("test the smallest keys:");
+        TopKHeap<String> heap = new TopKHeap<String>(2, false);
+        heap.offer(2.5, "b");
+        heap.offer(-1, "a");
+        heap.offer(7, "c");
+        assertEquals(Arrays.asList("a", "b"), heap.getSorted());
+    }
+
+    @Test
+    public void testTies() {
+        LOG.info("test that ties do not depend on the order of the offers:");
+        // the smaller value is better among the same keys
+        List<String> values = new ArrayList<String>(Arrays.asList("e", "b", "d", "a", "c"));
+        for (int i = 0; i < 10; i++) {
+            Collections.shuffle(values, new Random(i));
+            TopKHeap<String> heap = new TopKHeap<String>(3, true);
+            for (String value : values) {
+                heap.offer(1, value);
+            }
+            assertEquals(Arrays.asList("a", "b", "c"), heap.getSorted());
+        }
+    }
+
+    @Test
+    public void testRandom() {
+        LOG.info("test against sorting:");
+        Random random = new Random(3);
+        List<Integer> values = new ArrayList<Integer>();
+        TopKHeap<Integer> heap = new TopKHeap<Integer>(10, true);
+        for (int i = 0; i < 10000; i++) {
+            int value = random.nextInt(1000000);
+            values.add(value);
+            heap.offer(value, value);
+        }
+        Collections.sort(values, Collections.reverseOrder());
+        assertEquals(values.subList(0, 10), heap.getSorted());
+    }
+
+    @Test
+    public void testFewerValues() {
+        TopKHeap<Integer> heap = new TopKHeap<Integer>(10, false);
+        assertEquals(0, heap.getSorted().size());
+        heap.offer(2, 2);
+        heap.offer(1, 1);
+        assertEquals(Arrays.asList(1, 2), heap.getSorted());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testInvalidK() {
+        new TopKHeap<Integer>(0, true);
+    }
+}
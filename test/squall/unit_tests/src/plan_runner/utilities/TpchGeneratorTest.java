@@ -0,0 +1,115 @@
+package plan_runner.utilities;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.junit.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TpchGeneratorTest {
+    private static Logger LOG = Logger.getLogger(TpchGeneratorTest.class);
+    private static final double SCALE = 0.001;
+
+    private static List<String> readAll(CustomReader reader) throws Exception {
+        List<String> lines = new ArrayList<String>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    private static List<String> read(CustomReader reader, int numLines) throws Exception {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < numLines; i++) {
+            lines.add(reader.readLine());
+        }
+        return lines;
+    }
+
+    @Test
+    public void testDeterministic() throws Exception {
+        LOG.info("test that the rows do not depend on the generator:");
+        for (String table : TpchGenerator.TABLES) {
+            List<String> first = readAll(new TpchGenerator(table, SCALE, 0, 0, 1));
+            List<String> second = readAll(new TpchGenerator(table, SCALE, 0, 0, 1));
+            assertFalse(first.isEmpty());
+            assertEquals(first, second);
+            assertEquals(first, readAll(new TpchGenerator(table, SCALE, 0, 0, 1)));
+        }
+        assertEquals(1500, readAll(new TpchGenerator("ORDERS", SCALE, 0, 0, 1)).size());
+        assertEquals(25, readAll(new TpchGenerator("NATION", SCALE, 0, 0, 1)).size());
+    }
+
+    @Test
+    public void testSections() throws Exception {
+        LOG.info("test that the sections split a table:");
+        for (String table : new String[]{"CUSTOMER", "ORDERS", "LINEITEM"}) {
+            List<String> all = readAll(new TpchGenerator(table, SCALE, 0, 0, 1));
+            List<String> sections = new ArrayList<String>();
+            for (int section = 0; section < 7; section++) {
+                sections.addAll(readAll(new TpchGenerator(table, SCALE, 0, section, 7)));
+            }
+            // disjoint, and in the same order
+            assertEquals(all, sections);
+            assertEquals(all.size(), new HashSet<String>(sections).size());
+        }
+    }
+
+    @Test
+    public void testSeek() throws Exception {
+        LOG.info("test seek to a position:");
+        for (String table : new String[]{"PARTSUPP", "ORDERS", "LINEITEM"}) {
+            TpchGenerator generator = new TpchGenerator(table, SCALE, 0.5, 1, 3);
+            read(generator, 51);
+            long position = generator.getPosition();
+            List<String> expected = read(generator, 100);
+
+            TpchGenerator restored = new TpchGenerator(table, SCALE, 0.5, 1, 3);
+            restored.seek(position);
+            assertEquals(position, restored.getPosition());
+            assertEquals(expected, read(restored, 100));
+            assertEquals(generator.getPosition(), restored.getPosition());
+        }
+    }
+
+    @Test
+    public void testSkew() throws Exception {
+        LOG.info("test the ranges of the skewed values:");
+        for (double skew : new double[]{0.5, 1, 2.5}) {
+            int[] quantities = new int[51];
+            Set<String> orderKeys = new HashSet<String>();
+            for (String line : readAll(new TpchGenerator("LINEITEM", SCALE, skew, 0, 1))) {
+                String[] columns = line.split("\\|");
+                orderKeys.add(columns[0]);
+                long partKey = Long.parseLong(columns[1]);
+                assertTrue(partKey >= 1 && partKey <= 200);
+                int quantity = Integer.parseInt(columns[4]);
+                assertTrue(quantity >= 1 && quantity <= 50);
+                quantities[quantity]++;
+                double discount = Double.parseDouble(columns[6]);
+                assertTrue(discount >= 0 && discount <= 0.1);
+            }
+            assertEquals(1500, orderKeys.size());
+            // the lowest value is the most frequent one
+            for (int quantity = 2; quantity <= 50; quantity++) {
+                assertTrue(quantities[1] > quantities[quantity]);
+            }
+
+            for (String line : readAll(new TpchGenerator("ORDERS", SCALE, skew, 0, 1))) {
+                long custKey = Long.parseLong(line.split("\\|")[1]);
+                assertTrue(custKey >= 1 && custKey <= 150);
+                assertTrue(custKey % 3 != 0);
+            }
+            for (String line : readAll(new TpchGenerator("CUSTOMER", SCALE, skew, 0, 1))) {
+                long nationKey = Long.parseLong(line.split("\\|")[3]);
+                assertTrue(nationKey >= 0 && nationKey < 25);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package plan_runner.utilities;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.junit.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WindowSemanticsTest {
+    private static Logger LOG = Logger.getLogger(WindowSemanticsTest.class);
+
+    @Test
+    public void testTumbling() {
+        LOG.info("test the segments of a tumbling window:");
+        WindowSemantics window = WindowSemantics.tumblingCount(10);
+        assertTrue(window.isTumbling());
+        assertFalse(window.isTimeBased());
+        assertEquals(0, window.getSegmentId(0));
+        assertEquals(0, window.getSegmentId(9));
+        assertEquals(1, window.getSegmentId(10));
+        // only the current segment is alive
+        assertEquals(0, window.getOldestLiveSegmentId(9));
+        assertEquals(3, window.getOldestLiveSegmentId(35));
+        assertEquals("Tumbling count window with range 10", window.toString());
+    }
+
+    @Test
+    public void testSliding() {
+        LOG.info("test the segments of a sliding window:");
+        WindowSemantics window = WindowSemantics.slidingTime(1000, 250);
+        assertFalse(window.isTumbling());
+        assertTrue(window.isTimeBased());
+        assertEquals(3, window.getSegmentId(999));
+        assertEquals(4, window.getSegmentId(1000));
+        // the window is (position - range, position], aligned to the slide
+        assertEquals(0, window.getOldestLiveSegmentId(0));
+        assertEquals(0, window.getOldestLiveSegmentId(999));
+        assertEquals(0, window.getOldestLiveSegmentId(1000));
+        assertEquals(1, window.getOldestLiveSegmentId(1250));
+        assertEquals(1, window.getOldestLiveSegmentId(1498));
+        assertEquals(2, window.getOldestLiveSegmentId(1499));
+        assertEquals("Sliding time window with range 1000 and slide 250", window.toString());
+    }
+
+    @Test
+    public void testCheck() {
+        LOG.info("test the configuration of time-based windows:");
+        Map conf = new HashMap();
+        WindowSemantics.tumblingCount(5).check(conf);
+        assertFalse(MyUtilities.isWindowTimestampsMode(conf));
+
+        conf.put("CUSTOM_TIMESTAMP", "true");
+        WindowSemantics.tumblingTime(5).check(conf);
+        assertTrue(MyUtilities.isWindowTimestampsMode(conf));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testTimeWithoutTimestamps() {
+        WindowSemantics.slidingTime(10, 5).check(new HashMap());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testInvalidSlide() {
+        WindowSemantics.slidingCount(10, 20);
+    }
+}
@@ -0,0 +1,127 @@
+package plan_runner.utilities.statistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.junit.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OnlineEstimatorTest {
+    private static Logger LOG = Logger.getLogger(OnlineEstimatorTest.class);
+    private static final double DELTA = 1e-9;
+
+    private static OnlineEstimator create(int function, String group, double... values) {
+        OnlineEstimator estimator = new OnlineEstimator(function);
+        for (double value : values) {
+            estimator.add(group, value);
+        }
+        return estimator;
+    }
+
+    // the estimate and its variance
+    private static void assertEstimate(double estimate, double variance, double[] actual) {
+        assertEquals(estimate, actual[0], DELTA);
+        assertEquals(variance, actual[1], DELTA);
+    }
+
+    @Test
+    public void testHorvitzThompson() {
+        LOG.info("test SUM and COUNT scaled by the probability:");
+        OnlineEstimator sum = create(OnlineEstimator.SUM, "A", 2, 4);
+        // (1 - p) / p^2 * sum(x^2)
+        assertEstimate(12, 0.5 / 0.25 * 20, sum.getEstimates(0.5).get("A"));
+        // everything is seen
+        assertEstimate(6, 0, sum.getEstimates(1).get("A"));
+
+        OnlineEstimator count = create(OnlineEstimator.COUNT, "", 1, 1, 1);
+        assertEstimate(12, 0.75 / 0.0625 * 3, count.getEstimates(0.25).get(""));
+    }
+
+    @Test
+    public void testAvgVariance() {
+        LOG.info("test AVG and its variance (1 - p) * s^2 / n:");
+        OnlineEstimator avg = create(OnlineEstimator.AVG, "A", 1, 2, 3, 4);
+        // s^2 = (30 - 10^2 / 4) / 3
+        assertEstimate(2.5, 0.5 * 5 / 3 / 4, avg.getEstimates(0.5).get("A"));
+        assertEstimate(2.5, 0, avg.getEstimates(1).get("A"));
+
+        // a single tuple says nothing about the variance
+        double[] single = create(OnlineEstimator.AVG, "A", 7).getEstimates(0.5).get("A");
+        assertEquals(7, single[0], DELTA);
+        assertTrue(Double.isInfinite(single[1]));
+    }
+
+    @Test
+    public void testDeletions() {
+        LOG.info("test the groups without tuples:");
+        OnlineEstimator sum = create(OnlineEstimator.SUM, "A", 2, 4);
+        sum.add("B", 1);
+        sum.remove("A", 2);
+        sum.remove("A", 4);
+        assertEquals(Arrays.asList("B"), new ArrayList<String>(sum.getEstimates(0.5).keySet()));
+        // nothing is seen yet
+        assertTrue(sum.getEstimates(0).isEmpty());
+    }
+
+    @Test
+    public void testGetZ() {
+        LOG.info("test the quantiles of the standard normal:");
+        assertEquals(1.96, OnlineEstimator.getZ(0.95), 1e-3);
+        assertEquals(1.645, OnlineEstimator.getZ(0.9), 1e-3);
+        assertEquals(2.576, OnlineEstimator.getZ(0.99), 1e-3);
+        assertEquals(2 * 1.96, OnlineEstimator.getHalfWidth(new double[]{0, 4}, 1.96), DELTA);
+    }
+
+    private static Map<String, double[]> merge(int function, OnlineEstimator first,
+            double firstProbability, OnlineEstimator second, double secondProbability) {
+        List<Map<String, double[]>> moments = new ArrayList<Map<String, double[]>>();
+        moments.add(first.getMoments(1).get(0));
+        moments.add(second.getMoments(1).get(0));
+        return OnlineEstimator.merge(function, moments,
+                Arrays.asList(firstProbability, secondProbability));
+    }
+
+    @Test
+    public void testMerge() {
+        LOG.info("test merging the moments of the tasks:");
+        // each task scales by its own probability
+        OnlineEstimator first = create(OnlineEstimator.SUM, "A", 2);
+        OnlineEstimator second = create(OnlineEstimator.SUM, "A", 3);
+        second.add("B", 1);
+        Map<String, double[]> merged = merge(OnlineEstimator.SUM, first, 0.5, second, 0.25);
+        assertEstimate(4 + 12, 0.5 / 0.25 * 4 + 0.75 / 0.0625 * 9, merged.get("A"));
+        assertEstimate(4, 0.75 / 0.0625, merged.get("B"));
+
+        // the same as a single task with all the tuples
+        first = create(OnlineEstimator.AVG, "A", 1, 2);
+        second = create(OnlineEstimator.AVG, "A", 3, 4);
+        merged = merge(OnlineEstimator.AVG, first, 0.5, second, 0.5);
+        double[] expected = create(OnlineEstimator.AVG, "A", 1, 2, 3, 4).getEstimates(0.5).get("A");
+        assertEstimate(expected[0], expected[1], merged.get("A"));
+    }
+
+    @Test
+    public void testSplitMoments() {
+        LOG.info("test the moments split among the merge tasks:");
+        OnlineEstimator sum = new OnlineEstimator(OnlineEstimator.SUM);
+        for (int i = 0; i < 100; i++) {
+            sum.add("group" + i, i);
+        }
+        List<HashMap<String, double[]>> parts = sum.getMoments(3);
+        assertEquals(3, parts.size());
+        int numGroups = 0;
+        for (HashMap<String, double[]> part : parts) {
+            assertTrue(!part.isEmpty());
+            numGroups += part.size();
+        }
+        assertEquals(100, numGroups);
+        // a copy
+        parts.get(0).values().iterator().next()[0] = -1;
+        assertEquals(100, sum.getEstimates(1).size());
+    }
+}
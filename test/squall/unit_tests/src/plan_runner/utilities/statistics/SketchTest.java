@@ -0,0 +1,114 @@
+package plan_runner.utilities.statistics;
+
+import org.apache.log4j.Logger;
+import org.junit.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * A sketch sent between tasks is encoded and decoded, and then merged with the others.
+ */
+public class SketchTest {
+    private static Logger LOG = Logger.getLogger(SketchTest.class);
+
+    // the sketch as it arrives at the task which merges it
+    private static <S extends Sketch<S>> S roundTrip(S sketch) {
+        S decoded = sketch.createEmpty().decode(sketch.encode());
+        assertEquals(sketch.encode(), decoded.encode());
+        return decoded;
+    }
+
+    @Test
+    public void testHyperLogLog() {
+        LOG.info("test HyperLogLog encode, decode and merge:");
+        // 0, ..., 5999 and 4000, ..., 9999
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+        for (int i = 0; i < 6000; i++) {
+            first.add(String.valueOf(i));
+            second.add(String.valueOf(i + 4000));
+        }
+        HyperLogLog decoded = roundTrip(first);
+        assertEquals(first.estimate(), decoded.estimate());
+        assertEquals(HyperLogLog.DEFAULT_PRECISION, decoded.getPrecision());
+
+        decoded.merge(roundTrip(second));
+        long estimate = decoded.estimate();
+        assertTrue("estimate = " + estimate, Math.abs(estimate - 10000) < 500);
+
+        // merging is idempotent
+        first.merge(second);
+        first.merge(second);
+        assertEquals(decoded.encode(), first.encode());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testHyperLogLogPrecisions() {
+        new HyperLogLog(10).merge(new HyperLogLog(12));
+    }
+
+    @Test
+    public void testCountMinSketch() {
+        LOG.info("test CountMinSketch encode, decode and merge:");
+        // "heavy" is a fifth of the values of each part
+        CountMinSketch first = new CountMinSketch();
+        CountMinSketch second = new CountMinSketch();
+        for (int i = 0; i < 5000; i++) {
+            CountMinSketch part = i % 2 == 0 ? first : second;
+            part.add(i % 5 == 0 ? "heavy" : "value" + i);
+        }
+        CountMinSketch decoded = roundTrip(first);
+        assertEquals(first.estimate("heavy"), decoded.estimate("heavy"));
+
+        decoded.merge(roundTrip(second));
+        long estimate = decoded.estimate("heavy");
+        // never underestimated, and overestimated by at most 2n / width
+        assertTrue("estimate = " + estimate, estimate >= 1000
+                && estimate <= 1000 + 2 * 5000 / CountMinSketch.DEFAULT_WIDTH);
+        assertTrue(decoded.getEstimate(), decoded.getEstimate().startsWith("heavy:" + estimate));
+    }
+
+    @Test
+    public void testCountMinSketchCandidates() {
+        // the candidates are prefixed by their length, so any character goes
+        CountMinSketch sketch = new CountMinSketch(64, 2, 3);
+        sketch.add("a;b");
+        sketch.add("1:c,d");
+        sketch.add("");
+        CountMinSketch decoded = roundTrip(sketch);
+        assertEquals(1, decoded.estimate("a;b"));
+        assertEquals(1, decoded.estimate("1:c,d"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testCountMinSketchSizes() {
+        new CountMinSketch(64, 2, 3).merge(new CountMinSketch(128, 2, 3));
+    }
+
+    @Test
+    public void testQuantileSketch() {
+        LOG.info("test QuantileSketch encode, decode and merge:");
+        // the even and the odd values of 0, ..., 9999
+        QuantileSketch first = new QuantileSketch(0.5);
+        QuantileSketch second = new QuantileSketch(0.5);
+        for (int i = 0; i < 10000; i++) {
+            (i % 2 == 0 ? first : second).add((double) i);
+        }
+        QuantileSketch decoded = roundTrip(first);
+        assertEquals(first.getQuantile(0.5), decoded.getQuantile(0.5), 0);
+
+        decoded.merge(roundTrip(second));
+        // the rank error is a few percent at most
+        assertEquals(5000, decoded.getQuantile(0.5), 300);
+        assertEquals(9000, decoded.getQuantile(0.9), 300);
+        assertEquals(String.valueOf(decoded.getQuantile(0.5)), decoded.getEstimate());
+    }
+
+    @Test
+    public void testEmptyQuantileSketch() {
+        QuantileSketch decoded = roundTrip(new QuantileSketch(0.25, 16));
+        assertTrue(Double.isNaN(decoded.getQuantile(0.25)));
+        decoded.add(3);
+        assertEquals(3, decoded.getQuantile(0.25), 0);
+    }
+}
@@ -0,0 +1,142 @@
+package sql.optimizers.name;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.junit.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import plan_runner.components.Component;
+import plan_runner.components.DataSourceComponent;
+import plan_runner.components.OperatorComponent;
+import plan_runner.operators.ChainOperator;
+import plan_runner.operators.TopKOperator;
+import plan_runner.query_plans.QueryPlan;
+import plan_runner.utilities.DeepCopy;
+import plan_runner.utilities.MyUtilities;
+import plan_runner.utilities.SystemParameters;
+import sql.main.ParserMain;
+import sql.util.ParserUtil;
+import sql.visitors.jsql.SQLVisitor;
+
+public class TopKQueryTest {
+    private static Logger LOG = Logger.getLogger(TopKQueryTest.class);
+    private static final String CONF_PATH = "../test/squall/unit_tests/confs/0_01G_tpch_topk_ncl";
+    private static final String RESULT_PATH = "../test/results/tpch/0.01G/tpch_topk.result";
+
+    private File _dir;
+
+    @Before
+    public void setUp() throws Exception {
+        _dir = File.createTempFile("storage", "");
+        _dir.delete();
+        _dir.mkdir();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : _dir.listFiles()) {
+            file.delete();
+        }
+        _dir.delete();
+    }
+
+    private Map createConf() {
+        Map map = new ParserMain().createConfig(CONF_PATH);
+        map.put("STORAGE_LOCAL_DIR", _dir.getPath());
+        map.put("STORAGE_MEMORY_SIZE_MB", "64");
+        return map;
+    }
+
+    private static List<String> readLines(String path) throws Exception {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(path));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        reader.close();
+        return lines;
+    }
+
+    @Test
+    public void testQuery() throws Exception {
+        LOG.info("test ORDER BY aggregate LIMIT k against the expected result:");
+        Map map = createConf();
+        SQLVisitor pq = ParserUtil.parseQuery(map);
+        assertEquals(10, pq.getLimit().getRowCount());
+        assertEquals(1, pq.getOrderByElements().size());
+
+        // the source, the top-k and the merge of the top groups
+        QueryPlan plan = new ParserMain().generatePlan(map);
+        List<Component> comps = plan.getPlan();
+        assertEquals(3, comps.size());
+        DataSourceComponent source = (DataSourceComponent) comps.get(0);
+        OperatorComponent topKComp = (OperatorComponent) comps.get(1);
+        OperatorComponent mergeComp = (OperatorComponent) comps.get(2);
+        assertEquals(topKComp, mergeComp.getParents()[0]);
+        TopKOperator topK = (TopKOperator) topKComp.getChainOperator().getLastOperator();
+        assertEquals(10, topK.getK());
+        assertTrue(topK.isDescending());
+        assertTrue(mergeComp.getChainOperator().getLastOperator() instanceof TopKOperator);
+        int numTasks = SystemParameters.getInt(map, topKComp.getName() + "_PAR");
+        assertTrue(numTasks > 1);
+        assertEquals(1, SystemParameters.getInt(map, mergeComp.getName() + "_PAR"));
+
+        // the tasks of the top-k component, partitioned by the hash of the source
+        List<ChainOperator> tasks = new ArrayList<ChainOperator>();
+        for (int i = 0; i < numTasks; i++) {
+            tasks.add((ChainOperator) DeepCopy.copy(topKComp.getChainOperator()));
+        }
+        String dataPath = SystemParameters.getString(map, "DIP_DATA_PATH") + "orders.tbl";
+        for (String line : readLines(dataPath)) {
+            List<String> tuple = source.getChainOperator().process(
+                    MyUtilities.fileLineToTuple(line, map));
+            if (tuple == null) {
+                continue;
+            }
+            String hash = MyUtilities.createHashString(tuple, source.getHashIndexes(),
+                    source.getHashExpressions(), map);
+            // nothing is sent per tuple
+            assertNull(tasks.get(MyUtilities.chooseHashTargetIndex(hash, numTasks)).process(tuple));
+        }
+
+        // each task sends its top groups at the end of the input
+        ChainOperator merge = mergeComp.getChainOperator();
+        for (ChainOperator task : tasks) {
+            List<List<String>> topTuples = ((TopKOperator) task.getLastOperator()).getTopTuples();
+            assertTrue(topTuples.size() <= 10);
+            for (List<String> tuple : topTuples) {
+                assertEquals(2, tuple.size());
+                assertNull(merge.process(tuple));
+            }
+        }
+
+        List<String> expected = readLines(RESULT_PATH);
+        List<String> result = merge.getContent();
+        assertEquals(expected.size(), result.size());
+        for (int i = 0; i < expected.size(); i++) {
+            String[] expectedParts = expected.get(i).split(" = ");
+            String[] parts = result.get(i).split(" = ");
+            assertEquals(expectedParts[0], parts[0]);
+            assertEquals(Double.parseDouble(expectedParts[1]), Double.parseDouble(parts[1]), 0.01);
+        }
+    }
+
+    @Test
+    public void testLimitIgnored() {
+        LOG.info("test LIMIT without ORDER BY the aggregate:");
+        Map map = createConf();
+        map.put("DIP_QUERY_NAME", "tpch_limit");
+        // the aggregation is in the source, as without a LIMIT
+        List<Component> comps = new ParserMain().generatePlan(map).getPlan();
+        assertEquals(1, comps.size());
+        assertTrue(comps.get(0).getChainOperator().isBlocking());
+    }
+}
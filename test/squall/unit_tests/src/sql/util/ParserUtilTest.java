@@ -1,8 +1,17 @@
 package sql.util;
 
+import java.util.Map;
 import net.sf.jsqlparser.schema.Column;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import org.junit.Test;
+import plan_runner.components.DataSourceComponent;
+import plan_runner.components.EquiJoinComponent;
+import sql.main.ParserMain;
+import sql.optimizers.name.NameCompGen;
+import sql.optimizers.name.NameCompGenFactory;
+import sql.visitors.jsql.SQLVisitor;
 
 /**
  *
@@ -19,4 +28,40 @@ public class ParserUtilTest {
         Column column = ParserUtil.nameToColumn(name);    
         assertEquals(name, ParserUtil.getStringExpr(column));
     }
+
+    private NameCompGen createCG(String maxTuples) {
+        Map map = new ParserMain().createConfig("../test/squall/unit_tests/confs/0_1G_tpch3_ncl");
+        map.put("DIP_BROADCAST_JOIN", "true");
+        if (maxTuples != null) {
+            map.put("DIP_BROADCAST_MAX_TUPLES", maxTuples);
+        }
+        SQLVisitor pq = ParserUtil.parseQuery(map);
+        return new NameCompGenFactory(map, pq.getTan(), 20).create();
+    }
+
+    @Test
+    public void testBroadcastJoin() {
+        // about 3000 customers of a market segment and 150000 orders
+        NameCompGen ncg = createCG(null);
+        DataSourceComponent customerSource = ncg.generateDataSource("CUSTOMER");
+        DataSourceComponent ordersSource = ncg.generateDataSource("ORDERS");
+        EquiJoinComponent coJoin = ncg.generateEquiJoin(customerSource, ordersSource);
+        assertTrue(customerSource.isScannedLocally());
+        assertFalse(ordersSource.isScannedLocally());
+
+        // only DataSourceComponents are broadcasted
+        DataSourceComponent lineitemSource = ncg.generateDataSource("LINEITEM");
+        ncg.generateEquiJoin(coJoin, lineitemSource);
+        assertFalse(lineitemSource.isScannedLocally());
+    }
+
+    @Test
+    public void testNoBroadcastJoin() {
+        NameCompGen ncg = createCG("100");
+        DataSourceComponent customerSource = ncg.generateDataSource("CUSTOMER");
+        DataSourceComponent ordersSource = ncg.generateDataSource("ORDERS");
+        ncg.generateEquiJoin(customerSource, ordersSource);
+        assertFalse(customerSource.isScannedLocally());
+        assertFalse(ordersSource.isScannedLocally());
+    }
 }
@@ -0,0 +1,141 @@
+package sql.util;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.junit.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import plan_runner.query_plans.QueryPlan;
+
+public class PlanCacheTest {
+    private static Logger LOG = Logger.getLogger(PlanCacheTest.class);
+
+    private File _cacheDir;
+    private File _statsDir;
+
+    private static File createTempDir(String prefix) throws Exception {
+        File dir = File.createTempFile(prefix, "");
+        dir.delete();
+        dir.mkdir();
+        return dir;
+    }
+
+    private static void deleteDir(File dir) {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    private static void writeFile(File file, String content) throws Exception {
+        FileWriter writer = new FileWriter(file);
+        writer.write(content);
+        writer.close();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        _cacheDir = createTempDir("plancache");
+        _statsDir = createTempDir("statistics");
+        writeFile(new File(_statsDir, "ORDERS.OFFLINE.0.stats"), "first");
+    }
+
+    @After
+    public void tearDown() {
+        deleteDir(_cacheDir);
+        deleteDir(_statsDir);
+    }
+
+    // the configuration before optimization
+    private Map createMap() {
+        Map map = new HashMap();
+        map.put("DIP_QUERY_NAME", "tpch3");
+        map.put("DIP_SQL_ROOT", "../test/squall/sql_queries/");
+        map.put("DIP_SCHEMA_PATH", "../test/squall/schemas/tpch.txt");
+        map.put("DIP_DB_SIZE", "0.01");
+        map.put("DIP_STATISTICS_DIR", _statsDir.getPath());
+        map.put("DIP_PLAN_CACHE_DIR", _cacheDir.getPath());
+        return map;
+    }
+
+    // optimizes (the optimizer adds the parallelism) and stores the plan
+    private void store() {
+        Map map = createMap();
+        PlanCache cache = PlanCache.create(map);
+        assertNull(cache.load(map));
+        map.put("ORDERS_PAR", "4");
+        cache.store(new QueryPlan(), map);
+    }
+
+    private QueryPlan load(Map map) {
+        return PlanCache.create(map).load(map);
+    }
+
+    @Test
+    public void testNoCache() {
+        Map map = createMap();
+        map.remove("DIP_PLAN_CACHE_DIR");
+        assertNull(PlanCache.create(map));
+    }
+
+    @Test
+    public void testHit() {
+        LOG.info("test load of a stored plan:");
+        store();
+        Map map = createMap();
+        assertNotNull(load(map));
+        // the entries the optimizer added
+        assertEquals("4", map.get("ORDERS_PAR"));
+        assertEquals(createMap().size() + 1, map.size());
+    }
+
+    @Test
+    public void testMiss() {
+        LOG.info("test load after a change:");
+        store();
+
+        Map map = createMap();
+        map.put("DIP_TOTAL_SRC_PAR", "10");
+        assertNull(load(map));
+
+        map = createMap();
+        map.put("DIP_QUERY_NAME", "tpch4");
+        assertNull(load(map));
+        assertNull(map.get("ORDERS_PAR"));
+    }
+
+    @Test
+    public void testStatisticsInvalidation() throws Exception {
+        LOG.info("test load after the statistics are recollected:");
+        store();
+        File statsFile = new File(_statsDir, "ORDERS.OFFLINE.0.stats");
+        writeFile(statsFile, "second");
+        assertNull(load(createMap()));
+
+        File newFile = new File(_statsDir, "CUSTOMER.OFFLINE.0.stats");
+        writeFile(statsFile, "first");
+        writeFile(newFile, "first");
+        assertNull(load(createMap()));
+
+        newFile.delete();
+        assertNotNull(load(createMap()));
+    }
+
+    @Test
+    public void testCorruptEntry() throws Exception {
+        LOG.info("test load of a corrupt entry:");
+        store();
+        assertEquals(1, _cacheDir.listFiles().length);
+        writeFile(_cacheDir.listFiles()[0], "not a plan");
+        assertNull(load(createMap()));
+
+        // it is recomputed and overwritten
+        store();
+        assertNotNull(load(createMap()));
+    }
+}